@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.FileSystemUtils;
+
+import com.ge.predix.audit.AuditCapture;
+import com.ge.predix.audit.AuditEvent;
+import com.ge.predix.audit.AuditEventWriter;
+import com.ge.predix.audit.MappedAuditRing;
+import com.ge.predix.audit.MappedAuditRingReader;
+import com.ge.predix.audit.RedactingAuditEventProcessor;
+import com.ge.predix.audit.RollingFileAuditSink;
+
+/**
+ * {@link AuditEvent} construction, {@link AuditEventWriter#process(AuditEvent)} (serializing and queueing the event
+ * for a writer thread with a discarding stream), {@link RedactingAuditEventProcessor} masking a field of every item
+ * in the bodies, {@link RollingFileAuditSink} writing to a temporary directory at the rate its writer thread
+ * sustains (the time per operation includes waiting for room in its queue), and a record passing through a
+ * {@link MappedAuditRing}, written and then read back by a {@link MappedAuditRingReader} on the same thread.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuditBenchmark {
+
+    @Param({ "256", "65536" })
+    private int bodySize;
+
+    private AuditCapture capture;
+    private AuditEvent event;
+    private AuditEventWriter writer;
+    private RedactingAuditEventProcessor redactor;
+    private Path directory;
+    private RollingFileAuditSink fileSink;
+    private MappedAuditRing ring;
+    private MappedAuditRingReader ringReader;
+
+    @Setup
+    public void setUp() throws IOException {
+        byte[] body = Payloads.jsonBody(this.bodySize);
+        this.capture = AuditCapture.builder().method("POST").requestUri("/v1/items").sourceIp("10.0.0.1")
+                .zoneId("test-zone").status(200).requestBody(body).responseBody(body).build();
+        this.event = new AuditEvent(this.capture);
+        this.writer = new AuditEventWriter(Collections.singletonList(new OutputStream() {
+            @Override
+            public void write(final int b) {
+                // discard
+            }
+
+            @Override
+            public void write(final byte[] b, final int off, final int len) {
+                // discard
+            }
+        }));
+        this.redactor = new RedactingAuditEventProcessor(auditEvent -> true, "password", "items.name");
+        this.directory = Files.createTempDirectory("audit-benchmark");
+        this.fileSink = RollingFileAuditSink.builder(this.directory).maxFileBytes(256L * 1024 * 1024).build();
+        Path ringFile = this.directory.resolve("audit.ring");
+        this.ring = new MappedAuditRing(ringFile);
+        this.ringReader = new MappedAuditRingReader(ringFile);
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException, IOException {
+        this.writer.destroy();
+        this.fileSink.destroy();
+        this.ringReader.close();
+        this.ring.destroy();
+        FileSystemUtils.deleteRecursively(this.directory.toFile());
+    }
+
+    @Benchmark
+    public AuditEvent construct() {
+        return new AuditEvent(this.capture);
+    }
+
+    @Benchmark
+    public boolean write() {
+        return this.writer.process(this.event);
+    }
+
+    @Benchmark
+    public boolean redact() {
+        return this.redactor.process(this.event);
+    }
+
+    @Benchmark
+    public int ring() {
+        this.ring.process(this.event);
+        return this.ringReader.read(record -> {
+            // consumed in place
+        }, 1);
+    }
+
+    @Benchmark
+    public boolean writeFile() {
+        while (!this.fileSink.process(this.event)) {
+            Thread.yield();
+        }
+        return true;
+    }
+}
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.JdkMapAdapterStringMap;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ge.predix.log4j2.PredixLayout;
+import com.ge.predix.logback.PredixEncoder;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+
+/**
+ * {@link PredixLayout#toSerializable(LogEvent)} and {@link PredixEncoder#encode(ILoggingEvent)} for a plain message,
+ * a multi-line message split on line separators, and a message with a deep stack trace.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LayoutBenchmark {
+
+    private static final String LINE_SEPARATOR_REGEX = "\\r?\\n";
+
+    @Param({ "plain", "multiLine", "stackTrace" })
+    private String shape;
+
+    private PredixLayout layout;
+    private LogEvent log4jEvent;
+    private PredixEncoder<ILoggingEvent> encoder;
+    private ILoggingEvent logbackEvent;
+
+    @Setup
+    public void setUp() {
+        String message = "multiLine".equals(this.shape) ? Payloads.MULTI_LINE_MESSAGE
+                : "Loaded 42 items for zone test-zone";
+        Throwable thrown = "stackTrace".equals(this.shape) ? Payloads.deepException(120) : null;
+        String separator = "multiLine".equals(this.shape) ? LINE_SEPARATOR_REGEX : null;
+
+        this.layout = PredixLayout.createLayout(null, null, separator);
+        this.log4jEvent = Log4jLogEvent.newBuilder()
+                .setLoggerName("com.ge.predix.service.ZoneService")
+                .setTimeMillis(System.currentTimeMillis())
+                .setLevel(Level.INFO)
+                .setMessage(new SimpleMessage(message))
+                .setThreadName("http-nio-8080-exec-1")
+                .setContextData(new JdkMapAdapterStringMap(Payloads.mdc()))
+                .setThrown(thrown)
+                .build();
+
+        LoggerContext context = new LoggerContext();
+        Logger logger = context.getLogger("com.ge.predix.service.ZoneService");
+        this.encoder = new PredixEncoder<>();
+        this.encoder.setContext(context);
+        this.encoder.setMessageLineSeparatorRegex(separator);
+        this.encoder.start();
+        LoggingEvent event = new LoggingEvent(null, logger, ch.qos.logback.classic.Level.INFO, message, thrown, null);
+        event.setThreadName("http-nio-8080-exec-1");
+        event.setMDCPropertyMap(Payloads.mdc());
+        this.logbackEvent = event;
+    }
+
+    @Benchmark
+    public String log4j2Layout() {
+        return this.layout.toSerializable(this.log4jEvent);
+    }
+
+    @Benchmark
+    public byte[] logbackEncoder() {
+        return this.encoder.encode(this.logbackEvent);
+    }
+}
@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import com.ge.predix.audit.AuditEventRing;
+import com.ge.predix.log.filter.LogFilter;
+
+/**
+ * One request through {@link LogFilter}, with the application reading the whole request body and writing a response
+ * of the same size. The mock request and response are part of each invocation, so compare against the
+ * {@code unfiltered} baseline rather than reading absolute numbers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LogFilterBenchmark {
+
+    @Param({ "256", "65536" })
+    private int bodySize;
+
+    // "recycled" audits through an AuditEventRing
+    @Param({ "false", "true", "recycled" })
+    private String audit;
+
+    private LogFilter logFilter;
+    private byte[] body;
+    private FilterChain application;
+
+    @Setup
+    public void setUp(final Blackhole blackhole) throws ServletException {
+        this.body = Payloads.jsonBody(this.bodySize);
+        this.logFilter = new LogFilter();
+        if (!"false".equals(this.audit)) {
+            this.logFilter.setAuditProcessor(event -> {
+                blackhole.consume(event);
+                return true;
+            });
+        }
+        if ("recycled".equals(this.audit)) {
+            this.logFilter.setAuditEventRing(new AuditEventRing(4));
+        }
+        this.application = (request, response) -> {
+            byte[] buffer = new byte[8192];
+            InputStream in = request.getInputStream();
+            while (in.read(buffer) != -1) {
+                blackhole.consume(buffer);
+            }
+            response.setContentType("application/json");
+            response.getOutputStream().write(this.body);
+        };
+    }
+
+    @Benchmark
+    public MockHttpServletResponse filtered() throws ServletException, IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        this.logFilter.doFilter(request(), response, this.application);
+        return response;
+    }
+
+    @Benchmark
+    public MockHttpServletResponse unfiltered() throws ServletException, IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        this.application.doFilter(request(), response);
+        return response;
+    }
+
+    private MockHttpServletRequest request() {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/v1/items");
+        request.addHeader("Predix-Zone-Id", "test-zone");
+        request.setContentType("application/json");
+        request.setContent(this.body);
+        return request;
+    }
+}
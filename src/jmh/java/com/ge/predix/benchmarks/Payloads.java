@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Realistic inputs shared by the benchmarks.
+ */
+final class Payloads {
+
+    static final String MULTI_LINE_MESSAGE = "Request failed\nzone: test-zone\r\nstatus: 503\n"
+            + "retrying in 250 ms\nattempt 2 of 5";
+
+    private Payloads() {
+    }
+
+    /**
+     * @return a JSON document of roughly the given size
+     */
+    static byte[] jsonBody(final int size) {
+        StringBuilder json = new StringBuilder(size + 64).append("{\"items\":[");
+        int i = 0;
+        while (json.length() < size) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"id\":").append(i).append(",\"name\":\"item-").append(i)
+                    .append("\",\"tags\":[\"alpha\",\"beta\"],\"price\":").append(i * 1.25).append('}');
+            i++;
+        }
+        return json.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return an exception with a cause, each with the given number of frames, like one thrown deep in a web stack
+     */
+    static Throwable deepException(final int frames) {
+        IllegalStateException cause = new IllegalStateException("Connection reset by peer");
+        cause.setStackTrace(frames(frames, "java.net.SocketInputStream"));
+        RuntimeException exception = new RuntimeException("Failed to load zone configuration", cause);
+        exception.setStackTrace(frames(frames, "com.ge.predix.service.ZoneService"));
+        return exception;
+    }
+
+    static Map<String, String> mdc() {
+        Map<String, String> mdc = new HashMap<>();
+        mdc.put("Zone-Id", "test-zone");
+        mdc.put("traceId", "4bf92f3577b34da6a3ce929d0e0e4736");
+        mdc.put("APP_NAME", "uaa");
+        mdc.put("APP_ID", "098877475");
+        mdc.put("INSTANCE_ID", "6758302");
+        mdc.put("INSTANCE_INDEX", "5");
+        return mdc;
+    }
+
+    private static StackTraceElement[] frames(final int count, final String topClass) {
+        StackTraceElement[] frames = new StackTraceElement[count];
+        frames[0] = new StackTraceElement(topClass, "read", topClass.substring(topClass.lastIndexOf('.') + 1)
+                + ".java", 170);
+        for (int i = 1; i < count; i++) {
+            frames[i] = new StackTraceElement("org.springframework.web.filter.Layer" + (i % 17), "doFilter",
+                    "Layer" + (i % 17) + ".java", 100 + i);
+        }
+        return frames;
+    }
+}
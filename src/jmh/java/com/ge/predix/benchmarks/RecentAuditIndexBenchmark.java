@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.benchmarks;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ge.predix.audit.AuditCapture;
+import com.ge.predix.audit.AuditEvent;
+import com.ge.predix.audit.RecentAuditIndex;
+
+/**
+ * Lookups in a default {@link RecentAuditIndex} that has seen 100000 events of 100 zones, of which one in fifty failed:
+ * the ten newest failures of one zone, found by following the zone's chain and decoded from the ring.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecentAuditIndexBenchmark {
+
+    private RecentAuditIndex index;
+    private RecentAuditIndex.Query query;
+
+    @Setup
+    public void setUp() {
+        this.index = new RecentAuditIndex();
+        for (int i = 0; i < 100000; i++) {
+            this.index.process(new AuditEvent(AuditCapture.builder().method("GET").zoneId("zone-" + (i % 100))
+                    .status((i % 50 == 0) ? 500 : 200).requestUri("/v1/assets/" + (i % 1000)).time(Instant.EPOCH)
+                    .responseBody("{\"ok\":true}".getBytes()).build()));
+        }
+        this.query = RecentAuditIndex.query().zoneId("zone-0").statusClass(5).limit(10);
+    }
+
+    @Benchmark
+    public List<AuditEvent> find() {
+        return this.index.find(this.query);
+    }
+}
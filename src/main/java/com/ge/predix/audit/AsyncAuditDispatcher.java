@@ -0,0 +1,405 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.audit;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import com.ge.predix.metrics.FilterMetrics;
+import com.ge.predix.metrics.FilterPhase;
+
+/**
+ * Hands {@link AuditCapture} snapshots from request threads to a fixed pool of worker threads, which build the
+ * {@link AuditEvent} and pass it to the delegate {@link AuditEventProcessor}. The hand-off queue is bounded and
+ * allocated up front. What happens to captures offered while it is full is up to the {@link OverflowPolicy}: by
+ * default they are dropped and counted rather than blocking the request. Recycled {@link AuditEventSlot}s are queued
+ * the same way and released once processed, dropped or spilled. Spilling is done by a spill writer thread of its own,
+ * so that request threads neither build events nor write files: they only hand the capture over, through a second
+ * queue of {@value #SPILL_QUEUE_CAPACITY}, and captures that find that one full as well are dropped.
+ */
+public class AsyncAuditDispatcher implements DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncAuditDispatcher.class);
+
+    private static final int DEFAULT_QUEUE_CAPACITY = 1024;
+    /** Captures and slots that may wait for the spill writer before further ones are dropped. */
+    static final int SPILL_QUEUE_CAPACITY = 1024;
+    private static final long POLL_INTERVAL_MILLIS = 100;
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 5000;
+
+    private final AuditEventProcessor delegate;
+    // holds AuditCaptures and AuditEventSlots, so that recycled slots need no wrapper object per event
+    private final BlockingQueue<Object> queue;
+    private final List<Thread> workers;
+    private final OverflowPolicy overflowPolicy;
+    // null unless spilling
+    private final SpillQueue spill;
+    private final BlockingQueue<Object> spillQueue;
+    private final Thread spillWriter;
+
+    private final LongAdder dispatched = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder blocked = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    private final LongAdder spilled = new LongAdder();
+    private final LongAdder restored = new LongAdder();
+
+    private volatile boolean running = true;
+    private volatile FilterMetrics metrics = FilterMetrics.NOOP;
+
+    public AsyncAuditDispatcher(final AuditEventProcessor delegate) {
+        this(delegate, DEFAULT_QUEUE_CAPACITY, 1);
+    }
+
+    public AsyncAuditDispatcher(final AuditEventProcessor delegate, final int queueCapacity,
+            final int workerThreads) {
+        this(delegate, queueCapacity, workerThreads, OverflowPolicy.dropNewest());
+    }
+
+    /**
+     * @throws UncheckedIOException if the spill directory of a {@link OverflowPolicy.Kind#SPILL} policy cannot be
+     *             opened
+     */
+    public AsyncAuditDispatcher(final AuditEventProcessor delegate, final int queueCapacity, final int workerThreads,
+            final OverflowPolicy overflowPolicy) {
+        if (null == delegate || null == overflowPolicy) {
+            throw new IllegalArgumentException("delegate and overflowPolicy must not be null");
+        }
+        if (queueCapacity < 1 || workerThreads < 1) {
+            throw new IllegalArgumentException("queueCapacity and workerThreads must be positive");
+        }
+        this.delegate = delegate;
+        this.overflowPolicy = overflowPolicy;
+        try {
+            this.spill = (overflowPolicy.getKind() == OverflowPolicy.Kind.SPILL)
+                    ? new SpillQueue(overflowPolicy.getDirectory(), overflowPolicy.getMaxBytes()) : null;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open audit spill directory " + overflowPolicy.getDirectory(), e);
+        }
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        if (null != this.spill) {
+            this.spillQueue = new ArrayBlockingQueue<>(SPILL_QUEUE_CAPACITY);
+            this.spillWriter = new Thread(this::writeSpill, "audit-spill-writer");
+            this.spillWriter.setDaemon(true);
+            this.spillWriter.start();
+        } else {
+            this.spillQueue = null;
+            this.spillWriter = null;
+        }
+        this.workers = new ArrayList<>(workerThreads);
+        for (int i = 0; i < workerThreads; i++) {
+            Thread worker = new Thread(this::drain, "audit-dispatcher-" + i);
+            worker.setDaemon(true);
+            this.workers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * Queues the capture for processing, applying the {@link OverflowPolicy} if the queue is full.
+     *
+     * @return false if the dispatcher is shut down or the capture was dropped under the overflow policy. A capture
+     *         handed to the spill writer counts as queued, even if it is dropped later because the spill limit is
+     *         reached.
+     */
+    public boolean dispatch(final AuditCapture capture) {
+        return enqueue(capture);
+    }
+
+    /**
+     * Queues the slot for processing, applying the {@link OverflowPolicy} if the queue is full. The slot is released
+     * once its view has been processed, or at once if it is dropped or spilled.
+     *
+     * @return false if the dispatcher is shut down or the slot was dropped under the overflow policy
+     */
+    public boolean dispatch(final AuditEventSlot slot) {
+        return enqueue(slot);
+    }
+
+    private boolean enqueue(final Object queued) {
+        if (this.running) {
+            if (this.queue.offer(queued)) {
+                this.dispatched.increment();
+                return true;
+            }
+            if (overflow(queued)) {
+                return true;
+            }
+        }
+        this.dropped.increment();
+        discard(queued);
+        return false;
+    }
+
+    /**
+     * @return true if the overflow policy found room for the capture or slot
+     */
+    private boolean overflow(final Object queued) {
+        switch (this.overflowPolicy.getKind()) {
+            case DROP_OLDEST:
+                while (true) {
+                    Object oldest = this.queue.poll();
+                    if (null != oldest) {
+                        this.evicted.increment();
+                        discard(oldest);
+                    }
+                    if (this.queue.offer(queued)) {
+                        this.dispatched.increment();
+                        return true;
+                    }
+                }
+            case BLOCK:
+                this.blocked.increment();
+                try {
+                    if (this.queue.offer(queued, this.overflowPolicy.getTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                        this.dispatched.increment();
+                        return true;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return false;
+            case SPILL:
+                // encoded and written by the spill writer
+                return this.spillQueue.offer(queued);
+            default:
+                return false;
+        }
+    }
+
+    private static void discard(final Object queued) {
+        if (queued instanceof AuditEventSlot) {
+            ((AuditEventSlot) queued).release();
+        }
+    }
+
+    private void drain() {
+        while (this.running || !this.queue.isEmpty()) {
+            Object queued;
+            try {
+                // spilled captures are only read back once the queue has run empty
+                queued = (null == this.spill) ? null : this.queue.poll();
+                if (null == queued && null != this.spill && this.running) {
+                    queued = unspill();
+                }
+                if (null == queued) {
+                    queued = this.queue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (queued instanceof AuditEventSlot) {
+                AuditEventSlot slot = (AuditEventSlot) queued;
+                try {
+                    process(slot.view());
+                } finally {
+                    slot.release();
+                }
+            } else if (null != queued) {
+                process((AuditCapture) queued);
+            }
+        }
+    }
+
+    private void writeSpill() {
+        while (this.running || !this.spillQueue.isEmpty()) {
+            Object queued;
+            try {
+                queued = this.spillQueue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (null != queued) {
+                spill(queued);
+            }
+        }
+    }
+
+    private void spill(final Object queued) {
+        try {
+            AuditEvent event = (queued instanceof AuditEventSlot) ? ((AuditEventSlot) queued).view()
+                    : new AuditEvent((AuditCapture) queued);
+            if (this.spill.offer(event)) {
+                this.spilled.increment();
+            } else {
+                this.dropped.increment();
+            }
+        } catch (IOException | RuntimeException e) {
+            this.dropped.increment();
+            LOGGER.warn("Failed to spill audit event: {}", e.getMessage());
+        } finally {
+            discard(queued);
+        }
+    }
+
+    private AuditCapture unspill() {
+        try {
+            AuditCapture capture = this.spill.poll();
+            if (null != capture) {
+                this.restored.increment();
+            }
+            return capture;
+        } catch (IOException e) {
+            LOGGER.warn("Failed to read back spilled audit events: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void process(final AuditCapture capture) {
+        FilterMetrics filterMetrics = this.metrics;
+        AuditEvent event;
+        try {
+            long start = filterMetrics.startTime();
+            event = new AuditEvent(capture);
+            filterMetrics.recordSince(FilterPhase.AUDIT_EVENT, start);
+        } catch (Exception e) {
+            this.failed.increment();
+            LOGGER.warn("Failed to process audit event for {} {}: {}", capture.getMethod(),
+                    capture.getRequestUri(), e.getMessage());
+            return;
+        }
+        process(event);
+    }
+
+    private void process(final AuditEvent event) {
+        FilterMetrics filterMetrics = this.metrics;
+        try {
+            long start = filterMetrics.startTime();
+            this.delegate.process(event);
+            filterMetrics.recordSince(FilterPhase.AUDIT_PROCESS, start);
+        } catch (Exception e) {
+            this.failed.increment();
+            LOGGER.warn("Failed to process audit event for {} {}: {}", event.getMethod(), event.getRequestUri(),
+                    e.getMessage());
+        }
+    }
+
+    /**
+     * Receives the time the workers spend building and processing audit events.
+     */
+    public void setMetrics(final FilterMetrics metrics) {
+        this.metrics = (null == metrics) ? FilterMetrics.NOOP : metrics;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return this.overflowPolicy;
+    }
+
+    /**
+     * @return captures queued, including those queued after blocking or evicting another
+     */
+    public long getDispatchedCount() {
+        return this.dispatched.sum();
+    }
+
+    /**
+     * @return captures dropped because the dispatcher was shut down, the queue stayed full for a
+     *         {@link OverflowPolicy.Kind#BLOCK} policy, or, for a {@link OverflowPolicy.Kind#SPILL} policy, the spill
+     *         writer fell behind or the spill limit was reached
+     */
+    public long getDroppedCount() {
+        return this.dropped.sum();
+    }
+
+    /**
+     * @return dispatches that found the queue full and waited for room, under a {@link OverflowPolicy.Kind#BLOCK}
+     *         policy
+     */
+    public long getBlockedCount() {
+        return this.blocked.sum();
+    }
+
+    /**
+     * @return queued captures dropped to make room, under a {@link OverflowPolicy.Kind#DROP_OLDEST} policy
+     */
+    public long getEvictedCount() {
+        return this.evicted.sum();
+    }
+
+    /**
+     * @return captures written to the spill directory
+     */
+    public long getSpilledCount() {
+        return this.spilled.sum();
+    }
+
+    /**
+     * @return spilled captures read back and processed, including any left over from an earlier run
+     */
+    public long getRestoredCount() {
+        return this.restored.sum();
+    }
+
+    /**
+     * @return bytes spilled and not yet read back
+     */
+    public long getSpilledBytes() {
+        return (null == this.spill) ? 0 : this.spill.getBytes();
+    }
+
+    public long getFailedCount() {
+        return this.failed.sum();
+    }
+
+    public int getQueueSize() {
+        return this.queue.size();
+    }
+
+    /**
+     * Stops accepting captures, waits for the spill writer to write what was handed to it and for the workers to
+     * process what is already queued. Spilled captures not yet read back stay in the spill directory for the next
+     * start.
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        this.running = false;
+        long deadline = System.currentTimeMillis() + SHUTDOWN_TIMEOUT_MILLIS;
+        if (null != this.spillWriter) {
+            this.spillWriter.join(Math.max(1, deadline - System.currentTimeMillis()));
+        }
+        for (Thread worker : this.workers) {
+            worker.join(Math.max(1, deadline - System.currentTimeMillis()));
+        }
+        if (null != this.spill) {
+            // threads that outlived the timeout find the spill closed rather than reading or writing a closed file
+            try {
+                this.spill.close();
+            } catch (IOException e) {
+                LOGGER.warn("Failed to close audit spill directory: {}", e.getMessage());
+            }
+            List<Object> unspilled = new ArrayList<>();
+            this.spillQueue.drainTo(unspilled);
+            for (Object queued : unspilled) {
+                this.dropped.increment();
+                discard(queued);
+            }
+        }
+    }
+}
@@ -0,0 +1,257 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.audit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Group commit shared by the audit sinks: a thread of its own takes entries off a bounded queue and hands them to a
+ * {@link Committer} in batches, as the {@link FlushPolicy} dictates. A batch is committed once it holds
+ * {@code maxEvents} entries or {@code maxBytes} bytes, before an entry that would take it past {@code maxBytes},
+ * {@code maxDelayMillis} after its first entry arrived, and as soon as the queue runs empty with a synchronous policy
+ * or once the batcher is stopped. Callers of a synchronous policy wait on their entry until its batch is committed.
+ *
+ * @param <T> the entries, carrying whatever the committer writes
+ */
+final class AuditBatcher<T extends AuditBatcher.Entry> {
+
+    /** The longest the thread waits for an entry before it checks for shutdown. */
+    static final long POLL_INTERVAL_MILLIS = 100;
+
+    private final FlushPolicy policy;
+    private final Committer<T> committer;
+    private final BlockingQueue<T> queue;
+    private final Thread thread;
+
+    private volatile boolean running = true;
+
+    // only touched by the batcher thread
+    private final List<T> batch = new ArrayList<>();
+    private long batchBytes;
+    private long batchDeadlineNanos;
+
+    AuditBatcher(final String threadName, final int queueCapacity, final FlushPolicy policy,
+            final Committer<T> committer) {
+        this.policy = policy;
+        this.committer = committer;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.thread = new Thread(this::run, threadName);
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        this.thread.start();
+    }
+
+    /**
+     * Queues the entry without blocking.
+     *
+     * @return false if the queue is full or the batcher is stopped
+     */
+    boolean offer(final T entry) {
+        return this.running && this.queue.offer(entry);
+    }
+
+    /**
+     * @return entries queued and not yet taken into a batch
+     */
+    int size() {
+        return this.queue.size();
+    }
+
+    /**
+     * @return the oldest queued entry, or null
+     */
+    T peek() {
+        return this.queue.peek();
+    }
+
+    boolean isAlive() {
+        return this.thread.isAlive();
+    }
+
+    /**
+     * Stops accepting entries. The thread commits what is queued and then exits.
+     */
+    void stop() {
+        this.running = false;
+    }
+
+    /**
+     * @return true if the thread has exited
+     */
+    boolean join(final long timeoutMillis) throws InterruptedException {
+        this.thread.join(timeoutMillis);
+        return !this.thread.isAlive();
+    }
+
+    /**
+     * Cuts short whatever the committer is waiting for. The thread exits without committing what is still queued,
+     * which it hands to {@link Committer#stopped(List)} instead.
+     */
+    void interrupt() {
+        this.thread.interrupt();
+    }
+
+    private void run() {
+        List<T> abandoned = new ArrayList<>();
+        try {
+            while (this.running || !this.queue.isEmpty()) {
+                T entry;
+                try {
+                    // woken at least every poll interval, so that a stop is not held up by the batch deadline
+                    long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(POLL_INTERVAL_MILLIS);
+                    if (!this.batch.isEmpty()) {
+                        timeoutNanos = Math.min(timeoutNanos, this.batchDeadlineNanos - System.nanoTime());
+                    }
+                    entry = this.queue.poll(Math.max(0, timeoutNanos), TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                if (null != entry) {
+                    add(entry);
+                }
+                if (!this.batch.isEmpty() && (this.batch.size() >= this.policy.getMaxEvents()
+                        || this.batchBytes >= this.policy.getMaxBytes()
+                        || System.nanoTime() - this.batchDeadlineNanos >= 0
+                        || ((this.policy.isSynchronous() || !this.running) && this.queue.isEmpty()))) {
+                    commit();
+                }
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                abandoned.addAll(this.batch);
+                this.batch.clear();
+            } else {
+                commit();
+            }
+        } finally {
+            this.running = false;
+            this.queue.drainTo(abandoned);
+            for (T entry : abandoned) {
+                entry.complete(false);
+            }
+            this.committer.stopped(abandoned);
+        }
+    }
+
+    private void add(final T entry) {
+        if (!this.batch.isEmpty() && this.batchBytes + entry.length() > this.policy.getMaxBytes()) {
+            // the entry does not fit, so the batch so far is committed first
+            commit();
+        }
+        if (this.batch.isEmpty()) {
+            this.batchDeadlineNanos = System.nanoTime()
+                    + TimeUnit.MILLISECONDS.toNanos(this.policy.getMaxDelayMillis());
+        }
+        this.batch.add(entry);
+        this.batchBytes += entry.length();
+    }
+
+    private void commit() {
+        if (this.batch.isEmpty()) {
+            return;
+        }
+        boolean committed = false;
+        try {
+            committed = this.committer.commit(this.batch, this.batchBytes);
+        } finally {
+            for (T entry : this.batch) {
+                entry.complete(committed);
+            }
+            this.batch.clear();
+            this.batchBytes = 0;
+        }
+    }
+
+    /**
+     * Writes out batches, on the batcher thread.
+     */
+    interface Committer<T> {
+
+        /**
+         * @param batch the entries, in the order they were queued; only valid during the call
+         * @param batchBytes the sum of their lengths
+         * @return true if the batch was committed, false if it failed
+         */
+        boolean commit(List<T> batch, long batchBytes);
+
+        /**
+         * Called once the thread has committed its last batch and is about to exit.
+         *
+         * @param abandoned entries that were neither committed nor failed because the thread was interrupted; they
+         *            have been completed as failed
+         */
+        void stopped(List<T> abandoned);
+    }
+
+    /**
+     * Something to be committed, of a given length in bytes.
+     */
+    static class Entry {
+
+        private final long length;
+        // counted down by each committer of the entry, for synchronous policies only
+        private final CountDownLatch committed;
+        private volatile boolean failed;
+
+        /**
+         * @param parties the number of batchers the entry is queued to, which must each complete it before a caller
+         *            of a synchronous policy stops waiting; 0 if nobody waits
+         */
+        Entry(final long length, final int parties) {
+            this.length = length;
+            this.committed = (parties > 0) ? new CountDownLatch(parties) : null;
+        }
+
+        final long length() {
+            return this.length;
+        }
+
+        /**
+         * Marks the entry as committed or failed by one of its batchers.
+         */
+        final void complete(final boolean written) {
+            if (null != this.committed) {
+                if (!written) {
+                    this.failed = true;
+                }
+                this.committed.countDown();
+            }
+        }
+
+        /**
+         * @return true if every batcher committed the entry within the timeout, or if nobody waits for it
+         */
+        final boolean await(final long timeoutMillis) {
+            if (null == this.committed) {
+                return true;
+            }
+            try {
+                return this.committed.await(timeoutMillis, TimeUnit.MILLISECONDS) && !this.failed;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,328 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.audit;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Locale;
+
+import org.springframework.web.util.ContentCachingRequestWrapper;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+/**
+ * Raw snapshot of an audited request, taken on the request thread. Holds only the values needed to build an
+ * {@link AuditEvent} later, so that the expensive part of auditing can run elsewhere. Bodies are kept as bytes
+ * together with the charset they are encoded in, and are only decoded if something asks for their text.
+ */
+public final class AuditCapture {
+
+    private static final ByteBuffer EMPTY_BODY = ByteBuffer.allocate(0);
+    private static final String CHARSET_PARAMETER = "charset=";
+
+    private final String method;
+    private final String requestUri;
+    private final String sourceIp;
+    private final String zoneId;
+    private final int status;
+    private final Instant time;
+    private final ByteBuffer requestBody;
+    private final ByteBuffer responseBody;
+    private final Charset requestCharset;
+    private final Charset responseCharset;
+    private final boolean requestBodyTruncated;
+    private final boolean responseBodyTruncated;
+
+    private AuditCapture(final Builder builder) {
+        this.method = builder.method;
+        this.requestUri = builder.requestUri;
+        this.sourceIp = builder.sourceIp;
+        this.zoneId = builder.zoneId;
+        this.status = builder.status;
+        this.time = (null == builder.time) ? Instant.now() : builder.time;
+        this.requestBody = (null == builder.requestBody) ? EMPTY_BODY : builder.requestBody.slice();
+        this.responseBody = (null == builder.responseBody) ? EMPTY_BODY : builder.responseBody.slice();
+        this.requestCharset = (null == builder.requestCharset) ? StandardCharsets.UTF_8 : builder.requestCharset;
+        this.responseCharset = (null == builder.responseCharset) ? StandardCharsets.UTF_8 : builder.responseCharset;
+        this.requestBodyTruncated = builder.requestBodyTruncated;
+        this.responseBodyTruncated = builder.responseBodyTruncated;
+    }
+
+    public static AuditCapture from(final ContentCachingRequestWrapper requestWrapper,
+            final ContentCachingResponseWrapper responseWrapper, final String zoneId) {
+        return builder()
+                .method(requestWrapper.getMethod())
+                .requestUri(requestWrapper.getRequestURI())
+                .sourceIp(requestWrapper.getRemoteHost())
+                .zoneId(zoneId)
+                .status(responseWrapper.getStatus())
+                .requestBody(requestWrapper.getContentAsByteArray())
+                .requestCharset(charsetOf(requestWrapper.getContentType()))
+                .responseBody(responseWrapper.getContentAsByteArray())
+                .responseCharset(charsetOf(responseWrapper.getContentType()))
+                .build();
+    }
+
+    /**
+     * @return the charset named by the {@code charset} parameter of {@code contentType}, or UTF-8 if there is none
+     *         or it is not supported
+     */
+    public static Charset charsetOf(final String contentType) {
+        if (null == contentType) {
+            return StandardCharsets.UTF_8;
+        }
+        int start = contentType.toLowerCase(Locale.ROOT).indexOf(CHARSET_PARAMETER);
+        if (start < 0) {
+            return StandardCharsets.UTF_8;
+        }
+        start += CHARSET_PARAMETER.length();
+        int end = contentType.indexOf(';', start);
+        String name = contentType.substring(start, (end < 0) ? contentType.length() : end).trim();
+        if (name.length() > 1 && name.charAt(0) == '"' && name.charAt(name.length() - 1) == '"') {
+            name = name.substring(1, name.length() - 1);
+        }
+        return forName(name);
+    }
+
+    /**
+     * @return the charset called {@code name}, or UTF-8 if {@code name} is null or not a supported charset
+     */
+    public static Charset forName(final String name) {
+        if (null == name) {
+            return StandardCharsets.UTF_8;
+        }
+        try {
+            return Charset.forName(name);
+        } catch (IllegalArgumentException e) {
+            return StandardCharsets.UTF_8;
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public String getMethod() {
+        return this.method;
+    }
+
+    public String getRequestUri() {
+        return this.requestUri;
+    }
+
+    public String getSourceIp() {
+        return this.sourceIp;
+    }
+
+    public String getZoneId() {
+        return this.zoneId;
+    }
+
+    public int getStatus() {
+        return this.status;
+    }
+
+    public Instant getTime() {
+        return this.time;
+    }
+
+    /**
+     * The returned array is owned by this capture and must not be modified. It is only a copy if the body is a slice
+     * of a larger buffer.
+     */
+    public byte[] getRequestBody() {
+        return toArray(this.requestBody);
+    }
+
+    /**
+     * The returned array is owned by this capture and must not be modified. It is only a copy if the body is a slice
+     * of a larger buffer.
+     */
+    public byte[] getResponseBody() {
+        return toArray(this.responseBody);
+    }
+
+    /**
+     * @return a read-only view of the request body
+     */
+    public ByteBuffer getRequestBodyBuffer() {
+        return this.requestBody.asReadOnlyBuffer();
+    }
+
+    /**
+     * @return a read-only view of the response body
+     */
+    public ByteBuffer getResponseBodyBuffer() {
+        return this.responseBody.asReadOnlyBuffer();
+    }
+
+    public Charset getRequestCharset() {
+        return this.requestCharset;
+    }
+
+    public Charset getResponseCharset() {
+        return this.responseCharset;
+    }
+
+    /**
+     * @return true if only a prefix of the request body was captured
+     */
+    public boolean isRequestBodyTruncated() {
+        return this.requestBodyTruncated;
+    }
+
+    /**
+     * @return true if only a prefix of the response body was captured
+     */
+    public boolean isResponseBodyTruncated() {
+        return this.responseBodyTruncated;
+    }
+
+    /**
+     * The body buffers are never read relative to their position, so they can be shared with {@link AuditEvent}.
+     */
+    ByteBuffer requestBody() {
+        return this.requestBody;
+    }
+
+    ByteBuffer responseBody() {
+        return this.responseBody;
+    }
+
+    private static byte[] toArray(final ByteBuffer body) {
+        if (body.hasArray() && body.arrayOffset() == 0 && body.remaining() == body.array().length) {
+            return body.array();
+        }
+        byte[] bytes = new byte[body.remaining()];
+        body.duplicate().get(bytes);
+        return bytes;
+    }
+
+    public static final class Builder {
+
+        private String method;
+        private String requestUri;
+        private String sourceIp;
+        private String zoneId;
+        private int status;
+        private Instant time;
+        private ByteBuffer requestBody;
+        private ByteBuffer responseBody;
+        private Charset requestCharset;
+        private Charset responseCharset;
+        private boolean requestBodyTruncated;
+        private boolean responseBodyTruncated;
+
+        private Builder() {
+        }
+
+        public Builder method(final String value) {
+            this.method = value;
+            return this;
+        }
+
+        public Builder requestUri(final String value) {
+            this.requestUri = value;
+            return this;
+        }
+
+        public Builder sourceIp(final String value) {
+            this.sourceIp = value;
+            return this;
+        }
+
+        public Builder zoneId(final String value) {
+            this.zoneId = value;
+            return this;
+        }
+
+        public Builder status(final int value) {
+            this.status = value;
+            return this;
+        }
+
+        public Builder time(final Instant value) {
+            this.time = value;
+            return this;
+        }
+
+        /**
+         * The array is not copied; the caller must not modify it afterwards.
+         */
+        public Builder requestBody(final byte[] value) {
+            this.requestBody = (null == value) ? null : ByteBuffer.wrap(value);
+            return this;
+        }
+
+        /**
+         * The remaining bytes of the buffer are the body. They are not copied; the caller must not modify them
+         * afterwards.
+         */
+        public Builder requestBody(final ByteBuffer value) {
+            this.requestBody = value;
+            return this;
+        }
+
+        /**
+         * The array is not copied; the caller must not modify it afterwards.
+         */
+        public Builder responseBody(final byte[] value) {
+            this.responseBody = (null == value) ? null : ByteBuffer.wrap(value);
+            return this;
+        }
+
+        /**
+         * The remaining bytes of the buffer are the body. They are not copied; the caller must not modify them
+         * afterwards.
+         */
+        public Builder responseBody(final ByteBuffer value) {
+            this.responseBody = value;
+            return this;
+        }
+
+        /**
+         * Charset the request body is encoded in; UTF-8 if not set.
+         */
+        public Builder requestCharset(final Charset value) {
+            this.requestCharset = value;
+            return this;
+        }
+
+        /**
+         * Charset the response body is encoded in; UTF-8 if not set.
+         */
+        public Builder responseCharset(final Charset value) {
+            this.responseCharset = value;
+            return this;
+        }
+
+        public Builder requestBodyTruncated(final boolean value) {
+            this.requestBodyTruncated = value;
+            return this;
+        }
+
+        public Builder responseBodyTruncated(final boolean value) {
+            this.responseBodyTruncated = value;
+            return this;
+        }
+
+        public AuditCapture build() {
+            return new AuditCapture(this);
+        }
+    }
+}
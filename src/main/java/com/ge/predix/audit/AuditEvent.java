@@ -16,58 +16,267 @@
 
 package com.ge.predix.audit;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 
 import org.springframework.web.util.ContentCachingRequestWrapper;
 import org.springframework.web.util.ContentCachingResponseWrapper;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ge.predix.json.JsonWriter;
 
 /**
+ * An audited request. Bodies are held as the captured bytes along with their charsets; {@link #getRequestBody()} and
+ * {@link #getResponseBody()} decode them on first use, and UTF-8 bodies are copied into UTF-8 output by
+ * {@link #writeTo(OutputStream)} without being decoded at all.
+ *
  * @author 212570782
  */
-
 public class AuditEvent {
 
-    private final String requestBody;
-    private final String responseBody;
+    private final ByteBuffer requestBody;
+    private final ByteBuffer responseBody;
+    private final Charset requestCharset;
+    private final Charset responseCharset;
     private final String method;
     private final String sourceIp;
     private final String zoneId;
     private final Instant time;
     private final String requestUri;
     private final int status;
-    private final String toString;
+    private final boolean requestBodyTruncated;
+    private final boolean responseBodyTruncated;
+
+    // decoded bodies and pretty-printed form, built on first use
+    private volatile String requestText;
+    private volatile String responseText;
+    private volatile String toString;
 
     public AuditEvent(final ContentCachingRequestWrapper requestWrapper,
-            final ContentCachingResponseWrapper responseWrapper, final String zoneId)
-            throws JsonProcessingException {
-        this.status = responseWrapper.getStatus();
-        this.method = requestWrapper.getMethod();
-        this.sourceIp = requestWrapper.getRemoteHost();
-        this.zoneId = zoneId;
-        this.time = Instant.now();
-        this.requestUri = requestWrapper.getRequestURI();
-        this.requestBody = new String(requestWrapper.getContentAsByteArray());
-        this.responseBody = new String(responseWrapper.getContentAsByteArray());
-        this.toString = new ObjectMapper().findAndRegisterModules()
-                .writerWithDefaultPrettyPrinter().writeValueAsString(this);
+            final ContentCachingResponseWrapper responseWrapper, final String zoneId) {
+        this(AuditCapture.from(requestWrapper, responseWrapper, zoneId));
+    }
+
+    public AuditEvent(final AuditCapture capture) {
+        this.status = capture.getStatus();
+        this.method = capture.getMethod();
+        this.sourceIp = capture.getSourceIp();
+        this.zoneId = capture.getZoneId();
+        this.time = capture.getTime();
+        this.requestUri = capture.getRequestUri();
+        this.requestBody = capture.requestBody();
+        this.responseBody = capture.responseBody();
+        this.requestCharset = capture.getRequestCharset();
+        this.responseCharset = capture.getResponseCharset();
+        this.requestBodyTruncated = capture.isRequestBodyTruncated();
+        this.responseBodyTruncated = capture.isResponseBodyTruncated();
+    }
+
+    /**
+     * A view of a recycled slot; its bodies share the slot's buffers.
+     */
+    AuditEvent(final AuditEventSlot slot) {
+        this.status = slot.getStatus();
+        this.method = slot.getMethod();
+        this.sourceIp = slot.getSourceIp();
+        this.zoneId = slot.getZoneId();
+        this.time = slot.getTime();
+        this.requestUri = slot.getRequestUri();
+        AuditEventSlot.Body request = slot.requestBody();
+        AuditEventSlot.Body response = slot.responseBody();
+        this.requestBody = ByteBuffer.wrap(request.bytes(), 0, request.length());
+        this.responseBody = ByteBuffer.wrap(response.bytes(), 0, response.length());
+        this.requestCharset = request.charset();
+        this.responseCharset = response.charset();
+        this.requestBodyTruncated = request.isTruncated();
+        this.responseBodyTruncated = response.isTruncated();
+    }
+
+    private AuditEvent(final AuditEvent event, final ByteBuffer requestBody, final ByteBuffer responseBody) {
+        this.status = event.status;
+        this.method = event.method;
+        this.sourceIp = event.sourceIp;
+        this.zoneId = event.zoneId;
+        this.time = event.time;
+        this.requestUri = event.requestUri;
+        this.requestBody = requestBody;
+        this.responseBody = responseBody;
+        this.requestCharset = event.requestCharset;
+        this.responseCharset = event.responseCharset;
+        this.requestBodyTruncated = event.requestBodyTruncated;
+        this.responseBodyTruncated = event.responseBodyTruncated;
     }
 
+    /**
+     * @return a copy of this event with its bodies replaced, in the same charsets
+     */
+    AuditEvent withBodies(final ByteBuffer newRequestBody, final ByteBuffer newResponseBody) {
+        return new AuditEvent(this, newRequestBody, newResponseBody);
+    }
+
+    /**
+     * @return the event as pretty-printed JSON, built once on first use
+     */
     @Override
     public String toString() {
-        return this.toString;
+        String json = this.toString;
+        if (null == json) {
+            json = render(true);
+            this.toString = json;
+        }
+        return json;
+    }
+
+    /**
+     * @return the event as compact JSON
+     */
+    public String toJson() {
+        return render(false);
+    }
+
+    /**
+     * Writes the event as compact JSON straight to {@code writer}, without building it as a {@code String} first.
+     * The writer is not flushed.
+     */
+    public void writeTo(final Writer writer) throws IOException {
+        writeTo(writer, false);
+    }
+
+    /**
+     * Writes the event as JSON straight to {@code writer}. The writer is not flushed.
+     *
+     * @param pretty true for the indented form returned by {@link #toString()}
+     */
+    public void writeTo(final Writer writer, final boolean pretty) throws IOException {
+        write(new JsonWriter(writer, pretty));
+    }
+
+    /**
+     * Writes the event as compact UTF-8 JSON to {@code outputStream}, without building it as a {@code String} first.
+     * The stream is not flushed.
+     */
+    public void writeTo(final OutputStream outputStream) throws IOException {
+        writeTo(outputStream, false);
+    }
+
+    /**
+     * Writes the event as UTF-8 JSON to {@code outputStream}. The stream is not flushed.
+     *
+     * @param pretty true for the indented form returned by {@link #toString()}
+     */
+    public void writeTo(final OutputStream outputStream, final boolean pretty) throws IOException {
+        JsonWriter json = new JsonWriter(outputStream, pretty);
+        write(json);
+        json.flush();
     }
 
+    private String render(final boolean pretty) {
+        StringBuilder json = new StringBuilder(256 + this.requestBody.remaining() + this.responseBody.remaining());
+        try {
+            write(new JsonWriter(json, pretty));
+        } catch (IOException e) {
+            // a StringBuilder does not throw
+            throw new UncheckedIOException(e);
+        }
+        return json.toString();
+    }
+
+    private void write(final JsonWriter json) throws IOException {
+        json.beginObject().name("requestBody");
+        writeBody(json, this.requestBody, this.requestCharset, this.requestText);
+        json.name("responseBody");
+        writeBody(json, this.responseBody, this.responseCharset, this.responseText);
+        json.name("method").value(this.method)
+                .name("sourceIp").value(this.sourceIp)
+                .name("zoneId").value(this.zoneId)
+                .name("time").value(this.time)
+                .name("requestUri").value(this.requestUri)
+                .name("status").value(this.status)
+                .name("requestBodyTruncated").value(this.requestBodyTruncated)
+                .name("responseBodyTruncated").value(this.responseBodyTruncated)
+                .endObject();
+    }
+
+    private static void writeBody(final JsonWriter json, final ByteBuffer body, final Charset charset,
+            final String text) throws IOException {
+        if (null != text) {
+            json.value(text);
+        } else if (StandardCharsets.UTF_8.equals(charset)) {
+            json.utf8Value(body);
+        } else {
+            json.value(decode(body, charset));
+        }
+    }
+
+    private static String decode(final ByteBuffer body, final Charset charset) {
+        if (body.hasArray()) {
+            return new String(body.array(), body.arrayOffset() + body.position(), body.remaining(), charset);
+        }
+        return charset.decode(body.duplicate()).toString();
+    }
+
+    /**
+     * @return the request body decoded with {@link #getRequestCharset()}, decoded once on first use
+     */
     public String getRequestBody() {
-        return this.requestBody;
+        String text = this.requestText;
+        if (null == text) {
+            text = decode(this.requestBody, this.requestCharset);
+            this.requestText = text;
+        }
+        return text;
     }
 
+    /**
+     * @return the response body decoded with {@link #getResponseCharset()}, decoded once on first use
+     */
     public String getResponseBody() {
+        String text = this.responseText;
+        if (null == text) {
+            text = decode(this.responseBody, this.responseCharset);
+            this.responseText = text;
+        }
+        return text;
+    }
+
+    /**
+     * @return a read-only view of the raw request body
+     */
+    public ByteBuffer getRequestBodyBuffer() {
+        return this.requestBody.asReadOnlyBuffer();
+    }
+
+    /**
+     * @return a read-only view of the raw response body
+     */
+    public ByteBuffer getResponseBodyBuffer() {
+        return this.responseBody.asReadOnlyBuffer();
+    }
+
+    /**
+     * Like {@link AuditCapture#requestBody()}, the raw body buffers are never read relative to their position.
+     */
+    ByteBuffer requestBody() {
+        return this.requestBody;
+    }
+
+    ByteBuffer responseBody() {
         return this.responseBody;
     }
 
+    public Charset getRequestCharset() {
+        return this.requestCharset;
+    }
+
+    public Charset getResponseCharset() {
+        return this.responseCharset;
+    }
+
     public String getMethod() {
         return this.method;
     }
@@ -92,4 +301,18 @@ public class AuditEvent {
         return this.requestUri;
     }
 
+    /**
+     * @return true if the request body exceeded the capture limit and {@link #getRequestBody()} is only a prefix
+     */
+    public boolean isRequestBodyTruncated() {
+        return this.requestBodyTruncated;
+    }
+
+    /**
+     * @return true if the response body exceeded the capture limit and {@link #getResponseBody()} is only a prefix
+     */
+    public boolean isResponseBodyTruncated() {
+        return this.responseBodyTruncated;
+    }
+
 }
@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.audit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed ring of pre-allocated {@link AuditEventSlot}s, for auditing without a steady stream of per-request garbage.
+ * A slot is claimed with a single compare-and-set from a rotating start position, and handed back with
+ * {@link AuditEventSlot#release()} once the audit pipeline is done with it. The slots keep their body buffers between
+ * requests, up to {@code maxRetainedBodyBytes} each, so bodies of the usual size are captured into memory that is
+ * already there.
+ *
+ * <p>
+ * When every slot is in use, {@link #acquire()} returns null and the caller audits the request the usual, allocating
+ * way; size the ring for the number of requests audited concurrently, plus the dispatcher queue if one is used.
+ * </p>
+ */
+public class AuditEventRing {
+
+    private static final int DEFAULT_MAX_RETAINED_BODY_BYTES = 256 * 1024;
+
+    private static final int FREE = 0;
+    private static final int IN_USE = 1;
+
+    private final AuditEventSlot[] slots;
+    private final AtomicIntegerArray states;
+    private final AtomicInteger next = new AtomicInteger();
+    private final LongAdder exhausted = new LongAdder();
+
+    public AuditEventRing(final int capacity) {
+        this(capacity, DEFAULT_MAX_RETAINED_BODY_BYTES);
+    }
+
+    /**
+     * @param maxRetainedBodyBytes the largest body buffer a slot keeps for reuse; larger ones are left to the garbage
+     *            collector so that one big body does not stay pinned
+     */
+    public AuditEventRing(final int capacity, final int maxRetainedBodyBytes) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.slots = new AuditEventSlot[capacity];
+        this.states = new AtomicIntegerArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            this.slots[i] = new AuditEventSlot(this, i, Math.max(0, maxRetainedBodyBytes));
+        }
+    }
+
+    /**
+     * @return a cleared slot owned by the caller until it is released, or null if all slots are in use
+     */
+    public AuditEventSlot acquire() {
+        int capacity = this.slots.length;
+        int start = (this.next.getAndIncrement() & Integer.MAX_VALUE) % capacity;
+        for (int i = 0; i < capacity; i++) {
+            int index = (start + i) % capacity;
+            if (this.states.get(index) == FREE && this.states.compareAndSet(index, FREE, IN_USE)) {
+                return this.slots[index];
+            }
+        }
+        this.exhausted.increment();
+        return null;
+    }
+
+    void release(final int index) {
+        this.states.set(index, FREE);
+    }
+
+    public int getCapacity() {
+        return this.slots.length;
+    }
+
+    /**
+     * @return the number of slots not currently in use
+     */
+    public int getAvailableCount() {
+        int available = 0;
+        for (int i = 0; i < this.slots.length; i++) {
+            if (this.states.get(i) == FREE) {
+                available++;
+            }
+        }
+        return available;
+    }
+
+    /**
+     * @return how often {@link #acquire()} found every slot in use
+     */
+    public long getExhaustedCount() {
+        return this.exhausted.sum();
+    }
+}
@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.audit;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+/**
+ * A reusable, mutable audit record owned by an {@link AuditEventRing}. The filter fills it while the request is
+ * served, capturing the bodies into buffers the slot keeps from one request to the next, and releases it once the
+ * {@link AuditEventProcessor} has returned.
+ *
+ * <p>
+ * {@link #view()} presents the slot as an ordinary {@link AuditEvent} for existing processors. The view shares the
+ * slot's body buffers, so it is only valid until the slot is released: processors must finish with it, or copy what
+ * they need, before {@link AuditEventProcessor#process(AuditEvent)} returns.
+ * </p>
+ */
+public final class AuditEventSlot {
+
+    private static final byte[] EMPTY_BYTES = new byte[0];
+
+    private final AuditEventRing ring;
+    private final int index;
+    private final int maxRetainedBodyBytes;
+
+    private String method;
+    private String requestUri;
+    private String sourceIp;
+    private String zoneId;
+    private int status;
+    private Instant time;
+    private final Body requestBody = new Body();
+    private final Body responseBody = new Body();
+
+    AuditEventSlot(final AuditEventRing ring, final int index, final int maxRetainedBodyBytes) {
+        this.ring = ring;
+        this.index = index;
+        this.maxRetainedBodyBytes = maxRetainedBodyBytes;
+    }
+
+    public void setMethod(final String method) {
+        this.method = method;
+    }
+
+    public void setRequestUri(final String requestUri) {
+        this.requestUri = requestUri;
+    }
+
+    public void setSourceIp(final String sourceIp) {
+        this.sourceIp = sourceIp;
+    }
+
+    public void setZoneId(final String zoneId) {
+        this.zoneId = zoneId;
+    }
+
+    public void setStatus(final int status) {
+        this.status = status;
+    }
+
+    public void setTime(final Instant time) {
+        this.time = time;
+    }
+
+    /**
+     * @return the buffer kept from earlier requests for capturing the request body into; possibly empty
+     */
+    public byte[] getRequestBuffer() {
+        return this.requestBody.spare;
+    }
+
+    /**
+     * @return the buffer kept from earlier requests for capturing the response body into; possibly empty
+     */
+    public byte[] getResponseBuffer() {
+        return this.responseBody.spare;
+    }
+
+    /**
+     * @param buffer holds the body in its first {@code length} bytes. It is kept for reuse, so it must not be
+     *            referenced elsewhere once the slot is released.
+     */
+    public void setRequestBody(final byte[] buffer, final int length, final Charset charset,
+            final boolean truncated) {
+        this.requestBody.set(buffer, length, charset, truncated, this.maxRetainedBodyBytes);
+    }
+
+    /**
+     * @param buffer holds the body in its first {@code length} bytes. It is kept for reuse, so it must not be
+     *            referenced elsewhere once the slot is released.
+     */
+    public void setResponseBody(final byte[] buffer, final int length, final Charset charset,
+            final boolean truncated) {
+        this.responseBody.set(buffer, length, charset, truncated, this.maxRetainedBodyBytes);
+    }
+
+    /**
+     * @return an {@link AuditEvent} backed by this slot, valid until the slot is released
+     */
+    public AuditEvent view() {
+        return new AuditEvent(this);
+    }
+
+    /**
+     * Clears the slot and hands it back to its ring. Neither the slot nor its views may be used afterwards.
+     */
+    public void release() {
+        this.method = null;
+        this.requestUri = null;
+        this.sourceIp = null;
+        this.zoneId = null;
+        this.status = 0;
+        this.time = null;
+        this.requestBody.clear();
+        this.responseBody.clear();
+        this.ring.release(this.index);
+    }
+
+    String getMethod() {
+        return this.method;
+    }
+
+    String getRequestUri() {
+        return this.requestUri;
+    }
+
+    String getSourceIp() {
+        return this.sourceIp;
+    }
+
+    String getZoneId() {
+        return this.zoneId;
+    }
+
+    int getStatus() {
+        return this.status;
+    }
+
+    Instant getTime() {
+        return (null == this.time) ? Instant.now() : this.time;
+    }
+
+    Body requestBody() {
+        return this.requestBody;
+    }
+
+    Body responseBody() {
+        return this.responseBody;
+    }
+
+    static final class Body {
+
+        private byte[] bytes = EMPTY_BYTES;
+        private int length;
+        private Charset charset = StandardCharsets.UTF_8;
+        private boolean truncated;
+        // buffer handed out for the next capture: the largest one seen that is small enough to keep
+        private byte[] spare = EMPTY_BYTES;
+
+        private void set(final byte[] buffer, final int bodyLength, final Charset bodyCharset,
+                final boolean bodyTruncated, final int maxRetained) {
+            this.bytes = (null == buffer) ? EMPTY_BYTES : buffer;
+            this.length = (null == buffer) ? 0 : Math.min(bodyLength, buffer.length);
+            this.charset = (null == bodyCharset) ? StandardCharsets.UTF_8 : bodyCharset;
+            this.truncated = bodyTruncated;
+            if (this.bytes.length > this.spare.length && this.bytes.length <= maxRetained) {
+                this.spare = this.bytes;
+            }
+        }
+
+        private void clear() {
+            this.bytes = EMPTY_BYTES;
+            this.length = 0;
+            this.charset = StandardCharsets.UTF_8;
+            this.truncated = false;
+        }
+
+        byte[] bytes() {
+            return this.bytes;
+        }
+
+        int length() {
+            return this.length;
+        }
+
+        Charset charset() {
+            return this.charset;
+        }
+
+        boolean isTruncated() {
+            return this.truncated;
+        }
+    }
+}
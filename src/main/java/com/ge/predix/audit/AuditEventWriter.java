@@ -16,29 +16,263 @@
 
 package com.ge.predix.audit;
 
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 
 /**
+ * Writes each audit event as one line of compact UTF-8 JSON to every output stream. The event is serialized once, on
+ * the calling thread, and the bytes are queued to each stream. Every stream has its own bounded queue and writer
+ * thread, so a slow or stalled stream neither blocks the caller nor holds up the others: once its queue is full,
+ * further events are dropped for that stream only and counted.
+ *
+ * <p>
+ * The writer threads group-commit: queued events are collected into a buffer and written with a single write and
+ * flush as the {@link FlushPolicy} dictates, instead of one write and flush per event. With a synchronous policy the
+ * caller waits until its event is on every stream.
+ * </p>
+ *
+ * <p>
+ * Per-stream counters are available by the index of the stream in the collection passed to the constructor.
+ * </p>
+ *
  * @author 212570782
  */
+public class AuditEventWriter implements AuditEventProcessor, DisposableBean {
 
-import java.io.PrintWriter;
-import java.util.Collection;
-import java.util.stream.Collectors;
+    private static final Logger LOGGER = LoggerFactory.getLogger(AuditEventWriter.class);
 
-public class AuditEventWriter implements AuditEventProcessor {
-    private final Collection<PrintWriter> writers;
+    private static final int DEFAULT_QUEUE_CAPACITY = 1024;
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 5000;
+
+    private final List<Sink> sinks;
+    private final boolean pretty;
+    private final FlushPolicy flushPolicy;
 
     public AuditEventWriter(final Collection<OutputStream> outputStreams) {
-        this.writers = outputStreams.stream().map(s -> new PrintWriter(s)).collect(Collectors.<PrintWriter>toList());
+        this(outputStreams, false);
+    }
+
+    /**
+     * @param pretty true to write the indented form returned by {@link AuditEvent#toString()} instead of one line
+     *        per event
+     */
+    public AuditEventWriter(final Collection<OutputStream> outputStreams, final boolean pretty) {
+        this(outputStreams, pretty, DEFAULT_QUEUE_CAPACITY);
     }
 
+    /**
+     * @param queueCapacity events each stream may fall behind by before events are dropped for it
+     */
+    public AuditEventWriter(final Collection<OutputStream> outputStreams, final boolean pretty,
+            final int queueCapacity) {
+        this(outputStreams, pretty, queueCapacity, FlushPolicy.DEFAULT);
+    }
+
+    public AuditEventWriter(final Collection<OutputStream> outputStreams, final boolean pretty,
+            final int queueCapacity, final FlushPolicy flushPolicy) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("queueCapacity must be positive");
+        }
+        this.pretty = pretty;
+        this.flushPolicy = flushPolicy;
+        this.sinks = new ArrayList<>(outputStreams.size());
+        for (OutputStream outputStream : outputStreams) {
+            this.sinks.add(new Sink(outputStream, queueCapacity, "audit-writer-" + this.sinks.size()));
+        }
+        for (Sink sink : this.sinks) {
+            sink.batcher.start();
+        }
+    }
+
+    /**
+     * Serializes the event and queues it to every stream without blocking. With a synchronous {@link FlushPolicy},
+     * then waits for it to be written.
+     *
+     * @return false if the event was dropped for at least one stream, or, with a synchronous policy, was not written
+     *         to every stream in time
+     */
     @Override
     public boolean process(final AuditEvent auditEvent) {
-        this.writers.parallelStream().forEach(writer -> {
-            writer.write(auditEvent.toString());
-            writer.flush();
-        });
-        return true;
+        AuditLine json = AuditLine.encode(auditEvent, this.pretty, AuditLine.LINE_SEPARATOR);
+        Line line = new Line(json.bytes(), json.length(), System.nanoTime(),
+                this.flushPolicy.isSynchronous() ? this.sinks.size() : 0);
+        boolean queued = true;
+        for (Sink sink : this.sinks) {
+            if (!sink.offer(line)) {
+                queued = false;
+                line.complete(false);
+            }
+        }
+        return queued && line.await(this.flushPolicy.getMaxDelayMillis());
+    }
+
+    public FlushPolicy getFlushPolicy() {
+        return this.flushPolicy;
+    }
+
+    public int getOutputStreamCount() {
+        return this.sinks.size();
+    }
+
+    /**
+     * @return events written to the stream at {@code index}
+     */
+    public long getWrittenCount(final int index) {
+        return this.sinks.get(index).written.sum();
+    }
+
+    /**
+     * @return events dropped for the stream at {@code index} because its queue was full or the writer shut down
+     */
+    public long getDroppedCount(final int index) {
+        return this.sinks.get(index).dropped.sum();
+    }
+
+    /**
+     * @return batches written and flushed to the stream at {@code index}
+     */
+    public long getCommitCount(final int index) {
+        return this.sinks.get(index).commits.sum();
+    }
+
+    /**
+     * @return events the stream at {@code index} failed to write
+     */
+    public long getFailedCount(final int index) {
+        return this.sinks.get(index).failed.sum();
+    }
+
+    /**
+     * @return events queued for the stream at {@code index} and not yet written
+     */
+    public int getLag(final int index) {
+        return this.sinks.get(index).batcher.size();
+    }
+
+    /**
+     * @return how long the oldest event queued for the stream at {@code index} has been waiting, or 0 if none is
+     */
+    public long getLagMillis(final int index) {
+        Line oldest = this.sinks.get(index).batcher.peek();
+        return (null == oldest) ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - oldest.queuedNanos);
+    }
+
+    /**
+     * Stops accepting events and waits for the writer threads to write what is already queued. The streams are
+     * flushed but not closed.
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        for (Sink sink : this.sinks) {
+            sink.batcher.stop();
+        }
+        long deadline = System.currentTimeMillis() + SHUTDOWN_TIMEOUT_MILLIS;
+        for (Sink sink : this.sinks) {
+            sink.batcher.join(Math.max(1, deadline - System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * A serialized event, shared by the queues of all streams.
+     */
+    private static final class Line extends AuditBatcher.Entry {
+
+        private final byte[] bytes;
+        private final int length;
+        private final long queuedNanos;
+
+        private Line(final byte[] bytes, final int length, final long queuedNanos, final int parties) {
+            super(length, parties);
+            this.bytes = bytes;
+            this.length = length;
+            this.queuedNanos = queuedNanos;
+        }
+    }
+
+    private final class Sink implements AuditBatcher.Committer<Line> {
+
+        private final OutputStream outputStream;
+        private final String name;
+        private final AuditBatcher<Line> batcher;
+
+        private final LongAdder written = new LongAdder();
+        private final LongAdder dropped = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder commits = new LongAdder();
+
+        // the lines of a batch are copied here and written together, only touched by the writer thread
+        private final byte[] buffer;
+        private int bufferLength;
+
+        private Sink(final OutputStream outputStream, final int queueCapacity, final String threadName) {
+            this.outputStream = outputStream;
+            this.name = threadName;
+            this.buffer = new byte[AuditEventWriter.this.flushPolicy.getMaxBytes()];
+            this.batcher = new AuditBatcher<>(threadName, queueCapacity, AuditEventWriter.this.flushPolicy, this);
+        }
+
+        private boolean offer(final Line line) {
+            if (this.batcher.offer(line)) {
+                return true;
+            }
+            this.dropped.increment();
+            return false;
+        }
+
+        @Override
+        public boolean commit(final List<Line> batch, final long batchBytes) {
+            try {
+                for (Line line : batch) {
+                    if (line.length > this.buffer.length - this.bufferLength) {
+                        writeBuffer();
+                    }
+                    if (line.length > this.buffer.length) {
+                        // larger than a whole batch; goes out on its own
+                        this.outputStream.write(line.bytes, 0, line.length);
+                    } else {
+                        System.arraycopy(line.bytes, 0, this.buffer, this.bufferLength, line.length);
+                        this.bufferLength += line.length;
+                    }
+                }
+                writeBuffer();
+                this.outputStream.flush();
+                if (AuditEventWriter.this.flushPolicy.isSynchronous()
+                        && this.outputStream instanceof FileOutputStream) {
+                    ((FileOutputStream) this.outputStream).getChannel().force(false);
+                }
+            } catch (IOException e) {
+                // the rest of the batch is not attempted
+                this.bufferLength = 0;
+                this.failed.add(batch.size());
+                LOGGER.warn("Failed to write {} audit events to {}: {}", batch.size(), this.name, e.getMessage());
+                return false;
+            }
+            this.written.add(batch.size());
+            this.commits.increment();
+            return true;
+        }
+
+        @Override
+        public void stopped(final List<Line> abandoned) {
+            this.failed.add(abandoned.size());
+        }
+
+        private void writeBuffer() throws IOException {
+            if (this.bufferLength > 0) {
+                int length = this.bufferLength;
+                this.bufferLength = 0;
+                this.outputStream.write(this.buffer, 0, length);
+            }
+        }
     }
-}
\ No newline at end of file
+}
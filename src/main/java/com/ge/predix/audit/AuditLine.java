@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.audit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An audit event serialized as one line of JSON, as the sinks that write lines queue it: the bytes sit at the start of
+ * an array sized from the event's bodies, so that the array rarely grows while the event is encoded and is handed on
+ * without being copied.
+ */
+final class AuditLine {
+
+    /** The platform line separator, ending the lines of the file sinks. */
+    static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+    /** A bare newline, ending the lines of NDJSON payloads. */
+    static final byte[] NEWLINE = { '\n' };
+    /** No separator, for records that carry their length instead. */
+    static final byte[] NO_SEPARATOR = {};
+
+    private final byte[] bytes;
+    private final int length;
+
+    private AuditLine(final byte[] bytes, final int length) {
+        this.bytes = bytes;
+        this.length = length;
+    }
+
+    /**
+     * @param pretty whether to indent the JSON, which then spans several lines before the separator
+     */
+    static AuditLine encode(final AuditEvent auditEvent, final boolean pretty, final byte[] separator) {
+        // sized for the bodies plus some escaping
+        int bodyBytes = auditEvent.requestBody().remaining() + auditEvent.responseBody().remaining();
+        Buffer buffer = new Buffer(512 + bodyBytes + (bodyBytes >> 2));
+        try {
+            auditEvent.writeTo(buffer, pretty);
+        } catch (IOException e) {
+            // a ByteArrayOutputStream does not throw
+            throw new IllegalStateException(e);
+        }
+        buffer.write(separator, 0, separator.length);
+        return new AuditLine(buffer.array(), buffer.size());
+    }
+
+    /**
+     * @return the array holding the line in its first {@link #length()} bytes
+     */
+    byte[] bytes() {
+        return this.bytes;
+    }
+
+    int length() {
+        return this.length;
+    }
+
+    /**
+     * Hands out its buffer instead of copying it.
+     */
+    private static final class Buffer extends ByteArrayOutputStream {
+
+        private Buffer(final int size) {
+            super(size);
+        }
+
+        private byte[] array() {
+            return this.buf;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.audit;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * Limits the rate of audit events per zone, so that one noisy tenant cannot flood the {@link AuditEventProcessor}.
+ * Each zone has its own token bucket, implemented as a generic cell rate algorithm: the bucket is a single
+ * {@link AtomicLong} holding the theoretical arrival time of the next event, updated with one compare-and-set per
+ * permitted event. Zones never contend with each other and there is no global lock.
+ *
+ * <p>
+ * The bucket is deliberately not striped: it is only written for permitted events, so a hot zone writes it at most at
+ * its configured rate, however many cores send requests for it. Events over the rate only read it, and are counted in
+ * {@link LongAdder}s, which are striped.
+ * </p>
+ *
+ * <p>
+ * Every summary interval, the suppressed events of each zone are handed to the summary listener as an
+ * {@link AuditSuppressionSummary}. The default listener logs one warning per zone.
+ * </p>
+ *
+ * <p>
+ * Zone ids come from the client, so buckets are evicted once idle: a bucket that has refilled completely and has no
+ * suppressed events waiting for a summary behaves exactly like a new one. Idle buckets are dropped after each summary
+ * and, at most once a second, when the number of zones reaches its limit, so a burst of made-up zones cannot push
+ * later tenants into the shared overflow bucket for good.
+ * </p>
+ */
+public class AuditRateLimiter implements DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AuditRateLimiter.class);
+
+    private static final long DEFAULT_SUMMARY_INTERVAL_MILLIS = 60000;
+    private static final int DEFAULT_MAX_ZONES = 10000;
+    private static final String NO_ZONE = "";
+    // shared by every zone beyond maxZones, so unbounded zone headers cannot grow the bucket map
+    private static final String OVERFLOW_ZONE = "<other>";
+    private static final long EVICTION_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final double eventsPerSecond;
+    private final int burst;
+    private final int maxZones;
+    private final ConcurrentMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final LongAdder suppressed = new LongAdder();
+    private final ScheduledExecutorService summaryExecutor;
+    // earliest time the request path may sweep idle buckets again
+    private final AtomicLong nextEvictionNanos = new AtomicLong(Long.MIN_VALUE);
+
+    private volatile Map<String, Double> zoneEventsPerSecond = Collections.emptyMap();
+    private volatile Consumer<AuditSuppressionSummary> summaryListener = summary -> LOGGER.warn("{}", summary);
+    // start of the current summary interval; guarded by this
+    private Instant summaryStart = Instant.now();
+
+    /**
+     * @param eventsPerSecond sustained audit events permitted per zone
+     * @param burst events a zone may send at once after being idle
+     */
+    public AuditRateLimiter(final double eventsPerSecond, final int burst) {
+        this(eventsPerSecond, burst, DEFAULT_SUMMARY_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @param summaryIntervalMillis how often suppression summaries are published; 0 to only publish them on
+     *            {@link #destroy()}
+     */
+    public AuditRateLimiter(final double eventsPerSecond, final int burst, final long summaryIntervalMillis) {
+        this(eventsPerSecond, burst, summaryIntervalMillis, DEFAULT_MAX_ZONES);
+    }
+
+    AuditRateLimiter(final double eventsPerSecond, final int burst, final long summaryIntervalMillis,
+            final int maxZones) {
+        if (eventsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("eventsPerSecond and burst must be positive");
+        }
+        this.eventsPerSecond = eventsPerSecond;
+        this.burst = burst;
+        this.maxZones = maxZones;
+        if (summaryIntervalMillis > 0) {
+            this.summaryExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "audit-rate-limiter");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.summaryExecutor.scheduleAtFixedRate(this::publishSummaries, summaryIntervalMillis,
+                    summaryIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.summaryExecutor = null;
+        }
+    }
+
+    /**
+     * Takes a permit for one audit event of the zone.
+     *
+     * @return false if the zone is over its rate, in which case the event should not be audited
+     */
+    public boolean tryAcquire(final String zoneId) {
+        return tryAcquire(zoneId, System.nanoTime());
+    }
+
+    boolean tryAcquire(final String zoneId, final long nowNanos) {
+        Bucket bucket = bucket((null == zoneId) ? NO_ZONE : zoneId, nowNanos);
+        if (bucket.tryAcquire(nowNanos)) {
+            return true;
+        }
+        bucket.suppressed.increment();
+        this.suppressed.increment();
+        return false;
+    }
+
+    /**
+     * Per-zone overrides of the sustained rate. Zones already seen keep their current bucket.
+     */
+    public void setZoneEventsPerSecond(final Map<String, Double> zoneEventsPerSecond) {
+        Map<String, Double> rates = new HashMap<>();
+        if (null != zoneEventsPerSecond) {
+            zoneEventsPerSecond.forEach((zone, rate) -> {
+                if (null == rate || rate <= 0) {
+                    throw new IllegalArgumentException("Rate for zone " + zone + " must be positive: " + rate);
+                }
+                rates.put(zone, rate);
+            });
+        }
+        this.zoneEventsPerSecond = rates;
+        this.buckets.keySet().removeIf(rates::containsKey);
+    }
+
+    /**
+     * Replaces the default listener, which logs each summary as a warning. The listener is called on the limiter's
+     * summary thread.
+     */
+    public void setSummaryListener(final Consumer<AuditSuppressionSummary> summaryListener) {
+        this.summaryListener = summaryListener;
+    }
+
+    /**
+     * @return events suppressed since startup, across all zones
+     */
+    public long getSuppressedCount() {
+        return this.suppressed.sum();
+    }
+
+    /**
+     * @return events of the zone suppressed since the last summary
+     */
+    public long getPendingSuppressedCount(final String zoneId) {
+        Bucket bucket = this.buckets.get((null == zoneId) ? NO_ZONE : zoneId);
+        return (null == bucket) ? 0 : bucket.suppressed.sum();
+    }
+
+    @Override
+    public void destroy() {
+        if (null != this.summaryExecutor) {
+            this.summaryExecutor.shutdownNow();
+        }
+        publishSummaries();
+    }
+
+    synchronized void publishSummaries() {
+        Instant from = this.summaryStart;
+        Instant to = Instant.now();
+        this.summaryStart = to;
+        Consumer<AuditSuppressionSummary> listener = this.summaryListener;
+        for (Map.Entry<String, Bucket> entry : this.buckets.entrySet()) {
+            long count = entry.getValue().suppressed.sumThenReset();
+            if (count > 0) {
+                try {
+                    listener.accept(new AuditSuppressionSummary(entry.getKey(), count, from, to));
+                } catch (RuntimeException e) {
+                    // an exception would cancel the scheduled summaries
+                    LOGGER.warn("Audit suppression summary listener failed", e);
+                }
+            }
+        }
+        evictIdleBuckets(System.nanoTime());
+    }
+
+    /**
+     * @return the number of zones that currently have a bucket
+     */
+    int zoneCount() {
+        return this.buckets.size();
+    }
+
+    private void evictIdleBuckets(final long nowNanos) {
+        // removal is conditional on the bucket, so one a racing thread just added stays
+        this.buckets.values().removeIf(bucket -> bucket.isIdle(nowNanos));
+    }
+
+    private Bucket bucket(final String zoneId, final long nowNanos) {
+        Bucket bucket = this.buckets.get(zoneId);
+        if (null == bucket) {
+            if (this.buckets.size() >= this.maxZones) {
+                long next = this.nextEvictionNanos.get();
+                if ((next == Long.MIN_VALUE || nowNanos - next >= 0)
+                        && this.nextEvictionNanos.compareAndSet(next, nowNanos + EVICTION_INTERVAL_NANOS)) {
+                    evictIdleBuckets(nowNanos);
+                }
+            }
+            String key = (this.buckets.size() >= this.maxZones) ? OVERFLOW_ZONE : zoneId;
+            Double zoneRate = this.zoneEventsPerSecond.get(key);
+            bucket = this.buckets.computeIfAbsent(key,
+                    zone -> new Bucket((null == zoneRate) ? this.eventsPerSecond : zoneRate, this.burst));
+        }
+        return bucket;
+    }
+
+    private static final class Bucket {
+
+        private static final double NANOS_PER_SECOND = 1e9;
+
+        // theoretical arrival time of the next event, in System.nanoTime() terms
+        private final AtomicLong arrival = new AtomicLong(Long.MIN_VALUE);
+        private final long intervalNanos;
+        private final long toleranceNanos;
+        private final LongAdder suppressed = new LongAdder();
+
+        private Bucket(final double eventsPerSecond, final int burst) {
+            this.intervalNanos = Math.max(1, (long) (NANOS_PER_SECOND / eventsPerSecond));
+            this.toleranceNanos = this.intervalNanos * (burst - 1);
+        }
+
+        private boolean tryAcquire(final long nowNanos) {
+            while (true) {
+                long current = this.arrival.get();
+                // nanoTime may be negative, so compare differences rather than values
+                long start = (current == Long.MIN_VALUE || current - nowNanos < 0) ? nowNanos : current;
+                if (start - nowNanos > this.toleranceNanos) {
+                    return false;
+                }
+                if (this.arrival.compareAndSet(current, start + this.intervalNanos)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * @return true if the bucket is full and no suppressed events wait for a summary
+         */
+        private boolean isIdle(final long nowNanos) {
+            long current = this.arrival.get();
+            return (current == Long.MIN_VALUE || current - nowNanos <= 0) && this.suppressed.sum() == 0;
+        }
+    }
+}
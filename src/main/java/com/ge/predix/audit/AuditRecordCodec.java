@@ -0,0 +1,211 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.audit;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.zip.CRC32;
+
+/**
+ * Binary form of an audit event, for keeping events on local disk. Each record is framed by its length and a CRC32 of
+ * its payload, so that a torn or corrupted record can be told from a complete one. The payload holds the fields of the
+ * event, with the bodies as their captured bytes and charset names; decoding it gives back an {@link AuditCapture}.
+ */
+final class AuditRecordCodec {
+
+    /** Bytes in front of each payload: its length and checksum. */
+    static final int FRAME_HEADER_BYTES = 8;
+
+    private static final byte VERSION = 1;
+    private static final int MAX_PAYLOAD_BYTES = 64 * 1024 * 1024;
+    private static final int REQUEST_TRUNCATED = 1;
+    private static final int RESPONSE_TRUNCATED = 2;
+    private static final int HAS_TIME = 4;
+
+    private AuditRecordCodec() {
+    }
+
+    /**
+     * @return the framed record, ready to be written
+     */
+    static byte[] encode(final AuditEvent event) {
+        byte[][] strings = { utf8(event.getMethod()), utf8(event.getRequestUri()), utf8(event.getSourceIp()),
+                utf8(event.getZoneId()), utf8(event.getRequestCharset().name()),
+                utf8(event.getResponseCharset().name()) };
+        ByteBuffer requestBody = event.requestBody().duplicate();
+        ByteBuffer responseBody = event.responseBody().duplicate();
+        // version, flags, status, time
+        int length = 1 + 1 + 4 + 8 + 4;
+        for (byte[] string : strings) {
+            length += 4 + ((null == string) ? 0 : string.length);
+        }
+        length += 4 + requestBody.remaining() + 4 + responseBody.remaining();
+
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_BYTES + length);
+        frame.putInt(length).putInt(0);
+        Instant time = event.getTime();
+        int flags = (event.isRequestBodyTruncated() ? REQUEST_TRUNCATED : 0)
+                | (event.isResponseBodyTruncated() ? RESPONSE_TRUNCATED : 0) | ((null == time) ? 0 : HAS_TIME);
+        frame.put(VERSION).put((byte) flags).putInt(event.getStatus());
+        frame.putLong((null == time) ? 0 : time.getEpochSecond()).putInt((null == time) ? 0 : time.getNano());
+        for (byte[] string : strings) {
+            frame.putInt((null == string) ? -1 : string.length);
+            if (null != string) {
+                frame.put(string);
+            }
+        }
+        frame.putInt(requestBody.remaining()).put(requestBody);
+        frame.putInt(responseBody.remaining()).put(responseBody);
+
+        CRC32 crc = new CRC32();
+        crc.update(frame.array(), FRAME_HEADER_BYTES, length);
+        frame.putInt(4, (int) crc.getValue());
+        return frame.array();
+    }
+
+    /**
+     * Reads the payload of the next record.
+     *
+     * @return null if the stream ends before the record does, as it does after the last record or within one that
+     *         was torn by a crash
+     * @throws IOException if the record is corrupt or cannot be read
+     */
+    static byte[] readPayload(final DataInputStream in) throws IOException {
+        try {
+            int length = in.readInt();
+            int checksum = in.readInt();
+            if (length < 0 || length > MAX_PAYLOAD_BYTES) {
+                throw new IOException("Corrupt audit record length " + length);
+            }
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload, 0, length);
+            if ((int) crc.getValue() != checksum) {
+                throw new IOException("Audit record checksum mismatch");
+            }
+            return payload;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads the payload of the record at {@code position} with positional reads, never at or past {@code limit}.
+     *
+     * @return null if the file or {@code limit} ends before the record does
+     * @throws IOException if the record is corrupt or cannot be read
+     */
+    static byte[] readPayload(final FileChannel file, final long position, final long limit) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_BYTES);
+        if (limit - position < FRAME_HEADER_BYTES || !readFully(file, header, position)) {
+            return null;
+        }
+        int length = header.getInt(0);
+        int checksum = header.getInt(4);
+        if (length < 0 || length > MAX_PAYLOAD_BYTES) {
+            throw new IOException("Corrupt audit record length " + length);
+        }
+        byte[] payload = new byte[length];
+        if (limit - position - FRAME_HEADER_BYTES < length
+                || !readFully(file, ByteBuffer.wrap(payload), position + FRAME_HEADER_BYTES)) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, length);
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("Audit record checksum mismatch");
+        }
+        return payload;
+    }
+
+    /**
+     * @return false if the file ends before the buffer is full
+     */
+    private static boolean readFully(final FileChannel file, final ByteBuffer buffer, final long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            if (file.read(buffer, position + buffer.position()) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the payload is not a record this codec wrote
+     */
+    static AuditCapture decode(final byte[] payload) {
+        ByteBuffer in = ByteBuffer.wrap(payload);
+        try {
+            byte version = in.get();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported audit record version " + version);
+            }
+            int flags = in.get();
+            int status = in.getInt();
+            long seconds = in.getLong();
+            int nanos = in.getInt();
+            AuditCapture.Builder builder = AuditCapture.builder().status(status).method(string(in))
+                    .requestUri(string(in)).sourceIp(string(in)).zoneId(string(in))
+                    .requestCharset(AuditCapture.forName(string(in))).responseCharset(AuditCapture.forName(string(in)))
+                    .requestBody(body(in)).responseBody(body(in))
+                    .requestBodyTruncated((flags & REQUEST_TRUNCATED) != 0)
+                    .responseBodyTruncated((flags & RESPONSE_TRUNCATED) != 0);
+            if ((flags & HAS_TIME) != 0) {
+                builder.time(Instant.ofEpochSecond(seconds, nanos));
+            }
+            return builder.build();
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated audit record", e);
+        }
+    }
+
+    private static byte[] utf8(final String value) {
+        return (null == value) ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(final ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String value = new String(in.array(), in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    /**
+     * @return a slice of the payload, which is not copied
+     */
+    private static ByteBuffer body(final ByteBuffer in) {
+        int length = in.getInt();
+        ByteBuffer body = in.slice();
+        body.limit(length);
+        in.position(in.position() + length);
+        return body;
+    }
+}
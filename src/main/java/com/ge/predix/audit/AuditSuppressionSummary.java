@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.audit;
+
+import java.time.Instant;
+
+/**
+ * Count of the audit events of one zone that {@link AuditRateLimiter} suppressed during one summary interval.
+ */
+public final class AuditSuppressionSummary {
+
+    private final String zoneId;
+    private final long suppressedCount;
+    private final Instant from;
+    private final Instant to;
+
+    AuditSuppressionSummary(final String zoneId, final long suppressedCount, final Instant from, final Instant to) {
+        this.zoneId = zoneId;
+        this.suppressedCount = suppressedCount;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * @return the zone, {@code ""} for requests without one, or {@code "<other>"} for zones beyond the limiter's
+     *         zone limit
+     */
+    public String getZoneId() {
+        return this.zoneId;
+    }
+
+    public long getSuppressedCount() {
+        return this.suppressedCount;
+    }
+
+    /**
+     * @return the start of the interval: the previous summary, or when the limiter was created
+     */
+    public Instant getFrom() {
+        return this.from;
+    }
+
+    public Instant getTo() {
+        return this.to;
+    }
+
+    @Override
+    public String toString() {
+        return "Suppressed " + this.suppressedCount + " audit events for zone '" + this.zoneId
+                + "' over the rate limit between " + this.from + " and " + this.to;
+    }
+}
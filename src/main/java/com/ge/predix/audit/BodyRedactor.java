@@ -0,0 +1,567 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.audit;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Masks the values of sensitive fields in JSON and form-encoded bodies. The body is scanned once, byte by byte,
+ * without building a tree or decoding it: only the nesting state and the spans to mask are tracked, and the output
+ * is only allocated once the first field is masked. Bodies without sensitive fields are returned as they are.
+ *
+ * <p>
+ * Rules are field paths compiled once:
+ * </p>
+ * <ul>
+ * <li>{@code password} masks a member called {@code password} at any depth.</li>
+ * <li>{@code credentials.token} masks {@code token} members of a {@code credentials} object at any depth.</li>
+ * <li>{@code $.user.password} is anchored at the top-level object.</li>
+ * <li>{@code *} matches any single member name, as in {@code $.secrets.*}.</li>
+ * </ul>
+ * <p>
+ * Names are compared ignoring ASCII case, and arrays are transparent: {@code $.users.password} also matches the
+ * members of objects inside a {@code users} array. A masked value, whatever its type, becomes {@code "****"}. Form
+ * bodies ({@code a=1&b=2}) are matched against single-name rules. A body starting with {@code {} or {@code [} is
+ * treated as JSON, any other body as form-encoded. Truncated JSON is redacted up to where it ends; malformed JSON is
+ * masked from the first syntax error on, and bodies in charsets that are not ASCII-compatible, such as UTF-16, are
+ * masked whole.
+ * </p>
+ */
+final class BodyRedactor {
+
+    private static final byte[] JSON_MASK = "\"****\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FORM_MASK = "****".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ASCII_PROBE = "{}[]\":,=&\\ az".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int MAX_SEGMENTS = 63;
+
+    private final Rule[] rules;
+    private final Map<Charset, Boolean> asciiCompatible = new ConcurrentHashMap<>();
+
+    BodyRedactor(final Collection<String> fieldPaths) {
+        List<Rule> compiled = new ArrayList<>(fieldPaths.size());
+        for (String fieldPath : fieldPaths) {
+            String path = fieldPath.trim();
+            if (!path.isEmpty()) {
+                compiled.add(Rule.compile(path));
+            }
+        }
+        this.rules = compiled.toArray(new Rule[0]);
+    }
+
+    boolean isEmpty() {
+        return this.rules.length == 0;
+    }
+
+    /**
+     * @return {@code body} itself if nothing was masked, otherwise a new buffer holding the redacted body
+     */
+    ByteBuffer redact(final ByteBuffer body, final Charset charset) {
+        if (this.rules.length == 0 || !body.hasRemaining()) {
+            return body;
+        }
+        if (!this.asciiCompatible.computeIfAbsent(charset,
+                c -> Arrays.equals(new String(ASCII_PROBE, StandardCharsets.US_ASCII).getBytes(c), ASCII_PROBE))) {
+            return ByteBuffer.wrap(new String(FORM_MASK, StandardCharsets.US_ASCII).getBytes(charset));
+        }
+        byte[] bytes;
+        int start;
+        if (body.hasArray()) {
+            bytes = body.array();
+            start = body.arrayOffset() + body.position();
+        } else {
+            bytes = new byte[body.remaining()];
+            body.duplicate().get(bytes);
+            start = 0;
+        }
+        int end = start + body.remaining();
+        Output output = new Output(bytes, start);
+        int first = skipWhitespace(bytes, start, end);
+        if (first < end && (bytes[first] == '{' || bytes[first] == '[')) {
+            new JsonScanner(bytes, first, end, output).scan();
+        } else {
+            redactForm(bytes, start, end, output);
+        }
+        return output.finish(end, body);
+    }
+
+    private void redactForm(final byte[] bytes, final int start, final int end, final Output output) {
+        int pair = start;
+        while (pair < end) {
+            int pairEnd = indexOf(bytes, (byte) '&', pair, end);
+            int equals = indexOf(bytes, (byte) '=', pair, pairEnd);
+            if (equals < pairEnd && matchesFormKey(bytes, pair, equals)) {
+                output.replace(equals + 1, pairEnd, FORM_MASK);
+            }
+            pair = pairEnd + 1;
+        }
+    }
+
+    private boolean matchesFormKey(final byte[] bytes, final int start, final int end) {
+        for (Rule rule : this.rules) {
+            if (rule.segments.length == 1 && rule.segments[0].matches(bytes, start, end, true)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int indexOf(final byte[] bytes, final byte b, final int start, final int end) {
+        for (int i = start; i < end; i++) {
+            if (bytes[i] == b) {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    private static boolean isDelimiter(final byte b) {
+        return b == ',' || b == '}' || b == ']' || b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+
+    private static int skipWhitespace(final byte[] bytes, final int start, final int end) {
+        int i = start;
+        while (i < end && (bytes[i] == ' ' || bytes[i] == '\t' || bytes[i] == '\n' || bytes[i] == '\r')) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Copy-on-write output: untouched spans of the input are only copied once something has been replaced.
+     */
+    private static final class Output {
+
+        private final byte[] input;
+        private byte[] buffer;
+        private int length;
+        private int copiedUpTo;
+
+        private Output(final byte[] input, final int start) {
+            this.input = input;
+            this.copiedUpTo = start;
+        }
+
+        private void replace(final int start, final int end, final byte[] mask) {
+            if (null == this.buffer) {
+                this.buffer = new byte[Math.max(64, (this.input.length - this.copiedUpTo) + mask.length)];
+            }
+            append(this.input, this.copiedUpTo, start - this.copiedUpTo);
+            append(mask, 0, mask.length);
+            this.copiedUpTo = end;
+        }
+
+        private void append(final byte[] bytes, final int offset, final int count) {
+            if (this.length + count > this.buffer.length) {
+                this.buffer = Arrays.copyOf(this.buffer, Math.max(this.buffer.length * 2, this.length + count));
+            }
+            System.arraycopy(bytes, offset, this.buffer, this.length, count);
+            this.length += count;
+        }
+
+        private ByteBuffer finish(final int end, final ByteBuffer original) {
+            if (null == this.buffer) {
+                return original;
+            }
+            append(this.input, this.copiedUpTo, end - this.copiedUpTo);
+            return ByteBuffer.wrap(this.buffer, 0, this.length);
+        }
+    }
+
+    /**
+     * Iterative scanner, so that deeply nested bodies cannot overflow the stack. For every open container it keeps
+     * the rule positions reached on the way to it, one bit per position and one word per rule.
+     */
+    private final class JsonScanner {
+
+        private final byte[] bytes;
+        private final int end;
+        private final Output output;
+        private int pos;
+
+        // per depth: whether the container is an object, and the rule states of its values (arrays pass their own on)
+        private boolean[] objects = new boolean[16];
+        private long[] states = new long[16 * BodyRedactor.this.rules.length];
+        private int depth;
+        // states of the value being read, copied onto the stack if it is a container
+        private final long[] scratch = new long[BodyRedactor.this.rules.length];
+
+        private JsonScanner(final byte[] bytes, final int start, final int end, final Output output) {
+            this.bytes = bytes;
+            this.pos = start;
+            this.end = end;
+            this.output = output;
+        }
+
+        private void scan() {
+            long[] root = new long[BodyRedactor.this.rules.length];
+            Arrays.fill(root, 1L);
+            if (!openContainer(root, 0)) {
+                return;
+            }
+            while (this.depth > 0) {
+                if (!next()) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Reads the next member or element of the innermost container, or its end.
+         *
+         * @return false if the input ended or is malformed
+         */
+        private boolean next() {
+            int rulesLength = BodyRedactor.this.rules.length;
+            int stateOffset = (this.depth - 1) * rulesLength;
+            if (!skipToToken()) {
+                return false;
+            }
+            byte b = this.bytes[this.pos];
+            if (b == ']' || b == '}') {
+                if ((b == '}') != this.objects[this.depth - 1]) {
+                    return malformed();
+                }
+                this.pos++;
+                this.depth--;
+                return true;
+            }
+            if (b == ',') {
+                this.pos++;
+                if (!skipToToken()) {
+                    return false;
+                }
+            }
+            if (!this.objects[this.depth - 1]) {
+                System.arraycopy(this.states, stateOffset, this.scratch, 0, rulesLength);
+                return value(this.scratch, false);
+            }
+            if (this.bytes[this.pos] != '"') {
+                return malformed();
+            }
+            int nameStart = this.pos + 1;
+            int nameEnd = skipString(this.pos);
+            if (nameEnd < 0) {
+                return false;
+            }
+            this.pos = nameEnd + 1;
+            if (!skipToToken()) {
+                return false;
+            }
+            if (this.bytes[this.pos] != ':') {
+                return malformed();
+            }
+            this.pos++;
+            long[] state = this.scratch;
+            boolean matched = false;
+            for (int i = 0; i < rulesLength; i++) {
+                Rule rule = BodyRedactor.this.rules[i];
+                state[i] = rule.advance(this.states[stateOffset + i], this.bytes, nameStart, nameEnd);
+                matched |= rule.isComplete(state[i]);
+            }
+            if (!skipToToken()) {
+                return false;
+            }
+            return value(state, matched);
+        }
+
+        private boolean value(final long[] state, final boolean mask) {
+            if (mask) {
+                int valueStart = this.pos;
+                boolean complete = skipValue();
+                this.output.replace(valueStart, complete ? this.pos : this.end, JSON_MASK);
+                return complete;
+            }
+            byte b = this.bytes[this.pos];
+            if (b == '{' || b == '[') {
+                return openContainer(state, this.pos);
+            }
+            return skipValue();
+        }
+
+        private boolean openContainer(final long[] state, final int at) {
+            this.pos = at;
+            int rulesLength = BodyRedactor.this.rules.length;
+            if (this.depth == this.objects.length) {
+                this.objects = Arrays.copyOf(this.objects, this.depth * 2);
+                this.states = Arrays.copyOf(this.states, this.depth * 2 * rulesLength);
+            }
+            this.objects[this.depth] = this.bytes[this.pos] == '{';
+            System.arraycopy(state, 0, this.states, this.depth * rulesLength, rulesLength);
+            this.depth++;
+            this.pos++;
+            return true;
+        }
+
+        /**
+         * Skips a complete value, including nested containers, leaving {@code pos} just after it.
+         *
+         * @return false if the input ended first
+         */
+        private boolean skipValue() {
+            int nesting = 0;
+            do {
+                byte b = this.bytes[this.pos];
+                if (b == '"') {
+                    int close = skipString(this.pos);
+                    if (close < 0) {
+                        return false;
+                    }
+                    this.pos = close + 1;
+                } else if (b == '{' || b == '[') {
+                    nesting++;
+                    this.pos++;
+                } else if (nesting > 0 && (b == '}' || b == ']')) {
+                    nesting--;
+                    this.pos++;
+                } else if (nesting > 0) {
+                    this.pos++;
+                } else {
+                    // a literal or number, which ends at the next delimiter
+                    while (this.pos < this.end && !isDelimiter(this.bytes[this.pos])) {
+                        this.pos++;
+                    }
+                    return this.pos < this.end;
+                }
+            } while (nesting > 0 && this.pos < this.end);
+            return nesting == 0;
+        }
+
+        /**
+         * @return the index of the closing quote of the string opening at {@code quote}, or -1 if the input ends
+         */
+        private int skipString(final int quote) {
+            for (int i = quote + 1; i < this.end; i++) {
+                byte b = this.bytes[i];
+                if (b == '\\') {
+                    i++;
+                } else if (b == '"') {
+                    return i;
+                }
+            }
+            this.pos = this.end;
+            return -1;
+        }
+
+        private boolean skipToToken() {
+            this.pos = skipWhitespace(this.bytes, this.pos, this.end);
+            return this.pos < this.end;
+        }
+
+        private boolean malformed() {
+            this.output.replace(this.pos, this.end, JSON_MASK);
+            this.pos = this.end;
+            return false;
+        }
+    }
+
+    /**
+     * A compiled field path. The positions reached in it are tracked as bits of a {@code long}: bit {@code p} means
+     * the first {@code p} segments have matched.
+     */
+    private static final class Rule {
+
+        private final Segment[] segments;
+        private final boolean anchored;
+
+        private Rule(final Segment[] segments, final boolean anchored) {
+            this.segments = segments;
+            this.anchored = anchored;
+        }
+
+        static Rule compile(final String path) {
+            boolean anchored = path.startsWith("$.");
+            String[] names = (anchored ? path.substring(2) : path).split("\\.");
+            if (names.length > MAX_SEGMENTS) {
+                throw new IllegalArgumentException("Field path has more than " + MAX_SEGMENTS + " segments: " + path);
+            }
+            Segment[] segments = new Segment[names.length];
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].isEmpty()) {
+                    throw new IllegalArgumentException("Empty segment in field path: " + path);
+                }
+                segments[i] = new Segment(names[i]);
+            }
+            return new Rule(segments, anchored);
+        }
+
+        long advance(final long positions, final byte[] bytes, final int nameStart, final int nameEnd) {
+            long next = this.anchored ? 0L : 1L;
+            long remaining = positions & ~(1L << this.segments.length);
+            while (remaining != 0) {
+                int position = Long.numberOfTrailingZeros(remaining);
+                remaining &= remaining - 1;
+                if (this.segments[position].matches(bytes, nameStart, nameEnd, false)) {
+                    next |= 1L << (position + 1);
+                }
+            }
+            return next;
+        }
+
+        boolean isComplete(final long positions) {
+            return (positions & (1L << this.segments.length)) != 0;
+        }
+    }
+
+    private static final class Segment {
+
+        private final byte[] lowerCase;
+        private final boolean wildcard;
+
+        Segment(final String name) {
+            this.wildcard = "*".equals(name);
+            this.lowerCase = name.getBytes(StandardCharsets.UTF_8);
+            toLowerCase(this.lowerCase, this.lowerCase.length);
+        }
+
+        /**
+         * Compares the raw name between {@code start} and {@code end}, ignoring ASCII case. Names written with JSON
+         * escapes, or percent-encoded in a form, are decoded first.
+         */
+        boolean matches(final byte[] bytes, final int start, final int end, final boolean form) {
+            if (this.wildcard) {
+                return true;
+            }
+            if (indexOf(bytes, form ? (byte) '%' : (byte) '\\', start, end) < end
+                    || (form && indexOf(bytes, (byte) '+', start, end) < end)) {
+                byte[] decoded = new byte[end - start];
+                int length = form ? decodeForm(bytes, start, end, decoded) : decodeJson(bytes, start, end, decoded);
+                return length >= 0 && equalsIgnoreAsciiCase(decoded, 0, length);
+            }
+            return equalsIgnoreAsciiCase(bytes, start, end);
+        }
+
+        private boolean equalsIgnoreAsciiCase(final byte[] bytes, final int start, final int end) {
+            if (end - start != this.lowerCase.length) {
+                return false;
+            }
+            for (int i = 0; i < this.lowerCase.length; i++) {
+                byte b = bytes[start + i];
+                if (b >= 'A' && b <= 'Z') {
+                    b += 'a' - 'A';
+                }
+                if (b != this.lowerCase[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static void toLowerCase(final byte[] bytes, final int length) {
+            for (int i = 0; i < length; i++) {
+                if (bytes[i] >= 'A' && bytes[i] <= 'Z') {
+                    bytes[i] += 'a' - 'A';
+                }
+            }
+        }
+
+        /**
+         * Decodes {@code %XX} and {@code +} into {@code decoded}, which is large enough as decoding only shrinks.
+         *
+         * @return the decoded length, or -1 if an escape is malformed
+         */
+        private static int decodeForm(final byte[] bytes, final int start, final int end, final byte[] decoded) {
+            int length = 0;
+            for (int i = start; i < end; i++) {
+                byte b = bytes[i];
+                if (b == '%') {
+                    int value = (i + 2 < end) ? hex(bytes, i + 1, 2) : -1;
+                    if (value < 0) {
+                        return -1;
+                    }
+                    decoded[length++] = (byte) value;
+                    i += 2;
+                } else {
+                    decoded[length++] = (b == '+') ? (byte) ' ' : b;
+                }
+            }
+            return length;
+        }
+
+        /**
+         * Decodes JSON escapes into {@code decoded}. A {@code \\uXXXX} escape is six bytes and encodes to at most
+         * three, so decoding only shrinks; escaped surrogate pairs are not needed to match ASCII field names and are
+         * rejected.
+         *
+         * @return the decoded length, or -1 if an escape is malformed
+         */
+        private static int decodeJson(final byte[] bytes, final int start, final int end, final byte[] decoded) {
+            int length = 0;
+            for (int i = start; i < end; i++) {
+                byte b = bytes[i];
+                if (b != '\\') {
+                    decoded[length++] = b;
+                    continue;
+                }
+                if (++i == end) {
+                    return -1;
+                }
+                switch (bytes[i]) {
+                case 'u':
+                    int value = (i + 4 < end) ? hex(bytes, i + 1, 4) : -1;
+                    if (value < 0 || Character.isSurrogate((char) value)) {
+                        return -1;
+                    }
+                    byte[] encoded = String.valueOf((char) value).getBytes(StandardCharsets.UTF_8);
+                    System.arraycopy(encoded, 0, decoded, length, encoded.length);
+                    length += encoded.length;
+                    i += 4;
+                    break;
+                case 'b':
+                    decoded[length++] = '\b';
+                    break;
+                case 'f':
+                    decoded[length++] = '\f';
+                    break;
+                case 'n':
+                    decoded[length++] = '\n';
+                    break;
+                case 'r':
+                    decoded[length++] = '\r';
+                    break;
+                case 't':
+                    decoded[length++] = '\t';
+                    break;
+                default:
+                    decoded[length++] = bytes[i];
+                    break;
+                }
+            }
+            return length;
+        }
+
+        private static int hex(final byte[] bytes, final int start, final int count) {
+            int value = 0;
+            for (int i = start; i < start + count; i++) {
+                int digit = Character.digit(bytes[i], 16);
+                if (digit < 0) {
+                    return -1;
+                }
+                value = (value << 4) | digit;
+            }
+            return value;
+        }
+    }
+}
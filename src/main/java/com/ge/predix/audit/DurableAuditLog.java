@@ -0,0 +1,669 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.audit;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * Write-ahead log for audit events, giving at-least-once delivery to the processors it forwards to. Events are
+ * appended to segment files in {@code directory} as length-prefixed, checksummed records, by one writer thread that
+ * group-commits them: every batch is written with one gathering channel write and forced to disk with one fsync. With
+ * the default synchronous {@link FlushPolicy}, {@link #process(AuditEvent)} returns once its event is on disk.
+ *
+ * <p>
+ * Each processor is fed committed records by its own thread, and the offset it has acknowledged (by returning true)
+ * is saved to {@code processor-i.offset} whenever it catches up, and at least once a second. A processor that returns
+ * false or throws is retried every second. On start, a record torn by a crash is cut off the end of the log, and
+ * every record after a processor's saved offset is forwarded to it again, so processors must tolerate duplicates.
+ * Segments are deleted once every processor is past them. Processors are told apart by their position in the list,
+ * which must therefore stay the same across restarts.
+ * </p>
+ */
+public final class DurableAuditLog implements AuditEventProcessor, DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DurableAuditLog.class);
+
+    private static final String SEGMENT_PREFIX = "audit-";
+    private static final String SEGMENT_SUFFIX = ".wal";
+    private static final int MAX_GATHER = 1024;
+    private static final long POLL_INTERVAL_MILLIS = 100;
+    private static final long RETRY_INTERVAL_MILLIS = 1000;
+    private static final long OFFSET_SAVE_INTERVAL_MILLIS = 1000;
+    // segment and offset, two longs
+    private static final int OFFSET_FILE_BYTES = 16;
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 5000;
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final FlushPolicy flushPolicy;
+    private final AuditBatcher<Entry> writer;
+    private final List<Forwarder> forwarders;
+
+    private final LongAdder appended = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder syncs = new LongAdder();
+
+    // set once the writer has finished, so that forwarders stop retrying
+    private volatile boolean stopping;
+    // the end of what is on disk; forwarders wait on the lock for it to move
+    private final Object commitLock = new Object();
+    private volatile Position committed;
+    private long oldestSegment;
+
+    // only touched by the writer thread after construction
+    private FileChannel channel;
+    private long segment;
+    private long position;
+    private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+
+    private DurableAuditLog(final Builder builder) throws IOException {
+        this.directory = builder.directory;
+        this.segmentBytes = builder.segmentBytes;
+        this.flushPolicy = builder.flushPolicy;
+        Files.createDirectories(this.directory);
+        recover();
+
+        this.forwarders = new ArrayList<>(builder.processors.size());
+        for (int i = 0; i < builder.processors.size(); i++) {
+            this.forwarders.add(new Forwarder(i, builder.processors.get(i)));
+        }
+        this.writer = new AuditBatcher<>("audit-log-writer", builder.queueCapacity, builder.flushPolicy,
+                new AuditBatcher.Committer<Entry>() {
+
+                    @Override
+                    public boolean commit(final List<Entry> batch, final long batchBytes) {
+                        return DurableAuditLog.this.commit(batch, batchBytes);
+                    }
+
+                    @Override
+                    public void stopped(final List<Entry> abandoned) {
+                        DurableAuditLog.this.failed.add(abandoned.size());
+                        closeChannel();
+                    }
+                });
+        this.writer.start();
+        for (Forwarder forwarder : this.forwarders) {
+            forwarder.thread.start();
+        }
+    }
+
+    /**
+     * @param directory where segment and offset files are kept; created if missing
+     */
+    public static Builder builder(final Path directory) {
+        return new Builder(directory);
+    }
+
+    /**
+     * Encodes the event and queues it for the writer thread without blocking. With a synchronous {@link FlushPolicy},
+     * then waits for it to be forced to disk.
+     *
+     * @return false if the queue was full or the log is shut down, or, with a synchronous policy, if the event was
+     *         not committed in time
+     */
+    @Override
+    public boolean process(final AuditEvent auditEvent) {
+        Entry entry = new Entry(AuditRecordCodec.encode(auditEvent), this.flushPolicy.isSynchronous() ? 1 : 0);
+        if (!this.writer.offer(entry)) {
+            this.dropped.increment();
+            return false;
+        }
+        return entry.await(this.flushPolicy.getMaxDelayMillis());
+    }
+
+    /**
+     * @return events written and forced to disk
+     */
+    public long getAppendedCount() {
+        return this.appended.sum();
+    }
+
+    public long getDroppedCount() {
+        return this.dropped.sum();
+    }
+
+    /**
+     * @return events that could not be written
+     */
+    public long getFailedCount() {
+        return this.failed.sum();
+    }
+
+    /**
+     * @return how many times the log was forced to disk; each time commits a whole batch
+     */
+    public long getSyncCount() {
+        return this.syncs.sum();
+    }
+
+    public int getProcessorCount() {
+        return this.forwarders.size();
+    }
+
+    /**
+     * @return events acknowledged by the processor at index {@code i}
+     */
+    public long getForwardedCount(final int i) {
+        return this.forwarders.get(i).forwarded.sum();
+    }
+
+    /**
+     * @return of those, events that were in the log when it was opened and are therefore possibly duplicates
+     */
+    public long getReplayedCount(final int i) {
+        return this.forwarders.get(i).replayed.sum();
+    }
+
+    /**
+     * @return attempts the processor at index {@code i} failed, by returning false or throwing
+     */
+    public long getRetryCount(final int i) {
+        return this.forwarders.get(i).retries.sum();
+    }
+
+    /**
+     * Stops accepting events, commits what is queued and gives the processors until the shutdown timeout to catch
+     * up. Whatever they have not acknowledged is forwarded again on the next start.
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        this.writer.stop();
+        long deadline = System.currentTimeMillis() + SHUTDOWN_TIMEOUT_MILLIS;
+        this.writer.join(SHUTDOWN_TIMEOUT_MILLIS);
+        this.stopping = true;
+        for (Forwarder forwarder : this.forwarders) {
+            forwarder.thread.join(Math.max(1, deadline - System.currentTimeMillis()));
+            if (forwarder.thread.isAlive()) {
+                forwarder.thread.interrupt();
+                forwarder.thread.join(POLL_INTERVAL_MILLIS);
+            }
+        }
+    }
+
+    /**
+     * Finds the segments, cuts a torn or corrupt record off the end of the newest one and opens it for appending.
+     */
+    private void recover() throws IOException {
+        List<Long> segments = listSegments();
+        if (segments.isEmpty()) {
+            segments = Collections.singletonList(0L);
+        }
+        this.oldestSegment = segments.get(0);
+        this.segment = segments.get(segments.size() - 1);
+        Path file = segmentFile(this.segment);
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        long valid = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            byte[] payload = AuditRecordCodec.readPayload(in);
+            while (null != payload) {
+                valid += AuditRecordCodec.FRAME_HEADER_BYTES + payload.length;
+                payload = AuditRecordCodec.readPayload(in);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Audit log {} is corrupt after {} bytes: {}", file, valid, e.getMessage());
+        }
+        if (valid < this.channel.size()) {
+            LOGGER.warn("Truncating audit log {} from {} to {} bytes", file, this.channel.size(), valid);
+            this.channel.truncate(valid);
+            this.channel.force(true);
+        }
+        this.position = valid;
+        this.channel.position(valid);
+        this.committed = new Position(this.segment, valid);
+    }
+
+    private List<Long> listSegments() throws IOException {
+        List<Long> segments = new ArrayList<>();
+        try (Stream<Path> files = Files.list(this.directory)) {
+            files.forEach(file -> {
+                String name = file.getFileName().toString();
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    try {
+                        segments.add(Long.parseLong(
+                                name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                    } catch (NumberFormatException e) {
+                        // not a segment
+                    }
+                }
+            });
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private Path segmentFile(final long number) {
+        return this.directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    private boolean commit(final List<Entry> batch, final long batchBytes) {
+        try {
+            if (this.position > 0 && this.position + batchBytes > this.segmentBytes) {
+                nextSegment();
+            }
+            int count = 0;
+            for (Entry entry : batch) {
+                if (count == MAX_GATHER) {
+                    writeFully(count);
+                    count = 0;
+                }
+                this.gather[count++] = ByteBuffer.wrap(entry.record);
+            }
+            writeFully(count);
+            this.channel.force(false);
+            this.syncs.increment();
+            this.position += batchBytes;
+        } catch (IOException e) {
+            LOGGER.warn("Failed to write {} audit events to the audit log: {}", batch.size(), e.getMessage());
+            try {
+                // drop whatever part of the batch made it
+                this.channel.truncate(this.position);
+                this.channel.position(this.position);
+            } catch (IOException truncateFailure) {
+                LOGGER.warn("Failed to truncate audit log: {}", truncateFailure.getMessage());
+            }
+            this.failed.add(batch.size());
+            return false;
+        } finally {
+            Arrays.fill(this.gather, null);
+        }
+        this.appended.add(batch.size());
+        synchronized (this.commitLock) {
+            this.committed = new Position(this.segment, this.position);
+            this.commitLock.notifyAll();
+        }
+        return true;
+    }
+
+    private void closeChannel() {
+        try {
+            this.channel.close();
+        } catch (IOException e) {
+            LOGGER.warn("Failed to close audit log: {}", e.getMessage());
+        }
+    }
+
+    private void writeFully(final int count) throws IOException {
+        int offset = 0;
+        while (offset < count) {
+            this.channel.write(this.gather, offset, count - offset);
+            while (offset < count && !this.gather[offset].hasRemaining()) {
+                offset++;
+            }
+        }
+    }
+
+    private void nextSegment() throws IOException {
+        this.channel.close();
+        this.segment++;
+        this.position = 0;
+        this.channel = FileChannel.open(segmentFile(this.segment), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Deletes the segments every processor has acknowledged.
+     */
+    private synchronized void deleteAcknowledgedSegments() {
+        long needed = this.committed.segment;
+        for (Forwarder forwarder : this.forwarders) {
+            needed = Math.min(needed, forwarder.savedSegment);
+        }
+        while (this.oldestSegment < needed) {
+            try {
+                Files.deleteIfExists(segmentFile(this.oldestSegment));
+            } catch (IOException e) {
+                LOGGER.warn("Failed to delete audit log segment {}: {}", this.oldestSegment, e.getMessage());
+                return;
+            }
+            this.oldestSegment++;
+        }
+    }
+
+    /**
+     * A place in the log: a segment and a byte offset into it.
+     */
+    private static final class Position {
+
+        private final long segment;
+        private final long offset;
+
+        private Position(final long segment, final long offset) {
+            this.segment = segment;
+            this.offset = offset;
+        }
+
+        private boolean isAfter(final long otherSegment, final long otherOffset) {
+            return this.segment > otherSegment || (this.segment == otherSegment && this.offset > otherOffset);
+        }
+    }
+
+    /**
+     * An encoded event, ready to be written.
+     */
+    private static final class Entry extends AuditBatcher.Entry {
+
+        private final byte[] record;
+
+        private Entry(final byte[] record, final int parties) {
+            super(record.length, parties);
+            this.record = record;
+        }
+    }
+
+    /**
+     * Reads committed records from the offset one processor has acknowledged and hands them to it.
+     */
+    private final class Forwarder implements Runnable {
+
+        private final AuditEventProcessor processor;
+        private final Path offsetFile;
+        private final Thread thread;
+        // records before this were in the log when it was opened
+        private final Position replayEnd;
+
+        private final LongAdder forwarded = new LongAdder();
+        private final LongAdder replayed = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+
+        private long segment;
+        private long offset;
+        // the segment being read, with positional reads that stop at the committed end of the log
+        private FileChannel reader;
+        private long savedOffset;
+        private volatile long savedSegment;
+        private long savedNanos = System.nanoTime();
+
+        private Forwarder(final int index, final AuditEventProcessor processor) throws IOException {
+            this.processor = processor;
+            this.offsetFile = DurableAuditLog.this.directory.resolve("processor-" + index + ".offset");
+            this.replayEnd = DurableAuditLog.this.committed;
+            this.segment = DurableAuditLog.this.oldestSegment;
+            Position saved = readOffset();
+            if (null != saved && saved.segment >= this.segment) {
+                this.segment = saved.segment;
+                this.offset = saved.offset;
+            }
+            if (new Position(this.segment, this.offset).isAfter(this.replayEnd.segment, this.replayEnd.offset)) {
+                // the log was cut short after a crash
+                this.segment = this.replayEnd.segment;
+                this.offset = this.replayEnd.offset;
+            }
+            this.savedSegment = this.segment;
+            this.savedOffset = this.offset;
+            this.thread = new Thread(this, "audit-log-forwarder-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    Position end = DurableAuditLog.this.committed;
+                    if (end.isAfter(this.segment, this.offset)) {
+                        if (!forwardNext(end)) {
+                            return;
+                        }
+                    } else {
+                        saveOffset();
+                        if (!DurableAuditLog.this.writer.isAlive()) {
+                            return;
+                        }
+                        synchronized (DurableAuditLog.this.commitLock) {
+                            if (DurableAuditLog.this.committed == end) {
+                                DurableAuditLog.this.commitLock.wait(POLL_INTERVAL_MILLIS);
+                            }
+                        }
+                    }
+                    if (System.nanoTime() - this.savedNanos >= TimeUnit.MILLISECONDS
+                            .toNanos(OFFSET_SAVE_INTERVAL_MILLIS)) {
+                        saveOffset();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                LOGGER.warn("Stopped forwarding the audit log to {}: {}", this.processor, e.getMessage());
+            } finally {
+                saveOffset();
+                closeSegment();
+            }
+        }
+
+        /**
+         * @return false if forwarding should stop because the log is shut down
+         */
+        private boolean forwardNext(final Position end) throws IOException, InterruptedException {
+            if (null == this.reader) {
+                this.reader = FileChannel.open(segmentFile(this.segment), StandardOpenOption.READ);
+            }
+            // past the committed end of the live segment, a batch may be written that a failed commit truncates and
+            // the next one overwrites; a buffered stream could read it ahead
+            boolean live = this.segment == end.segment;
+            byte[] payload;
+            try {
+                payload = AuditRecordCodec.readPayload(this.reader, this.offset, live ? end.offset : Long.MAX_VALUE);
+                if (null == payload && live) {
+                    throw new IOException("Record runs past the committed end of the log");
+                }
+            } catch (IOException e) {
+                LOGGER.warn("Skipping the rest of corrupt audit log segment {}: {}", this.segment, e.getMessage());
+                closeSegment();
+                if (this.segment < end.segment) {
+                    this.segment++;
+                    this.offset = 0;
+                } else {
+                    this.offset = end.offset;
+                }
+                return true;
+            }
+            if (null == payload) {
+                // the end of a finished segment
+                closeSegment();
+                if (this.segment < end.segment) {
+                    this.segment++;
+                    this.offset = 0;
+                }
+                return true;
+            }
+            boolean replay = this.replayEnd.isAfter(this.segment, this.offset);
+            if (!forward(payload)) {
+                return false;
+            }
+            this.offset += AuditRecordCodec.FRAME_HEADER_BYTES + payload.length;
+            this.forwarded.increment();
+            if (replay) {
+                this.replayed.increment();
+            }
+            return true;
+        }
+
+        private boolean forward(final byte[] payload) throws InterruptedException {
+            AuditEvent event;
+            try {
+                event = new AuditEvent(AuditRecordCodec.decode(payload));
+            } catch (IllegalArgumentException e) {
+                LOGGER.warn("Skipping unreadable audit log record: {}", e.getMessage());
+                return true;
+            }
+            while (true) {
+                try {
+                    if (this.processor.process(event)) {
+                        return true;
+                    }
+                } catch (Exception e) {
+                    LOGGER.warn("Failed to forward audit event for {} {}: {}", event.getMethod(),
+                            event.getRequestUri(), e.getMessage());
+                }
+                this.retries.increment();
+                if (DurableAuditLog.this.stopping) {
+                    return false;
+                }
+                Thread.sleep(RETRY_INTERVAL_MILLIS);
+            }
+        }
+
+        private void saveOffset() {
+            this.savedNanos = System.nanoTime();
+            if (this.segment == this.savedSegment && this.offset == this.savedOffset) {
+                return;
+            }
+            Path temporary = this.offsetFile.resolveSibling(this.offsetFile.getFileName() + ".tmp");
+            try {
+                ByteBuffer saved = ByteBuffer.allocate(OFFSET_FILE_BYTES);
+                saved.putLong(this.segment).putLong(this.offset).flip();
+                try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    while (saved.hasRemaining()) {
+                        out.write(saved);
+                    }
+                    // on disk before the rename, so that a crash cannot leave an empty or partial offset file behind
+                    out.force(true);
+                }
+                Files.move(temporary, this.offsetFile, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                LOGGER.warn("Failed to save audit log offset {}: {}", this.offsetFile, e.getMessage());
+                return;
+            }
+            this.savedSegment = this.segment;
+            this.savedOffset = this.offset;
+            deleteAcknowledgedSegments();
+        }
+
+        /**
+         * @return the saved offset, or null if there is none or it cannot be read, in which case everything still in
+         *         the log is forwarded again
+         */
+        private Position readOffset() {
+            if (!Files.exists(this.offsetFile)) {
+                return null;
+            }
+            try {
+                byte[] saved = Files.readAllBytes(this.offsetFile);
+                if (saved.length == OFFSET_FILE_BYTES) {
+                    ByteBuffer buffer = ByteBuffer.wrap(saved);
+                    long savedAt = buffer.getLong();
+                    long savedAtOffset = buffer.getLong();
+                    if (savedAt >= 0 && savedAtOffset >= 0) {
+                        return new Position(savedAt, savedAtOffset);
+                    }
+                }
+                LOGGER.warn("Ignoring corrupt audit log offset {}, replaying from the oldest segment", this.offsetFile);
+            } catch (IOException e) {
+                LOGGER.warn("Failed to read audit log offset {}, replaying from the oldest segment: {}",
+                        this.offsetFile, e.getMessage());
+            }
+            return null;
+        }
+
+        private void closeSegment() {
+            if (null != this.reader) {
+                try {
+                    this.reader.close();
+                } catch (IOException e) {
+                    // nothing was written through it
+                }
+                this.reader = null;
+            }
+        }
+    }
+
+    public static final class Builder {
+
+        private static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+        private static final int DEFAULT_QUEUE_CAPACITY = 4096;
+        private static final long DEFAULT_COMMIT_TIMEOUT_MILLIS = 5000;
+
+        private final Path directory;
+        private final List<AuditEventProcessor> processors = new ArrayList<>();
+        private long segmentBytes = DEFAULT_SEGMENT_BYTES;
+        private FlushPolicy flushPolicy = FlushPolicy.synchronous(DEFAULT_COMMIT_TIMEOUT_MILLIS);
+        private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+        private Builder(final Path directory) {
+            this.directory = directory;
+        }
+
+        /**
+         * Adds processors to forward the logged events to.
+         */
+        public Builder forwardTo(final AuditEventProcessor... values) {
+            this.processors.addAll(Arrays.asList(values));
+            return this;
+        }
+
+        /**
+         * Size at which a new segment is started; 64 MiB by default.
+         */
+        public Builder segmentBytes(final long value) {
+            this.segmentBytes = value;
+            return this;
+        }
+
+        /**
+         * How events are batched into commits; synchronous with a 5 second timeout by default. A batched policy
+         * returns from {@link DurableAuditLog#process(AuditEvent)} before the event is on disk.
+         */
+        public Builder flushPolicy(final FlushPolicy value) {
+            this.flushPolicy = value;
+            return this;
+        }
+
+        /**
+         * Events that may be waiting to be committed before further ones are dropped; 4096 by default.
+         */
+        public Builder queueCapacity(final int value) {
+            this.queueCapacity = value;
+            return this;
+        }
+
+        /**
+         * Recovers the log and starts the writer and forwarding threads.
+         *
+         * @throws IOException if the directory or log cannot be created or read
+         */
+        public DurableAuditLog build() throws IOException {
+            if (null == this.directory || this.processors.isEmpty() || this.processors.contains(null)) {
+                throw new IllegalArgumentException("directory and at least one processor must be set");
+            }
+            if (this.queueCapacity < 1 || this.segmentBytes < 1) {
+                throw new IllegalArgumentException("queueCapacity and segmentBytes must be positive");
+            }
+            return new DurableAuditLog(this);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.audit;
+
+/**
+ * When {@link AuditEventWriter} writes buffered events out to its streams. Events are collected per stream and
+ * written with one write and one flush once {@code maxEvents} events or {@code maxBytes} bytes have accumulated, or
+ * {@code maxDelayMillis} after the first of them was buffered, whichever comes first.
+ *
+ * <p>
+ * With a {@link #synchronous(long) synchronous} policy {@link AuditEventProcessor#process(AuditEvent)} only returns
+ * once the event has been written and flushed to every stream, and forced to disk for file streams. Events that
+ * arrive together still share one write and flush.
+ * </p>
+ */
+public final class FlushPolicy {
+
+    /** Up to 256 events or 64 KiB, held for at most 100 ms. */
+    public static final FlushPolicy DEFAULT = batched(256, 64 * 1024, 100);
+
+    private final int maxEvents;
+    private final int maxBytes;
+    private final long maxDelayMillis;
+    private final boolean synchronous;
+
+    private FlushPolicy(final int maxEvents, final int maxBytes, final long maxDelayMillis,
+            final boolean synchronous) {
+        if (maxEvents < 1 || maxBytes < 1 || maxDelayMillis < 0) {
+            throw new IllegalArgumentException(
+                    "maxEvents and maxBytes must be positive and maxDelayMillis must not be negative");
+        }
+        this.maxEvents = maxEvents;
+        this.maxBytes = maxBytes;
+        this.maxDelayMillis = maxDelayMillis;
+        this.synchronous = synchronous;
+    }
+
+    public static FlushPolicy batched(final int maxEvents, final int maxBytes, final long maxDelayMillis) {
+        return new FlushPolicy(maxEvents, maxBytes, maxDelayMillis, false);
+    }
+
+    /**
+     * @param timeoutMillis how long {@link AuditEventProcessor#process(AuditEvent)} waits for the event to be written
+     *            before giving up and returning false
+     */
+    public static FlushPolicy synchronous(final long timeoutMillis) {
+        return new FlushPolicy(DEFAULT.maxEvents, DEFAULT.maxBytes, timeoutMillis, true);
+    }
+
+    public int getMaxEvents() {
+        return this.maxEvents;
+    }
+
+    public int getMaxBytes() {
+        return this.maxBytes;
+    }
+
+    /**
+     * @return how long an event may stay buffered; for synchronous policies, how long callers wait for it
+     */
+    public long getMaxDelayMillis() {
+        return this.maxDelayMillis;
+    }
+
+    public boolean isSynchronous() {
+        return this.synchronous;
+    }
+
+    @Override
+    public String toString() {
+        return this.synchronous ? "FlushPolicy[synchronous, timeout " + this.maxDelayMillis + " ms]"
+                : "FlushPolicy[" + this.maxEvents + " events, " + this.maxBytes + " bytes, " + this.maxDelayMillis
+                        + " ms]";
+    }
+}
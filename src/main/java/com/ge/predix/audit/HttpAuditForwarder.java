@@ -0,0 +1,440 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.audit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * Forwards audit events to an HTTP collector in batches, instead of one request per event. Events are serialized on
+ * the calling thread and queued for a sender thread, which collects them by the {@link FlushPolicy} and POSTs each
+ * batch as newline-delimited JSON ({@code application/x-ndjson}), gzip-compressed by default. Connections are kept
+ * alive and reused between batches.
+ *
+ * <p>
+ * A batch that fails with an I/O error, a 5xx status or 429 is retried up to {@code maxRetries} times, after a random
+ * delay of up to {@code retryBaseDelayMillis * 2^attempt}, capped at {@code retryMaxDelayMillis}. Other statuses fail
+ * the batch at once. Memory is bounded by {@code maxBufferedBytes}: events that would take the serialized events
+ * queued or being sent past it are dropped and counted.
+ * </p>
+ */
+public final class HttpAuditForwarder implements AuditEventProcessor, DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HttpAuditForwarder.class);
+
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 5000;
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private final URL endpoint;
+    private final boolean gzip;
+    private final FlushPolicy flushPolicy;
+    private final long maxBufferedBytes;
+    private final int maxRetries;
+    private final long retryBaseDelayMillis;
+    private final long retryMaxDelayMillis;
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+    private final Map<String, String> headers;
+
+    private final AtomicLong bufferedBytes = new AtomicLong();
+    private final AuditBatcher<Line> sender;
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder wireBytes = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+
+    // only touched by the sender thread
+    private final Payload payload = new Payload();
+
+    private HttpAuditForwarder(final Builder builder) {
+        this.endpoint = builder.endpoint;
+        this.gzip = builder.gzip;
+        this.flushPolicy = builder.flushPolicy;
+        this.maxBufferedBytes = builder.maxBufferedBytes;
+        this.maxRetries = builder.maxRetries;
+        this.retryBaseDelayMillis = builder.retryBaseDelayMillis;
+        this.retryMaxDelayMillis = builder.retryMaxDelayMillis;
+        this.connectTimeoutMillis = builder.connectTimeoutMillis;
+        this.readTimeoutMillis = builder.readTimeoutMillis;
+        this.headers = new LinkedHashMap<>(builder.headers);
+        // nobody waits for a batch to be sent, so a synchronous policy only sets the limits
+        FlushPolicy batchPolicy = FlushPolicy.batched(builder.flushPolicy.getMaxEvents(),
+                builder.flushPolicy.getMaxBytes(), builder.flushPolicy.getMaxDelayMillis());
+        this.sender = new AuditBatcher<>("audit-http-forwarder", builder.queueCapacity, batchPolicy,
+                new AuditBatcher.Committer<Line>() {
+
+                    @Override
+                    public boolean commit(final List<Line> batch, final long batchBytes) {
+                        return send(batch, batchBytes);
+                    }
+
+                    @Override
+                    public void stopped(final List<Line> abandoned) {
+                        // left queued when a retry delay was cut short
+                        long abandonedBytes = 0;
+                        for (Line line : abandoned) {
+                            abandonedBytes += line.length();
+                        }
+                        HttpAuditForwarder.this.failed.add(abandoned.size());
+                        HttpAuditForwarder.this.bufferedBytes.addAndGet(-abandonedBytes);
+                    }
+                });
+        this.sender.start();
+    }
+
+    /**
+     * @param endpoint the collector URL batches are POSTed to
+     */
+    public static Builder builder(final URL endpoint) {
+        return new Builder(endpoint);
+    }
+
+    /**
+     * Serializes the event and queues it for the sender thread without blocking.
+     *
+     * @return false if the event was dropped because the forwarder is shut down or its buffer is full
+     */
+    @Override
+    public boolean process(final AuditEvent auditEvent) {
+        AuditLine line = AuditLine.encode(auditEvent, false, AuditLine.NEWLINE);
+        if (this.bufferedBytes.addAndGet(line.length()) > this.maxBufferedBytes
+                || !this.sender.offer(new Line(line))) {
+            this.bufferedBytes.addAndGet(-line.length());
+            this.dropped.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return events the collector accepted
+     */
+    public long getSentCount() {
+        return this.sent.sum();
+    }
+
+    /**
+     * @return batches the collector accepted
+     */
+    public long getBatchCount() {
+        return this.batches.sum();
+    }
+
+    /**
+     * @return request body bytes sent, compressed if gzip is on, including failed attempts
+     */
+    public long getWireBytes() {
+        return this.wireBytes.sum();
+    }
+
+    public long getDroppedCount() {
+        return this.dropped.sum();
+    }
+
+    /**
+     * @return events in batches that failed for good
+     */
+    public long getFailedCount() {
+        return this.failed.sum();
+    }
+
+    public long getRetryCount() {
+        return this.retries.sum();
+    }
+
+    /**
+     * @return bytes of serialized events queued or being sent
+     */
+    public long getBufferedBytes() {
+        return this.bufferedBytes.get();
+    }
+
+    /**
+     * Stops accepting events and gives the sender thread until the shutdown timeout to send what is queued. Events it
+     * has not sent by then are counted as failed.
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        this.sender.stop();
+        if (!this.sender.join(SHUTDOWN_TIMEOUT_MILLIS)) {
+            // cuts a retry delay short; the batch and whatever is still queued are counted as failed
+            this.sender.interrupt();
+            this.sender.join(AuditBatcher.POLL_INTERVAL_MILLIS);
+        }
+    }
+
+    private boolean send(final List<Line> batch, final long batchBytes) {
+        boolean delivered = false;
+        try {
+            byte[] body = encode(batch);
+            for (int attempt = 0; !delivered; attempt++) {
+                String failure;
+                try {
+                    int status = post(body);
+                    if (status / 100 == 2) {
+                        delivered = true;
+                        break;
+                    }
+                    failure = "status " + status;
+                    if (status / 100 != 5 && status != TOO_MANY_REQUESTS) {
+                        LOGGER.warn("Audit collector {} rejected {} events: {}", this.endpoint, batch.size(),
+                                failure);
+                        break;
+                    }
+                } catch (IOException e) {
+                    failure = e.toString();
+                }
+                if (attempt >= this.maxRetries) {
+                    LOGGER.warn("Failed to send {} audit events to {} after {} attempts: {}", batch.size(),
+                            this.endpoint, attempt + 1, failure);
+                    break;
+                }
+                this.retries.increment();
+                Thread.sleep(backoffMillis(attempt));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (delivered) {
+            this.sent.add(batch.size());
+            this.batches.increment();
+        } else {
+            this.failed.add(batch.size());
+        }
+        this.bufferedBytes.addAndGet(-batchBytes);
+        return delivered;
+    }
+
+    /**
+     * @return a random delay of up to the exponential backoff for the attempt, so that senders that failed together
+     *         do not retry together
+     */
+    private long backoffMillis(final int attempt) {
+        long ceiling = this.retryBaseDelayMillis << Math.min(attempt, 30);
+        if (ceiling <= 0 || ceiling > this.retryMaxDelayMillis) {
+            ceiling = this.retryMaxDelayMillis;
+        }
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private byte[] encode(final List<Line> batch) {
+        this.payload.reset();
+        try {
+            OutputStream out = this.gzip ? new GZIPOutputStream(this.payload, 8192) : this.payload;
+            for (Line line : batch) {
+                out.write(line.bytes, 0, line.length);
+            }
+            out.close();
+        } catch (IOException e) {
+            // Payload does not throw
+            throw new IllegalStateException(e);
+        }
+        return this.payload.toByteArray();
+    }
+
+    private int post(final byte[] body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) this.endpoint.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setConnectTimeout(this.connectTimeoutMillis);
+        connection.setReadTimeout(this.readTimeoutMillis);
+        // not streamed: buffered by the connection, the body goes out with the headers instead of in a second small
+        // packet held back by Nagle's algorithm until the collector acknowledges the first
+        connection.setRequestProperty("Content-Type", "application/x-ndjson");
+        if (this.gzip) {
+            connection.setRequestProperty("Content-Encoding", "gzip");
+        }
+        for (Map.Entry<String, String> header : this.headers.entrySet()) {
+            connection.setRequestProperty(header.getKey(), header.getValue());
+        }
+        this.wireBytes.add(body.length);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body);
+        }
+        int status = connection.getResponseCode();
+        // reading the response to the end lets the connection be reused
+        consume((status < 400) ? connection.getInputStream() : connection.getErrorStream());
+        return status;
+    }
+
+    private static void consume(final InputStream response) throws IOException {
+        if (null == response) {
+            return;
+        }
+        try (InputStream in = response) {
+            byte[] buffer = new byte[1024];
+            int count = 0;
+            while (count >= 0) {
+                count = in.read(buffer);
+            }
+        }
+    }
+
+    /**
+     * A serialized event, newline included.
+     */
+    private static final class Line extends AuditBatcher.Entry {
+
+        private final byte[] bytes;
+        private final int length;
+
+        private Line(final AuditLine line) {
+            super(line.length(), 0);
+            this.bytes = line.bytes();
+            this.length = line.length();
+        }
+    }
+
+    /**
+     * A reusable buffer for request bodies.
+     */
+    private static final class Payload extends ByteArrayOutputStream {
+
+        private Payload() {
+            super(64 * 1024);
+        }
+    }
+
+    public static final class Builder {
+
+        private static final FlushPolicy DEFAULT_FLUSH_POLICY = FlushPolicy.batched(1000, 1024 * 1024, 1000);
+        private static final long DEFAULT_MAX_BUFFERED_BYTES = 16L * 1024 * 1024;
+        private static final int DEFAULT_QUEUE_CAPACITY = 8192;
+        private static final int DEFAULT_MAX_RETRIES = 5;
+        private static final long DEFAULT_RETRY_BASE_DELAY_MILLIS = 100;
+        private static final long DEFAULT_RETRY_MAX_DELAY_MILLIS = 10000;
+        private static final int DEFAULT_TIMEOUT_MILLIS = 10000;
+
+        private final URL endpoint;
+        private boolean gzip = true;
+        private FlushPolicy flushPolicy = DEFAULT_FLUSH_POLICY;
+        private long maxBufferedBytes = DEFAULT_MAX_BUFFERED_BYTES;
+        private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+        private int maxRetries = DEFAULT_MAX_RETRIES;
+        private long retryBaseDelayMillis = DEFAULT_RETRY_BASE_DELAY_MILLIS;
+        private long retryMaxDelayMillis = DEFAULT_RETRY_MAX_DELAY_MILLIS;
+        private int connectTimeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+        private int readTimeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+        private final Map<String, String> headers = new LinkedHashMap<>();
+
+        private Builder(final URL endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        /**
+         * Whether request bodies are gzip-compressed; true by default.
+         */
+        public Builder gzip(final boolean value) {
+            this.gzip = value;
+            return this;
+        }
+
+        /**
+         * When a batch is sent; up to 1000 events or 1 MiB, held for at most one second, by default. A synchronous
+         * policy is treated as batched with the same limits.
+         */
+        public Builder flushPolicy(final FlushPolicy value) {
+            this.flushPolicy = value;
+            return this;
+        }
+
+        /**
+         * Bytes of serialized events that may be queued or being sent before further events are dropped; 16 MiB by
+         * default.
+         */
+        public Builder maxBufferedBytes(final long value) {
+            this.maxBufferedBytes = value;
+            return this;
+        }
+
+        /**
+         * Events that may be queued before further ones are dropped; 8192 by default.
+         */
+        public Builder queueCapacity(final int value) {
+            this.queueCapacity = value;
+            return this;
+        }
+
+        /**
+         * Retries of a failed batch before it is given up; 5 by default.
+         */
+        public Builder maxRetries(final int value) {
+            this.maxRetries = value;
+            return this;
+        }
+
+        /**
+         * Bounds of the random delay before a retry, which doubles with every attempt; 100 ms and 10 seconds by
+         * default.
+         */
+        public Builder retryDelayMillis(final long baseDelay, final long maxDelay) {
+            this.retryBaseDelayMillis = baseDelay;
+            this.retryMaxDelayMillis = maxDelay;
+            return this;
+        }
+
+        /**
+         * Connect and read timeouts; 10 seconds each by default.
+         */
+        public Builder timeoutMillis(final int connectTimeout, final int readTimeout) {
+            this.connectTimeoutMillis = connectTimeout;
+            this.readTimeoutMillis = readTimeout;
+            return this;
+        }
+
+        /**
+         * Adds a header to every request, such as {@code Authorization}.
+         */
+        public Builder header(final String name, final String value) {
+            this.headers.put(name, value);
+            return this;
+        }
+
+        /**
+         * Starts the sender thread. No connection is made until the first batch is sent.
+         */
+        public HttpAuditForwarder build() {
+            if (null == this.endpoint) {
+                throw new IllegalArgumentException("endpoint must be set");
+            }
+            if (this.maxBufferedBytes < 1 || this.queueCapacity < 1 || this.maxRetries < 0
+                    || this.retryBaseDelayMillis < 0 || this.retryMaxDelayMillis < this.retryBaseDelayMillis) {
+                throw new IllegalArgumentException("buffer and queue limits must be positive and retry settings must "
+                        + "not be negative");
+            }
+            return new HttpAuditForwarder(this);
+        }
+    }
+}
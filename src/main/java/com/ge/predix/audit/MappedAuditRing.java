@@ -0,0 +1,238 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.audit;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * Writes audit events into a ring buffer in a memory-mapped file, for a process on the same host to read without a
+ * system call or copy per event; {@link MappedAuditRingReader} is a reference reader. Each event is one record of
+ * compact UTF-8 JSON. Events that do not fit the free space are dropped and counted, so a slow or absent reader never
+ * holds up requests.
+ *
+ * <p>
+ * The file holds a 256-byte header followed by {@code capacity} bytes of records, a power of two. All numbers are
+ * big-endian.
+ * </p>
+ * <ul>
+ * <li>offset 0, int: magic {@code 0x41554452} ("AUDR"), written last when the file is created;</li>
+ * <li>offset 4, int: layout version, 1;</li>
+ * <li>offset 8, long: capacity;</li>
+ * <li>offset 64, long: tail, the sequence of bytes written, updated by the producer after each record;</li>
+ * <li>offset 128, long: head, the sequence of bytes consumed, updated by the reader.</li>
+ * </ul>
+ * <p>
+ * A record starts at byte {@code 256 + (sequence & (capacity - 1))} with an int length and an int reserved for flags
+ * (0), followed by that many bytes of payload, padded to a multiple of 8 bytes. A negative length marks padding of
+ * that many bytes, header included, up to the end of the buffer when the next record did not fit there. The producer
+ * writes the length last, after a store fence, so a length of 0 means the next record is not there yet, and a reader
+ * loads the record only after a load fence that follows loading its length. The reader zeroes each record after
+ * reading it and then, after a store fence, advances the head; the producer loads the head before a load fence and
+ * only writes to bytes before {@code head + capacity}. The fences are those of {@link MemoryFences}, which also hold
+ * between processes.
+ * </p>
+ *
+ * <p>
+ * The layout is single-producer: one process writes the file, and threads within it take turns under a lock that is
+ * held only while the already serialized record is copied in. When a file with the same capacity exists, writing
+ * resumes after the last record in it that has not been read; otherwise it is recreated.
+ * </p>
+ */
+public final class MappedAuditRing implements AuditEventProcessor, DisposableBean {
+
+    /** "AUDR". */
+    static final int MAGIC = 0x41554452;
+    /** Layout version stored in the header. */
+    static final int VERSION = 1;
+    /** Header field offsets. */
+    static final int MAGIC_OFFSET = 0;
+    /** Header field offsets. */
+    static final int VERSION_OFFSET = 4;
+    /** Header field offsets. */
+    static final int CAPACITY_OFFSET = 8;
+    /** Header field offsets. */
+    static final int TAIL_OFFSET = 64;
+    /** Header field offsets. */
+    static final int HEAD_OFFSET = 128;
+    /** Bytes before the first record. */
+    static final int HEADER_BYTES = 256;
+    /** Length and flags in front of each payload. */
+    static final int RECORD_HEADER_BYTES = 8;
+
+    /** Smallest capacity a ring may have. */
+    static final int MIN_CAPACITY = 1024;
+
+    private static final int DEFAULT_CAPACITY = 16 * 1024 * 1024;
+
+    private final int capacity;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    // guarded by this
+    private long tail;
+    private boolean open = true;
+
+    /**
+     * Opens {@code file} with a capacity of 16 MiB.
+     */
+    public MappedAuditRing(final Path file) throws IOException {
+        this(file, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity bytes of records the ring holds; a power of two of at least 1024
+     */
+    public MappedAuditRing(final Path file, final int capacity) throws IOException {
+        if (capacity < MIN_CAPACITY || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two of at least " + MIN_CAPACITY);
+        }
+        this.capacity = capacity;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        boolean resume = this.channel.size() == HEADER_BYTES + capacity;
+        if (!resume) {
+            // a mapping of a file extended from empty reads as zeros
+            this.channel.truncate(0);
+        }
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + capacity);
+        if (resume && this.buffer.getInt(MAGIC_OFFSET) == MAGIC && this.buffer.getInt(VERSION_OFFSET) == VERSION
+                && this.buffer.getLong(CAPACITY_OFFSET) == capacity) {
+            this.tail = lastRecordEnd();
+        } else {
+            for (int i = 0; i < this.buffer.capacity(); i += 8) {
+                this.buffer.putLong(i, 0);
+            }
+            this.buffer.putInt(VERSION_OFFSET, VERSION);
+            this.buffer.putLong(CAPACITY_OFFSET, capacity);
+            MemoryFences.storeFence();
+            this.buffer.putInt(MAGIC_OFFSET, MAGIC);
+        }
+    }
+
+    /**
+     * @return the end of the records after the head; the tail in the header may lag behind it after a crash
+     */
+    private long lastRecordEnd() {
+        long head = this.buffer.getLong(HEAD_OFFSET);
+        long end = head;
+        while (end - head < this.capacity) {
+            int length = this.buffer.getInt(HEADER_BYTES + index(end));
+            if (0 == length) {
+                break;
+            }
+            end += (length < 0) ? -length : align(RECORD_HEADER_BYTES + length);
+        }
+        return end;
+    }
+
+    /**
+     * Copies the event into the ring as compact JSON.
+     *
+     * @return false if the record does not fit the free space or the ring is closed, in which case it is dropped
+     */
+    @Override
+    public boolean process(final AuditEvent auditEvent) {
+        AuditLine record = AuditLine.encode(auditEvent, false, AuditLine.NO_SEPARATOR);
+        if (!append(record.bytes(), record.length())) {
+            this.dropped.increment();
+            return false;
+        }
+        this.written.increment();
+        return true;
+    }
+
+    private synchronized boolean append(final byte[] payload, final int length) {
+        int size = align(RECORD_HEADER_BYTES + length);
+        if (!this.open || size > this.capacity) {
+            return false;
+        }
+        int offset = index(this.tail);
+        int toEnd = this.capacity - offset;
+        long needed = (size > toEnd) ? toEnd + size : size;
+        if (this.tail + needed - this.buffer.getLong(HEAD_OFFSET) > this.capacity) {
+            return false;
+        }
+        // the reader zeroed the bytes up to the head before publishing it
+        MemoryFences.loadFence();
+        if (size > toEnd) {
+            publish(offset, -toEnd);
+            this.tail += toEnd;
+            offset = 0;
+        }
+        this.buffer.position(HEADER_BYTES + offset + RECORD_HEADER_BYTES);
+        this.buffer.put(payload, 0, length);
+        publish(offset, length);
+        this.tail += size;
+        this.buffer.putLong(TAIL_OFFSET, this.tail);
+        return true;
+    }
+
+    private void publish(final int offset, final int length) {
+        this.buffer.putInt(HEADER_BYTES + offset + 4, 0);
+        MemoryFences.storeFence();
+        this.buffer.putInt(HEADER_BYTES + offset, length);
+    }
+
+    private int index(final long sequence) {
+        return (int) (sequence & (this.capacity - 1));
+    }
+
+    static int align(final int length) {
+        return (length + 7) & ~7;
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    public long getWrittenCount() {
+        return this.written.sum();
+    }
+
+    /**
+     * @return events dropped because the reader had not made room for them
+     */
+    public long getDroppedCount() {
+        return this.dropped.sum();
+    }
+
+    /**
+     * @return bytes written and not yet consumed by the reader
+     */
+    public synchronized long getUnreadBytes() {
+        return this.tail - this.buffer.getLong(HEAD_OFFSET);
+    }
+
+    /**
+     * Stops writing and closes the file. The mapping itself is released by the garbage collector.
+     */
+    @Override
+    public synchronized void destroy() throws IOException {
+        this.open = false;
+        this.channel.close();
+    }
+}
@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.audit;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Reference reader for the ring written by {@link MappedAuditRing}, meant to run in another process on the same host.
+ * {@link #read(Consumer, int)} hands each record to the consumer as a read-only view of the mapped file, valid only
+ * until the consumer returns, then zeroes it and advances the head to make room for the producer. Only one reader
+ * may consume a ring at a time.
+ *
+ * <p>
+ * Run as a program, it prints each record as a line to standard output, or with a record count, reads that many
+ * records and prints how long it took:
+ * </p>
+ *
+ * <pre>
+ * java -cp spring-log-filter.jar com.ge.predix.audit.MappedAuditRingReader /dev/shm/audit.ring [count]
+ * </pre>
+ */
+public final class MappedAuditRingReader implements Closeable {
+
+    private static final long IDLE_SLEEP_MILLIS = 1;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private long head;
+
+    /**
+     * @throws IOException if the file cannot be mapped or was not written by {@link MappedAuditRing}, or its header
+     *             does not give a capacity that is a power of two the file is large enough for
+     */
+    public MappedAuditRingReader(final Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer header = this.channel.map(FileChannel.MapMode.READ_ONLY, 0, MappedAuditRing.HEADER_BYTES);
+        if (header.getInt(MappedAuditRing.MAGIC_OFFSET) != MappedAuditRing.MAGIC
+                || header.getInt(MappedAuditRing.VERSION_OFFSET) != MappedAuditRing.VERSION) {
+            this.channel.close();
+            throw new IOException(file + " is not an audit ring");
+        }
+        long headerCapacity = header.getLong(MappedAuditRing.CAPACITY_OFFSET);
+        if (headerCapacity < MappedAuditRing.MIN_CAPACITY || headerCapacity > Integer.MAX_VALUE
+                || Long.bitCount(headerCapacity) != 1
+                || this.channel.size() < MappedAuditRing.HEADER_BYTES + headerCapacity) {
+            this.channel.close();
+            throw new IOException(file + " has an invalid audit ring capacity of " + headerCapacity);
+        }
+        this.capacity = (int) headerCapacity;
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                MappedAuditRing.HEADER_BYTES + this.capacity);
+        this.head = this.buffer.getLong(MappedAuditRing.HEAD_OFFSET);
+    }
+
+    /**
+     * Reads the records that are ready, up to {@code maxRecords}, without waiting for more.
+     *
+     * @return the number of records read
+     */
+    public int read(final Consumer<ByteBuffer> consumer, final int maxRecords) {
+        int count = 0;
+        while (count < maxRecords) {
+            int offset = MappedAuditRing.HEADER_BYTES + (int) (this.head & (this.capacity - 1));
+            int length = this.buffer.getInt(offset);
+            if (0 == length) {
+                break;
+            }
+            // pairs with the producer's store fence: nothing of the record is loaded before its length
+            MemoryFences.loadFence();
+            int size;
+            if (length < 0) {
+                size = -length;
+            } else {
+                ByteBuffer record = this.buffer.duplicate();
+                record.position(offset + MappedAuditRing.RECORD_HEADER_BYTES).limit(
+                        offset + MappedAuditRing.RECORD_HEADER_BYTES + length);
+                consumer.accept(record.slice().asReadOnlyBuffer());
+                size = MappedAuditRing.align(MappedAuditRing.RECORD_HEADER_BYTES + length);
+                count++;
+            }
+            for (int i = size - 8; i >= 0; i -= 8) {
+                this.buffer.putLong(offset + i, 0);
+            }
+            this.head += size;
+            // the record is read and zeroed before the producer may see the head move past it
+            MemoryFences.storeFence();
+            this.buffer.putLong(MappedAuditRing.HEAD_OFFSET, this.head);
+        }
+        return count;
+    }
+
+    /**
+     * @return bytes consumed since the ring was created
+     */
+    public long getHead() {
+        return this.head;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    public static void main(final String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("usage: MappedAuditRingReader <ring file> [record count]");
+            System.exit(2);
+        }
+        long expected = (args.length > 1) ? Long.parseLong(args[1]) : Long.MAX_VALUE;
+        PrintStream out = System.out;
+        try (MappedAuditRingReader reader = new MappedAuditRingReader(Paths.get(args[0]))) {
+            long[] totals = new long[2];
+            byte[] line = new byte[8192];
+            long start = 0;
+            while (totals[0] < expected) {
+                int read = reader.read(record -> {
+                    totals[0]++;
+                    totals[1] += record.remaining();
+                    if (expected == Long.MAX_VALUE) {
+                        int length = record.remaining();
+                        byte[] bytes = (length <= line.length) ? line : new byte[length];
+                        record.get(bytes, 0, length);
+                        out.write(bytes, 0, length);
+                        out.println();
+                    }
+                }, (int) Math.min(Integer.MAX_VALUE, expected - totals[0]));
+                if (0 == start && read > 0) {
+                    start = System.nanoTime();
+                }
+                if (0 == read) {
+                    Thread.sleep(IDLE_SLEEP_MILLIS);
+                }
+            }
+            out.println("records=" + totals[0] + " bytes=" + totals[1] + " millis="
+                    + (System.nanoTime() - start) / 1000000);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.audit;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+
+/**
+ * Memory fences for records shared with another process through a memory-mapped file. The Java memory model says
+ * nothing about such memory, and Java 8 offers no fences of its own, so these are the ones of
+ * {@code sun.misc.Unsafe}, looked up once so that nothing depends on that class at compile time. The JIT compiles
+ * each call to the fence instruction itself.
+ */
+final class MemoryFences {
+
+    private static final MethodHandle STORE_FENCE;
+    private static final MethodHandle LOAD_FENCE;
+
+    static {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Object unsafe = theUnsafe.get(null);
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            STORE_FENCE = lookup.findVirtual(unsafeClass, "storeFence", MethodType.methodType(void.class))
+                    .bindTo(unsafe);
+            LOAD_FENCE = lookup.findVirtual(unsafeClass, "loadFence", MethodType.methodType(void.class))
+                    .bindTo(unsafe);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private MemoryFences() {
+    }
+
+    /**
+     * Keeps the loads and stores before it from being reordered with the stores after it, so that a store after it
+     * publishes everything written before.
+     */
+    static void storeFence() {
+        try {
+            STORE_FENCE.invokeExact();
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Keeps the loads before it from being reordered with the loads and stores after it, so that nothing published by
+     * a value loaded before it is loaded early.
+     */
+    static void loadFence() {
+        try {
+            LOAD_FENCE.invokeExact();
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.audit;
+
+import java.nio.file.Path;
+
+/**
+ * What {@link AsyncAuditDispatcher} does with a capture that arrives while its queue is full.
+ *
+ * <ul>
+ * <li>{@link #dropNewest()}, the default: the new capture is dropped.</li>
+ * <li>{@link #dropOldest()}: the capture that has been waiting longest is dropped to make room.</li>
+ * <li>{@link #block(long)}: the request thread waits up to {@code timeoutMillis} for room, then drops the capture.</li>
+ * <li>{@link #spill(Path, long)}: the capture is written to a segment file in {@code directory}, and read back by the
+ * workers whenever their queue runs empty. Once {@code maxBytes} are spilled, further captures are dropped.</li>
+ * </ul>
+ */
+public final class OverflowPolicy {
+
+    /** The kinds of overflow policy. */
+    public enum Kind {
+        DROP_NEWEST, DROP_OLDEST, BLOCK, SPILL
+    }
+
+    private static final OverflowPolicy DROP_NEWEST = new OverflowPolicy(Kind.DROP_NEWEST, 0, null, 0);
+    private static final OverflowPolicy DROP_OLDEST = new OverflowPolicy(Kind.DROP_OLDEST, 0, null, 0);
+
+    private final Kind kind;
+    private final long timeoutMillis;
+    private final Path directory;
+    private final long maxBytes;
+
+    private OverflowPolicy(final Kind kind, final long timeoutMillis, final Path directory, final long maxBytes) {
+        this.kind = kind;
+        this.timeoutMillis = timeoutMillis;
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    public static OverflowPolicy dropNewest() {
+        return DROP_NEWEST;
+    }
+
+    public static OverflowPolicy dropOldest() {
+        return DROP_OLDEST;
+    }
+
+    public static OverflowPolicy block(final long timeoutMillis) {
+        if (timeoutMillis < 0) {
+            throw new IllegalArgumentException("timeoutMillis must not be negative");
+        }
+        return new OverflowPolicy(Kind.BLOCK, timeoutMillis, null, 0);
+    }
+
+    /**
+     * @param directory where spill segments are kept; created if missing. Segments left over from an earlier run
+     *            are read back too.
+     * @param maxBytes how much may be spilled before captures are dropped
+     */
+    public static OverflowPolicy spill(final Path directory, final long maxBytes) {
+        if (null == directory || maxBytes < 1) {
+            throw new IllegalArgumentException("directory must be set and maxBytes must be positive");
+        }
+        return new OverflowPolicy(Kind.SPILL, 0, directory, maxBytes);
+    }
+
+    public Kind getKind() {
+        return this.kind;
+    }
+
+    /**
+     * @return how long a {@link Kind#BLOCK} policy waits for room
+     */
+    public long getTimeoutMillis() {
+        return this.timeoutMillis;
+    }
+
+    /**
+     * @return where a {@link Kind#SPILL} policy spills to
+     */
+    public Path getDirectory() {
+        return this.directory;
+    }
+
+    /**
+     * @return how much a {@link Kind#SPILL} policy may spill
+     */
+    public long getMaxBytes() {
+        return this.maxBytes;
+    }
+
+    @Override
+    public String toString() {
+        switch (this.kind) {
+            case BLOCK:
+                return "OverflowPolicy[block, timeout " + this.timeoutMillis + " ms]";
+            case SPILL:
+                return "OverflowPolicy[spill to " + this.directory + ", " + this.maxBytes + " bytes]";
+            default:
+                return "OverflowPolicy[" + this.kind.name().toLowerCase(java.util.Locale.ROOT) + "]";
+        }
+    }
+}
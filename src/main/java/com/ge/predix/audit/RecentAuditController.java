@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.audit;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Locale;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+/**
+ * Spring MVC endpoint for querying a {@link RecentAuditIndex}: {@code GET /audit/recent} with the optional parameters
+ * {@code zone}, {@code status} (a status class, {@code 5} or {@code 5xx}), {@code uri} (a request URI prefix) and
+ * {@code limit} returns the matching events as a JSON array, newest first.
+ *
+ * <p>
+ * It is not a {@code @Controller}, so component scanning does not pick it up: declare it as a bean to expose the
+ * endpoint, and protect the path, since the events include request and response bodies.
+ * </p>
+ */
+@RequestMapping("/audit/recent")
+@ResponseBody
+public class RecentAuditController {
+
+    /** Most events returned by one request. */
+    public static final int MAX_LIMIT = 1000;
+
+    private final RecentAuditIndex index;
+
+    public RecentAuditController(final RecentAuditIndex index) {
+        this.index = index;
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<String> find(@RequestParam(name = "zone", required = false) final String zone,
+            @RequestParam(name = "status", required = false) final String status,
+            @RequestParam(name = "uri", required = false) final String uri,
+            @RequestParam(name = "limit", defaultValue = "50") final int limit) throws IOException {
+        List<AuditEvent> events;
+        try {
+            events = this.index.find(RecentAuditIndex.query().zoneId(zone).statusClass(statusClass(status))
+                    .uriPrefix(uri).limit(Math.min(limit, MAX_LIMIT)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).contentType(MediaType.TEXT_PLAIN)
+                    .body(e.getMessage());
+        }
+        StringWriter json = new StringWriter();
+        json.write('[');
+        for (int i = 0; i < events.size(); i++) {
+            if (i > 0) {
+                json.write(',');
+            }
+            events.get(i).writeTo(json);
+        }
+        json.write(']');
+        return ResponseEntity.ok(json.toString());
+    }
+
+    /**
+     * @return the status class named by {@code status}, such as 5 for {@code "5xx"} or {@code "5"}, or 0 if it is
+     *         null or empty
+     */
+    static int statusClass(final String status) {
+        if (null == status || status.isEmpty()) {
+            return 0;
+        }
+        String normalized = status.toLowerCase(Locale.ROOT);
+        if (normalized.length() == 1 || (normalized.length() == 3 && normalized.endsWith("xx"))) {
+            char digit = normalized.charAt(0);
+            if (digit >= '1' && digit <= '9') {
+                return digit - '0';
+            }
+        }
+        throw new IllegalArgumentException("status must be a status class such as 5 or 5xx");
+    }
+}
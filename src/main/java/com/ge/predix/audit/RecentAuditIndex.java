@@ -0,0 +1,448 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.audit;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the most recent audit events in memory so that they can be looked up by zone, status class and request URI
+ * prefix, for example to find the last failed requests of one tenant while an incident is going on. Events are
+ * encoded in their binary form into a fixed-size off-heap ring, which holds at most {@code maxEvents} events and
+ * {@code maxBytes} bytes of them; the oldest events are evicted to make room. An event larger than the whole ring is
+ * dropped and counted.
+ *
+ * <p>
+ * Each retained event is linked to the previous event with the same zone, the same status class and the same request
+ * URI, and the newest event of each zone, class and URI is kept in an index. A query walks the links of one of them,
+ * newest first, and checks the other criteria against per-event fields kept on the heap, so its cost depends on the
+ * number of events it visits rather than on the number retained. Only the events returned are decoded.
+ * </p>
+ *
+ * <p>
+ * Memory does not grow with traffic: besides the ring, the heap holds about 50 bytes per event slot, plus the zone ids
+ * and URIs of the retained events, of which at most the first {@value #MAX_INDEXED_ZONE_LENGTH} and
+ * {@value #MAX_INDEXED_URI_LENGTH} characters are kept. Events share the index's copy of their zone id and URI, so each
+ * distinct one is held once: with every retained event of a zone and URI of its own, a slot costs at most about
+ * 1 KiB, and far less with the usual handful of zones. Index entries are removed together with the last event they
+ * point to.
+ * </p>
+ */
+public final class RecentAuditIndex implements AuditEventProcessor {
+
+    /** URIs are indexed by at most this many leading characters, and prefixes queried may be no longer. */
+    public static final int MAX_INDEXED_URI_LENGTH = 256;
+    /** Zone ids are indexed and queried by at most this many leading characters. */
+    public static final int MAX_INDEXED_ZONE_LENGTH = 64;
+
+    private static final int DEFAULT_MAX_EVENTS = 10000;
+    private static final int DEFAULT_MAX_BYTES = 16 * 1024 * 1024;
+    // a prefix query matching more distinct URIs than this scans all events instead of merging their chains
+    private static final int MAX_MERGED_URIS = 64;
+    private static final int STATUS_CLASSES = 10;
+    private static final long NONE = -1;
+
+    private final int maxEvents;
+    private final int capacity;
+    private final ByteBuffer records;
+
+    // per event slot, indexed by sequence modulo maxEvents
+    private final long[] positions;
+    private final int[] lengths;
+    private final int[] statuses;
+    private final String[] zones;
+    private final String[] uris;
+    private final long[] previousInZone;
+    private final long[] previousInStatusClass;
+    private final long[] previousWithUri;
+
+    private final Map<String, Head> zoneHeads = new HashMap<>();
+    private final TreeMap<String, Head> uriHeads = new TreeMap<>();
+    private final long[] statusClassHeads = new long[STATUS_CLASSES];
+
+    private final LongAdder indexed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+
+    // guarded by this; events oldest to next - 1 are retained
+    private long oldest;
+    private long next;
+    private long writePosition;
+
+    /**
+     * Keeps up to 10000 events and 16 MiB of them.
+     */
+    public RecentAuditIndex() {
+        this(DEFAULT_MAX_EVENTS, DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * @param maxEvents most events retained
+     * @param maxBytes size of the off-heap ring the events are kept in
+     */
+    public RecentAuditIndex(final int maxEvents, final int maxBytes) {
+        if (maxEvents < 1 || maxBytes < 1) {
+            throw new IllegalArgumentException("maxEvents and maxBytes must be positive");
+        }
+        this.maxEvents = maxEvents;
+        this.capacity = maxBytes;
+        this.records = ByteBuffer.allocateDirect(maxBytes);
+        this.positions = new long[maxEvents];
+        this.lengths = new int[maxEvents];
+        this.statuses = new int[maxEvents];
+        this.zones = new String[maxEvents];
+        this.uris = new String[maxEvents];
+        this.previousInZone = new long[maxEvents];
+        this.previousInStatusClass = new long[maxEvents];
+        this.previousWithUri = new long[maxEvents];
+        Arrays.fill(this.statusClassHeads, NONE);
+    }
+
+    public static Query query() {
+        return new Query();
+    }
+
+    /**
+     * Copies the event into the ring, evicting the oldest events as needed.
+     *
+     * @return false if the event is larger than the ring, in which case it is dropped
+     */
+    @Override
+    public boolean process(final AuditEvent auditEvent) {
+        // encoded on the calling thread, since the event may be a view that is only valid during this call
+        byte[] frame = AuditRecordCodec.encode(auditEvent);
+        int length = frame.length - AuditRecordCodec.FRAME_HEADER_BYTES;
+        if (length > this.capacity) {
+            this.dropped.increment();
+            return false;
+        }
+        append(frame, length, truncate(auditEvent.getZoneId(), MAX_INDEXED_ZONE_LENGTH),
+                truncate(auditEvent.getRequestUri(), MAX_INDEXED_URI_LENGTH), auditEvent.getStatus());
+        this.indexed.increment();
+        return true;
+    }
+
+    private synchronized void append(final byte[] frame, final int length, final String zone, final String uri,
+            final int status) {
+        long position = this.writePosition;
+        int offset = offset(position);
+        if (offset + length > this.capacity) {
+            // records are never split, so skip the rest of the ring
+            position += this.capacity - offset;
+            offset = 0;
+        }
+        while (this.oldest < this.next && (this.next - this.oldest == this.maxEvents
+                || position + length - this.positions[slot(this.oldest)] > this.capacity)) {
+            evictOldest();
+        }
+        this.records.position(offset);
+        this.records.put(frame, AuditRecordCodec.FRAME_HEADER_BYTES, length);
+
+        long sequence = this.next++;
+        int slot = slot(sequence);
+        this.positions[slot] = position;
+        this.lengths[slot] = length;
+        this.statuses[slot] = status;
+        Head zoneHead = head(this.zoneHeads, zone);
+        Head uriHead = head(this.uriHeads, uri);
+        this.zones[slot] = (null == zoneHead) ? null : zoneHead.key;
+        this.uris[slot] = (null == uriHead) ? null : uriHead.key;
+        this.previousInZone[slot] = (null == zoneHead) ? NONE : zoneHead.advance(sequence);
+        this.previousWithUri[slot] = (null == uriHead) ? NONE : uriHead.advance(sequence);
+        int statusClass = statusClass(status);
+        this.previousInStatusClass[slot] = this.statusClassHeads[statusClass];
+        this.statusClassHeads[statusClass] = sequence;
+        this.writePosition = position + length;
+    }
+
+    /**
+     * @return the index entry of the key, added if missing, or null for a null key
+     */
+    private static Head head(final Map<String, Head> heads, final String key) {
+        if (null == key) {
+            return null;
+        }
+        Head head = heads.get(key);
+        if (null == head) {
+            head = new Head(key);
+            heads.put(key, head);
+        }
+        return head;
+    }
+
+    private static String truncate(final String value, final int maxLength) {
+        return (null != value && value.length() > maxLength) ? value.substring(0, maxLength) : value;
+    }
+
+    private void evictOldest() {
+        long sequence = this.oldest++;
+        int slot = slot(sequence);
+        unlink(this.zoneHeads, this.zones[slot], sequence);
+        unlink(this.uriHeads, this.uris[slot], sequence);
+        int statusClass = statusClass(this.statuses[slot]);
+        if (this.statusClassHeads[statusClass] == sequence) {
+            this.statusClassHeads[statusClass] = NONE;
+        }
+        this.zones[slot] = null;
+        this.uris[slot] = null;
+        this.evicted.increment();
+    }
+
+    private static void unlink(final Map<String, Head> heads, final String key, final long sequence) {
+        // events are evicted oldest first, so an index entry still pointing at the evicted event has no others left
+        if (null != key && heads.get(key).sequence == sequence) {
+            heads.remove(key);
+        }
+    }
+
+    /**
+     * @return the retained events matching the query, newest first
+     */
+    public List<AuditEvent> find(final Query query) {
+        List<byte[]> payloads = collect(query);
+        List<AuditEvent> events = new ArrayList<>(payloads.size());
+        for (byte[] payload : payloads) {
+            events.add(new AuditEvent(AuditRecordCodec.decode(payload)));
+        }
+        return events;
+    }
+
+    private synchronized List<byte[]> collect(final Query query) {
+        List<byte[]> payloads = new ArrayList<>(Math.min(query.limit, 64));
+        if (null != query.zoneId) {
+            Head head = this.zoneHeads.get(query.zoneId);
+            walk((null == head) ? NONE : head.sequence, this.previousInZone, query, payloads);
+        } else if (null != query.uriPrefix) {
+            collectByUriPrefix(query, payloads);
+        } else if (0 != query.statusClass) {
+            walk(this.statusClassHeads[query.statusClass], this.previousInStatusClass, query, payloads);
+        } else {
+            scan(query, payloads);
+        }
+        return payloads;
+    }
+
+    private void walk(final long head, final long[] previous, final Query query, final List<byte[]> payloads) {
+        for (long sequence = head; sequence >= this.oldest && payloads.size() < query.limit;
+                sequence = previous[slot(sequence)]) {
+            addIfMatching(sequence, query, payloads);
+        }
+    }
+
+    private void scan(final Query query, final List<byte[]> payloads) {
+        for (long sequence = this.next - 1; sequence >= this.oldest && payloads.size() < query.limit; sequence--) {
+            addIfMatching(sequence, query, payloads);
+        }
+    }
+
+    private void collectByUriPrefix(final Query query, final List<byte[]> payloads) {
+        NavigableMap<String, Head> matching = this.uriHeads.subMap(query.uriPrefix, true,
+                query.uriPrefix + Character.MAX_VALUE, false);
+        long[] cursors = new long[MAX_MERGED_URIS];
+        int count = 0;
+        for (Head head : matching.values()) {
+            if (count == MAX_MERGED_URIS) {
+                scan(query, payloads);
+                return;
+            }
+            cursors[count++] = head.sequence;
+        }
+        // merge the chains of the matching URIs, newest first
+        while (payloads.size() < query.limit) {
+            int newest = -1;
+            for (int i = 0; i < count; i++) {
+                if (cursors[i] >= this.oldest && (newest < 0 || cursors[i] > cursors[newest])) {
+                    newest = i;
+                }
+            }
+            if (newest < 0) {
+                break;
+            }
+            long sequence = cursors[newest];
+            cursors[newest] = this.previousWithUri[slot(sequence)];
+            addIfMatching(sequence, query, payloads);
+        }
+    }
+
+    private void addIfMatching(final long sequence, final Query query, final List<byte[]> payloads) {
+        int slot = slot(sequence);
+        if (null != query.zoneId && !query.zoneId.equals(this.zones[slot])) {
+            return;
+        }
+        if (0 != query.statusClass && statusClass(this.statuses[slot]) != query.statusClass) {
+            return;
+        }
+        if (null != query.uriPrefix && (null == this.uris[slot] || !this.uris[slot].startsWith(query.uriPrefix))) {
+            return;
+        }
+        byte[] payload = new byte[this.lengths[slot]];
+        this.records.position(offset(this.positions[slot]));
+        this.records.get(payload);
+        payloads.add(payload);
+    }
+
+    private int slot(final long sequence) {
+        return (int) (sequence % this.maxEvents);
+    }
+
+    private int offset(final long position) {
+        return (int) (position % this.capacity);
+    }
+
+    /**
+     * @return 1 to 9 for statuses 100 to 999, and 0 for any other
+     */
+    private static int statusClass(final int status) {
+        return (status >= 100 && status < 1000) ? status / 100 : 0;
+    }
+
+    public int getMaxEvents() {
+        return this.maxEvents;
+    }
+
+    public int getMaxBytes() {
+        return this.capacity;
+    }
+
+    /**
+     * @return events currently retained
+     */
+    public synchronized int getSize() {
+        return (int) (this.next - this.oldest);
+    }
+
+    /**
+     * @return bytes of the ring taken by the retained events, including any skipped at its end
+     */
+    public synchronized long getUsedBytes() {
+        return (this.oldest == this.next) ? 0 : this.writePosition - this.positions[slot(this.oldest)];
+    }
+
+    public long getIndexedCount() {
+        return this.indexed.sum();
+    }
+
+    /**
+     * @return events dropped because they were larger than the ring
+     */
+    public long getDroppedCount() {
+        return this.dropped.sum();
+    }
+
+    /**
+     * @return events evicted to make room for newer ones
+     */
+    public long getEvictedCount() {
+        return this.evicted.sum();
+    }
+
+    synchronized int zoneCount() {
+        return this.zoneHeads.size();
+    }
+
+    synchronized int uriCount() {
+        return this.uriHeads.size();
+    }
+
+    /**
+     * Newest event of one zone or URI; updated in place so that indexing an event does not allocate an entry.
+     */
+    private static final class Head {
+
+        // the copy of the zone id or URI that the events share
+        private final String key;
+        private long sequence = NONE;
+
+        private Head(final String key) {
+            this.key = key;
+        }
+
+        /**
+         * @return the event that was the newest before
+         */
+        private long advance(final long newest) {
+            long previous = this.sequence;
+            this.sequence = newest;
+            return previous;
+        }
+    }
+
+    /**
+     * Criteria for {@link RecentAuditIndex#find(Query)}. Criteria that are not set match every event.
+     */
+    public static final class Query {
+
+        /** Events returned unless a limit is set. */
+        public static final int DEFAULT_LIMIT = 50;
+
+        private String zoneId;
+        private int statusClass;
+        private String uriPrefix;
+        private int limit = DEFAULT_LIMIT;
+
+        private Query() {
+        }
+
+        /**
+         * @param value the zone id to match; ids are compared by their first
+         *            {@value RecentAuditIndex#MAX_INDEXED_ZONE_LENGTH} characters only
+         */
+        public Query zoneId(final String value) {
+            this.zoneId = truncate(value, MAX_INDEXED_ZONE_LENGTH);
+            return this;
+        }
+
+        /**
+         * @param value the first digit of the statuses to match, such as 5 for 5xx; 0 matches any status
+         */
+        public Query statusClass(final int value) {
+            if (value < 0 || value >= STATUS_CLASSES) {
+                throw new IllegalArgumentException("statusClass must be between 0 and " + (STATUS_CLASSES - 1));
+            }
+            this.statusClass = value;
+            return this;
+        }
+
+        /**
+         * @param value the start of the request URIs to match, of at most
+         *            {@value RecentAuditIndex#MAX_INDEXED_URI_LENGTH} characters
+         */
+        public Query uriPrefix(final String value) {
+            if (null != value && value.length() > MAX_INDEXED_URI_LENGTH) {
+                throw new IllegalArgumentException(
+                        "uriPrefix must not be longer than " + MAX_INDEXED_URI_LENGTH + " characters");
+            }
+            this.uriPrefix = value;
+            return this;
+        }
+
+        public Query limit(final int value) {
+            if (value < 1) {
+                throw new IllegalArgumentException("limit must be positive");
+            }
+            this.limit = value;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.audit;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Masks sensitive fields in the request and response bodies of audit events before passing them on to the delegate
+ * {@link AuditEventProcessor}. JSON and form-encoded bodies are rewritten in a single pass over their bytes, without
+ * decoding them or building a tree, and events without sensitive fields are passed on unchanged.
+ *
+ * <p>
+ * The field paths are compiled once. A plain name such as {@code password} is masked at any depth, a dotted path such
+ * as {@code credentials.token} wherever it occurs, {@code $.user.password} only from the top-level object, and
+ * {@code *} matches any single name. Names are compared ignoring case, and arrays do not count as a level.
+ * </p>
+ *
+ * <p>
+ * Wrap the sink with it, or hand it to an {@link AsyncAuditDispatcher} so that redaction runs on the dispatcher's
+ * worker threads:
+ * </p>
+ *
+ * <pre>
+ * new AsyncAuditDispatcher(new RedactingAuditEventProcessor(sink, "password", "$.user.ssn"))
+ * </pre>
+ */
+public class RedactingAuditEventProcessor implements AuditEventProcessor {
+
+    private final AuditEventProcessor delegate;
+    private final BodyRedactor redactor;
+
+    public RedactingAuditEventProcessor(final AuditEventProcessor delegate, final String... fieldPaths) {
+        this(delegate, Arrays.asList(fieldPaths));
+    }
+
+    /**
+     * @throws IllegalArgumentException if a field path is malformed
+     */
+    public RedactingAuditEventProcessor(final AuditEventProcessor delegate, final Collection<String> fieldPaths) {
+        if (null == delegate) {
+            throw new IllegalArgumentException("delegate must not be null");
+        }
+        this.delegate = delegate;
+        this.redactor = new BodyRedactor(fieldPaths);
+    }
+
+    @Override
+    public boolean process(final AuditEvent auditEvent) {
+        return this.delegate.process(redact(auditEvent));
+    }
+
+    AuditEvent redact(final AuditEvent auditEvent) {
+        if (this.redactor.isEmpty()) {
+            return auditEvent;
+        }
+        ByteBuffer requestBody = this.redactor.redact(auditEvent.requestBody(), auditEvent.getRequestCharset());
+        ByteBuffer responseBody = this.redactor.redact(auditEvent.responseBody(), auditEvent.getResponseCharset());
+        if (requestBody == auditEvent.requestBody() && responseBody == auditEvent.responseBody()) {
+            return auditEvent;
+        }
+        return auditEvent.withBodies(requestBody, responseBody);
+    }
+}
@@ -0,0 +1,461 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.audit;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * Writes audit events as lines of compact UTF-8 JSON to a rolling file. Events are encoded on the calling thread and
+ * queued to a single writer thread, which copies whole batches of them into one direct buffer of its own and hands that
+ * to the {@link FileChannel}, so events are not written one at a time and the only direct memory held is that buffer,
+ * {@code maxBytes} of the {@link FlushPolicy} but at most 1 MiB. Batches are formed by the {@link FlushPolicy}, as in
+ * {@link AuditEventWriter}.
+ *
+ * <p>
+ * The active file is {@code directory/fileName}. It is rolled over, by renaming it to
+ * {@code name-yyyyMMdd-HHmmss.ext} after the UTC time it was opened, when a batch would take it past
+ * {@code maxFileBytes} or when a {@code rolloverInterval} boundary has passed; an idle file is only rolled when the
+ * next event arrives. A file left over from an earlier run is appended to.
+ * </p>
+ *
+ * <p>
+ * Optionally the active file is preallocated to {@code maxFileBytes} with zeros, written through the same buffer, so
+ * that writes do not have to grow it, and truncated to its content when it is rolled or closed, or when it is found
+ * untrimmed after a crash. Writes are forced to disk every {@code fsyncIntervalMillis} if set, after every batch with
+ * 0, and before {@link #process(AuditEvent)} returns with a synchronous {@link FlushPolicy}.
+ * </p>
+ */
+public final class RollingFileAuditSink implements AuditEventProcessor, DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RollingFileAuditSink.class);
+
+    private static final DateTimeFormatter ROLLED_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")
+            .withZone(ZoneOffset.UTC);
+
+    private static final int MAX_WRITE_BUFFER = 1024 * 1024;
+    // copied into the write buffer to zero it for preallocation
+    private static final byte[] ZEROS = new byte[8192];
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 5000;
+
+    private final Path directory;
+    private final Path activeFile;
+    private final String baseName;
+    private final String extension;
+    private final long maxFileBytes;
+    private final long rolloverMillis;
+    private final boolean preallocate;
+    private final long fsyncIntervalMillis;
+    private final FlushPolicy flushPolicy;
+    private final Clock clock;
+
+    private final AuditBatcher<Entry> batcher;
+
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rolled = new LongAdder();
+
+    // only touched by the writer thread after construction
+    private FileChannel channel;
+    private long position;
+    private long openedMillis;
+    private long nextRolloverMillis = Long.MAX_VALUE;
+    private long lastFsyncNanos;
+    private final ByteBuffer writeBuffer;
+
+    private RollingFileAuditSink(final Builder builder) throws IOException {
+        this.directory = builder.directory;
+        this.activeFile = builder.directory.resolve(builder.fileName);
+        int dot = builder.fileName.lastIndexOf('.');
+        this.baseName = (dot > 0) ? builder.fileName.substring(0, dot) : builder.fileName;
+        this.extension = (dot > 0) ? builder.fileName.substring(dot) : "";
+        this.maxFileBytes = builder.maxFileBytes;
+        this.rolloverMillis = (null == builder.rolloverInterval) ? 0 : builder.rolloverInterval.toMillis();
+        this.preallocate = builder.preallocate && builder.maxFileBytes > 0;
+        this.fsyncIntervalMillis = builder.fsyncIntervalMillis;
+        this.flushPolicy = builder.flushPolicy;
+        this.clock = builder.clock;
+        this.writeBuffer = ByteBuffer.allocateDirect(Math.min(builder.flushPolicy.getMaxBytes(), MAX_WRITE_BUFFER));
+
+        Files.createDirectories(this.directory);
+        open();
+        this.batcher = new AuditBatcher<>("audit-file-writer", builder.queueCapacity, builder.flushPolicy,
+                new AuditBatcher.Committer<Entry>() {
+
+                    @Override
+                    public boolean commit(final List<Entry> batch, final long batchBytes) {
+                        return RollingFileAuditSink.this.commit(batch, batchBytes);
+                    }
+
+                    @Override
+                    public void stopped(final List<Entry> abandoned) {
+                        RollingFileAuditSink.this.failed.add(abandoned.size());
+                        close();
+                    }
+                });
+        this.batcher.start();
+    }
+
+    /**
+     * @param directory where the active and rolled files are kept; created if missing
+     */
+    public static Builder builder(final Path directory) {
+        return new Builder(directory);
+    }
+
+    /**
+     * Encodes the event and queues it for the writer thread without blocking. With a synchronous {@link FlushPolicy},
+     * then waits for it to be written and forced to disk.
+     *
+     * @return false if the queue was full or the sink is shut down, or, with a synchronous policy, if the event was
+     *         not written in time
+     */
+    @Override
+    public boolean process(final AuditEvent auditEvent) {
+        AuditLine line = AuditLine.encode(auditEvent, false, AuditLine.LINE_SEPARATOR);
+        Entry entry = new Entry(line.bytes(), line.length(), this.flushPolicy.isSynchronous() ? 1 : 0);
+        if (!this.batcher.offer(entry)) {
+            this.dropped.increment();
+            return false;
+        }
+        return entry.await(this.flushPolicy.getMaxDelayMillis());
+    }
+
+    /**
+     * @return the file currently written to
+     */
+    public Path getActiveFile() {
+        return this.activeFile;
+    }
+
+    public long getWrittenCount() {
+        return this.written.sum();
+    }
+
+    public long getDroppedCount() {
+        return this.dropped.sum();
+    }
+
+    public long getFailedCount() {
+        return this.failed.sum();
+    }
+
+    /**
+     * @return how many times the active file was rolled over
+     */
+    public long getRolloverCount() {
+        return this.rolled.sum();
+    }
+
+    /**
+     * @return events queued and not yet written
+     */
+    public int getLag() {
+        return this.batcher.size();
+    }
+
+    /**
+     * Stops accepting events, writes what is already queued and closes the file, trimmed to its content.
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        this.batcher.stop();
+        this.batcher.join(SHUTDOWN_TIMEOUT_MILLIS);
+    }
+
+    private boolean commit(final List<Entry> batch, final long batchBytes) {
+        try {
+            rollOverIfDue(batchBytes);
+            if (null == this.channel) {
+                open();
+            }
+            writeBatch(batch);
+            this.position += batchBytes;
+            long now = System.nanoTime();
+            if (this.flushPolicy.isSynchronous() || this.fsyncIntervalMillis == 0 || (this.fsyncIntervalMillis > 0
+                    && now - this.lastFsyncNanos >= TimeUnit.MILLISECONDS.toNanos(this.fsyncIntervalMillis))) {
+                this.channel.force(false);
+                this.lastFsyncNanos = now;
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to write {} audit events to {}: {}", batch.size(), this.activeFile, e.getMessage());
+            this.failed.add(batch.size());
+            // reopened for the next batch
+            closeQuietly();
+            return false;
+        }
+        this.written.add(batch.size());
+        return true;
+    }
+
+    /**
+     * Copies the events into the write buffer, writing it out whenever it is full.
+     */
+    private void writeBatch(final List<Entry> batch) throws IOException {
+        ByteBuffer buffer = this.writeBuffer;
+        buffer.clear();
+        for (Entry entry : batch) {
+            int offset = 0;
+            while (offset < entry.length) {
+                if (!buffer.hasRemaining()) {
+                    writeFully(buffer);
+                }
+                int count = Math.min(entry.length - offset, buffer.remaining());
+                buffer.put(entry.bytes, offset, count);
+                offset += count;
+            }
+        }
+        writeFully(buffer);
+    }
+
+    private void writeFully(final ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            this.channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void rollOverIfDue(final long incomingBytes) throws IOException {
+        long now = this.clock.millis();
+        boolean full = this.maxFileBytes > 0 && this.position > 0 && this.position + incomingBytes > this.maxFileBytes;
+        if (null != this.channel && (full || now >= this.nextRolloverMillis)) {
+            close();
+            Path rolledFile = rolledFile(this.openedMillis);
+            Files.move(this.activeFile, rolledFile, StandardCopyOption.ATOMIC_MOVE);
+            this.rolled.increment();
+            open();
+        }
+    }
+
+    private Path rolledFile(final long openedAt) {
+        String name = this.baseName + "-" + ROLLED_TIME.format(Instant.ofEpochMilli(openedAt));
+        Path rolledFile = this.directory.resolve(name + this.extension);
+        for (int i = 1; Files.exists(rolledFile); i++) {
+            rolledFile = this.directory.resolve(name + "-" + i + this.extension);
+        }
+        return rolledFile;
+    }
+
+    private void open() throws IOException {
+        this.channel = FileChannel.open(this.activeFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.position = this.preallocate ? contentLength(this.channel) : this.channel.size();
+        if (this.preallocate && this.channel.size() < this.maxFileBytes) {
+            fillWithZeros();
+        }
+        this.channel.position(this.position);
+        this.openedMillis = this.clock.millis();
+        this.nextRolloverMillis = (this.rolloverMillis > 0)
+                ? (this.openedMillis / this.rolloverMillis + 1) * this.rolloverMillis : Long.MAX_VALUE;
+    }
+
+    /**
+     * Grows the file to {@code maxFileBytes} with zeros, written through the write buffer, which is free between
+     * batches.
+     */
+    private void fillWithZeros() throws IOException {
+        ByteBuffer zeros = this.writeBuffer;
+        zeros.clear();
+        while (zeros.hasRemaining()) {
+            zeros.put(ZEROS, 0, Math.min(ZEROS.length, zeros.remaining()));
+        }
+        long size = this.channel.size();
+        while (size < this.maxFileBytes) {
+            zeros.clear().limit((int) Math.min(zeros.capacity(), this.maxFileBytes - size));
+            size += this.channel.write(zeros, size);
+        }
+        zeros.clear();
+    }
+
+    /**
+     * @return the length of the file without the zeros preallocated after its content
+     */
+    private static long contentLength(final FileChannel file) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(8192);
+        long end = file.size();
+        while (end > 0) {
+            long start = Math.max(0, end - block.capacity());
+            block.clear().limit((int) (end - start));
+            int read = 0;
+            while (read >= 0 && block.hasRemaining()) {
+                read = file.read(block, start + block.position());
+            }
+            for (int i = block.position() - 1; i >= 0; i--) {
+                if (block.get(i) != 0) {
+                    return start + i + 1;
+                }
+            }
+            end = start;
+        }
+        return 0;
+    }
+
+    private void close() {
+        if (null == this.channel) {
+            return;
+        }
+        try {
+            if (this.preallocate) {
+                this.channel.truncate(this.position);
+            }
+            this.channel.force(true);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to finish audit file {}: {}", this.activeFile, e.getMessage());
+        }
+        closeQuietly();
+    }
+
+    private void closeQuietly() {
+        try {
+            if (null != this.channel) {
+                this.channel.close();
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to close audit file {}: {}", this.activeFile, e.getMessage());
+        }
+        this.channel = null;
+    }
+
+    /**
+     * An encoded event, ready to be written.
+     */
+    private static final class Entry extends AuditBatcher.Entry {
+
+        private final byte[] bytes;
+        private final int length;
+
+        private Entry(final byte[] bytes, final int length, final int parties) {
+            super(length, parties);
+            this.bytes = bytes;
+            this.length = length;
+        }
+    }
+
+    public static final class Builder {
+
+        private static final long DEFAULT_MAX_FILE_BYTES = 100L * 1024 * 1024;
+        private static final int DEFAULT_QUEUE_CAPACITY = 4096;
+
+        private final Path directory;
+        private String fileName = "audit.log";
+        private long maxFileBytes = DEFAULT_MAX_FILE_BYTES;
+        private Duration rolloverInterval;
+        private boolean preallocate;
+        private long fsyncIntervalMillis = -1;
+        private FlushPolicy flushPolicy = FlushPolicy.DEFAULT;
+        private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+        private Clock clock = Clock.systemUTC();
+
+        private Builder(final Path directory) {
+            this.directory = directory;
+        }
+
+        /**
+         * Name of the active file; {@code audit.log} by default.
+         */
+        public Builder fileName(final String value) {
+            this.fileName = value;
+            return this;
+        }
+
+        /**
+         * Size at which the file is rolled over; 100 MiB by default, 0 for no limit.
+         */
+        public Builder maxFileBytes(final long value) {
+            this.maxFileBytes = value;
+            return this;
+        }
+
+        /**
+         * Rolls the file over at every multiple of the interval since the epoch, such as every hour on the hour;
+         * none by default.
+         */
+        public Builder rolloverInterval(final Duration value) {
+            this.rolloverInterval = value;
+            return this;
+        }
+
+        /**
+         * Fills the active file with zeros up to {@link #maxFileBytes(long)} when it is opened; off by default.
+         */
+        public Builder preallocate(final boolean value) {
+            this.preallocate = value;
+            return this;
+        }
+
+        /**
+         * Forces writes to disk at most this often; 0 for after every batch, negative (the default) to leave it to
+         * the operating system.
+         */
+        public Builder fsyncIntervalMillis(final long value) {
+            this.fsyncIntervalMillis = value;
+            return this;
+        }
+
+        public Builder flushPolicy(final FlushPolicy value) {
+            this.flushPolicy = value;
+            return this;
+        }
+
+        /**
+         * Events that may be waiting to be written before further ones are dropped; 4096 by default.
+         */
+        public Builder queueCapacity(final int value) {
+            this.queueCapacity = value;
+            return this;
+        }
+
+        Builder clock(final Clock value) {
+            this.clock = value;
+            return this;
+        }
+
+        /**
+         * Opens the active file and starts the writer thread.
+         *
+         * @throws IOException if the directory or file cannot be created or opened
+         */
+        public RollingFileAuditSink build() throws IOException {
+            if (null == this.directory || null == this.fileName || this.fileName.isEmpty()) {
+                throw new IllegalArgumentException("directory and fileName must be set");
+            }
+            if (this.queueCapacity < 1 || this.maxFileBytes < 0) {
+                throw new IllegalArgumentException("queueCapacity must be positive and maxFileBytes not negative");
+            }
+            return new RollingFileAuditSink(this);
+        }
+    }
+}
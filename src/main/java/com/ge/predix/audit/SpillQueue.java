@@ -0,0 +1,196 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.audit;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * First-in, first-out queue of audit events kept in segment files, for {@link AsyncAuditDispatcher} to spill to when
+ * its queue is full. Events are appended to the newest segment and read back from the oldest one, which is deleted
+ * once read; a segment being appended to is closed first. Segments found in the directory on start, or left behind by
+ * {@link #close()}, are read back before new ones. Once closed, the queue neither takes nor gives events, so that a
+ * thread still using it cannot reopen its files.
+ */
+final class SpillQueue implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SpillQueue.class);
+
+    private static final String SEGMENT_PREFIX = "spill-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final long SEGMENT_BYTES = 8L * 1024 * 1024;
+
+    private final Path directory;
+    private final long maxBytes;
+    // closed segments, oldest first; the first one may be being read
+    private final Deque<Path> segments = new ArrayDeque<>();
+    private long nextSegment;
+    private long bytes;
+
+    private Path writeSegment;
+    private FileChannel writeChannel;
+    private long writeSegmentBytes;
+    private DataInputStream reader;
+    private boolean closed;
+
+    SpillQueue(final Path directory, final long maxBytes) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(directory);
+        List<Path> found;
+        try (Stream<Path> files = Files.list(directory)) {
+            found = files.filter(file -> segmentNumber(file) >= 0).collect(Collectors.toCollection(ArrayList::new));
+        }
+        found.sort((first, second) -> Long.compare(segmentNumber(first), segmentNumber(second)));
+        for (Path segment : found) {
+            this.segments.add(segment);
+            this.bytes += Files.size(segment);
+            this.nextSegment = segmentNumber(segment) + 1;
+        }
+    }
+
+    private static long segmentNumber(final Path file) {
+        String name = file.getFileName().toString();
+        if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return false if the event would take the spilled bytes past the limit, or the queue is closed
+     */
+    synchronized boolean offer(final AuditEvent event) throws IOException {
+        if (this.closed) {
+            return false;
+        }
+        byte[] record = AuditRecordCodec.encode(event);
+        if (this.bytes + record.length > this.maxBytes) {
+            return false;
+        }
+        if (null == this.writeChannel) {
+            this.writeSegment = this.directory.resolve(SEGMENT_PREFIX + this.nextSegment++ + SEGMENT_SUFFIX);
+            this.writeChannel = FileChannel.open(this.writeSegment, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.WRITE);
+            this.writeSegmentBytes = 0;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        while (buffer.hasRemaining()) {
+            this.writeChannel.write(buffer);
+        }
+        this.bytes += record.length;
+        this.writeSegmentBytes += record.length;
+        if (this.writeSegmentBytes >= SEGMENT_BYTES) {
+            closeWriteSegment();
+        }
+        return true;
+    }
+
+    /**
+     * @return the oldest spilled event, or null if there is none or the queue is closed. Records that cannot be read
+     *         are skipped with a warning, and so is the rest of their segment.
+     */
+    synchronized AuditCapture poll() throws IOException {
+        while (!this.closed) {
+            if (null == this.reader) {
+                if (this.segments.isEmpty()) {
+                    if (null == this.writeChannel) {
+                        return null;
+                    }
+                    closeWriteSegment();
+                }
+                this.reader = new DataInputStream(new BufferedInputStream(Files.newInputStream(this.segments.peek())));
+            }
+            byte[] payload;
+            try {
+                payload = AuditRecordCodec.readPayload(this.reader);
+                if (null != payload) {
+                    return AuditRecordCodec.decode(payload);
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                LOGGER.warn("Discarding the rest of audit spill segment {}: {}", this.segments.peek(), e.getMessage());
+            }
+            this.reader.close();
+            this.reader = null;
+            Path segment = this.segments.poll();
+            this.bytes -= Files.size(segment);
+            Files.delete(segment);
+        }
+        return null;
+    }
+
+    /**
+     * @return bytes spilled and not yet read back
+     */
+    synchronized long getBytes() {
+        return this.bytes;
+    }
+
+    /**
+     * Closes the segment files. The part of the segment being read that was not read yet is kept, so that nothing is
+     * read twice when the directory is opened again.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        this.closed = true;
+        closeWriteSegment();
+        if (null != this.reader) {
+            Path segment = this.segments.peek();
+            Path rest = segment.resolveSibling(segment.getFileName() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(rest)) {
+                byte[] buffer = new byte[8192];
+                int count;
+                while ((count = this.reader.read(buffer)) > 0) {
+                    out.write(buffer, 0, count);
+                }
+            }
+            this.reader.close();
+            this.reader = null;
+            Files.move(rest, segment, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    private void closeWriteSegment() throws IOException {
+        if (null != this.writeChannel) {
+            this.writeChannel.close();
+            this.writeChannel = null;
+            this.segments.add(this.writeSegment);
+        }
+    }
+}
@@ -0,0 +1,482 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.json;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+
+import org.springframework.util.ClassUtils;
+
+/**
+ * Small streaming JSON writer used for log lines and audit events, so that the library does not need Jackson on the
+ * classpath. Output matches what a default Jackson {@code ObjectMapper} writes for the same values: the same string
+ * escapes, numbers, base64 for {@code byte[]}, and in pretty mode the layout of Jackson's default pretty printer.
+ * An {@link Instant} is written as decimal epoch seconds, like the Jackson JSR-310 module does by default.
+ *
+ * <p>
+ * {@link #value(Object)} handles maps, iterables, arrays, strings, numbers, booleans, characters and enums itself.
+ * Any other object, such as the payload of a Log4j {@code ObjectMessage}, is handed to Jackson when it is present and
+ * written as the string form of {@code toString()} when it is not.
+ * </p>
+ *
+ * <p>
+ * Output goes straight to the given {@link Appendable}, so a document can be streamed into a {@link Writer} without
+ * building it in memory. Instances are not thread-safe; create one per document.
+ * </p>
+ */
+public final class JsonWriter {
+
+    private static final boolean JACKSON_PRESENT = ClassUtils.isPresent(
+            "com.fasterxml.jackson.databind.ObjectMapper", JsonWriter.class.getClassLoader());
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    // escape for each ASCII character: 0 for none, a character for a two-character escape, -1 for \\u00XX
+    private static final int[] ESCAPES = new int[128];
+    static {
+        Arrays.fill(ESCAPES, 0, 32, -1);
+        ESCAPES['"'] = '"';
+        ESCAPES['\\'] = '\\';
+        ESCAPES['\b'] = 'b';
+        ESCAPES['\t'] = 't';
+        ESCAPES['\f'] = 'f';
+        ESCAPES['\n'] = 'n';
+        ESCAPES['\r'] = 'r';
+    }
+
+    private static final int INITIAL_DEPTH = 8;
+
+    private static final byte EMPTY_OBJECT = 1;
+    private static final byte OBJECT = 2;
+    private static final byte EMPTY_ARRAY = 3;
+    private static final byte ARRAY = 4;
+
+    private final Appendable out;
+    private final boolean pretty;
+    private final String lineSeparator;
+
+    private byte[] scopes = new byte[INITIAL_DEPTH];
+    private int depth;
+
+    /**
+     * Creates a writer producing compact output.
+     */
+    public JsonWriter(final Appendable out) {
+        this(out, false);
+    }
+
+    /**
+     * @param pretty true to indent the output the way Jackson's default pretty printer does
+     */
+    public JsonWriter(final Appendable out, final boolean pretty) {
+        this.out = out;
+        this.pretty = pretty;
+        this.lineSeparator = pretty ? System.lineSeparator() : "";
+    }
+
+    /**
+     * Creates a writer encoding its output as UTF-8 into {@code out}. Output is buffered until {@link #flush()}.
+     *
+     * @param pretty true to indent the output the way Jackson's default pretty printer does
+     */
+    public JsonWriter(final OutputStream out, final boolean pretty) {
+        this(new Utf8Writer(out), pretty);
+    }
+
+    /**
+     * @return the compact JSON form of {@code value}, see {@link #value(Object)}
+     * @throws IOException if Jackson fails to serialize a nested object
+     */
+    public static String toJson(final Object value) throws IOException {
+        StringBuilder json = new StringBuilder(256);
+        new JsonWriter(json).value(value);
+        return json.toString();
+    }
+
+    /**
+     * Writes out output buffered by a writer created for an {@link OutputStream}. The stream itself, like any other
+     * output, is not flushed.
+     */
+    public void flush() throws IOException {
+        if (this.out instanceof Utf8Writer) {
+            ((Utf8Writer) this.out).flushBuffer();
+        }
+    }
+
+    public JsonWriter beginObject() throws IOException {
+        beforeValue();
+        this.out.append('{');
+        push(EMPTY_OBJECT);
+        return this;
+    }
+
+    public JsonWriter endObject() throws IOException {
+        byte scope = pop();
+        if (this.pretty) {
+            if (scope == EMPTY_OBJECT) {
+                this.out.append(' ');
+            } else {
+                newLine();
+            }
+        }
+        this.out.append('}');
+        return this;
+    }
+
+    public JsonWriter beginArray() throws IOException {
+        beforeValue();
+        this.out.append('[');
+        push(EMPTY_ARRAY);
+        return this;
+    }
+
+    public JsonWriter endArray() throws IOException {
+        pop();
+        if (this.pretty) {
+            this.out.append(' ');
+        }
+        this.out.append(']');
+        return this;
+    }
+
+    /**
+     * Writes the name of the next object member. Must be followed by exactly one value.
+     */
+    public JsonWriter name(final String name) throws IOException {
+        if (this.scopes[this.depth - 1] == OBJECT) {
+            this.out.append(',');
+        } else {
+            this.scopes[this.depth - 1] = OBJECT;
+        }
+        newLine();
+        writeString(name);
+        this.out.append(this.pretty ? " : " : ":");
+        return this;
+    }
+
+    public JsonWriter value(final String value) throws IOException {
+        beforeValue();
+        if (null == value) {
+            this.out.append("null");
+        } else {
+            writeString(value);
+        }
+        return this;
+    }
+
+    public JsonWriter value(final long value) throws IOException {
+        beforeValue();
+        this.out.append(Long.toString(value));
+        return this;
+    }
+
+    public JsonWriter value(final boolean value) throws IOException {
+        beforeValue();
+        this.out.append(value ? "true" : "false");
+        return this;
+    }
+
+    /**
+     * Writes the remaining bytes of {@code utf8} as a string value. When writing to an {@link OutputStream},
+     * well-formed UTF-8 is escaped and copied byte by byte without being decoded; otherwise the bytes are decoded
+     * first, with malformed input replaced as {@code new String(bytes, UTF_8)} does. The buffer's position is not
+     * changed.
+     */
+    public JsonWriter utf8Value(final ByteBuffer utf8) throws IOException {
+        ByteBuffer bytes = utf8.hasArray() ? utf8 : copy(utf8);
+        byte[] array = bytes.array();
+        int start = bytes.arrayOffset() + bytes.position();
+        int end = start + bytes.remaining();
+        if (!(this.out instanceof Utf8Writer) || !isWellFormedUtf8(array, start, end)) {
+            return value(new String(array, start, end - start, StandardCharsets.UTF_8));
+        }
+        beforeValue();
+        Utf8Writer target = (Utf8Writer) this.out;
+        target.write('"');
+        int copied = start;
+        for (int i = start; i < end; i++) {
+            int b = array[i];
+            // bytes of multi-byte sequences are negative and never need escaping
+            if (b >= 0 && ESCAPES[b] != 0) {
+                target.writeUtf8(array, copied, i - copied);
+                copied = i + 1;
+                writeEscape((char) b);
+            }
+        }
+        target.writeUtf8(array, copied, end - copied);
+        target.write('"');
+        return this;
+    }
+
+    /**
+     * Writes {@code value} as decimal epoch seconds with nanosecond precision.
+     */
+    public JsonWriter value(final Instant value) throws IOException {
+        beforeValue();
+        if (null == value) {
+            this.out.append("null");
+        } else {
+            writeEpochSeconds(value.getEpochSecond(), value.getNano());
+        }
+        return this;
+    }
+
+    public JsonWriter nullValue() throws IOException {
+        beforeValue();
+        this.out.append("null");
+        return this;
+    }
+
+    /**
+     * Writes any value, recursing into maps, iterables and arrays.
+     *
+     * @throws IOException if writing fails, or if Jackson fails to serialize an object this writer does not handle
+     */
+    public JsonWriter value(final Object value) throws IOException {
+        if (null == value) {
+            return nullValue();
+        } else if (value instanceof CharSequence || value instanceof Character) {
+            return value(value.toString());
+        } else if (value instanceof Boolean) {
+            return value(((Boolean) value).booleanValue());
+        } else if (value instanceof Number) {
+            return number((Number) value);
+        } else if (value instanceof Instant) {
+            return value((Instant) value);
+        } else if (value instanceof Map) {
+            beginObject();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                name(String.valueOf(entry.getKey()));
+                value(entry.getValue());
+            }
+            return endObject();
+        } else if (value instanceof Iterable) {
+            beginArray();
+            for (Object element : (Iterable<?>) value) {
+                value(element);
+            }
+            return endArray();
+        } else if (value instanceof byte[]) {
+            return value(Base64.getEncoder().encodeToString((byte[]) value));
+        } else if (value instanceof char[]) {
+            return value(new String((char[]) value));
+        } else if (value.getClass().isArray()) {
+            beginArray();
+            int length = Array.getLength(value);
+            for (int i = 0; i < length; i++) {
+                value(Array.get(value, i));
+            }
+            return endArray();
+        } else if (value instanceof Enum) {
+            return value(((Enum<?>) value).name());
+        } else if (JACKSON_PRESENT) {
+            beforeValue();
+            this.out.append(JacksonValues.toJson(value));
+            return this;
+        }
+        return value(value.toString());
+    }
+
+    private JsonWriter number(final Number value) throws IOException {
+        if (value instanceof Double || value instanceof Float) {
+            double d = value.doubleValue();
+            if (Double.isNaN(d) || Double.isInfinite(d)) {
+                // Jackson quotes non-numeric numbers by default
+                return value(value.toString());
+            }
+        }
+        beforeValue();
+        this.out.append(value.toString());
+        return this;
+    }
+
+    private void beforeValue() throws IOException {
+        if (this.depth == 0) {
+            return;
+        }
+        byte scope = this.scopes[this.depth - 1];
+        if (scope == ARRAY) {
+            this.out.append(this.pretty ? ", " : ",");
+        } else if (scope == EMPTY_ARRAY) {
+            this.scopes[this.depth - 1] = ARRAY;
+            if (this.pretty) {
+                this.out.append(' ');
+            }
+        }
+        // object members are separated in name()
+    }
+
+    private void push(final byte scope) {
+        if (this.depth == this.scopes.length) {
+            this.scopes = Arrays.copyOf(this.scopes, this.depth * 2);
+        }
+        this.scopes[this.depth++] = scope;
+    }
+
+    private byte pop() {
+        if (this.depth == 0) {
+            throw new IllegalStateException("No open object or array");
+        }
+        return this.scopes[--this.depth];
+    }
+
+    private void newLine() throws IOException {
+        if (this.pretty) {
+            this.out.append(this.lineSeparator);
+            for (int i = 0; i < this.depth; i++) {
+                this.out.append("  ");
+            }
+        }
+    }
+
+    private void writeString(final String value) throws IOException {
+        Appendable target = this.out;
+        target.append('"');
+        int length = value.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < ESCAPES.length && ESCAPES[c] != 0) {
+                appendRange(value, start, i);
+                start = i + 1;
+                writeEscape(c);
+            }
+        }
+        appendRange(value, start, length);
+        target.append('"');
+    }
+
+    private void writeEscape(final char c) throws IOException {
+        int escape = ESCAPES[c];
+        this.out.append('\\');
+        if (escape < 0) {
+            this.out.append("u00").append(HEX_DIGITS[c >> 4]).append(HEX_DIGITS[c & 0xF]);
+        } else {
+            this.out.append((char) escape);
+        }
+    }
+
+    private static ByteBuffer copy(final ByteBuffer buffer) {
+        ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+        copy.put(buffer.duplicate()).flip();
+        return copy;
+    }
+
+    /**
+     * Checks for the byte sequences a UTF-8 decoder accepts: no overlong forms, surrogates or code points above
+     * U+10FFFF.
+     */
+    static boolean isWellFormedUtf8(final byte[] bytes, final int start, final int end) {
+        int i = start;
+        while (i < end) {
+            int b = bytes[i];
+            if (b >= 0) {
+                i++;
+                continue;
+            }
+            b &= 0xFF;
+            int length;
+            int min = 0x80;
+            int max = 0xBF;
+            if (b >= 0xC2 && b <= 0xDF) {
+                length = 2;
+            } else if (b >= 0xE0 && b <= 0xEF) {
+                length = 3;
+                if (b == 0xE0) {
+                    min = 0xA0;
+                } else if (b == 0xED) {
+                    max = 0x9F;
+                }
+            } else if (b >= 0xF0 && b <= 0xF4) {
+                length = 4;
+                if (b == 0xF0) {
+                    min = 0x90;
+                } else if (b == 0xF4) {
+                    max = 0x8F;
+                }
+            } else {
+                return false;
+            }
+            if (i + length > end) {
+                return false;
+            }
+            int second = bytes[i + 1] & 0xFF;
+            if (second < min || second > max) {
+                return false;
+            }
+            for (int j = i + 2; j < i + length; j++) {
+                if ((bytes[j] & 0xC0) != 0x80) {
+                    return false;
+                }
+            }
+            i += length;
+        }
+        return true;
+    }
+
+    private void appendRange(final String value, final int start, final int end) throws IOException {
+        if (start == end) {
+            return;
+        }
+        if (this.out instanceof Writer) {
+            // Writer.append(CharSequence, int, int) copies the range into a new String first
+            ((Writer) this.out).write(value, start, end - start);
+        } else {
+            this.out.append(value, start, end);
+        }
+    }
+
+    private void writeEpochSeconds(final long seconds, final int nanos) throws IOException {
+        // same text as the JSR-310 module's InstantSerializer, which writes a BigDecimal: nanoseconds padded to nine
+        // places, and scientific notation for tiny values just after the epoch
+        if (seconds == 0) {
+            this.out.append((nanos == 0) ? "0.0" : BigDecimal.valueOf(nanos, 9).toString());
+            return;
+        }
+        this.out.append(Long.toString(seconds)).append('.');
+        String fraction = Integer.toString(nanos);
+        for (int i = fraction.length(); i < 9; i++) {
+            this.out.append('0');
+        }
+        this.out.append(fraction);
+    }
+
+    /**
+     * Only loaded when Jackson is on the classpath.
+     */
+    private static final class JacksonValues {
+
+        private static final com.fasterxml.jackson.databind.ObjectWriter WRITER =
+                new com.fasterxml.jackson.databind.ObjectMapper().writer();
+
+        private JacksonValues() {
+        }
+
+        static String toJson(final Object value) throws IOException {
+            return WRITER.writeValueAsString(value);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.json;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * Buffered UTF-8 encoding writer for {@link JsonWriter}. Unlike {@link java.io.OutputStreamWriter} it takes no locks
+ * and encodes ASCII with a single array store per character, which matters because JSON is written a few characters
+ * at a time. Unpaired surrogates are written as {@code '?'}, as {@code OutputStreamWriter} does.
+ */
+final class Utf8Writer extends Writer {
+
+    // small documents such as log lines never need more than the initial buffer; large ones grow it after each flush
+    private static final int INITIAL_BUFFER_SIZE = 512;
+    private static final int MAX_BUFFER_SIZE = 8192;
+
+    private final OutputStream out;
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+    private int count;
+    // high surrogate waiting for its low half, or 0
+    private char pendingHighSurrogate;
+
+    Utf8Writer(final OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(final int c) throws IOException {
+        writeChar((char) c);
+    }
+
+    @Override
+    public void write(final char[] chars, final int offset, final int length) throws IOException {
+        for (int i = offset; i < offset + length; i++) {
+            writeChar(chars[i]);
+        }
+    }
+
+    @Override
+    public void write(final String text, final int offset, final int length) throws IOException {
+        for (int i = offset; i < offset + length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80 && this.pendingHighSurrogate == 0) {
+                if (this.count == this.buffer.length) {
+                    flushFullBuffer();
+                }
+                this.buffer[this.count++] = (byte) c;
+            } else {
+                writeChar(c);
+            }
+        }
+    }
+
+    /**
+     * Copies bytes that are known to be well-formed UTF-8.
+     */
+    void writeUtf8(final byte[] bytes, final int offset, final int length) throws IOException {
+        if (this.pendingHighSurrogate != 0) {
+            this.pendingHighSurrogate = 0;
+            writeByte('?');
+        }
+        if (length > this.buffer.length - this.count) {
+            flushBuffer();
+            if (length >= this.buffer.length) {
+                this.out.write(bytes, offset, length);
+                return;
+            }
+        }
+        System.arraycopy(bytes, offset, this.buffer, this.count, length);
+        this.count += length;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        this.out.flush();
+    }
+
+    /**
+     * Writes out buffered bytes without closing the underlying stream.
+     */
+    @Override
+    public void close() throws IOException {
+        flushBuffer();
+    }
+
+    void flushBuffer() throws IOException {
+        if (this.count > 0) {
+            this.out.write(this.buffer, 0, this.count);
+            this.count = 0;
+        }
+    }
+
+    private void flushFullBuffer() throws IOException {
+        flushBuffer();
+        if (this.buffer.length < MAX_BUFFER_SIZE) {
+            this.buffer = new byte[this.buffer.length * 2];
+        }
+    }
+
+    private void writeChar(final char c) throws IOException {
+        if (this.pendingHighSurrogate != 0) {
+            char high = this.pendingHighSurrogate;
+            this.pendingHighSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                int codePoint = Character.toCodePoint(high, c);
+                writeByte(0xF0 | (codePoint >> 18));
+                writeByte(0x80 | ((codePoint >> 12) & 0x3F));
+                writeByte(0x80 | ((codePoint >> 6) & 0x3F));
+                writeByte(0x80 | (codePoint & 0x3F));
+                return;
+            }
+            writeByte('?');
+        }
+        if (c < 0x80) {
+            writeByte(c);
+        } else if (c < 0x800) {
+            writeByte(0xC0 | (c >> 6));
+            writeByte(0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c)) {
+            this.pendingHighSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            writeByte('?');
+        } else {
+            writeByte(0xE0 | (c >> 12));
+            writeByte(0x80 | ((c >> 6) & 0x3F));
+            writeByte(0x80 | (c & 0x3F));
+        }
+    }
+
+    private void writeByte(final int b) throws IOException {
+        if (this.count == this.buffer.length) {
+            flushFullBuffer();
+        }
+        this.buffer[this.count++] = (byte) b;
+    }
+}
@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.log.context;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.ThreadContext;
+
+final class Log4j2MdcBackend extends MdcBackend {
+
+    @Override
+    String[] read(final MdcSnapshot snapshot) {
+        String[] values = new String[snapshot.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = ThreadContext.get(snapshot.keyAt(i));
+        }
+        return values;
+    }
+
+    @Override
+    void write(final MdcSnapshot snapshot) {
+        ThreadContext.putAll(snapshot.asMap());
+    }
+
+    @Override
+    void restore(final MdcSnapshot installed, final String[] previousValues) {
+        if (allNull(previousValues)) {
+            // the common case: nothing was set before the snapshot was installed
+            ThreadContext.removeAll(installed.keys());
+            return;
+        }
+        List<String> removed = new ArrayList<>(installed.size());
+        Map<String, String> restored = new HashMap<>();
+        for (int i = 0; i < installed.size(); i++) {
+            if (null == previousValues[i]) {
+                removed.add(installed.keyAt(i));
+            } else {
+                restored.put(installed.keyAt(i), previousValues[i]);
+            }
+        }
+        if (!removed.isEmpty()) {
+            ThreadContext.removeAll(removed);
+        }
+        ThreadContext.putAll(restored);
+    }
+
+    @Override
+    public MdcContext capture() {
+        // the default context map hands out its current copy-on-write map here; nothing is copied
+        return MdcContext.of(ThreadContext.getImmutableContext());
+    }
+
+    @Override
+    void replace(final MdcContext context) {
+        ThreadContext.clearMap();
+        if (!context.isEmpty()) {
+            ThreadContext.putAll(context.entries());
+        }
+    }
+}
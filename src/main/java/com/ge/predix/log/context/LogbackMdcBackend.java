@@ -0,0 +1,36 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.log.context;
+
+import java.util.Map;
+
+import org.slf4j.MDC;
+
+import ch.qos.logback.classic.util.LogbackMDCAdapter;
+
+/**
+ * Logback's adapter copies its map on the first write after a read, so the map returned by
+ * {@link LogbackMDCAdapter#getPropertyMap()} is never modified afterwards and can be captured as it is.
+ */
+final class LogbackMdcBackend extends Slf4jMdcBackend {
+
+    @Override
+    public MdcContext capture() {
+        Map<String, String> map = ((LogbackMDCAdapter) MDC.getMDCAdapter()).getPropertyMap();
+        return MdcContext.of(map);
+    }
+}
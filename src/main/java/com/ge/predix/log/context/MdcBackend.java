@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.log.context;
+
+import org.slf4j.MDC;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Installs {@link MdcSnapshot}s on the current thread using the cheapest operations the active logging backend
+ * offers.
+ *
+ * <ul>
+ * <li>With log4j2 the snapshot goes straight into {@code ThreadContext} with one {@code putAll} and comes out with
+ * one {@code removeAll}, so the copy-on-write context map is copied once per phase instead of once per key. With
+ * log4j2's garbage-free context map enabled, neither operation allocates.</li>
+ * <li>Otherwise, including logback, the SLF4J {@link MDC} is used one key at a time. All reads are done before any
+ * write, which lets logback's copy-on-write adapter copy its map once per phase rather than once per key.</li>
+ * </ul>
+ *
+ * <p>
+ * {@link #capture()} and {@link #attach(MdcContext)} move a thread's whole MDC to another thread, for example to a
+ * task submitted by the request thread. With log4j2 and logback the capture shares the backend's own copy-on-write
+ * map, so handing the context to a task costs no map copy on the submitting thread.
+ * </p>
+ */
+public abstract class MdcBackend {
+
+    private static final String LOG4J2_MDC_ADAPTER = "org.apache.logging.slf4j.Log4jMDCAdapter";
+    private static final String LOG4J2_THREAD_CONTEXT = "org.apache.logging.log4j.ThreadContext";
+    private static final String LOGBACK_MDC_ADAPTER = "ch.qos.logback.classic.util.LogbackMDCAdapter";
+
+    MdcBackend() {
+    }
+
+    /**
+     * @return the backend matching the SLF4J binding in use
+     */
+    public static MdcBackend detect() {
+        ClassLoader classLoader = MdcBackend.class.getClassLoader();
+        String adapter = MDC.getMDCAdapter().getClass().getName();
+        if (LOG4J2_MDC_ADAPTER.equals(adapter) && ClassUtils.isPresent(LOG4J2_THREAD_CONTEXT, classLoader)) {
+            return new Log4j2MdcBackend();
+        }
+        if (LOGBACK_MDC_ADAPTER.equals(adapter)) {
+            return new LogbackMdcBackend();
+        }
+        return new Slf4jMdcBackend();
+    }
+
+    /**
+     * Puts every entry of the snapshot into the current thread's MDC.
+     *
+     * @return a scope that restores the previous values of the snapshot's keys when closed
+     */
+    public MdcScope install(final MdcSnapshot snapshot) {
+        if (snapshot.isEmpty()) {
+            return MdcScope.NOOP;
+        }
+        String[] previousValues = read(snapshot);
+        write(snapshot);
+        return new MdcScope(() -> restore(snapshot, previousValues));
+    }
+
+    /**
+     * @return an immutable capture of the current thread's whole MDC
+     */
+    public abstract MdcContext capture();
+
+    /**
+     * Replaces the current thread's whole MDC with a captured context.
+     *
+     * @return a scope that puts the thread's previous MDC back when closed
+     */
+    public MdcScope attach(final MdcContext context) {
+        MdcContext previous = capture();
+        if (previous.isEmpty() && context.isEmpty()) {
+            // pool threads usually start out clean, and plain tasks usually carry nothing
+            return MdcScope.NOOP;
+        }
+        replace(context);
+        return new MdcScope(() -> replace(previous));
+    }
+
+    /**
+     * @return the current values of the snapshot's keys, in the snapshot's order
+     */
+    abstract String[] read(MdcSnapshot snapshot);
+
+    abstract void write(MdcSnapshot snapshot);
+
+    abstract void restore(MdcSnapshot installed, String[] previousValues);
+
+    abstract void replace(MdcContext context);
+
+    static boolean allNull(final String[] values) {
+        for (String value : values) {
+            if (null != value) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.log.context;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Immutable capture of a thread's entire MDC, taken by {@link MdcBackend#capture()} to be attached to another
+ * thread. With log4j2 and logback the capture shares the backend's own copy-on-write map instead of copying it.
+ */
+public final class MdcContext {
+
+    /** Context without entries. */
+    public static final MdcContext EMPTY = new MdcContext(Collections.emptyMap());
+
+    private final Map<String, String> entries;
+
+    /**
+     * @param entries a map that nobody modifies any more
+     */
+    MdcContext(final Map<String, String> entries) {
+        this.entries = entries;
+    }
+
+    static MdcContext of(final Map<String, String> entries) {
+        return (null == entries || entries.isEmpty()) ? EMPTY : new MdcContext(entries);
+    }
+
+    public boolean isEmpty() {
+        return this.entries.isEmpty();
+    }
+
+    public String get(final String key) {
+        return this.entries.get(key);
+    }
+
+    /**
+     * @return an unmodifiable view of the captured entries
+     */
+    public Map<String, String> asMap() {
+        return Collections.unmodifiableMap(this.entries);
+    }
+
+    Map<String, String> entries() {
+        return this.entries;
+    }
+
+    @Override
+    public String toString() {
+        return this.entries.toString();
+    }
+}
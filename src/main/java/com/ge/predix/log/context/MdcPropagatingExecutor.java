@@ -0,0 +1,47 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.log.context;
+
+import java.util.concurrent.Executor;
+
+/**
+ * {@link Executor} that runs every task with the MDC of the thread calling {@link #execute(Runnable)}. Useful with
+ * {@code CompletableFuture.supplyAsync(supplier, executor)} and similar APIs.
+ */
+public class MdcPropagatingExecutor implements Executor {
+
+    private final MdcBackend backend;
+    private final Executor delegate;
+
+    public MdcPropagatingExecutor(final Executor delegate) {
+        this(MdcBackend.detect(), delegate);
+    }
+
+    MdcPropagatingExecutor(final MdcBackend backend, final Executor delegate) {
+        this.backend = backend;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void execute(final Runnable command) {
+        this.delegate.execute(MdcPropagation.wrap(this.backend, command));
+    }
+
+    MdcBackend getBackend() {
+        return this.backend;
+    }
+}
@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.log.context;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * {@link ExecutorService} that runs every task with the MDC of the thread submitting it. Lifecycle methods go
+ * straight to the wrapped service.
+ */
+public class MdcPropagatingExecutorService extends MdcPropagatingExecutor implements ExecutorService {
+
+    private final ExecutorService delegate;
+
+    public MdcPropagatingExecutorService(final ExecutorService delegate) {
+        this(MdcBackend.detect(), delegate);
+    }
+
+    MdcPropagatingExecutorService(final MdcBackend backend, final ExecutorService delegate) {
+        super(backend, delegate);
+        this.delegate = delegate;
+    }
+
+    @Override
+    public <T> Future<T> submit(final Callable<T> task) {
+        return this.delegate.submit(MdcPropagation.wrap(getBackend(), task));
+    }
+
+    @Override
+    public <T> Future<T> submit(final Runnable task, final T result) {
+        return this.delegate.submit(MdcPropagation.wrap(getBackend(), task), result);
+    }
+
+    @Override
+    public Future<?> submit(final Runnable task) {
+        return this.delegate.submit(MdcPropagation.wrap(getBackend(), task));
+    }
+
+    @Override
+    public <T> List<Future<T>> invokeAll(final Collection<? extends Callable<T>> tasks)
+            throws InterruptedException {
+        return this.delegate.invokeAll(wrapAll(tasks));
+    }
+
+    @Override
+    public <T> List<Future<T>> invokeAll(final Collection<? extends Callable<T>> tasks, final long timeout,
+            final TimeUnit unit) throws InterruptedException {
+        return this.delegate.invokeAll(wrapAll(tasks), timeout, unit);
+    }
+
+    @Override
+    public <T> T invokeAny(final Collection<? extends Callable<T>> tasks)
+            throws InterruptedException, ExecutionException {
+        return this.delegate.invokeAny(wrapAll(tasks));
+    }
+
+    @Override
+    public <T> T invokeAny(final Collection<? extends Callable<T>> tasks, final long timeout, final TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        return this.delegate.invokeAny(wrapAll(tasks), timeout, unit);
+    }
+
+    @Override
+    public void shutdown() {
+        this.delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return this.delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return this.delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return this.delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+        return this.delegate.awaitTermination(timeout, unit);
+    }
+
+    private <T> List<Callable<T>> wrapAll(final Collection<? extends Callable<T>> tasks) {
+        // one capture shared by the whole batch
+        MdcContext context = getBackend().capture();
+        List<Callable<T>> wrapped = new ArrayList<>(tasks.size());
+        for (Callable<T> task : tasks) {
+            wrapped.add(() -> {
+                try (MdcScope scope = getBackend().attach(context)) {
+                    return task.call();
+                }
+            });
+        }
+        return wrapped;
+    }
+}
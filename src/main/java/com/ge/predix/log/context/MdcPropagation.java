@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.log.context;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Wraps tasks and executors so that work handed to another thread runs with the submitting thread's MDC. The MDC is
+ * captured once, when the task is wrapped, and the worker's own MDC is put back when the task finishes.
+ */
+public final class MdcPropagation {
+
+    private static final MdcBackend BACKEND = MdcBackend.detect();
+
+    private MdcPropagation() {
+    }
+
+    public static Runnable wrap(final Runnable task) {
+        return wrap(BACKEND, task);
+    }
+
+    public static <T> Callable<T> wrap(final Callable<T> task) {
+        return wrap(BACKEND, task);
+    }
+
+    /**
+     * @return an executor that runs every task with the MDC of the thread calling {@code execute}
+     */
+    public static Executor wrap(final Executor executor) {
+        return new MdcPropagatingExecutor(BACKEND, executor);
+    }
+
+    /**
+     * @return an executor service that runs every task with the MDC of the thread submitting it
+     */
+    public static ExecutorService wrap(final ExecutorService executorService) {
+        return new MdcPropagatingExecutorService(BACKEND, executorService);
+    }
+
+    static Runnable wrap(final MdcBackend backend, final Runnable task) {
+        MdcContext context = backend.capture();
+        return () -> {
+            try (MdcScope scope = backend.attach(context)) {
+                task.run();
+            }
+        };
+    }
+
+    static <T> Callable<T> wrap(final MdcBackend backend, final Callable<T> task) {
+        MdcContext context = backend.capture();
+        return () -> {
+            try (MdcScope scope = backend.attach(context)) {
+                return task.call();
+            }
+        };
+    }
+}
@@ -0,0 +1,42 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.log.context;
+
+/**
+ * Returned by {@link MdcBackend#install(MdcSnapshot)} and {@link MdcBackend#attach(MdcContext)}. Closing it puts
+ * the thread's MDC back the way it was before.
+ */
+public final class MdcScope implements AutoCloseable {
+
+    /** Scope with nothing to restore. */
+    static final MdcScope NOOP = new MdcScope(null);
+
+    private final Runnable restore;
+    private boolean closed;
+
+    MdcScope(final Runnable restore) {
+        this.restore = restore;
+    }
+
+    @Override
+    public void close() {
+        if (!this.closed && null != this.restore) {
+            this.closed = true;
+            this.restore.run();
+        }
+    }
+}
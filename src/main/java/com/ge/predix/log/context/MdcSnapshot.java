@@ -0,0 +1,183 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.log.context;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Immutable set of MDC entries that can be installed on a thread in one operation through {@link MdcBackend}.
+ * Entries with a null value are left out.
+ */
+public final class MdcSnapshot {
+
+    /** Snapshot without entries. */
+    public static final MdcSnapshot EMPTY = new MdcSnapshot(new String[0], new String[0]);
+
+    private final String[] keys;
+    private final String[] values;
+    private final List<String> keyList;
+    private final Map<String, String> map;
+
+    private MdcSnapshot(final String[] keys, final String[] values) {
+        this.keys = keys;
+        this.values = values;
+        this.keyList = Collections.unmodifiableList(Arrays.asList(keys));
+        this.map = new ArrayMap();
+    }
+
+    public static MdcSnapshot of(final Map<String, String> entries) {
+        MdcSnapshot snapshot = EMPTY;
+        if (null != entries) {
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                snapshot = snapshot.with(entry.getKey(), entry.getValue());
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * @return a snapshot with the entry added or replaced, or this snapshot if the value is null
+     */
+    public MdcSnapshot with(final String key, final String value) {
+        if (null == value) {
+            return this;
+        }
+        int index = indexOf(key);
+        if (index >= 0) {
+            if (value.equals(this.values[index])) {
+                return this;
+            }
+            String[] newValues = this.values.clone();
+            newValues[index] = value;
+            return new MdcSnapshot(this.keys, newValues);
+        }
+        String[] newKeys = Arrays.copyOf(this.keys, this.keys.length + 1);
+        String[] newValues = Arrays.copyOf(this.values, this.values.length + 1);
+        newKeys[this.keys.length] = key;
+        newValues[this.values.length] = value;
+        return new MdcSnapshot(newKeys, newValues);
+    }
+
+    public String get(final String key) {
+        int index = indexOf(key);
+        return (index < 0) ? null : this.values[index];
+    }
+
+    public int size() {
+        return this.keys.length;
+    }
+
+    public boolean isEmpty() {
+        return this.keys.length == 0;
+    }
+
+    public String keyAt(final int index) {
+        return this.keys[index];
+    }
+
+    public String valueAt(final int index) {
+        return this.values[index];
+    }
+
+    /**
+     * @return the keys of this snapshot, in insertion order
+     */
+    public List<String> keys() {
+        return this.keyList;
+    }
+
+    /**
+     * @return an unmodifiable map view of this snapshot, backed by its arrays
+     */
+    public Map<String, String> asMap() {
+        return this.map;
+    }
+
+    private int indexOf(final String key) {
+        for (int i = 0; i < this.keys.length; i++) {
+            if (this.keys[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return this.map.toString();
+    }
+
+    private final class ArrayMap extends AbstractMap<String, String> {
+
+        private final Set<Map.Entry<String, String>> entrySet = new AbstractSet<Map.Entry<String, String>>() {
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+                return new Iterator<Map.Entry<String, String>>() {
+                    private int next;
+
+                    @Override
+                    public boolean hasNext() {
+                        return this.next < MdcSnapshot.this.keys.length;
+                    }
+
+                    @Override
+                    public Map.Entry<String, String> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        int index = this.next++;
+                        return new AbstractMap.SimpleImmutableEntry<>(MdcSnapshot.this.keys[index],
+                                MdcSnapshot.this.values[index]);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return MdcSnapshot.this.keys.length;
+            }
+        };
+
+        @Override
+        public Set<Map.Entry<String, String>> entrySet() {
+            return this.entrySet;
+        }
+
+        @Override
+        public String get(final Object key) {
+            return (key instanceof String) ? MdcSnapshot.this.get((String) key) : null;
+        }
+
+        @Override
+        public boolean containsKey(final Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public int size() {
+            return MdcSnapshot.this.keys.length;
+        }
+    }
+}
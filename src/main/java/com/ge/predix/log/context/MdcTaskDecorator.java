@@ -0,0 +1,42 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.log.context;
+
+import org.springframework.core.task.TaskDecorator;
+
+/**
+ * {@link TaskDecorator} that runs each task with the MDC of the thread that submitted it, so that log lines written
+ * from {@code @Async} methods keep the request's {@code Zone-Id}, {@code APP_ID} and so on. Register it on a
+ * {@code ThreadPoolTaskExecutor} with {@code setTaskDecorator}.
+ */
+public class MdcTaskDecorator implements TaskDecorator {
+
+    private final MdcBackend backend;
+
+    public MdcTaskDecorator() {
+        this(MdcBackend.detect());
+    }
+
+    public MdcTaskDecorator(final MdcBackend backend) {
+        this.backend = backend;
+    }
+
+    @Override
+    public Runnable decorate(final Runnable runnable) {
+        return MdcPropagation.wrap(this.backend, runnable);
+    }
+}
@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.log.context;
+
+import java.util.function.Consumer;
+
+import reactor.core.publisher.Signal;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+/**
+ * Bridges the {@link MdcSnapshot} carried in the Reactor {@link Context} to the thread-bound MDC. The snapshot is
+ * only installed around an individual log statement, so it stays correct however often the pipeline hops threads.
+ *
+ * <pre>
+ * flux.doOnEach(ReactiveMdc.logOnNext(item -&gt; LOGGER.info("Processing {}", item)))
+ * </pre>
+ */
+public final class ReactiveMdc {
+
+    /** Reactor {@link Context} key under which the request's {@link MdcSnapshot} is stored. */
+    public static final String CONTEXT_KEY = MdcSnapshot.class.getName();
+
+    private static final MdcBackend BACKEND = MdcBackend.detect();
+
+    private ReactiveMdc() {
+    }
+
+    public static Context put(final Context context, final MdcSnapshot snapshot) {
+        return context.put(CONTEXT_KEY, snapshot);
+    }
+
+    /**
+     * @return the snapshot stored in the context, or an empty snapshot
+     */
+    public static MdcSnapshot get(final ContextView context) {
+        return context.getOrDefault(CONTEXT_KEY, MdcSnapshot.EMPTY);
+    }
+
+    /**
+     * Runs the log statement with the context's snapshot installed in the MDC.
+     */
+    public static void run(final ContextView context, final Runnable logStatement) {
+        try (MdcScope scope = BACKEND.install(get(context))) {
+            logStatement.run();
+        }
+    }
+
+    /**
+     * @return a {@code doOnEach} consumer that runs the log statement for each element with the MDC installed
+     */
+    public static <T> Consumer<Signal<T>> logOnNext(final Consumer<T> logStatement) {
+        return signal -> {
+            if (signal.isOnNext()) {
+                run(signal.getContextView(), () -> logStatement.accept(signal.get()));
+            }
+        };
+    }
+
+    /**
+     * @return a {@code doOnEach} consumer that runs the log statement for an error with the MDC installed
+     */
+    public static <T> Consumer<Signal<T>> logOnError(final Consumer<Throwable> logStatement) {
+        return signal -> {
+            if (signal.isOnError()) {
+                run(signal.getContextView(), () -> logStatement.accept(signal.getThrowable()));
+            }
+        };
+    }
+}
@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.log.context;
+
+import org.slf4j.MDC;
+
+class Slf4jMdcBackend extends MdcBackend {
+
+    @Override
+    String[] read(final MdcSnapshot snapshot) {
+        String[] values = new String[snapshot.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = MDC.get(snapshot.keyAt(i));
+        }
+        return values;
+    }
+
+    @Override
+    void write(final MdcSnapshot snapshot) {
+        for (int i = 0; i < snapshot.size(); i++) {
+            MDC.put(snapshot.keyAt(i), snapshot.valueAt(i));
+        }
+    }
+
+    @Override
+    void restore(final MdcSnapshot installed, final String[] previousValues) {
+        for (int i = 0; i < installed.size(); i++) {
+            if (null == previousValues[i]) {
+                MDC.remove(installed.keyAt(i));
+            } else {
+                MDC.put(installed.keyAt(i), previousValues[i]);
+            }
+        }
+    }
+
+    @Override
+    public MdcContext capture() {
+        return MdcContext.of(MDC.getCopyOfContextMap());
+    }
+
+    @Override
+    void replace(final MdcContext context) {
+        if (context.isEmpty()) {
+            MDC.clear();
+        } else {
+            MDC.setContextMap(context.entries());
+        }
+    }
+}
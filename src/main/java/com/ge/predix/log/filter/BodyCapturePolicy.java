@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.log.filter;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides whether, and how much of, the request and response bodies of an audited request are captured.
+ */
+final class BodyCapturePolicy {
+
+    /** Per-direction capture limit used unless configured otherwise. */
+    static final int DEFAULT_MAX_CAPTURE_BYTES = 1024 * 1024;
+
+    private static final String[] NO_CONTENT_TYPES = new String[0];
+
+    private volatile int maxRequestCaptureBytes = DEFAULT_MAX_CAPTURE_BYTES;
+    private volatile int maxResponseCaptureBytes = DEFAULT_MAX_CAPTURE_BYTES;
+    private volatile String[] allowedContentTypes = NO_CONTENT_TYPES;
+    private volatile String[] deniedContentTypes = NO_CONTENT_TYPES;
+    private volatile double sampleRate = 1.0;
+    private volatile Map<String, Double> zoneSampleRates = Collections.emptyMap();
+
+    /**
+     * Sampling is decided once per request, before any wrapper is created.
+     */
+    boolean isSampled(final String zoneId) {
+        Double zoneRate = (null == zoneId) ? null : this.zoneSampleRates.get(zoneId);
+        double rate = (null == zoneRate) ? this.sampleRate : zoneRate;
+        if (rate >= 1.0) {
+            return true;
+        }
+        return (rate > 0.0) && (ThreadLocalRandom.current().nextDouble() < rate);
+    }
+
+    /**
+     * A body is captured if its content type matches the allow list (or the allow list is empty) and does not match
+     * the deny list. Entries match as case-insensitive prefixes, so {@code text/} covers every text type.
+     */
+    boolean isCapturable(final String contentType) {
+        if (null == contentType) {
+            return this.allowedContentTypes.length == 0;
+        }
+        String normalized = contentType.toLowerCase(Locale.ROOT);
+        return ((this.allowedContentTypes.length == 0) || matches(normalized, this.allowedContentTypes))
+                && !matches(normalized, this.deniedContentTypes);
+    }
+
+    private static boolean matches(final String contentType, final String[] prefixes) {
+        for (String prefix : prefixes) {
+            if (contentType.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String[] normalize(final Collection<String> contentTypes) {
+        if (null == contentTypes) {
+            return NO_CONTENT_TYPES;
+        }
+        return contentTypes.stream().map(type -> type.trim().toLowerCase(Locale.ROOT)).filter(type -> !type.isEmpty())
+                .toArray(String[]::new);
+    }
+
+    private static double checkRate(final double rate) {
+        if (rate < 0.0 || rate > 1.0) {
+            throw new IllegalArgumentException("Sample rate must be between 0.0 and 1.0: " + rate);
+        }
+        return rate;
+    }
+
+    int getMaxRequestCaptureBytes() {
+        return this.maxRequestCaptureBytes;
+    }
+
+    void setMaxRequestCaptureBytes(final int maxRequestCaptureBytes) {
+        this.maxRequestCaptureBytes = Math.max(0, maxRequestCaptureBytes);
+    }
+
+    int getMaxResponseCaptureBytes() {
+        return this.maxResponseCaptureBytes;
+    }
+
+    void setMaxResponseCaptureBytes(final int maxResponseCaptureBytes) {
+        this.maxResponseCaptureBytes = Math.max(0, maxResponseCaptureBytes);
+    }
+
+    void setAllowedContentTypes(final Collection<String> allowedContentTypes) {
+        this.allowedContentTypes = normalize(allowedContentTypes);
+    }
+
+    void setDeniedContentTypes(final Collection<String> deniedContentTypes) {
+        this.deniedContentTypes = normalize(deniedContentTypes);
+    }
+
+    double getSampleRate() {
+        return this.sampleRate;
+    }
+
+    void setSampleRate(final double sampleRate) {
+        this.sampleRate = checkRate(sampleRate);
+    }
+
+    void setZoneSampleRates(final Map<String, Double> zoneSampleRates) {
+        Map<String, Double> rates = new HashMap<>();
+        if (null != zoneSampleRates) {
+            zoneSampleRates.forEach((zone, rate) -> rates.put(zone, checkRate(rate)));
+        }
+        this.zoneSampleRates = rates;
+    }
+}
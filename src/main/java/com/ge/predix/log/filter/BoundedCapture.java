@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.log.filter;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Keeps the first {@code limit} bytes appended to it and remembers whether anything past the limit was dropped. The
+ * backing array grows with the content, so short bodies never pay for the limit.
+ */
+final class BoundedCapture {
+
+    private static final int MIN_GROWTH = 256;
+    private static final byte[] EMPTY_BYTES = new byte[0];
+
+    private final int limit;
+    private final int initialSize;
+
+    private byte[] buffer = EMPTY_BYTES;
+    private int length;
+    private boolean truncated;
+
+    BoundedCapture(final int limit) {
+        this(limit, MIN_GROWTH);
+    }
+
+    /**
+     * @param initialSize size of the first allocation, typically the declared content length when known
+     */
+    BoundedCapture(final int limit, final int initialSize) {
+        this(limit, initialSize, EMPTY_BYTES);
+    }
+
+    /**
+     * @param buffer array to capture into before anything is allocated, such as one kept from an earlier request
+     */
+    BoundedCapture(final int limit, final int initialSize, final byte[] buffer) {
+        this.limit = Math.max(0, limit);
+        this.initialSize = Math.max(MIN_GROWTH, initialSize);
+        this.buffer = (null == buffer) ? EMPTY_BYTES : buffer;
+    }
+
+    void append(final int b) {
+        if (this.length >= this.limit) {
+            this.truncated = true;
+            return;
+        }
+        ensureCapacity(this.length + 1);
+        this.buffer[this.length++] = (byte) b;
+    }
+
+    void append(final byte[] bytes, final int offset, final int count) {
+        int copied = reserve(count);
+        if (copied > 0) {
+            System.arraycopy(bytes, offset, this.buffer, this.length, copied);
+            this.length += copied;
+        }
+    }
+
+    /**
+     * Copies the remaining bytes of the buffer without changing its position.
+     */
+    void append(final ByteBuffer bytes) {
+        int copied = reserve(bytes.remaining());
+        if (copied > 0) {
+            ByteBuffer source = bytes.duplicate();
+            source.get(this.buffer, this.length, copied);
+            this.length += copied;
+        }
+    }
+
+    private int reserve(final int count) {
+        int copied = Math.min(this.limit - this.length, count);
+        if (copied < count) {
+            this.truncated = true;
+        }
+        if (copied > 0) {
+            ensureCapacity(this.length + copied);
+        }
+        return copied;
+    }
+
+    void clear() {
+        this.buffer = EMPTY_BYTES;
+        this.length = 0;
+        this.truncated = false;
+    }
+
+    int length() {
+        return this.length;
+    }
+
+    boolean isTruncated() {
+        return this.truncated;
+    }
+
+    /**
+     * @return the captured bytes without copying them. Later appends and {@link #clear()} leave the bytes in the view
+     *         unchanged.
+     */
+    ByteBuffer view() {
+        return ByteBuffer.wrap(this.buffer, 0, this.length);
+    }
+
+    /**
+     * @return the backing array, holding the captured bytes in its first {@link #length()} bytes
+     */
+    byte[] array() {
+        return this.buffer;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(this.buffer, this.length);
+    }
+
+    private void ensureCapacity(final int required) {
+        if (required > this.buffer.length) {
+            int grown = Math.max(this.initialSize, this.buffer.length << 1);
+            this.buffer = Arrays.copyOf(this.buffer, Math.min(this.limit, Math.max(grown, required)));
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.log.filter;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+
+import com.ge.predix.audit.AuditCapture;
+
+/**
+ * Request wrapper that keeps a copy of the first {@code maxCaptureBytes} bytes of the body as the application reads
+ * it. Unlike {@link org.springframework.web.util.ContentCachingRequestWrapper} with a limit, the capture buffer
+ * grows with the body instead of being allocated at the limit up front.
+ */
+public class CapturingRequestWrapper extends HttpServletRequestWrapper {
+
+    private static final String FORM_CONTENT_TYPE = "application/x-www-form-urlencoded";
+
+    private final BoundedCapture capture;
+
+    private CapturingInputStream inputStream;
+    private BufferedReader reader;
+    // true once the captured bytes were decoded or encoded with ISO-8859-1 for lack of a declared encoding
+    private boolean latin1Default;
+
+    public CapturingRequestWrapper(final HttpServletRequest request, final int maxCaptureBytes) {
+        this(request, maxCaptureBytes, null);
+    }
+
+    /**
+     * @param buffer array to capture into until the body outgrows it, such as one kept by an
+     *            {@link com.ge.predix.audit.AuditEventSlot}
+     */
+    CapturingRequestWrapper(final HttpServletRequest request, final int maxCaptureBytes, final byte[] buffer) {
+        super(request);
+        this.capture = new BoundedCapture(maxCaptureBytes, request.getContentLength(), buffer);
+    }
+
+    @Override
+    public ServletInputStream getInputStream() throws IOException {
+        if (null == this.inputStream) {
+            this.inputStream = new CapturingInputStream(getRequest().getInputStream());
+        }
+        return this.inputStream;
+    }
+
+    @Override
+    public BufferedReader getReader() throws IOException {
+        if (null == this.reader) {
+            String encoding = getCharacterEncoding();
+            this.latin1Default = null == encoding;
+            this.reader = new BufferedReader(new InputStreamReader(getInputStream(),
+                    (null == encoding) ? StandardCharsets.ISO_8859_1.name() : encoding));
+        }
+        return this.reader;
+    }
+
+    /**
+     * @return true if the body was longer than the capture limit and only a prefix was kept
+     */
+    public boolean isCaptureTruncated() {
+        return this.capture.isTruncated();
+    }
+
+    /**
+     * @return a copy of the captured prefix of the request body. For form posts whose body was consumed through
+     *         the parameter API, the body is rebuilt from the request parameters.
+     */
+    public byte[] getContentAsByteArray() {
+        return content().toByteArray();
+    }
+
+    /**
+     * Like {@link #getContentAsByteArray()}, but shares the capture buffer instead of copying it. Only for use once
+     * the request has been processed.
+     */
+    ByteBuffer getContentAsByteBuffer() {
+        return content().view();
+    }
+
+    /**
+     * @return the array the body was captured into, holding {@link #getContentAsByteBuffer()} in its first bytes
+     */
+    byte[] getCaptureBuffer() {
+        return content().array();
+    }
+
+    int getCaptureLength() {
+        return content().length();
+    }
+
+    /**
+     * @return the charset of the captured body: the request's character encoding if it declares one, ISO-8859-1 if
+     *         the body was read through {@link #getReader()} or rebuilt from form parameters without one, and UTF-8
+     *         otherwise
+     */
+    public Charset getCaptureCharset() {
+        String encoding = getCharacterEncoding();
+        if (null != encoding) {
+            return AuditCapture.forName(encoding);
+        }
+        return this.latin1Default ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8;
+    }
+
+    private BoundedCapture content() {
+        if (0 == this.capture.length() && null == this.inputStream && isFormPost()) {
+            captureFormParameters();
+        }
+        return this.capture;
+    }
+
+    private boolean isFormPost() {
+        String contentType = getContentType();
+        return (null != contentType) && contentType.contains(FORM_CONTENT_TYPE) && "POST".equals(getMethod());
+    }
+
+    private void captureFormParameters() {
+        try {
+            String encoding = getCharacterEncoding();
+            if (null == encoding) {
+                encoding = StandardCharsets.ISO_8859_1.name();
+                this.latin1Default = true;
+            }
+            ByteArrayOutputStream form = new ByteArrayOutputStream();
+            for (Map.Entry<String, String[]> parameter : getParameterMap().entrySet()) {
+                for (String value : parameter.getValue()) {
+                    if (form.size() > 0) {
+                        form.write('&');
+                    }
+                    byte[] pair = (URLEncoder.encode(parameter.getKey(), encoding)
+                            + ((null == value) ? "" : "=" + URLEncoder.encode(value, encoding))).getBytes(encoding);
+                    form.write(pair, 0, pair.length);
+                }
+            }
+            byte[] body = form.toByteArray();
+            this.capture.append(body, 0, body.length);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("Failed to capture form parameters", e);
+        }
+    }
+
+    private final class CapturingInputStream extends ServletInputStream {
+
+        private final ServletInputStream delegate;
+
+        private CapturingInputStream(final ServletInputStream delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = this.delegate.read();
+            if (b != -1) {
+                CapturingRequestWrapper.this.capture.append(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            int count = this.delegate.read(b, off, len);
+            if (count > 0) {
+                CapturingRequestWrapper.this.capture.append(b, off, count);
+            }
+            return count;
+        }
+
+        @Override
+        public int readLine(final byte[] b, final int off, final int len) throws IOException {
+            int count = this.delegate.readLine(b, off, len);
+            if (count > 0) {
+                CapturingRequestWrapper.this.capture.append(b, off, count);
+            }
+            return count;
+        }
+
+        @Override
+        public boolean isFinished() {
+            return this.delegate.isFinished();
+        }
+
+        @Override
+        public boolean isReady() {
+            return this.delegate.isReady();
+        }
+
+        @Override
+        public void setReadListener(final ReadListener readListener) {
+            this.delegate.setReadListener(readListener);
+        }
+    }
+}
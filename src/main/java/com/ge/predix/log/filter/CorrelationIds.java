@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.log.filter;
+
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.UnaryOperator;
+
+/**
+ * Finds the correlation id of a request in its W3C {@code traceparent} or B3 {@code X-B3-TraceId} header, keeps one
+ * already set on the thread, or generates a new one. Generated ids have the shape of a W3C trace id (32 lowercase hex
+ * digits) and come from {@link ThreadLocalRandom}, which neither blocks nor contends between threads the way
+ * {@code UUID.randomUUID()} does on its shared {@code SecureRandom}. Correlation ids identify log lines, they are not
+ * secrets.
+ */
+final class CorrelationIds {
+
+    /** W3C trace context header. */
+    static final String TRACEPARENT = "traceparent";
+    /** Zipkin B3 trace id header. */
+    static final String B3_TRACE_ID = "X-B3-TraceId";
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final int TRACE_ID_LENGTH = 32;
+    private static final int B3_SHORT_TRACE_ID_LENGTH = 16;
+    // version "-" trace-id "-" parent-id "-" flags
+    private static final int TRACEPARENT_LENGTH = 55;
+
+    private CorrelationIds() {
+    }
+
+    /**
+     * @param headers looks up a request header by name
+     * @return the trace id carried by the request, or a newly generated id
+     */
+    static String resolve(final UnaryOperator<String> headers) {
+        return resolve(headers, null);
+    }
+
+    /**
+     * @param headers looks up a request header by name
+     * @param current the id already set for the request, such as by an upstream filter or agent, or null
+     * @return the trace id carried by the request, else {@code current} if not empty, else a newly generated id
+     */
+    static String resolve(final UnaryOperator<String> headers, final String current) {
+        String traceId = parseTraceparent(headers.apply(TRACEPARENT));
+        if (null == traceId) {
+            traceId = parseB3TraceId(headers.apply(B3_TRACE_ID));
+        }
+        if (null == traceId) {
+            traceId = (null == current || current.isEmpty()) ? generate() : current;
+        }
+        return traceId;
+    }
+
+    /**
+     * @return the trace id of a valid {@code traceparent} header value, or null
+     */
+    static String parseTraceparent(final String header) {
+        if (null == header || header.length() < TRACEPARENT_LENGTH) {
+            return null;
+        }
+        // version 00 has exactly four fields; later versions may append more after another dash
+        if (header.charAt(2) != '-' || header.charAt(35) != '-' || header.charAt(52) != '-'
+                || (header.length() > TRACEPARENT_LENGTH
+                        && (header.startsWith("00") || header.charAt(TRACEPARENT_LENGTH) != '-'))) {
+            return null;
+        }
+        if (!isLowerHex(header, 0, 2) || header.startsWith("ff") || !isLowerHex(header, 36, 52)
+                || isAllZeros(header, 36, 52) || !isLowerHex(header, 53, TRACEPARENT_LENGTH)) {
+            return null;
+        }
+        if (!isLowerHex(header, 3, 35) || isAllZeros(header, 3, 35)) {
+            return null;
+        }
+        return header.substring(3, 35);
+    }
+
+    /**
+     * @return the lowercase 16 or 32 hex digit trace id of a valid {@code X-B3-TraceId} header value, or null
+     */
+    static String parseB3TraceId(final String header) {
+        if (null == header
+                || (header.length() != TRACE_ID_LENGTH && header.length() != B3_SHORT_TRACE_ID_LENGTH)) {
+            return null;
+        }
+        String traceId = header;
+        if (!isLowerHex(traceId, 0, traceId.length())) {
+            traceId = traceId.toLowerCase(Locale.ROOT);
+            if (!isLowerHex(traceId, 0, traceId.length())) {
+                return null;
+            }
+        }
+        return isAllZeros(traceId, 0, traceId.length()) ? null : traceId;
+    }
+
+    /**
+     * @return a random, non-zero, 32 hex digit trace id
+     */
+    static String generate() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long high;
+        long low;
+        do {
+            high = random.nextLong();
+            low = random.nextLong();
+        } while (high == 0 && low == 0);
+        char[] chars = new char[TRACE_ID_LENGTH];
+        writeHex(high, chars, 0);
+        writeHex(low, chars, 16);
+        return new String(chars);
+    }
+
+    private static void writeHex(final long value, final char[] chars, final int offset) {
+        for (int i = 0; i < 16; i++) {
+            chars[offset + i] = HEX[(int) (value >>> (60 - 4 * i)) & 0xf];
+        }
+    }
+
+    private static boolean isLowerHex(final String value, final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            char c = value.charAt(i);
+            if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAllZeros(final String value, final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            if (value.charAt(i) != '0') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.log.filter;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Resolves the zone encoded as a subdomain of one of the configured hostnames. The hostnames are compiled into a
+ * trie keyed by their labels in reverse order ({@code com -> example -> api}), so a lookup walks the server name
+ * once from the right instead of testing every hostname. Results are kept in a bounded cache, and every request for
+ * the same server name gets the same zone {@code String} instance.
+ *
+ * <p>
+ * Resolution matches the original linear scan: a server name equal to a configured hostname resolves to the default
+ * zone; otherwise the first configured hostname (in iteration order) that is a dot-separated suffix of the server
+ * name wins, and the zone is everything before it.
+ * </p>
+ */
+final class HostnameZoneResolver {
+
+    /** Cache size used unless configured otherwise. */
+    static final int DEFAULT_CACHE_SIZE = 10000;
+
+    // Stands in for "no zone" in the cache, which cannot hold nulls. Compared by identity.
+    private static final String NO_ZONE = new String("");
+
+    private final Node root = new Node();
+    private final String defaultZone;
+    private final int maxCacheSize;
+    private final ConcurrentMap<String, String> cache;
+
+    HostnameZoneResolver(final Collection<String> hostnames, final String defaultZone) {
+        this(hostnames, defaultZone, DEFAULT_CACHE_SIZE);
+    }
+
+    HostnameZoneResolver(final Collection<String> hostnames, final String defaultZone, final int maxCacheSize) {
+        this.defaultZone = defaultZone;
+        this.maxCacheSize = maxCacheSize;
+        this.cache = new ConcurrentHashMap<>(Math.min(maxCacheSize, 1024));
+        int order = 0;
+        for (String hostname : hostnames) {
+            insert(hostname, order++);
+        }
+    }
+
+    String resolve(final String serverName) {
+        if (null == serverName) {
+            return null;
+        }
+        String zone = this.cache.get(serverName);
+        if (null == zone) {
+            zone = lookup(serverName);
+            if (null == zone) {
+                zone = NO_ZONE;
+            }
+            if (this.cache.size() >= this.maxCacheSize) {
+                // a flood of distinct host headers should not pin stale entries forever
+                this.cache.clear();
+            }
+            String existing = this.cache.putIfAbsent(serverName, zone);
+            if (null != existing) {
+                zone = existing;
+            }
+        }
+        return (zone == NO_ZONE) ? null : zone;
+    }
+
+    int cacheSize() {
+        return this.cache.size();
+    }
+
+    private void insert(final String hostname, final int order) {
+        Node node = this.root;
+        int end = hostname.length();
+        while (true) {
+            int dot = hostname.lastIndexOf('.', end - 1);
+            node = node.getOrAddChild(hostname.substring(dot + 1, end));
+            if (dot < 0) {
+                break;
+            }
+            end = dot;
+        }
+        if (node.order < 0) {
+            node.order = order;
+        }
+    }
+
+    private String lookup(final String serverName) {
+        Node node = this.root;
+        int end = serverName.length();
+        int bestOrder = Integer.MAX_VALUE;
+        int bestZoneEnd = -1;
+        while (true) {
+            int dot = serverName.lastIndexOf('.', end - 1);
+            node = node.findChild(serverName, dot + 1, end - dot - 1);
+            if (null == node) {
+                break;
+            }
+            if (dot < 0) {
+                if (node.order >= 0) {
+                    // an exact hostname match takes precedence over any suffix match
+                    return this.defaultZone;
+                }
+                break;
+            }
+            if (node.order >= 0 && node.order < bestOrder) {
+                bestOrder = node.order;
+                bestZoneEnd = dot;
+            }
+            end = dot;
+        }
+        return (bestZoneEnd < 0) ? null : serverName.substring(0, bestZoneEnd);
+    }
+
+    private static final class Node {
+
+        private static final String[] NO_LABELS = new String[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        private String[] labels = NO_LABELS;
+        private Node[] children = NO_CHILDREN;
+        // insertion order of the hostname ending at this node, or -1
+        private int order = -1;
+
+        private Node findChild(final String source, final int offset, final int length) {
+            for (int i = 0; i < this.labels.length; i++) {
+                String label = this.labels[i];
+                if (label.length() == length && source.regionMatches(offset, label, 0, length)) {
+                    return this.children[i];
+                }
+            }
+            return null;
+        }
+
+        private Node getOrAddChild(final String label) {
+            Node child = findChild(label, 0, label.length());
+            if (null == child) {
+                child = new Node();
+                this.labels = Arrays.copyOf(this.labels, this.labels.length + 1);
+                this.children = Arrays.copyOf(this.children, this.children.length + 1);
+                this.labels[this.labels.length - 1] = label;
+                this.children[this.children.length - 1] = child;
+            }
+            return child;
+        }
+    }
+}
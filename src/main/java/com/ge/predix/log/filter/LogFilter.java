@@ -17,9 +17,14 @@
 package com.ge.predix.log.filter;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Instant;
 import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
 
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -28,15 +33,21 @@ import javax.servlet.http.HttpServletResponse;
 import org.slf4j.MDC;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.util.StreamUtils;
 import org.springframework.util.StringUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
-import org.springframework.web.util.ContentCachingRequestWrapper;
-import org.springframework.web.util.ContentCachingResponseWrapper;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ge.predix.audit.AsyncAuditDispatcher;
+import com.ge.predix.audit.AuditCapture;
 import com.ge.predix.audit.AuditEvent;
 import com.ge.predix.audit.AuditEventProcessor;
+import com.ge.predix.audit.AuditEventRing;
+import com.ge.predix.audit.AuditEventSlot;
+import com.ge.predix.audit.AuditRateLimiter;
+import com.ge.predix.log.context.MdcBackend;
+import com.ge.predix.log.context.MdcScope;
+import com.ge.predix.log.context.MdcSnapshot;
+import com.ge.predix.metrics.FilterMetrics;
+import com.ge.predix.metrics.FilterPhase;
 import com.ge.predix.vcap.VcapApplication;
 
 public class LogFilter extends OncePerRequestFilter {
@@ -45,7 +56,14 @@ public class LogFilter extends OncePerRequestFilter {
     private static final String APP_NAME = "APP_NAME";
     private static final String INSTANCE_ID = "INSTANCE_ID";
     private static final String INSTANCE_INDEX = "INSTANCE_INDEX";
-    private static final String ZONE_HEADER_NAME = "Zone-Id";
+    /** MDC key holding the zone of the current request. */
+    static final String ZONE_HEADER_NAME = "Zone-Id";
+    /** Default MDC key of the correlation id, the key read by the Predix layout and encoder. */
+    static final String DEFAULT_CORRELATION_KEY = "traceId";
+    /** Default response header echoing the correlation id. */
+    static final String DEFAULT_CORRELATION_RESPONSE_HEADER = "X-Correlation-Id";
+    // request attribute carrying the request's MDC over to async dispatches
+    private static final String MDC_ATTRIBUTE = LogFilter.class.getName() + ".MDC";
 
     @Value("${VCAP_APPLICATION:}")
     private String vcapApplicationEnvJson;
@@ -54,13 +72,36 @@ public class LogFilter extends OncePerRequestFilter {
 
     @Autowired(required = false)
     private AuditEventProcessor auditProcessor;
-    
-    private ObjectMapper mapper = new ObjectMapper();
+
+    @Autowired(required = false)
+    private AsyncAuditDispatcher auditDispatcher;
+
+    @Autowired(required = false)
+    private AuditRateLimiter auditRateLimiter;
+
+    @Autowired(required = false)
+    private AuditEventRing auditEventRing;
+
+    @Autowired(required = false)
+    private FilterMetrics metrics = FilterMetrics.NOOP;
+
+    private final BodyCapturePolicy capturePolicy = new BodyCapturePolicy();
 
     private final Set<String> hostnames;
 
     private VcapApplication vcapApplication;
 
+    private final MdcBackend mdcBackend = MdcBackend.detect();
+    private volatile MdcSnapshot staticMdc = MdcSnapshot.EMPTY;
+
+    private boolean asyncDispatchAware;
+
+    private volatile RequestPathRules pathRules = RequestPathRules.NONE;
+
+    private boolean correlationEnabled = true;
+    private String correlationKey = DEFAULT_CORRELATION_KEY;
+    private String correlationResponseHeader = DEFAULT_CORRELATION_RESPONSE_HEADER;
+
     public Set<String> getHostnames() {
         return this.hostnames;
     }
@@ -75,6 +116,7 @@ public class LogFilter extends OncePerRequestFilter {
 
     private final Set<String> zoneHeaders;
     private final String defaultZone;
+    private final HostnameZoneResolver hostnameZoneResolver;
 
     public LogFilter(final LinkedHashSet<String> hostnames, final LinkedHashSet<String> zoneHeaders,
             final String defaultZone) {
@@ -98,6 +140,7 @@ public class LogFilter extends OncePerRequestFilter {
         } else {
             this.defaultZone = defaultZone;
         }
+        this.hostnameZoneResolver = new HostnameZoneResolver(this.hostnames, this.defaultZone);
     }
 
     public LogFilter() {
@@ -108,6 +151,7 @@ public class LogFilter extends OncePerRequestFilter {
         this.zoneHeaders.add("X-Identity-Zone-Id");
         this.defaultZone = "";
         this.vcapApplication = null;
+        this.hostnameZoneResolver = new HostnameZoneResolver(this.hostnames, this.defaultZone);
     }
 
     @Override
@@ -115,69 +159,311 @@ public class LogFilter extends OncePerRequestFilter {
             final HttpServletResponse response, final FilterChain filterChain)
             throws ServletException, IOException {
 
+        if (isAsyncDispatch(request)) {
+            // Only reached in async-dispatch-aware mode. The audit is completed by the listener registered on the
+            // initial dispatch, so this dispatch just gets the request's MDC back.
+            MdcSnapshot mdc = (MdcSnapshot) request.getAttribute(MDC_ATTRIBUTE);
+            if (null == mdc) {
+                mdc = requestMdc(getZoneId(request), correlationId(request));
+            }
+            try (MdcScope mdcScope = this.mdcBackend.install(mdc)) {
+                filterChain.doFilter(request, response);
+            }
+            return;
+        }
+
+        FilterMetrics filterMetrics = this.metrics;
+        long start = filterMetrics.startTime();
+        String zoneId = getZoneId(request);
+        filterMetrics.recordSince(FilterPhase.ZONE_RESOLUTION, start);
+        String correlationId = correlationId(request);
+        boolean audit = isAuditEnabled() && !isAuditSkipped(request) && isAuditPermitted(zoneId);
+        if (null != correlationId && StringUtils.hasText(this.correlationResponseHeader)) {
+            response.setHeader(this.correlationResponseHeader, correlationId);
+        }
+        start = filterMetrics.startTime();
+        MdcSnapshot mdc = requestMdc(zoneId, correlationId);
+        if (this.asyncDispatchAware) {
+            request.setAttribute(MDC_ATTRIBUTE, mdc);
+        }
+        MdcScope mdcScope = this.mdcBackend.install(mdc);
+        filterMetrics.recordSince(FilterPhase.MDC_SETUP, start);
         try {
-            String zoneId = setZoneId(request);
-            addVcapToMDC();
-            addAppNameToMDC();
-            if (null == this.auditProcessor) {
+            if (!audit) {
                 filterChain.doFilter(request, response);
             } else {
-                ContentCachingRequestWrapper cachedRequestWrapper = new ContentCachingRequestWrapper(request);
-                ContentCachingResponseWrapper cachedResponseWrapper = new ContentCachingResponseWrapper(
-                        response);
+                doFilterWithAudit(request, response, filterChain, zoneId);
+            }
+        } finally {
+            mdcScope.close();
+        }
+    }
 
-                filterChain.doFilter(cachedRequestWrapper, cachedResponseWrapper);
+    @Override
+    protected boolean shouldNotFilter(final HttpServletRequest request) {
+        RequestPathRules rules = this.pathRules;
+        return rules.hasSkipRules() && (matchPathRules(rules, request) == RequestPathRules.Action.SKIP);
+    }
 
-                // post request processing.
-                this.auditProcessor.process(new AuditEvent(cachedRequestWrapper, cachedResponseWrapper, zoneId));
-                copyBodyToResponse(cachedResponseWrapper);
-            }
+    private boolean isAuditSkipped(final HttpServletRequest request) {
+        RequestPathRules rules = this.pathRules;
+        return rules.hasAuditSkipRules() && (matchPathRules(rules, request) == RequestPathRules.Action.SKIP_AUDIT);
+    }
+
+    private static RequestPathRules.Action matchPathRules(final RequestPathRules rules,
+            final HttpServletRequest request) {
+        String contextPath = request.getContextPath();
+        return rules.match(request.getMethod(), request.getRequestURI(),
+                (null == contextPath) ? 0 : contextPath.length());
+    }
+
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return !this.asyncDispatchAware;
+    }
+
+    private MdcSnapshot requestMdc(final String zoneId, final String correlationId) {
+        return this.staticMdc.with(ZONE_HEADER_NAME, StringUtils.isEmpty(zoneId) ? null : zoneId)
+                .with(this.correlationKey, correlationId);
+    }
+
+    private String correlationId(final HttpServletRequest request) {
+        // an id an upstream filter or agent already put into the MDC wins over a generated one
+        return this.correlationEnabled ? CorrelationIds.resolve(request::getHeader, MDC.get(this.correlationKey))
+                : null;
+    }
+
+    private boolean isAuditEnabled() {
+        return (null != this.auditDispatcher) || (null != this.auditProcessor);
+    }
+
+    private boolean isAuditPermitted(final String zoneId) {
+        return (null == this.auditRateLimiter) || this.auditRateLimiter.tryAcquire(zoneId);
+    }
+
+    private void audit(final AuditCapture capture) throws IOException {
+        FilterMetrics filterMetrics = this.metrics;
+        long start = filterMetrics.startTime();
+        if (null != this.auditDispatcher) {
+            // event construction and processing happen on the dispatcher's worker threads
+            this.auditDispatcher.dispatch(capture);
+            filterMetrics.recordSince(FilterPhase.AUDIT_DISPATCH, start);
+        } else {
+            AuditEvent event = new AuditEvent(capture);
+            filterMetrics.recordSince(FilterPhase.AUDIT_EVENT, start);
+            start = filterMetrics.startTime();
+            this.auditProcessor.process(event);
+            filterMetrics.recordSince(FilterPhase.AUDIT_PROCESS, start);
+        }
+    }
+
+    private void audit(final AuditEventSlot slot) {
+        FilterMetrics filterMetrics = this.metrics;
+        long start = filterMetrics.startTime();
+        if (null != this.auditDispatcher) {
+            // the dispatcher releases the slot once the event is processed, or right away if it drops it
+            this.auditDispatcher.dispatch(slot);
+            filterMetrics.recordSince(FilterPhase.AUDIT_DISPATCH, start);
+            return;
+        }
+        try {
+            AuditEvent event = slot.view();
+            filterMetrics.recordSince(FilterPhase.AUDIT_EVENT, start);
+            start = filterMetrics.startTime();
+            this.auditProcessor.process(event);
+            filterMetrics.recordSince(FilterPhase.AUDIT_PROCESS, start);
         } finally {
-            clearMDC();
+            slot.release();
         }
     }
 
-    private void clearMDC() {
-        MDC.remove(APP_ID);
-        MDC.remove(APP_NAME);
-        MDC.remove(INSTANCE_ID);
-        MDC.remove(INSTANCE_INDEX);
-        MDC.remove(ZONE_HEADER_NAME);
+    private void updateStaticMdc() {
+        this.staticMdc = staticMdcOf(this.vcapApplication, this.customAppName);
     }
 
-    private void addAppNameToMDC() {
+    // The VCAP values never change per request, so they are precomputed into one snapshot that is installed
+    // together with the zone.
+    static MdcSnapshot staticMdcOf(final VcapApplication vcapApplication, final String customAppName) {
+        MdcSnapshot snapshot = MdcSnapshot.EMPTY;
+        if (vcapApplication != null) {
+            snapshot = snapshot.with(APP_ID, vcapApplication.getAppId())
+                    .with(APP_NAME, vcapApplication.getAppName())
+                    .with(INSTANCE_ID, vcapApplication.getInstanceId())
+                    .with(INSTANCE_INDEX, vcapApplication.getInstanceIndex());
+        }
         if (customAppName != null) {
-            MDC.put(APP_NAME, customAppName);
-        } else if (this.vcapApplication != null) {
-            MDC.put(APP_NAME, this.vcapApplication.getAppName());
+            snapshot = snapshot.with(APP_NAME, customAppName);
         }
+        return snapshot;
     }
 
-    private void addVcapToMDC() {
-        if (this.vcapApplication != null) {
-            MDC.put(APP_ID, this.vcapApplication.getAppId());
-            MDC.put(INSTANCE_ID, this.vcapApplication.getInstanceId());
-            MDC.put(INSTANCE_INDEX, this.vcapApplication.getInstanceIndex());
+    private void doFilterWithAudit(final HttpServletRequest request, final HttpServletResponse response,
+            final FilterChain filterChain, final String zoneId) throws ServletException, IOException {
+        // in recycling mode the bodies are captured into buffers the slot kept from earlier requests
+        AuditEventSlot slot = (null == this.auditEventRing) ? null : this.auditEventRing.acquire();
+        // Sampling and the request content type are known up front, so requests whose bodies are not captured skip
+        // the wrappers entirely.
+        boolean sampled = this.capturePolicy.isSampled(zoneId);
+        CapturingRequestWrapper requestWrapper = null;
+        if (sampled && this.capturePolicy.getMaxRequestCaptureBytes() > 0
+                && this.capturePolicy.isCapturable(request.getContentType())) {
+            requestWrapper = new CapturingRequestWrapper(request, this.capturePolicy.getMaxRequestCaptureBytes(),
+                    (null == slot) ? null : slot.getRequestBuffer());
+        }
+        TeeResponseWrapper responseWrapper = null;
+        if (sampled && this.capturePolicy.getMaxResponseCaptureBytes() > 0) {
+            responseWrapper = new TeeResponseWrapper(response, this.capturePolicy.getMaxResponseCaptureBytes(),
+                    this.capturePolicy::isCapturable, (null == slot) ? null : slot.getResponseBuffer());
+        }
+
+        // the slot goes back to the ring if the request fails before it is handed on
+        AuditEventSlot unclaimedSlot = slot;
+        try {
+            filterChain.doFilter((null == requestWrapper) ? request : requestWrapper,
+                    (null == responseWrapper) ? response : responseWrapper);
+
+            if (this.asyncDispatchAware && request.isAsyncStarted()) {
+                // the response is not finished yet; audit it once the async request completes
+                request.getAsyncContext().addListener(
+                        new AuditAsyncListener(request, response, requestWrapper, responseWrapper, zoneId, slot));
+                unclaimedSlot = null;
+                return;
+            }
+            // post request processing. The body has already gone to the client; only the captured prefix is audited,
+            // and nothing is captured for responses that are still being written asynchronously.
+            if (null != responseWrapper && request.isAsyncStarted()) {
+                responseWrapper.disableCapture();
+            }
+            unclaimedSlot = null;
+            auditCompleted(request, response, requestWrapper, responseWrapper, zoneId, slot);
+        } finally {
+            if (null != unclaimedSlot) {
+                unclaimedSlot.release();
+            }
         }
     }
 
-    // This method has been made public in the current version of spring-web, in ContentCachingResponseWrapper. Can
-    // be removed after upgrade.
-    private void copyBodyToResponse(final ContentCachingResponseWrapper cachedResponseWrapper) throws IOException {
-        if (cachedResponseWrapper.getContentAsByteArray().length > 0) {
-            cachedResponseWrapper.getResponse().setContentLength(cachedResponseWrapper.getContentAsByteArray().length);
-            StreamUtils.copy(cachedResponseWrapper.getContentAsByteArray(),
-                    cachedResponseWrapper.getResponse().getOutputStream());
-            cachedResponseWrapper.resetBuffer();
+    private void auditCompleted(final HttpServletRequest request, final HttpServletResponse response,
+            final CapturingRequestWrapper requestWrapper, final TeeResponseWrapper responseWrapper,
+            final String zoneId, final AuditEventSlot slot) throws IOException {
+        if (null == slot) {
+            audit(buildCapture(request, response, requestWrapper, responseWrapper, zoneId));
+            return;
+        }
+        try {
+            fillSlot(slot, request, response, requestWrapper, responseWrapper, zoneId);
+        } catch (RuntimeException e) {
+            slot.release();
+            throw e;
         }
+        audit(slot);
     }
 
-    private String setZoneId(final HttpServletRequest request) {
-        String zoneId = getZoneId(request);
-        if (!StringUtils.isEmpty(zoneId)) {
-            MDC.put(ZONE_HEADER_NAME, zoneId);
+    private void fillSlot(final AuditEventSlot slot, final HttpServletRequest request,
+            final HttpServletResponse response, final CapturingRequestWrapper requestWrapper,
+            final TeeResponseWrapper responseWrapper, final String zoneId) {
+        FilterMetrics filterMetrics = this.metrics;
+        long start = filterMetrics.startTime();
+        slot.setMethod(request.getMethod());
+        slot.setRequestUri(request.getRequestURI());
+        slot.setSourceIp(request.getRemoteHost());
+        slot.setZoneId(zoneId);
+        slot.setStatus(response.getStatus());
+        // stamped now, as AuditCapture does, rather than when a dispatcher worker or spill first views the slot
+        slot.setTime(Instant.now());
+        int requestBytes = 0;
+        int responseBytes = 0;
+        if (null != requestWrapper) {
+            requestBytes = requestWrapper.getCaptureLength();
+            slot.setRequestBody(requestWrapper.getCaptureBuffer(), requestBytes, requestWrapper.getCaptureCharset(),
+                    requestWrapper.isCaptureTruncated());
+        }
+        if (null != responseWrapper) {
+            responseBytes = responseWrapper.getCaptureLength();
+            slot.setResponseBody(responseWrapper.getCaptureBuffer(), responseBytes,
+                    responseWrapper.getCaptureCharset(), responseWrapper.isCaptureTruncated());
+        }
+        filterMetrics.recordSince(FilterPhase.BODY_CAPTURE, start);
+        filterMetrics.recordCapturedBytes(requestBytes, responseBytes);
+    }
+
+    private AuditCapture buildCapture(final HttpServletRequest request, final HttpServletResponse response,
+            final CapturingRequestWrapper requestWrapper, final TeeResponseWrapper responseWrapper,
+            final String zoneId) {
+        FilterMetrics filterMetrics = this.metrics;
+        long start = filterMetrics.startTime();
+        AuditCapture.Builder capture = AuditCapture.builder()
+                .method(request.getMethod())
+                .requestUri(request.getRequestURI())
+                .sourceIp(request.getRemoteHost())
+                .zoneId(zoneId)
+                .status(response.getStatus());
+        int requestBytes = 0;
+        int responseBytes = 0;
+        if (null != requestWrapper) {
+            ByteBuffer body = requestWrapper.getContentAsByteBuffer();
+            requestBytes = body.remaining();
+            capture.requestBody(body)
+                    .requestCharset(requestWrapper.getCaptureCharset())
+                    .requestBodyTruncated(requestWrapper.isCaptureTruncated());
+        }
+        if (null != responseWrapper) {
+            ByteBuffer body = responseWrapper.getContentAsByteBuffer();
+            responseBytes = body.remaining();
+            capture.responseBody(body)
+                    .responseCharset(responseWrapper.getCaptureCharset())
+                    .responseBodyTruncated(responseWrapper.isCaptureTruncated());
+        }
+        AuditCapture built = capture.build();
+        filterMetrics.recordSince(FilterPhase.BODY_CAPTURE, start);
+        filterMetrics.recordCapturedBytes(requestBytes, responseBytes);
+        return built;
+    }
+
+    /**
+     * Audits an async request when it completes, including whatever the async processing wrote to the response.
+     */
+    private final class AuditAsyncListener implements AsyncListener {
+
+        private final HttpServletRequest request;
+        private final HttpServletResponse response;
+        private final CapturingRequestWrapper requestWrapper;
+        private final TeeResponseWrapper responseWrapper;
+        private final String zoneId;
+        private final AuditEventSlot slot;
+
+        private AuditAsyncListener(final HttpServletRequest request, final HttpServletResponse response,
+                final CapturingRequestWrapper requestWrapper, final TeeResponseWrapper responseWrapper,
+                final String zoneId, final AuditEventSlot slot) {
+            this.request = request;
+            this.response = response;
+            this.requestWrapper = requestWrapper;
+            this.responseWrapper = responseWrapper;
+            this.zoneId = zoneId;
+            this.slot = slot;
+        }
+
+        @Override
+        public void onComplete(final AsyncEvent event) throws IOException {
+            auditCompleted(this.request, this.response, this.requestWrapper, this.responseWrapper, this.zoneId,
+                    this.slot);
+        }
+
+        @Override
+        public void onTimeout(final AsyncEvent event) {
+            // onComplete follows
+        }
+
+        @Override
+        public void onError(final AsyncEvent event) {
+            // onComplete follows
+        }
+
+        @Override
+        public void onStartAsync(final AsyncEvent event) {
+            // startAsync was called again, which drops the registered listeners
+            event.getAsyncContext().addListener(this);
         }
-        return zoneId;
     }
 
     String getZoneId(final HttpServletRequest request) {
@@ -193,27 +479,183 @@ public class LogFilter extends OncePerRequestFilter {
     }
 
     String getSubdomain(final String hostname) {
-        if (this.hostnames.contains(hostname)) {
-            return this.defaultZone;
-        }
-        for (String internalHostname : this.hostnames) {
-            if (hostname.endsWith("." + internalHostname)) {
-                return hostname.substring(0, hostname.length() - internalHostname.length() - 1);
-            }
-        }
-        return null;
+        return this.hostnameZoneResolver.resolve(hostname);
     }
     
     public void setAuditProcessor(final AuditEventProcessor auditProcessor) {
         this.auditProcessor = auditProcessor;
     }
+
+    /**
+     * When set, audit events are handed to the dispatcher instead of being processed on the request thread. Takes
+     * precedence over {@link #setAuditProcessor(AuditEventProcessor)}.
+     */
+    public void setAuditDispatcher(final AsyncAuditDispatcher auditDispatcher) {
+        this.auditDispatcher = auditDispatcher;
+    }
+
+    /**
+     * Enables recycling mode: audited requests are captured into pre-allocated slots taken from the ring, whose body
+     * buffers are reused from one request to the next, and the processor receives a view of the slot that is only
+     * valid until {@link AuditEventProcessor#process(AuditEvent)} returns. Requests arriving while every slot is in
+     * use are audited as usual.
+     */
+    public void setAuditEventRing(final AuditEventRing auditEventRing) {
+        this.auditEventRing = auditEventRing;
+    }
+
+    /**
+     * When set, requests of zones over their audit rate are served without being audited.
+     */
+    public void setAuditRateLimiter(final AuditRateLimiter auditRateLimiter) {
+        this.auditRateLimiter = auditRateLimiter;
+    }
     
+    public int getMaxRequestCaptureBytes() {
+        return this.capturePolicy.getMaxRequestCaptureBytes();
+    }
+
+    /**
+     * Limits how much of each request body is kept for the audit event; 0 disables request body capture.
+     */
+    public void setMaxRequestCaptureBytes(final int maxRequestCaptureBytes) {
+        this.capturePolicy.setMaxRequestCaptureBytes(maxRequestCaptureBytes);
+    }
+
+    public int getMaxResponseCaptureBytes() {
+        return this.capturePolicy.getMaxResponseCaptureBytes();
+    }
+
+    /**
+     * Limits how much of each response body is kept for the audit event; 0 disables response body capture. The full
+     * body is always sent to the client.
+     */
+    public void setMaxResponseCaptureBytes(final int maxResponseCaptureBytes) {
+        this.capturePolicy.setMaxResponseCaptureBytes(maxResponseCaptureBytes);
+    }
+
+    /**
+     * Only bodies whose content type starts with one of these values are captured. Empty means any content type.
+     */
+    public void setCaptureContentTypes(final Set<String> captureContentTypes) {
+        this.capturePolicy.setAllowedContentTypes(captureContentTypes);
+    }
+
+    /**
+     * Bodies whose content type starts with one of these values are never captured.
+     */
+    public void setExcludedCaptureContentTypes(final Set<String> excludedCaptureContentTypes) {
+        this.capturePolicy.setDeniedContentTypes(excludedCaptureContentTypes);
+    }
+
+    public double getAuditSampleRate() {
+        return this.capturePolicy.getSampleRate();
+    }
+
+    /**
+     * Fraction of audited requests, between 0.0 and 1.0, whose bodies are captured. Requests that are not sampled
+     * still produce an audit event, without bodies.
+     */
+    public void setAuditSampleRate(final double auditSampleRate) {
+        this.capturePolicy.setSampleRate(auditSampleRate);
+    }
+
+    /**
+     * Per-zone overrides of {@link #setAuditSampleRate(double)}.
+     */
+    public void setZoneAuditSampleRates(final Map<String, Double> zoneAuditSampleRates) {
+        this.capturePolicy.setZoneSampleRates(zoneAuditSampleRates);
+    }
+
+    /**
+     * Requests matching these rules bypass the filter entirely: no zone resolution, MDC enrichment or audit. Rules are
+     * paths such as {@code /health} or {@code /static/**}, optionally preceded by methods, as in
+     * {@code GET,HEAD /actuator/**}.
+     */
+    public void setExcludedPaths(final Set<String> excludedPaths) {
+        this.pathRules = this.pathRules.withExcluded(excludedPaths);
+    }
+
+    /**
+     * Requests matching these rules get MDC enrichment but are not audited. Same syntax as
+     * {@link #setExcludedPaths(Set)}.
+     */
+    public void setAuditExcludedPaths(final Set<String> auditExcludedPaths) {
+        this.pathRules = this.pathRules.withAuditExcluded(auditExcludedPaths);
+    }
+
+    /**
+     * Requests matching these rules are filtered in full even when a broader excluded rule matches them, for example
+     * {@code /actuator/auditevents} under an excluded {@code /actuator/**}.
+     */
+    public void setIncludedPaths(final Set<String> includedPaths) {
+        this.pathRules = this.pathRules.withIncluded(includedPaths);
+    }
+
+    /**
+     * Receives the time spent in each phase of the filter and the captured body sizes, for example
+     * {@link com.ge.predix.metrics.MicrometerFilterMetrics}. Nothing is measured by default.
+     */
+    public void setMetrics(final FilterMetrics metrics) {
+        this.metrics = (null == metrics) ? FilterMetrics.NOOP : metrics;
+    }
+
+    public boolean isAsyncDispatchAware() {
+        return this.asyncDispatchAware;
+    }
+
+    /**
+     * When enabled, requests that go async ({@code DeferredResult}, {@code Callable}, {@code CompletableFuture}
+     * return values, {@code AsyncContext}) are audited when the async request completes, with the full response
+     * status and body, and async dispatches run with the request's MDC. Off by default, in which case async requests
+     * are audited when the initial dispatch returns, without a response body.
+     */
+    public void setAsyncDispatchAware(final boolean asyncDispatchAware) {
+        this.asyncDispatchAware = asyncDispatchAware;
+    }
+
+    public boolean isCorrelationEnabled() {
+        return this.correlationEnabled;
+    }
+
+    /**
+     * When enabled (the default), every request gets a correlation id in the MDC: the trace id of its
+     * {@code traceparent} or {@code X-B3-TraceId} header, else the id already in the MDC under the correlation key,
+     * else a newly generated one.
+     */
+    public void setCorrelationEnabled(final boolean correlationEnabled) {
+        this.correlationEnabled = correlationEnabled;
+    }
+
+    public String getCorrelationKey() {
+        return this.correlationKey;
+    }
+
+    /**
+     * MDC key of the correlation id. Should match the {@code correlationKey} of the Predix encoder or layout.
+     */
+    public void setCorrelationKey(final String correlationKey) {
+        this.correlationKey = StringUtils.hasText(correlationKey) ? correlationKey : DEFAULT_CORRELATION_KEY;
+    }
+
+    public String getCorrelationResponseHeader() {
+        return this.correlationResponseHeader;
+    }
+
+    /**
+     * Response header that echoes the correlation id back to the client; empty to not echo it.
+     */
+    public void setCorrelationResponseHeader(final String correlationResponseHeader) {
+        this.correlationResponseHeader = correlationResponseHeader;
+    }
+
     public String getCustomAppName() {
         return customAppName;
     }
 
     public void setCustomAppName(final String customAppName) {
         this.customAppName = customAppName;
+        updateStaticMdc();
     }
 
     @Override
@@ -227,11 +669,12 @@ public class LogFilter extends OncePerRequestFilter {
 
     void setVcapApplication(final String vcapString) {
         try {
-            this.vcapApplication = this.mapper.readValue(vcapString, VcapApplication.class);
+            this.vcapApplication = VcapApplication.parse(vcapString);
         } catch (Exception e) {
             this.logger.error("Error while reading from vcap.");
             this.logger.error(e.getMessage());
             this.vcapApplication = null;
         }
+        updateStaticMdc();
     }
 }
@@ -0,0 +1,413 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.log.filter;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+
+import com.ge.predix.audit.AsyncAuditDispatcher;
+import com.ge.predix.audit.AuditCapture;
+import com.ge.predix.audit.AuditEvent;
+import com.ge.predix.audit.AuditEventProcessor;
+import com.ge.predix.audit.AuditRateLimiter;
+import com.ge.predix.log.context.MdcSnapshot;
+import com.ge.predix.log.context.ReactiveMdc;
+import com.ge.predix.vcap.VcapApplication;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+/**
+ * Non-blocking counterpart of {@link LogFilter} for WebFlux applications. Zone resolution and VCAP enrichment work
+ * the same way, but the resulting {@link MdcSnapshot} travels in the Reactor context instead of a thread local;
+ * use {@link ReactiveMdc} to put it into the MDC around log statements.
+ *
+ * <p>
+ * When auditing is enabled, request and response bodies are tapped as their {@link DataBuffer}s flow through, keeping
+ * only a bounded prefix, and the audit event is produced when the exchange completes. Since this runs on the event
+ * loop, an {@link AsyncAuditDispatcher} should be used for any {@link AuditEventProcessor} that may block.
+ * </p>
+ */
+public class ReactiveLogFilter implements WebFilter, InitializingBean {
+
+    private final Log logger = LogFactory.getLog(getClass());
+
+    @Value("${VCAP_APPLICATION:}")
+    private String vcapApplicationEnvJson;
+
+    private String customAppName;
+
+    @Autowired(required = false)
+    private AuditEventProcessor auditProcessor;
+
+    @Autowired(required = false)
+    private AsyncAuditDispatcher auditDispatcher;
+
+    @Autowired(required = false)
+    private AuditRateLimiter auditRateLimiter;
+
+    private final BodyCapturePolicy capturePolicy = new BodyCapturePolicy();
+
+    private final Set<String> hostnames;
+    private final Set<String> zoneHeaders;
+    private final String defaultZone;
+    private final HostnameZoneResolver hostnameZoneResolver;
+
+    private VcapApplication vcapApplication;
+    private volatile MdcSnapshot staticMdc = MdcSnapshot.EMPTY;
+
+    private volatile RequestPathRules pathRules = RequestPathRules.NONE;
+
+    private boolean correlationEnabled = true;
+    private String correlationKey = LogFilter.DEFAULT_CORRELATION_KEY;
+    private String correlationResponseHeader = LogFilter.DEFAULT_CORRELATION_RESPONSE_HEADER;
+
+    public ReactiveLogFilter(final LinkedHashSet<String> hostnames, final LinkedHashSet<String> zoneHeaders,
+            final String defaultZone) {
+        if ((null == hostnames) || (hostnames.isEmpty())) {
+            this.hostnames = new LinkedHashSet<>();
+            this.hostnames.add("localhost");
+        } else {
+            this.hostnames = hostnames;
+        }
+
+        if ((null == zoneHeaders) || (zoneHeaders.isEmpty())) {
+            this.zoneHeaders = new LinkedHashSet<>();
+            this.zoneHeaders.add("X-Identity-Zone-Id");
+            this.zoneHeaders.add("Predix-Zone-Id");
+        } else {
+            this.zoneHeaders = zoneHeaders;
+        }
+
+        this.defaultZone = (null == defaultZone) ? "" : defaultZone;
+        this.hostnameZoneResolver = new HostnameZoneResolver(this.hostnames, this.defaultZone);
+    }
+
+    public ReactiveLogFilter() {
+        this(null, null, null);
+    }
+
+    @Override
+    public Mono<Void> filter(final ServerWebExchange exchange, final WebFilterChain chain) {
+        RequestPathRules.Action action = matchPathRules(exchange.getRequest());
+        if (action == RequestPathRules.Action.SKIP) {
+            return chain.filter(exchange);
+        }
+        String zoneId = getZoneId(exchange.getRequest());
+        MdcSnapshot mdc = this.staticMdc.with(LogFilter.ZONE_HEADER_NAME, StringUtils.isEmpty(zoneId) ? null : zoneId);
+        if (this.correlationEnabled) {
+            HttpHeaders requestHeaders = exchange.getRequest().getHeaders();
+            String correlationId = CorrelationIds.resolve(requestHeaders::getFirst);
+            if (StringUtils.hasText(this.correlationResponseHeader)) {
+                exchange.getResponse().getHeaders().set(this.correlationResponseHeader, correlationId);
+            }
+            mdc = mdc.with(this.correlationKey, correlationId);
+        }
+
+        Mono<Void> result;
+        if (!isAuditEnabled() || action == RequestPathRules.Action.SKIP_AUDIT || !isAuditPermitted(zoneId)) {
+            result = chain.filter(exchange);
+        } else {
+            AuditTap tap = new AuditTap(exchange, zoneId);
+            result = chain.filter(tap.decorate(exchange)).doFinally(tap::complete);
+        }
+        MdcSnapshot requestMdc = mdc;
+        return result.contextWrite(context -> ReactiveMdc.put(context, requestMdc));
+    }
+
+    private RequestPathRules.Action matchPathRules(final ServerHttpRequest request) {
+        RequestPathRules rules = this.pathRules;
+        if (!rules.hasSkipRules() && !rules.hasAuditSkipRules()) {
+            return RequestPathRules.Action.FILTER;
+        }
+        return rules.match(request.getMethodValue(), request.getPath().pathWithinApplication().value());
+    }
+
+    String getZoneId(final ServerHttpRequest request) {
+        for (String zoneIdHeader : this.zoneHeaders) {
+            String zoneId = request.getHeaders().getFirst(zoneIdHeader);
+            if (!StringUtils.isEmpty(zoneId)) {
+                return zoneId;
+            }
+        }
+        return this.hostnameZoneResolver.resolve(request.getURI().getHost());
+    }
+
+    private boolean isAuditEnabled() {
+        return (null != this.auditDispatcher) || (null != this.auditProcessor);
+    }
+
+    private boolean isAuditPermitted(final String zoneId) {
+        return (null == this.auditRateLimiter) || this.auditRateLimiter.tryAcquire(zoneId);
+    }
+
+    private void audit(final AuditCapture capture) {
+        if (null != this.auditDispatcher) {
+            this.auditDispatcher.dispatch(capture);
+            return;
+        }
+        try {
+            this.auditProcessor.process(new AuditEvent(capture));
+        } catch (Exception e) {
+            this.logger.error("Failed to process audit event: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Per-exchange audit state. Body chunks of one direction are delivered serially, so the captures need no locking.
+     */
+    private final class AuditTap {
+
+        private final ServerWebExchange exchange;
+        private final String zoneId;
+        private final BoundedCapture requestCapture;
+        private final BoundedCapture responseCapture;
+        private volatile boolean responseCaptureEnabled;
+
+        private AuditTap(final ServerWebExchange exchange, final String zoneId) {
+            this.exchange = exchange;
+            this.zoneId = zoneId;
+            BodyCapturePolicy policy = ReactiveLogFilter.this.capturePolicy;
+            boolean sampled = policy.isSampled(zoneId);
+            MediaType requestType = exchange.getRequest().getHeaders().getContentType();
+            this.requestCapture = (sampled && policy.getMaxRequestCaptureBytes() > 0
+                    && policy.isCapturable((null == requestType) ? null : requestType.toString()))
+                            ? new BoundedCapture(policy.getMaxRequestCaptureBytes()) : null;
+            this.responseCapture = (sampled && policy.getMaxResponseCaptureBytes() > 0)
+                    ? new BoundedCapture(policy.getMaxResponseCaptureBytes()) : null;
+            this.responseCaptureEnabled = null != this.responseCapture;
+        }
+
+        private ServerWebExchange decorate(final ServerWebExchange original) {
+            ServerWebExchange.Builder builder = original.mutate();
+            if (null != this.requestCapture) {
+                builder.request(new ServerHttpRequestDecorator(original.getRequest()) {
+                    @Override
+                    public Flux<DataBuffer> getBody() {
+                        return super.getBody().doOnNext(
+                                buffer -> AuditTap.this.requestCapture.append(buffer.asByteBuffer()));
+                    }
+                });
+            }
+            if (null != this.responseCapture) {
+                builder.response(new ServerHttpResponseDecorator(original.getResponse()) {
+                    @Override
+                    public Mono<Void> writeWith(final Publisher<? extends DataBuffer> body) {
+                        if (!startResponseCapture(getHeaders().getContentType())) {
+                            return super.writeWith(body);
+                        }
+                        if (body instanceof Mono) {
+                            return super.writeWith(Mono.from(body).doOnNext(AuditTap.this::captureResponse));
+                        }
+                        return super.writeWith(Flux.from(body).doOnNext(AuditTap.this::captureResponse));
+                    }
+
+                    @Override
+                    public Mono<Void> writeAndFlushWith(
+                            final Publisher<? extends Publisher<? extends DataBuffer>> body) {
+                        // flushed chunked writes are streaming responses, which are never captured
+                        AuditTap.this.responseCaptureEnabled = false;
+                        return super.writeAndFlushWith(body);
+                    }
+                });
+            }
+            return builder.build();
+        }
+
+        private boolean startResponseCapture(final MediaType contentType) {
+            String type = (null == contentType) ? null : contentType.toString();
+            if (TeeResponseWrapper.isStreamingContentType(type)
+                    || !ReactiveLogFilter.this.capturePolicy.isCapturable(type)) {
+                this.responseCaptureEnabled = false;
+            }
+            return this.responseCaptureEnabled;
+        }
+
+        private Charset charsetOf(final MediaType contentType) {
+            Charset charset = (null == contentType) ? null : contentType.getCharset();
+            return (null == charset) ? StandardCharsets.UTF_8 : charset;
+        }
+
+        private void captureResponse(final DataBuffer buffer) {
+            this.responseCapture.append(buffer.asByteBuffer());
+        }
+
+        private void complete(final SignalType signal) {
+            if (SignalType.ON_ERROR == signal) {
+                return;
+            }
+            ServerHttpRequest request = this.exchange.getRequest();
+            ServerHttpResponse response = this.exchange.getResponse();
+            Integer status = response.getRawStatusCode();
+            InetSocketAddress remoteAddress = request.getRemoteAddress();
+            AuditCapture.Builder capture = AuditCapture.builder()
+                    .method(request.getMethodValue())
+                    .requestUri(request.getURI().getRawPath())
+                    .sourceIp((null == remoteAddress) ? null : remoteAddress.getHostString())
+                    .zoneId(this.zoneId)
+                    .status((null == status) ? 200 : status);
+            if (null != this.requestCapture) {
+                capture.requestBody(this.requestCapture.view())
+                        .requestCharset(charsetOf(request.getHeaders().getContentType()))
+                        .requestBodyTruncated(this.requestCapture.isTruncated());
+            }
+            if (this.responseCaptureEnabled) {
+                capture.responseBody(this.responseCapture.view())
+                        .responseCharset(charsetOf(response.getHeaders().getContentType()))
+                        .responseBodyTruncated(this.responseCapture.isTruncated());
+            }
+            audit(capture.build());
+        }
+    }
+
+    public Set<String> getHostnames() {
+        return this.hostnames;
+    }
+
+    public Set<String> getZoneHeaders() {
+        return this.zoneHeaders;
+    }
+
+    public String getDefaultZone() {
+        return this.defaultZone;
+    }
+
+    public void setAuditProcessor(final AuditEventProcessor auditProcessor) {
+        this.auditProcessor = auditProcessor;
+    }
+
+    /**
+     * When set, audit events are handed to the dispatcher instead of being processed on the event loop. Takes
+     * precedence over {@link #setAuditProcessor(AuditEventProcessor)}.
+     */
+    public void setAuditDispatcher(final AsyncAuditDispatcher auditDispatcher) {
+        this.auditDispatcher = auditDispatcher;
+    }
+
+    /**
+     * When set, requests of zones over their audit rate are served without being audited.
+     */
+    public void setAuditRateLimiter(final AuditRateLimiter auditRateLimiter) {
+        this.auditRateLimiter = auditRateLimiter;
+    }
+
+    public void setMaxRequestCaptureBytes(final int maxRequestCaptureBytes) {
+        this.capturePolicy.setMaxRequestCaptureBytes(maxRequestCaptureBytes);
+    }
+
+    public void setMaxResponseCaptureBytes(final int maxResponseCaptureBytes) {
+        this.capturePolicy.setMaxResponseCaptureBytes(maxResponseCaptureBytes);
+    }
+
+    public void setCaptureContentTypes(final Set<String> captureContentTypes) {
+        this.capturePolicy.setAllowedContentTypes(captureContentTypes);
+    }
+
+    public void setExcludedCaptureContentTypes(final Set<String> excludedCaptureContentTypes) {
+        this.capturePolicy.setDeniedContentTypes(excludedCaptureContentTypes);
+    }
+
+    public void setAuditSampleRate(final double auditSampleRate) {
+        this.capturePolicy.setSampleRate(auditSampleRate);
+    }
+
+    public void setZoneAuditSampleRates(final Map<String, Double> zoneAuditSampleRates) {
+        this.capturePolicy.setZoneSampleRates(zoneAuditSampleRates);
+    }
+
+    /**
+     * See {@link LogFilter#setExcludedPaths(Set)}.
+     */
+    public void setExcludedPaths(final Set<String> excludedPaths) {
+        this.pathRules = this.pathRules.withExcluded(excludedPaths);
+    }
+
+    public void setAuditExcludedPaths(final Set<String> auditExcludedPaths) {
+        this.pathRules = this.pathRules.withAuditExcluded(auditExcludedPaths);
+    }
+
+    public void setIncludedPaths(final Set<String> includedPaths) {
+        this.pathRules = this.pathRules.withIncluded(includedPaths);
+    }
+
+    /**
+     * See {@link LogFilter#setCorrelationEnabled(boolean)}.
+     */
+    public void setCorrelationEnabled(final boolean correlationEnabled) {
+        this.correlationEnabled = correlationEnabled;
+    }
+
+    public void setCorrelationKey(final String correlationKey) {
+        this.correlationKey = StringUtils.hasText(correlationKey) ? correlationKey : LogFilter.DEFAULT_CORRELATION_KEY;
+    }
+
+    public void setCorrelationResponseHeader(final String correlationResponseHeader) {
+        this.correlationResponseHeader = correlationResponseHeader;
+    }
+
+    public String getCustomAppName() {
+        return this.customAppName;
+    }
+
+    public void setCustomAppName(final String customAppName) {
+        this.customAppName = customAppName;
+        this.staticMdc = LogFilter.staticMdcOf(this.vcapApplication, this.customAppName);
+    }
+
+    public VcapApplication getVcapApplication() {
+        return this.vcapApplication;
+    }
+
+    void setVcapApplication(final String vcapString) {
+        try {
+            this.vcapApplication = VcapApplication.parse(vcapString);
+        } catch (Exception e) {
+            this.logger.error("Error while reading from vcap.");
+            this.logger.error(e.getMessage());
+            this.vcapApplication = null;
+        }
+        this.staticMdc = LogFilter.staticMdcOf(this.vcapApplication, this.customAppName);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        setVcapApplication(this.vcapApplicationEnvJson);
+    }
+}
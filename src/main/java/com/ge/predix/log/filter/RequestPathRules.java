@@ -0,0 +1,318 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.log.filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Path and method rules deciding how much work the log filters do for a request. The rules are compiled into a trie
+ * keyed by path segment, so matching walks the request path segment by segment and allocates nothing.
+ *
+ * <p>
+ * A rule is a path pattern, optionally preceded by a comma-separated list of methods, for example {@code /health},
+ * {@code /static/**} or {@code GET,HEAD /actuator/**}. A pattern ending in {@code /**} matches the path itself and
+ * everything below it; any other pattern matches the exact path. Patterns are matched against the undecoded request
+ * path within the application, ignoring path parameters such as {@code ;jsessionid=...}. A path that still holds a
+ * {@code .} or {@code ..} segment, plain or percent-encoded, is always {@link Action#FILTER filtered}: the container
+ * may serve it from another path once normalized, so no rule written for the raw path can be trusted to hold for it.
+ * The most specific matching rule wins: a longer path beats a shorter one, an exact pattern beats a {@code /**}
+ * pattern for the same path, and a rule naming the method beats one that does not. An included rule wins a tie, so it
+ * can carve exceptions out of a broader exclusion.
+ * </p>
+ */
+final class RequestPathRules {
+
+    /** What a filter does for a request. */
+    enum Action {
+        /** Full filtering: MDC enrichment and audit. */
+        FILTER,
+        /** MDC enrichment only. */
+        SKIP_AUDIT,
+        /** The filter is bypassed. */
+        SKIP
+    }
+
+    /** Rules that match nothing. */
+    static final RequestPathRules NONE = new RequestPathRules(Collections.emptyList(), Collections.emptyList(),
+            Collections.emptyList());
+
+    private static final String PREFIX_SUFFIX = "/**";
+
+    private final Collection<String> included;
+    private final Collection<String> auditExcluded;
+    private final Collection<String> excluded;
+
+    private final Node root = new Node();
+    private final boolean skipRules;
+    private final boolean auditSkipRules;
+
+    private RequestPathRules(final Collection<String> included, final Collection<String> auditExcluded,
+            final Collection<String> excluded) {
+        this.included = included;
+        this.auditExcluded = auditExcluded;
+        this.excluded = excluded;
+        // tie-breaking follows insertion order, so included rules go first
+        included.forEach(rule -> add(rule, Action.FILTER));
+        auditExcluded.forEach(rule -> add(rule, Action.SKIP_AUDIT));
+        excluded.forEach(rule -> add(rule, Action.SKIP));
+        this.skipRules = !excluded.isEmpty();
+        this.auditSkipRules = !auditExcluded.isEmpty();
+    }
+
+    /**
+     * @return rules with the given patterns for requests that are filtered in full, overriding broader exclusions
+     */
+    RequestPathRules withIncluded(final Collection<String> rules) {
+        return new RequestPathRules(copy(rules), this.auditExcluded, this.excluded);
+    }
+
+    /**
+     * @return rules with the given patterns for requests that get MDC enrichment but are not audited
+     */
+    RequestPathRules withAuditExcluded(final Collection<String> rules) {
+        return new RequestPathRules(this.included, copy(rules), this.excluded);
+    }
+
+    /**
+     * @return rules with the given patterns for requests that bypass the filter
+     */
+    RequestPathRules withExcluded(final Collection<String> rules) {
+        return new RequestPathRules(this.included, this.auditExcluded, copy(rules));
+    }
+
+    /**
+     * @return true if some request may match {@link Action#SKIP}
+     */
+    boolean hasSkipRules() {
+        return this.skipRules;
+    }
+
+    /**
+     * @return true if some request may match {@link Action#SKIP_AUDIT}
+     */
+    boolean hasAuditSkipRules() {
+        return this.auditSkipRules;
+    }
+
+    Action match(final String method, final String path) {
+        return match(method, path, 0);
+    }
+
+    /**
+     * @param offset where the path within the application starts, i.e. the length of the context path
+     */
+    Action match(final String method, final String path, final int offset) {
+        if (hasDotSegment(path, offset)) {
+            return Action.FILTER;
+        }
+        Node node = this.root;
+        Rule best = node.select(node.prefixRules, method);
+        int start = offset;
+        int length = path.length();
+        while (true) {
+            while (start < length && path.charAt(start) == '/') {
+                start++;
+            }
+            if (start >= length) {
+                break;
+            }
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = length;
+            }
+            int parameters = path.indexOf(';', start);
+            int segmentEnd = (parameters >= 0 && parameters < end) ? parameters : end;
+            node = node.findChild(path, start, segmentEnd - start);
+            if (null == node) {
+                return (null == best) ? Action.FILTER : best.action;
+            }
+            Rule prefix = node.select(node.prefixRules, method);
+            if (null != prefix) {
+                best = prefix;
+            }
+            start = end;
+        }
+        Rule exact = node.select(node.exactRules, method);
+        if (null != exact) {
+            return exact.action;
+        }
+        return (null == best) ? Action.FILTER : best.action;
+    }
+
+    /**
+     * @return true if a segment of the path, without its parameters, is {@code .} or {@code ..}, with any of the dots
+     *         written as {@code %2e}
+     */
+    static boolean hasDotSegment(final String path, final int offset) {
+        int length = path.length();
+        int start = offset;
+        while (start < length) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = length;
+            }
+            int parameters = path.indexOf(';', start);
+            if (isDotSegment(path, start, (parameters >= 0 && parameters < end) ? parameters : end)) {
+                return true;
+            }
+            start = end + 1;
+        }
+        return false;
+    }
+
+    private static boolean isDotSegment(final String path, final int start, final int end) {
+        int dots = 0;
+        int i = start;
+        while (i < end) {
+            if (path.charAt(i) == '.') {
+                i++;
+            } else if (i + 3 <= end && path.regionMatches(true, i, "%2e", 0, 3)) {
+                i += 3;
+            } else {
+                return false;
+            }
+            dots++;
+        }
+        return dots == 1 || dots == 2;
+    }
+
+    private void add(final String rule, final Action action) {
+        String trimmed = rule.trim();
+        String[] methods = null;
+        int slash = trimmed.indexOf('/');
+        if (slash > 0) {
+            if (!Character.isWhitespace(trimmed.charAt(slash - 1))) {
+                throw new IllegalArgumentException("Path rule must start with '/': " + rule);
+            }
+            // methods may be separated by commas, spaces or both, as in "GET, HEAD /x"
+            methods = Arrays.stream(trimmed.substring(0, slash).split("[,\\s]+"))
+                    .filter(method -> !method.isEmpty()).map(method -> method.toUpperCase(Locale.ROOT))
+                    .toArray(String[]::new);
+            trimmed = trimmed.substring(slash);
+        }
+        if (!trimmed.startsWith("/")) {
+            throw new IllegalArgumentException("Path rule must start with '/': " + rule);
+        }
+        boolean prefix = trimmed.endsWith(PREFIX_SUFFIX);
+        String pattern = prefix ? trimmed.substring(0, trimmed.length() - PREFIX_SUFFIX.length()) : trimmed;
+        Node node = this.root;
+        for (String segment : pattern.split("/")) {
+            if (!segment.isEmpty()) {
+                node = node.getOrAddChild(segment);
+            }
+        }
+        Rule compiled = new Rule(methods, action);
+        if (prefix) {
+            node.prefixRules = append(node.prefixRules, compiled);
+        } else {
+            node.exactRules = append(node.exactRules, compiled);
+        }
+    }
+
+    private static Rule[] append(final Rule[] rules, final Rule rule) {
+        Rule[] result = Arrays.copyOf(rules, rules.length + 1);
+        result[rules.length] = rule;
+        return result;
+    }
+
+    private static Collection<String> copy(final Collection<String> rules) {
+        if (null == rules) {
+            return Collections.emptyList();
+        }
+        List<String> copy = new ArrayList<>(rules.size());
+        for (String rule : rules) {
+            if (null != rule && !rule.trim().isEmpty()) {
+                copy.add(rule);
+            }
+        }
+        return copy;
+    }
+
+    private static final class Rule {
+
+        // null matches any method
+        private final String[] methods;
+        private final Action action;
+
+        private Rule(final String[] methods, final Action action) {
+            this.methods = methods;
+            this.action = action;
+        }
+
+        private boolean matchesMethod(final String method) {
+            for (String candidate : this.methods) {
+                if (candidate.equals(method)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class Node {
+
+        private static final String[] NO_SEGMENTS = new String[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+        private static final Rule[] NO_RULES = new Rule[0];
+
+        private String[] segments = NO_SEGMENTS;
+        private Node[] children = NO_CHILDREN;
+        private Rule[] exactRules = NO_RULES;
+        private Rule[] prefixRules = NO_RULES;
+
+        private Rule select(final Rule[] rules, final String method) {
+            Rule anyMethod = null;
+            for (Rule rule : rules) {
+                if (null == rule.methods) {
+                    if (null == anyMethod) {
+                        anyMethod = rule;
+                    }
+                } else if (rule.matchesMethod(method)) {
+                    return rule;
+                }
+            }
+            return anyMethod;
+        }
+
+        private Node findChild(final String source, final int offset, final int length) {
+            for (int i = 0; i < this.segments.length; i++) {
+                String segment = this.segments[i];
+                if (segment.length() == length && source.regionMatches(offset, segment, 0, length)) {
+                    return this.children[i];
+                }
+            }
+            return null;
+        }
+
+        private Node getOrAddChild(final String segment) {
+            Node child = findChild(segment, 0, segment.length());
+            if (null == child) {
+                child = new Node();
+                this.segments = Arrays.copyOf(this.segments, this.segments.length + 1);
+                this.children = Arrays.copyOf(this.children, this.children.length + 1);
+                this.segments[this.segments.length - 1] = segment;
+                this.children[this.children.length - 1] = child;
+            }
+            return child;
+        }
+    }
+}
@@ -0,0 +1,339 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.log.filter;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Locale;
+import java.util.function.Predicate;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import com.ge.predix.audit.AuditCapture;
+
+/**
+ * Response wrapper that writes straight through to the underlying response while keeping a copy of the first
+ * {@code maxCaptureBytes} bytes of the body for auditing. Unlike
+ * {@link org.springframework.web.util.ContentCachingResponseWrapper} nothing is held back from the client, so
+ * time-to-first-byte and streaming responses are unaffected.
+ *
+ * <p>
+ * Capture switches itself off when the first byte is written with a streaming content type (server-sent events,
+ * NDJSON and similar) or a content type rejected by the supplied predicate, and can be switched off explicitly with
+ * {@link #disableCapture()}.
+ * </p>
+ *
+ * <p>
+ * The writer handed out by {@link #getWriter()} encodes straight into the output stream without a buffer of its own,
+ * so characters reach the response as they are written even if the request fails or completes asynchronously, and
+ * {@link #reset()} leaves nothing stale behind.
+ * </p>
+ */
+public class TeeResponseWrapper extends HttpServletResponseWrapper {
+
+    private static final String[] STREAMING_CONTENT_TYPES = { "text/event-stream", "application/x-ndjson",
+            "application/stream+json", "multipart/x-mixed-replace" };
+
+    private final Predicate<String> capturableContentType;
+    private final BoundedCapture capture;
+
+    private boolean captureEnabled = true;
+    private boolean contentTypeChecked;
+
+    private TeeOutputStream outputStream;
+    private PrintWriter writer;
+
+    public TeeResponseWrapper(final HttpServletResponse response, final int maxCaptureBytes) {
+        this(response, maxCaptureBytes, contentType -> true);
+    }
+
+    public TeeResponseWrapper(final HttpServletResponse response, final int maxCaptureBytes,
+            final Predicate<String> capturableContentType) {
+        this(response, maxCaptureBytes, capturableContentType, null);
+    }
+
+    /**
+     * @param buffer array to capture into until the body outgrows it, such as one kept by an
+     *            {@link com.ge.predix.audit.AuditEventSlot}
+     */
+    TeeResponseWrapper(final HttpServletResponse response, final int maxCaptureBytes,
+            final Predicate<String> capturableContentType, final byte[] buffer) {
+        super(response);
+        this.capture = new BoundedCapture(maxCaptureBytes, 0, buffer);
+        this.capturableContentType = capturableContentType;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (null == this.outputStream) {
+            this.outputStream = new TeeOutputStream(getResponse().getOutputStream());
+        }
+        return this.outputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (null == this.writer) {
+            this.writer = new PrintWriter(
+                    new TeeWriter(getOutputStream(), AuditCapture.forName(getCharacterEncoding())));
+        }
+        return this.writer;
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        clearCapture();
+    }
+
+    @Override
+    public void resetBuffer() {
+        super.resetBuffer();
+        clearCapture();
+    }
+
+    /**
+     * Stops capturing and discards whatever has been captured so far. Writes keep going to the client.
+     */
+    public void disableCapture() {
+        this.captureEnabled = false;
+        clearCapture();
+    }
+
+    public boolean isCaptureEnabled() {
+        return this.captureEnabled;
+    }
+
+    /**
+     * @return true if the body was longer than the capture limit and only a prefix was kept
+     */
+    public boolean isCaptureTruncated() {
+        return this.capture.isTruncated();
+    }
+
+    /**
+     * @return a copy of the captured prefix of the response body
+     */
+    public byte[] getContentAsByteArray() {
+        return this.capture.toByteArray();
+    }
+
+    /**
+     * Like {@link #getContentAsByteArray()}, but shares the capture buffer instead of copying it. Only for use once
+     * the response has been written.
+     */
+    ByteBuffer getContentAsByteBuffer() {
+        return this.capture.view();
+    }
+
+    /**
+     * @return the array the body was captured into, holding {@link #getContentAsByteBuffer()} in its first bytes
+     */
+    byte[] getCaptureBuffer() {
+        return this.capture.array();
+    }
+
+    int getCaptureLength() {
+        return this.capture.length();
+    }
+
+    /**
+     * @return the charset of the captured body: the response's character encoding if the body was written through
+     *         {@link #getWriter()}, otherwise the charset declared by the content type, or UTF-8
+     */
+    public Charset getCaptureCharset() {
+        if (null != this.writer) {
+            return AuditCapture.forName(getCharacterEncoding());
+        }
+        return AuditCapture.charsetOf(getContentType());
+    }
+
+    private void clearCapture() {
+        this.capture.clear();
+        this.contentTypeChecked = false;
+    }
+
+    private boolean shouldCapture() {
+        if (!this.captureEnabled) {
+            return false;
+        }
+        if (!this.contentTypeChecked) {
+            this.contentTypeChecked = true;
+            String contentType = getContentType();
+            if (isStreamingContentType(contentType) || !this.capturableContentType.test(contentType)) {
+                disableCapture();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void capture(final byte[] bytes, final int offset, final int length) {
+        if (shouldCapture()) {
+            this.capture.append(bytes, offset, length);
+        }
+    }
+
+    private void capture(final int b) {
+        if (shouldCapture()) {
+            this.capture.append(b);
+        }
+    }
+
+    static boolean isStreamingContentType(final String contentType) {
+        if (null == contentType) {
+            return false;
+        }
+        String normalized = contentType.toLowerCase(Locale.ROOT);
+        for (String streamingType : STREAMING_CONTENT_TYPES) {
+            if (normalized.startsWith(streamingType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Encodes characters into the output stream as they are written. Only the high half of a surrogate pair split
+     * across two writes is held back.
+     */
+    private static final class TeeWriter extends Writer {
+
+        private static final int ENCODE_BUFFER_BYTES = 1024;
+
+        private final ServletOutputStream out;
+        private final CharsetEncoder encoder;
+        private final ByteBuffer bytes = ByteBuffer.allocate(ENCODE_BUFFER_BYTES);
+        private final CharBuffer pending = CharBuffer.allocate(2);
+
+        private TeeWriter(final ServletOutputStream out, final Charset charset) {
+            this.out = out;
+            this.encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+
+        @Override
+        public void write(final char[] chars, final int offset, final int length) throws IOException {
+            encode(CharBuffer.wrap(chars, offset, length));
+        }
+
+        @Override
+        public void write(final String string, final int offset, final int length) throws IOException {
+            encode(CharBuffer.wrap(string, offset, offset + length));
+        }
+
+        @Override
+        public void flush() throws IOException {
+            this.out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (this.pending.position() > 0) {
+                // a lone high surrogate: let the encoder replace it
+                this.pending.flip();
+                encode(this.pending, true);
+                this.encoder.flush(this.bytes);
+                drain();
+            }
+            this.out.close();
+        }
+
+        private void encode(final CharBuffer chars) throws IOException {
+            while (this.pending.position() > 0 && chars.hasRemaining()) {
+                this.pending.put(chars.get()).flip();
+                encode(this.pending, false);
+                this.pending.compact();
+            }
+            encode(chars, false);
+            if (chars.hasRemaining()) {
+                this.pending.put(chars.get());
+            }
+        }
+
+        private void encode(final CharBuffer chars, final boolean endOfInput) throws IOException {
+            while (true) {
+                CoderResult result = this.encoder.encode(chars, this.bytes, endOfInput);
+                drain();
+                if (result.isUnderflow()) {
+                    return;
+                }
+                if (result.isError()) {
+                    result.throwException();
+                }
+            }
+        }
+
+        private void drain() throws IOException {
+            if (this.bytes.position() > 0) {
+                this.out.write(this.bytes.array(), 0, this.bytes.position());
+                this.bytes.clear();
+            }
+        }
+    }
+
+    private final class TeeOutputStream extends ServletOutputStream {
+
+        private final ServletOutputStream delegate;
+
+        private TeeOutputStream(final ServletOutputStream delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            this.delegate.write(b);
+            capture(b);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            this.delegate.write(b, off, len);
+            capture(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            this.delegate.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.delegate.close();
+        }
+
+        @Override
+        public boolean isReady() {
+            return this.delegate.isReady();
+        }
+
+        @Override
+        public void setWriteListener(final WriteListener writeListener) {
+            this.delegate.setWriteListener(writeListener);
+        }
+    }
+}
@@ -16,7 +16,9 @@
 
 package com.ge.predix.log4j2;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -28,8 +30,6 @@ import java.util.TimeZone;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.ObjectWriter;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.core.Core;
 import org.apache.logging.log4j.core.Layout;
@@ -38,11 +38,15 @@ import org.apache.logging.log4j.core.config.plugins.Plugin;
 import org.apache.logging.log4j.core.config.plugins.PluginAttribute;
 import org.apache.logging.log4j.core.config.plugins.PluginFactory;
 import org.apache.logging.log4j.core.layout.AbstractStringLayout;
+import org.apache.logging.log4j.core.layout.ByteBufferDestination;
+import org.apache.logging.log4j.core.layout.ByteBufferDestinationHelper;
 import org.apache.logging.log4j.message.Message;
 import org.apache.logging.log4j.message.ObjectMessage;
 import org.apache.logging.log4j.status.StatusLogger;
 import org.springframework.util.StringUtils;
 
+import com.ge.predix.json.JsonWriter;
+
 @Plugin(name = "PredixLayout", category = Core.CATEGORY_NAME, elementType = Layout.ELEMENT_TYPE)
 public final class PredixLayout extends AbstractStringLayout {
 
@@ -56,7 +60,7 @@ public final class PredixLayout extends AbstractStringLayout {
     private static final String DEFAULT_TENANT_KEY = "Zone-Id";
     private static final String DEFAULT_CORRELATION_KEY = "traceId";
 
-    private static final ObjectWriter JSON_WRITER = new ObjectMapper().writer();
+    private static final int INITIAL_BUFFER_SIZE = 1024;
 
     private final String tenantKey;
     private final String correlationKey;
@@ -93,6 +97,58 @@ public final class PredixLayout extends AbstractStringLayout {
 
     @Override
     public String toSerializable(final LogEvent event) {
+        // reuse Log4j's per-thread builder rather than growing a new one for every event
+        StringBuilder json = getStringBuilder();
+        try {
+            new JsonWriter(json).value(logFormat(event));
+            return json.append('\n').toString();
+        } catch (IOException e) {
+            return failure(event);
+        }
+    }
+
+    /**
+     * Encodes the event straight to UTF-8 bytes, without building it as a {@code String} first.
+     */
+    @Override
+    public byte[] toByteArray(final LogEvent event) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(INITIAL_BUFFER_SIZE);
+        write(event, bytes);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Streams the event into the appender's buffer, without building it as a {@code String} or byte array first.
+     */
+    @Override
+    public void encode(final LogEvent event, final ByteBufferDestination destination) {
+        // the destination is shared by the appender's threads and a large event is written in several pieces
+        synchronized (destination) {
+            write(event, new DestinationOutputStream(destination));
+        }
+    }
+
+    private void write(final LogEvent event, final OutputStream out) {
+        try {
+            JsonWriter json = new JsonWriter(out, false);
+            json.value(logFormat(event));
+            json.flush();
+            out.write('\n');
+        } catch (IOException e) {
+            byte[] failure = failure(event).getBytes(StandardCharsets.UTF_8);
+            try {
+                out.write(failure, 0, failure.length);
+            } catch (IOException writeFailure) {
+                STATUS_LOGGER.warn("Failed to write log event", writeFailure);
+            }
+        }
+    }
+
+    private static String failure(final LogEvent event) {
+        return "Failed to convert log to json for event: " + event.getMessage();
+    }
+
+    private Map<String, Object> logFormat(final LogEvent event) {
         // need LinkedHashMap to preserve order of log fields
         Map<String, Object> logFormat = new LinkedHashMap<>();
 
@@ -120,11 +176,7 @@ public final class PredixLayout extends AbstractStringLayout {
         if (null != event.getThrown()) {
             logFormat.put("stck", getStackTrace(event));
         }
-        try {
-            return JSON_WRITER.writeValueAsString(logFormat) + "\n";
-        } catch (IOException e) {
-            return "Failed to convert log to json for event: " + event.getMessage();
-        }
+        return logFormat;
     }
 
     private List<List<String>> getStackTrace(final LogEvent event) {
@@ -143,4 +195,23 @@ public final class PredixLayout extends AbstractStringLayout {
 
         return exceptions;
     }
+
+    private static final class DestinationOutputStream extends OutputStream {
+
+        private final ByteBufferDestination destination;
+
+        private DestinationOutputStream(final ByteBufferDestination destination) {
+            this.destination = destination;
+        }
+
+        @Override
+        public void write(final int b) {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+            ByteBufferDestinationHelper.writeToUnsynchronized(b, off, len, this.destination);
+        }
+    }
 }
@@ -19,6 +19,7 @@ package com.ge.predix.logback;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
@@ -31,8 +32,7 @@ import java.util.regex.PatternSyntaxException;
 
 import org.springframework.util.StringUtils;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.ObjectWriter;
+import com.ge.predix.json.JsonWriter;
 
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.classic.spi.IThrowableProxy;
@@ -50,10 +50,9 @@ public class PredixEncoder<E extends ILoggingEvent> extends EncoderBase<E> {
     private static final String DEFAULT_TENANT_KEY = "Zone-Id";
     private static final String DEFAULT_CORRELATION_KEY = "traceId";
 
-    private static final ObjectWriter JSON_WRITER = new ObjectMapper().writer();
-
     private static final int INITIAL_BUFFER_SIZE = 1024;
     private static final byte[] EMPTY_BYTES = new byte[0];
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
 
     private String tenantKey = DEFAULT_TENANT_KEY;
     private String correlationKey = DEFAULT_CORRELATION_KEY;
@@ -130,8 +129,10 @@ public class PredixEncoder<E extends ILoggingEvent> extends EncoderBase<E> {
             logFormat.put("stck", getStackTrace(event));
         }
 
-        JSON_WRITER.writeValue(outputStream, logFormat);
-        outputStream.write(System.lineSeparator().getBytes());
+        JsonWriter json = new JsonWriter(outputStream, false);
+        json.value(logFormat);
+        json.flush();
+        outputStream.write(LINE_SEPARATOR);
     }
 
     private List<List<String>> getStackTrace(final E event) {
@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.metrics;
+
+/**
+ * Receives the time spent in each {@link FilterPhase} and the number of body bytes captured for auditing, so that the
+ * latency the log filter adds can be attributed to a stage. Implementations are called on request threads and must
+ * be thread-safe and cheap.
+ */
+public interface FilterMetrics {
+
+    /** Records nothing and does not read the clock. */
+    FilterMetrics NOOP = new FilterMetrics() {
+
+        @Override
+        public long startTime() {
+            return 0L;
+        }
+
+        @Override
+        public void recordSince(final FilterPhase phase, final long startTime) {
+            // disabled
+        }
+
+        @Override
+        public void recordPhase(final FilterPhase phase, final long nanos) {
+            // disabled
+        }
+
+        @Override
+        public void recordCapturedBytes(final long requestBytes, final long responseBytes) {
+            // disabled
+        }
+    };
+
+    /**
+     * @return the start time to pass to {@link #recordSince(FilterPhase, long)}
+     */
+    default long startTime() {
+        return System.nanoTime();
+    }
+
+    default void recordSince(final FilterPhase phase, final long startTime) {
+        recordPhase(phase, System.nanoTime() - startTime);
+    }
+
+    void recordPhase(FilterPhase phase, long nanos);
+
+    /**
+     * Called once per audited request with the sizes of the captured request and response bodies.
+     */
+    void recordCapturedBytes(long requestBytes, long responseBytes);
+}
@@ -0,0 +1,36 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.metrics;
+
+/**
+ * The stages of request filtering whose duration is reported to {@link FilterMetrics}.
+ */
+public enum FilterPhase {
+
+    /** Resolving the zone from the request headers or host name. */
+    ZONE_RESOLUTION,
+    /** Building the request's MDC and installing it on the thread. */
+    MDC_SETUP,
+    /** Wrapping the request and response and copying the captured bodies into the audit snapshot. */
+    BODY_CAPTURE,
+    /** Handing the audit snapshot to the {@code AsyncAuditDispatcher}. */
+    AUDIT_DISPATCH,
+    /** Building the {@code AuditEvent} from the audit snapshot. */
+    AUDIT_EVENT,
+    /** Running {@code AuditEventProcessor.process}. */
+    AUDIT_PROCESS
+}
@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link FilterMetrics} keeping one {@link LatencyHistogram} per {@link FilterPhase}, in nanoseconds, and totals of
+ * the captured body bytes. Nothing is allocated per request. Read the histograms from a scheduled task, a management
+ * endpoint or a test.
+ */
+public class HistogramFilterMetrics implements FilterMetrics {
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[FilterPhase.values().length];
+    private final LongAdder requestBytes = new LongAdder();
+    private final LongAdder responseBytes = new LongAdder();
+
+    public HistogramFilterMetrics() {
+        for (int i = 0; i < this.histograms.length; i++) {
+            this.histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    @Override
+    public void recordPhase(final FilterPhase phase, final long nanos) {
+        this.histograms[phase.ordinal()].record(nanos);
+    }
+
+    @Override
+    public void recordCapturedBytes(final long requestBodyBytes, final long responseBodyBytes) {
+        this.requestBytes.add(requestBodyBytes);
+        this.responseBytes.add(responseBodyBytes);
+    }
+
+    public LatencyHistogram getHistogram(final FilterPhase phase) {
+        return this.histograms[phase.ordinal()];
+    }
+
+    public long getCapturedRequestBytes() {
+        return this.requestBytes.sum();
+    }
+
+    public long getCapturedResponseBytes() {
+        return this.responseBytes.sum();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder summary = new StringBuilder();
+        for (FilterPhase phase : FilterPhase.values()) {
+            summary.append(phase).append(": ").append(getHistogram(phase)).append('\n');
+        }
+        return summary.append("captured request bytes: ").append(getCapturedRequestBytes())
+                .append(", response bytes: ").append(getCapturedResponseBytes()).toString();
+    }
+}
@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-size, log-linear histogram of non-negative values, typically nanoseconds. Every power of two is split into
+ * eight equal buckets, so a reported percentile is at most 12.5% above the true value, over the whole {@code long}
+ * range. All storage is allocated up front; {@link #record(long)} is a few atomic increments and never allocates.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(final long value) {
+        long clamped = Math.max(0L, value);
+        this.counts.incrementAndGet(bucketIndex(clamped));
+        this.count.increment();
+        this.sum.add(clamped);
+        long currentMax = this.max.get();
+        while (clamped > currentMax && !this.max.compareAndSet(currentMax, clamped)) {
+            currentMax = this.max.get();
+        }
+    }
+
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    public long getSum() {
+        return this.sum.sum();
+    }
+
+    public long getMax() {
+        return this.max.get();
+    }
+
+    public double getMean() {
+        long total = getCount();
+        return (total == 0) ? 0.0 : (double) getSum() / total;
+    }
+
+    /**
+     * @param percentile between 0.0 and 100.0
+     * @return the upper bound of the bucket holding the value at the percentile, or 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(final double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += this.counts.get(i);
+        }
+        if (total == 0) {
+            return 0L;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(Math.min(100.0, Math.max(0.0, percentile)) / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += this.counts.get(i);
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Clears the histogram. Values recorded concurrently may be lost or partially counted.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            this.counts.set(i, 0);
+        }
+        this.count.reset();
+        this.sum.reset();
+        this.max.set(0);
+    }
+
+    static int bucketIndex(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long bucketUpperBound(final int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        long lowerBound = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+        return lowerBound + width - 1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.0f p50=%d p99=%d max=%d", getCount(), getMean(),
+                getValueAtPercentile(50), getValueAtPercentile(99), getMax());
+    }
+}
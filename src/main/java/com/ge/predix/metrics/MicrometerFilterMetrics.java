@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.metrics;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * {@link FilterMetrics} reporting to a Micrometer {@link MeterRegistry}. Requires {@code micrometer-core} on the
+ * classpath. Each phase is a {@code log.filter.phase} timer tagged with the phase name and publishing a percentile
+ * histogram; captured bytes go to the {@code log.filter.captured.bytes} counter tagged with the direction.
+ */
+public class MicrometerFilterMetrics implements FilterMetrics {
+
+    /** Name of the per-phase timers. */
+    public static final String PHASE_TIMER = "log.filter.phase";
+    /** Name of the captured body bytes counters. */
+    public static final String CAPTURED_BYTES_COUNTER = "log.filter.captured.bytes";
+
+    private final Timer[] timers = new Timer[FilterPhase.values().length];
+    private final Counter requestBytes;
+    private final Counter responseBytes;
+
+    public MicrometerFilterMetrics(final MeterRegistry registry) {
+        for (FilterPhase phase : FilterPhase.values()) {
+            this.timers[phase.ordinal()] = Timer.builder(PHASE_TIMER)
+                    .tag("phase", phase.name().toLowerCase(Locale.ROOT))
+                    .description("Time spent by the log filter in one phase of a request")
+                    .publishPercentileHistogram()
+                    .register(registry);
+        }
+        this.requestBytes = Counter.builder(CAPTURED_BYTES_COUNTER).tag("direction", "request").baseUnit("bytes")
+                .register(registry);
+        this.responseBytes = Counter.builder(CAPTURED_BYTES_COUNTER).tag("direction", "response").baseUnit("bytes")
+                .register(registry);
+    }
+
+    @Override
+    public void recordPhase(final FilterPhase phase, final long nanos) {
+        this.timers[phase.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordCapturedBytes(final long requestBodyBytes, final long responseBodyBytes) {
+        this.requestBytes.increment(requestBodyBytes);
+        this.responseBytes.increment(responseBodyBytes);
+    }
+}
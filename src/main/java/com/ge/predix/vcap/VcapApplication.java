@@ -16,24 +16,30 @@
 
 package com.ge.predix.vcap;
 
-import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
-import com.fasterxml.jackson.annotation.JsonProperty;
+import java.io.IOException;
+import java.util.Map;
 
 import lombok.Data;
 
-@JsonIgnoreProperties(ignoreUnknown = true)
 @Data
 public class VcapApplication {
 
-    @JsonProperty("application_id")
     private String appId;
-
-    @JsonProperty("application_name")
     private String appName;
-
-    @JsonProperty("instance_id")
     private String instanceId;
-
-    @JsonProperty("instance_index")
     private String instanceIndex;
+
+    /**
+     * Parses the JSON found in the {@code VCAP_APPLICATION} environment variable. Unknown members are ignored and
+     * numeric values, such as {@code instance_index}, are kept as their text.
+     */
+    public static VcapApplication parse(final String vcapApplicationJson) throws IOException {
+        Map<String, String> members = VcapJsonParser.parseObject(vcapApplicationJson);
+        VcapApplication application = new VcapApplication();
+        application.setAppId(members.get("application_id"));
+        application.setAppName(members.get("application_name"));
+        application.setInstanceId(members.get("instance_id"));
+        application.setInstanceIndex(members.get("instance_index"));
+        return application;
+    }
 }
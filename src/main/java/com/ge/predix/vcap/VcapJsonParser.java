@@ -0,0 +1,236 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.vcap;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Minimal JSON parser for {@code VCAP_APPLICATION}. It reads one JSON object and keeps the members whose values are
+ * strings, numbers or booleans, as text; nested objects and arrays are validated and skipped. That is all
+ * {@link VcapApplication} needs, without pulling in a JSON library.
+ */
+final class VcapJsonParser {
+
+    private final String json;
+    private int pos;
+
+    private VcapJsonParser(final String json) {
+        this.json = json;
+    }
+
+    /**
+     * @return the scalar members of the top-level object; JSON {@code null} values map to {@code null}
+     * @throws IOException if {@code json} is not a single well-formed JSON object
+     */
+    static Map<String, String> parseObject(final String json) throws IOException {
+        if (null == json) {
+            throw new IOException("No VCAP application JSON");
+        }
+        VcapJsonParser parser = new VcapJsonParser(json);
+        Map<String, String> members = new HashMap<>();
+        parser.readObject(members);
+        parser.skipWhitespace();
+        if (parser.pos < json.length()) {
+            throw parser.error("Unexpected content after the JSON object");
+        }
+        return members;
+    }
+
+    private void readObject(final Map<String, String> members) throws IOException {
+        expect('{');
+        if (peek() == '}') {
+            this.pos++;
+            return;
+        }
+        while (true) {
+            if (peek() != '"') {
+                throw error("Expected a member name");
+            }
+            String name = readString();
+            expect(':');
+            String value = readValue();
+            if (null != members) {
+                members.put(name, value);
+            }
+            char next = peek();
+            this.pos++;
+            if (next == '}') {
+                return;
+            }
+            if (next != ',') {
+                throw error("Expected ',' or '}'");
+            }
+        }
+    }
+
+    private void readArray() throws IOException {
+        expect('[');
+        if (peek() == ']') {
+            this.pos++;
+            return;
+        }
+        while (true) {
+            readValue();
+            char next = peek();
+            this.pos++;
+            if (next == ']') {
+                return;
+            }
+            if (next != ',') {
+                throw error("Expected ',' or ']'");
+            }
+        }
+    }
+
+    /**
+     * @return the text of a scalar value, or null for JSON null and for nested objects and arrays
+     */
+    private String readValue() throws IOException {
+        char c = peek();
+        switch (c) {
+        case '"':
+            return readString();
+        case '{':
+            readObject(null);
+            return null;
+        case '[':
+            readArray();
+            return null;
+        case 't':
+            return readLiteral("true");
+        case 'f':
+            return readLiteral("false");
+        case 'n':
+            readLiteral("null");
+            return null;
+        default:
+            return readNumber();
+        }
+    }
+
+    private String readLiteral(final String literal) throws IOException {
+        if (!this.json.startsWith(literal, this.pos)) {
+            throw error("Unexpected value");
+        }
+        this.pos += literal.length();
+        return literal;
+    }
+
+    private String readNumber() throws IOException {
+        int start = this.pos;
+        while (this.pos < this.json.length() && "+-0123456789.eE".indexOf(this.json.charAt(this.pos)) >= 0) {
+            this.pos++;
+        }
+        if (start == this.pos) {
+            throw error("Unexpected value");
+        }
+        return this.json.substring(start, this.pos);
+    }
+
+    private String readString() throws IOException {
+        this.pos++;
+        StringBuilder value = null;
+        int start = this.pos;
+        while (this.pos < this.json.length()) {
+            char c = this.json.charAt(this.pos);
+            if (c == '"') {
+                String text = (null == value) ? this.json.substring(start, this.pos)
+                        : value.append(this.json, start, this.pos).toString();
+                this.pos++;
+                return text;
+            }
+            if (c != '\\') {
+                this.pos++;
+                continue;
+            }
+            if (null == value) {
+                value = new StringBuilder();
+            }
+            value.append(this.json, start, this.pos);
+            value.append(readEscape());
+            start = this.pos;
+        }
+        throw error("Unterminated string");
+    }
+
+    private char readEscape() throws IOException {
+        if (this.pos + 1 >= this.json.length()) {
+            throw error("Unterminated escape");
+        }
+        char c = this.json.charAt(this.pos + 1);
+        this.pos += 2;
+        switch (c) {
+        case '"':
+        case '\\':
+        case '/':
+            return c;
+        case 'b':
+            return '\b';
+        case 'f':
+            return '\f';
+        case 'n':
+            return '\n';
+        case 'r':
+            return '\r';
+        case 't':
+            return '\t';
+        case 'u':
+            if (this.pos + 4 > this.json.length()) {
+                throw error("Unterminated escape");
+            }
+            try {
+                char unicode = (char) Integer.parseInt(this.json.substring(this.pos, this.pos + 4), 16);
+                this.pos += 4;
+                return unicode;
+            } catch (NumberFormatException e) {
+                throw error("Invalid unicode escape");
+            }
+        default:
+            throw error("Invalid escape");
+        }
+    }
+
+    private void expect(final char expected) throws IOException {
+        if (peek() != expected) {
+            throw error("Expected '" + expected + "'");
+        }
+        this.pos++;
+    }
+
+    /**
+     * Skips whitespace and returns the next character without consuming it.
+     */
+    private char peek() throws IOException {
+        skipWhitespace();
+        if (this.pos >= this.json.length()) {
+            throw error("Unexpected end of input");
+        }
+        return this.json.charAt(this.pos);
+    }
+
+    private void skipWhitespace() {
+        while (this.pos < this.json.length() && Character.isWhitespace(this.json.charAt(this.pos))) {
+            this.pos++;
+        }
+    }
+
+    private IOException error(final String message) {
+        return new IOException(message + " at offset " + this.pos + " of VCAP application JSON");
+    }
+}
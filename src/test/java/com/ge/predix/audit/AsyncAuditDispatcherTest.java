@@ -0,0 +1,319 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.audit;
+
+import static com.ge.predix.audit.AuditFixtures.REQUEST_BODY;
+import static com.ge.predix.audit.AuditFixtures.RESPONSE_BODY;
+import static com.ge.predix.audit.AuditFixtures.awaitCount;
+import static com.ge.predix.audit.AuditFixtures.capture;
+import static com.ge.predix.audit.AuditFixtures.event;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.springframework.util.FileSystemUtils;
+import org.testng.annotations.Test;
+
+public class AsyncAuditDispatcherTest {
+
+    @Test
+    public void testEventsAreProcessedOnWorkerThread() throws Exception {
+        List<AuditEvent> events = new CopyOnWriteArrayList<>();
+        List<String> threads = new CopyOnWriteArrayList<>();
+        CountDownLatch latch = new CountDownLatch(2);
+        AsyncAuditDispatcher dispatcher = new AsyncAuditDispatcher(event -> {
+            events.add(event);
+            threads.add(Thread.currentThread().getName());
+            latch.countDown();
+            return true;
+        });
+
+        assertTrue(dispatcher.dispatch(capture("/one")));
+        assertTrue(dispatcher.dispatch(capture("/two")));
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        dispatcher.destroy();
+
+        assertEquals(events.size(), 2);
+        assertEquals(events.get(0).getRequestUri(), "/one");
+        assertEquals(events.get(0).getRequestBody(), REQUEST_BODY);
+        assertEquals(events.get(0).getResponseBody(), RESPONSE_BODY);
+        assertTrue(threads.get(0).startsWith("audit-dispatcher-"));
+        assertEquals(dispatcher.getDispatchedCount(), 2);
+    }
+
+    @Test
+    public void testFullQueueDropsInsteadOfBlocking() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        AsyncAuditDispatcher dispatcher = new AsyncAuditDispatcher(event -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return true;
+        }, 1, 1);
+
+        assertTrue(dispatcher.dispatch(capture("/busy")));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(dispatcher.dispatch(capture("/queued")));
+        assertFalse(dispatcher.dispatch(capture("/dropped")));
+        assertEquals(dispatcher.getDroppedCount(), 1);
+
+        release.countDown();
+        dispatcher.destroy();
+        assertEquals(dispatcher.getQueueSize(), 0);
+        assertFalse(dispatcher.dispatch(capture("/after-shutdown")));
+    }
+
+    @Test
+    public void testProcessorFailureIsCounted() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        AsyncAuditDispatcher dispatcher = new AsyncAuditDispatcher(event -> {
+            latch.countDown();
+            throw new IllegalStateException("sink down");
+        });
+        dispatcher.dispatch(capture("/fail"));
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        dispatcher.destroy();
+        assertEquals(dispatcher.getFailedCount(), 1);
+    }
+
+    @Test
+    public void testSlotsAreReleasedWhenProcessedOrDropped() throws Exception {
+        AuditEventRing ring = new AuditEventRing(2);
+        CountDownLatch latch = new CountDownLatch(1);
+        AsyncAuditDispatcher dispatcher = new AsyncAuditDispatcher(event -> {
+            latch.countDown();
+            throw new IllegalStateException("sink down");
+        });
+        AuditEventSlot slot = ring.acquire();
+        slot.setRequestUri("/slot");
+        assertTrue(dispatcher.dispatch(slot));
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        dispatcher.destroy();
+        assertEquals(dispatcher.getFailedCount(), 1);
+        assertEquals(ring.getAvailableCount(), 2);
+
+        assertFalse(dispatcher.dispatch(ring.acquire()));
+        assertEquals(ring.getAvailableCount(), 2);
+    }
+
+    @Test
+    public void testDropOldestEvictsQueuedCapture() throws Exception {
+        GatedProcessor processor = new GatedProcessor();
+        AsyncAuditDispatcher dispatcher = new AsyncAuditDispatcher(processor, 2, 1, OverflowPolicy.dropOldest());
+        assertTrue(dispatcher.dispatch(capture("/busy")));
+        assertTrue(processor.started.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 4; i++) {
+            assertTrue(dispatcher.dispatch(capture("/" + i)));
+        }
+        processor.release.countDown();
+        dispatcher.destroy();
+
+        assertEquals(processor.uris, Arrays.asList("/busy", "/2", "/3"));
+        assertEquals(dispatcher.getDispatchedCount(), 5);
+        assertEquals(dispatcher.getEvictedCount(), 2);
+        assertEquals(dispatcher.getDroppedCount(), 0);
+    }
+
+    @Test
+    public void testBlockWaitsForRoomThenDrops() throws Exception {
+        GatedProcessor processor = new GatedProcessor();
+        AsyncAuditDispatcher dispatcher = new AsyncAuditDispatcher(processor, 1, 1, OverflowPolicy.block(50));
+        assertTrue(dispatcher.dispatch(capture("/busy")));
+        assertTrue(processor.started.await(5, TimeUnit.SECONDS));
+        assertTrue(dispatcher.dispatch(capture("/queued")));
+        assertFalse(dispatcher.dispatch(capture("/timed-out")));
+        processor.release.countDown();
+        dispatcher.destroy();
+        assertEquals(dispatcher.getBlockedCount(), 1);
+        assertEquals(dispatcher.getDroppedCount(), 1);
+        assertEquals(dispatcher.getDispatchedCount(), 2);
+        assertEquals(processor.uris, Arrays.asList("/busy", "/queued"));
+
+        GatedProcessor slow = new GatedProcessor();
+        AsyncAuditDispatcher blocking = new AsyncAuditDispatcher(slow, 1, 1, OverflowPolicy.block(5000));
+        assertTrue(blocking.dispatch(capture("/busy")));
+        assertTrue(slow.started.await(5, TimeUnit.SECONDS));
+        assertTrue(blocking.dispatch(capture("/queued")));
+        // makes room only once the next dispatch is waiting for it
+        new Thread(() -> {
+            try {
+                awaitCount(blocking::getBlockedCount, 1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            slow.release.countDown();
+        }).start();
+        assertTrue(blocking.dispatch(capture("/blocked")));
+        blocking.destroy();
+        assertEquals(blocking.getBlockedCount(), 1);
+        assertEquals(blocking.getDroppedCount(), 0);
+        assertEquals(blocking.getDispatchedCount(), 3);
+        assertEquals(slow.uris, Arrays.asList("/busy", "/queued", "/blocked"));
+    }
+
+    @Test
+    public void testSpillDrainsBackWhenQueueEmpties() throws Exception {
+        Path directory = Files.createTempDirectory("audit-spill");
+        try {
+            GatedProcessor processor = new GatedProcessor();
+            AsyncAuditDispatcher dispatcher = new AsyncAuditDispatcher(processor, 1, 1,
+                    OverflowPolicy.spill(directory, 1024 * 1024));
+            assertTrue(dispatcher.dispatch(capture("/busy")));
+            assertTrue(processor.started.await(5, TimeUnit.SECONDS));
+            assertTrue(dispatcher.dispatch(capture("/queued")));
+            AuditEventRing ring = new AuditEventRing(1);
+            AuditEventSlot slot = ring.acquire();
+            slot.setMethod("POST");
+            slot.setRequestUri("/slot");
+            slot.setTime(Instant.EPOCH);
+            byte[] body = "{\"a\":1}".getBytes(StandardCharsets.UTF_8);
+            slot.setRequestBody(body, body.length, StandardCharsets.UTF_8, true);
+            for (int i = 0; i < 3; i++) {
+                assertTrue(dispatcher.dispatch(capture("/spilled-" + i)));
+            }
+            assertTrue(dispatcher.dispatch(slot));
+            // written by the spill writer, which releases the slot
+            awaitCount(dispatcher::getSpilledCount, 4);
+            assertEquals(ring.getAvailableCount(), 1);
+            assertTrue(dispatcher.getSpilledBytes() > 0);
+
+            processor.release.countDown();
+            awaitCount(processor.uris::size, 6);
+            dispatcher.destroy();
+
+            assertEquals(processor.uris,
+                    Arrays.asList("/busy", "/queued", "/spilled-0", "/spilled-1", "/spilled-2", "/slot"));
+            AuditEvent restored = processor.events.get(5);
+            assertEquals(restored.getMethod(), "POST");
+            assertEquals(restored.getTime(), Instant.EPOCH);
+            assertEquals(restored.getRequestBody(), "{\"a\":1}");
+            assertTrue(restored.isRequestBodyTruncated());
+            assertEquals(processor.events.get(2).getResponseBody(), RESPONSE_BODY);
+            assertEquals(dispatcher.getRestoredCount(), 4);
+            assertEquals(dispatcher.getSpilledBytes(), 0);
+        } finally {
+            FileSystemUtils.deleteRecursively(directory.toFile());
+        }
+    }
+
+    @Test
+    public void testSpillLimitAndLeftoversFromEarlierRun() throws Exception {
+        Path directory = Files.createTempDirectory("audit-spill");
+        try {
+            GatedProcessor processor = new GatedProcessor();
+            int recordBytes = AuditRecordCodec.encode(event("/spilled-0")).length;
+            AsyncAuditDispatcher dispatcher = new AsyncAuditDispatcher(processor, 1, 1,
+                    OverflowPolicy.spill(directory, 2 * recordBytes));
+            assertTrue(dispatcher.dispatch(capture("/busy")));
+            assertTrue(processor.started.await(5, TimeUnit.SECONDS));
+            assertTrue(dispatcher.dispatch(capture("/queued")));
+            assertTrue(dispatcher.dispatch(capture("/spilled-0")));
+            assertTrue(dispatcher.dispatch(capture("/spilled-1")));
+            // handed to the spill writer, which drops it at the limit
+            assertTrue(dispatcher.dispatch(capture("/spilled-2")));
+            awaitCount(dispatcher::getDroppedCount, 1);
+            assertEquals(dispatcher.getSpilledCount(), 2);
+            // shut down before the spill is read back: the processor is only released once shutdown has begun
+            new Thread(() -> {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                processor.release.countDown();
+            }).start();
+            dispatcher.destroy();
+            assertEquals(processor.uris, Arrays.asList("/busy", "/queued"));
+
+            GatedProcessor next = new GatedProcessor();
+            next.release.countDown();
+            dispatcher = new AsyncAuditDispatcher(next, 1, 1, OverflowPolicy.spill(directory, 2 * recordBytes));
+            awaitCount(next.uris::size, 2);
+            dispatcher.destroy();
+            assertEquals(next.uris, Arrays.asList("/spilled-0", "/spilled-1"));
+            assertEquals(dispatcher.getRestoredCount(), 2);
+        } finally {
+            FileSystemUtils.deleteRecursively(directory.toFile());
+        }
+    }
+
+    @Test
+    public void testCorruptSpillSegmentIsSkipped() throws Exception {
+        Path directory = Files.createTempDirectory("audit-spill");
+        try {
+            byte[] first = AuditRecordCodec.encode(event("/first"));
+            byte[] second = AuditRecordCodec.encode(event("/second"));
+            second[second.length - 1] ^= 1;
+            byte[] segment = Arrays.copyOf(first, first.length + second.length);
+            System.arraycopy(second, 0, segment, first.length, second.length);
+            Files.write(directory.resolve("spill-0.seg"), segment);
+            Files.write(directory.resolve("spill-1.seg"), AuditRecordCodec.encode(event("/third")));
+
+            SpillQueue spill = new SpillQueue(directory, 1024 * 1024);
+            assertEquals(spill.poll().getRequestUri(), "/first");
+            assertEquals(spill.poll().getRequestUri(), "/third");
+            assertEquals(spill.poll(), null);
+            assertEquals(spill.getBytes(), 0);
+            spill.close();
+
+            // a thread that outlived shutdown cannot reopen the directory
+            assertFalse(spill.offer(event("/late")));
+            assertEquals(spill.poll(), null);
+            try (Stream<Path> files = Files.list(directory)) {
+                assertEquals(files.count(), 0);
+            }
+        } finally {
+            FileSystemUtils.deleteRecursively(directory.toFile());
+        }
+    }
+
+    private static final class GatedProcessor implements AuditEventProcessor {
+
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final List<AuditEvent> events = new CopyOnWriteArrayList<>();
+        private final List<String> uris = new CopyOnWriteArrayList<>();
+
+        @Override
+        public boolean process(final AuditEvent auditEvent) {
+            this.started.countDown();
+            try {
+                this.release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            this.events.add(auditEvent);
+            this.uris.add(auditEvent.getRequestUri());
+            return true;
+        }
+    }
+}
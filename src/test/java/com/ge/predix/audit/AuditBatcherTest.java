@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.audit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+public class AuditBatcherTest {
+
+    private static List<AuditBatcher.Entry> run(final FlushPolicy policy, final Recorder recorder,
+            final int... lengths) throws InterruptedException {
+        AuditBatcher<AuditBatcher.Entry> batcher = new AuditBatcher<>("test-batcher", lengths.length, policy,
+                recorder);
+        List<AuditBatcher.Entry> entries = new ArrayList<>();
+        for (int length : lengths) {
+            AuditBatcher.Entry entry = new AuditBatcher.Entry(length, policy.isSynchronous() ? 1 : 0);
+            assertTrue(batcher.offer(entry));
+            entries.add(entry);
+        }
+        batcher.start();
+        batcher.stop();
+        assertTrue(batcher.join(5000));
+        assertFalse(batcher.offer(new AuditBatcher.Entry(1, 0)));
+        return entries;
+    }
+
+    @Test
+    public void testBatchesAreCutByEventsAndBytes() throws Exception {
+        Recorder recorder = new Recorder(true);
+        run(FlushPolicy.batched(3, 1024, 60000), recorder, 1, 1, 1, 1, 1, 1, 1);
+        assertEquals(recorder.batchSizes, Arrays.asList(3, 3, 1));
+
+        recorder = new Recorder(true);
+        // the third entry would take the batch past 10 bytes, so the first two go without it
+        run(FlushPolicy.batched(100, 10, 60000), recorder, 4, 4, 4, 4, 20, 4);
+        assertEquals(recorder.batchSizes, Arrays.asList(2, 2, 1, 1));
+        assertEquals(recorder.batchBytes, Arrays.asList(8L, 8L, 20L, 4L));
+        assertEquals(recorder.abandoned, 0);
+    }
+
+    @Test
+    public void testSynchronousEntriesAwaitTheirBatch() throws Exception {
+        for (AuditBatcher.Entry entry : run(FlushPolicy.synchronous(5000), new Recorder(true), 1, 2, 3)) {
+            assertTrue(entry.await(0));
+        }
+        for (AuditBatcher.Entry entry : run(FlushPolicy.synchronous(5000), new Recorder(false), 1, 2, 3)) {
+            assertFalse(entry.await(0));
+        }
+    }
+
+    @Test
+    public void testInterruptedBatcherHandsBackQueuedEntries() throws Exception {
+        CountDownLatch committing = new CountDownLatch(1);
+        Recorder recorder = new Recorder(true) {
+            @Override
+            public boolean commit(final List<AuditBatcher.Entry> batch, final long batchBytes) {
+                committing.countDown();
+                try {
+                    Thread.sleep(60000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return false;
+            }
+        };
+        AuditBatcher<AuditBatcher.Entry> batcher = new AuditBatcher<>("test-batcher", 10,
+                FlushPolicy.synchronous(5000), recorder);
+        batcher.start();
+        AuditBatcher.Entry stuck = new AuditBatcher.Entry(1, 1);
+        assertTrue(batcher.offer(stuck));
+        assertTrue(committing.await(5, TimeUnit.SECONDS));
+        AuditBatcher.Entry queued = new AuditBatcher.Entry(1, 1);
+        assertTrue(batcher.offer(queued));
+        assertTrue(batcher.offer(new AuditBatcher.Entry(1, 1)));
+        assertEquals(batcher.size(), 2);
+        assertEquals(batcher.peek(), queued);
+
+        batcher.stop();
+        batcher.interrupt();
+        assertTrue(batcher.join(5000));
+        assertFalse(stuck.await(0));
+        assertFalse(queued.await(0));
+        assertEquals(recorder.abandoned, 2);
+        assertEquals(batcher.size(), 0);
+    }
+
+    /**
+     * Records the batches it is handed.
+     */
+    private static class Recorder implements AuditBatcher.Committer<AuditBatcher.Entry> {
+
+        private final boolean succeed;
+        private final List<Integer> batchSizes = new ArrayList<>();
+        private final List<Long> batchBytes = new ArrayList<>();
+        private volatile int abandoned;
+
+        Recorder(final boolean succeed) {
+            this.succeed = succeed;
+        }
+
+        @Override
+        public boolean commit(final List<AuditBatcher.Entry> batch, final long bytes) {
+            this.batchSizes.add(batch.size());
+            this.batchBytes.add(bytes);
+            return this.succeed;
+        }
+
+        @Override
+        public void stopped(final List<AuditBatcher.Entry> entries) {
+            this.abandoned = entries.size();
+        }
+    }
+}
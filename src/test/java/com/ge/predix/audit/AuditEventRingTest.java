@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.audit;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class AuditEventRingTest {
+
+    @Test
+    public void testAcquireUntilExhausted() {
+        AuditEventRing ring = new AuditEventRing(3);
+        Set<AuditEventSlot> slots = new HashSet<>();
+        for (int i = 0; i < 3; i++) {
+            slots.add(ring.acquire());
+        }
+        Assert.assertEquals(slots.size(), 3);
+        Assert.assertFalse(slots.contains(null));
+        Assert.assertEquals(ring.getAvailableCount(), 0);
+        Assert.assertNull(ring.acquire());
+        Assert.assertEquals(ring.getExhaustedCount(), 1);
+
+        AuditEventSlot slot = slots.iterator().next();
+        slot.release();
+        Assert.assertEquals(ring.getAvailableCount(), 1);
+        Assert.assertSame(ring.acquire(), slot);
+    }
+
+    @Test
+    public void testViewAndBufferReuse() {
+        AuditEventRing ring = new AuditEventRing(1, 1024);
+        AuditEventSlot slot = ring.acquire();
+        Assert.assertEquals(slot.getRequestBuffer().length, 0);
+
+        byte[] buffer = new byte[256];
+        byte[] body = "café".getBytes(StandardCharsets.ISO_8859_1);
+        System.arraycopy(body, 0, buffer, 0, body.length);
+        Instant time = Instant.ofEpochSecond(1600000000L);
+        slot.setMethod("POST");
+        slot.setRequestUri("/items");
+        slot.setSourceIp("10.0.0.1");
+        slot.setZoneId("zone");
+        slot.setStatus(201);
+        slot.setTime(time);
+        slot.setRequestBody(buffer, body.length, StandardCharsets.ISO_8859_1, true);
+        slot.setResponseBody(new byte[4096], 0, null, false);
+
+        AuditEvent view = slot.view();
+        Assert.assertEquals(view.getRequestBody(), "café");
+        Assert.assertEquals(view.getRequestCharset(), StandardCharsets.ISO_8859_1);
+        Assert.assertTrue(view.isRequestBodyTruncated());
+        Assert.assertEquals(view.getResponseBody(), "");
+        Assert.assertEquals(view.getResponseCharset(), StandardCharsets.UTF_8);
+        Assert.assertEquals(view.toJson(), new AuditEvent(AuditCapture.builder().method("POST").requestUri("/items")
+                .sourceIp("10.0.0.1").zoneId("zone").status(201).time(time).requestBody(body)
+                .requestCharset(StandardCharsets.ISO_8859_1).requestBodyTruncated(true).build()).toJson());
+
+        slot.release();
+        AuditEventSlot reused = ring.acquire();
+        Assert.assertSame(reused, slot);
+        // the request buffer is kept for the next capture, the response buffer is over the retention limit
+        Assert.assertSame(reused.getRequestBuffer(), buffer);
+        Assert.assertEquals(reused.getResponseBuffer().length, 0);
+        AuditEvent cleared = reused.view();
+        Assert.assertNull(cleared.getMethod());
+        Assert.assertEquals(cleared.getRequestBody(), "");
+        Assert.assertFalse(cleared.isRequestBodyTruncated());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testCapacityMustBePositive() {
+        new AuditEventRing(0);
+    }
+}
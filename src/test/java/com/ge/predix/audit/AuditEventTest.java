@@ -19,8 +19,15 @@ package com.ge.predix.audit;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertTrue;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
@@ -28,6 +35,8 @@ import org.springframework.web.util.ContentCachingRequestWrapper;
 import org.springframework.web.util.ContentCachingResponseWrapper;
 import org.testng.annotations.Test;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 public class AuditEventTest {
 
     private static final String URI = "/guardians/123";
@@ -36,6 +45,8 @@ public class AuditEventTest {
     private static final String REQUEST_BODY = "request content";
     private static final String RESPONSE_BODY = "response content";
 
+    private static final ObjectMapper JACKSON = new ObjectMapper().findAndRegisterModules();
+
     @Test
     public void testAuditEvent() throws IOException {
         MockHttpServletRequest request = new MockHttpServletRequest();
@@ -60,4 +71,118 @@ public class AuditEventTest {
         assertEquals(event.getRequestBody(), REQUEST_BODY);
         assertEquals(event.getResponseBody(), RESPONSE_BODY);
     }
+
+    @Test
+    public void testToStringMatchesJacksonOutput() throws IOException {
+        AuditEvent event = new AuditEvent(AuditCapture.builder()
+                .method(METHOD)
+                .requestUri(URI)
+                .sourceIp("10.0.0.1")
+                .zoneId(ZONE_ID)
+                .status(201)
+                .time(Instant.ofEpochSecond(1612345678, 123000000))
+                .requestBody("{\"name\":\"tab\there\"}".getBytes())
+                .responseBody(RESPONSE_BODY.getBytes())
+                .responseBodyTruncated(true)
+                .build());
+
+        // the format produced when the event was serialized with Jackson and the JSR-310 module
+        String expected = JACKSON.writerWithDefaultPrettyPrinter().writeValueAsString(jacksonProperties(event));
+        assertEquals(event.toString(), expected);
+    }
+
+    @Test
+    public void testCompactStreamingOutput() throws Exception {
+        AuditEvent event = new AuditEvent(AuditCapture.builder()
+                .method(METHOD)
+                .requestUri("/caf\u00e9")
+                .zoneId(ZONE_ID)
+                .status(200)
+                .requestBody(REQUEST_BODY.getBytes())
+                .build());
+        String json = event.toJson();
+        assertEquals(json, JACKSON.writeValueAsString(jacksonProperties(event)));
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        event.writeTo(stream);
+        assertEquals(stream.toString(StandardCharsets.UTF_8.name()), json);
+
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        AuditEventWriter writer = new AuditEventWriter(Arrays.asList(first, second));
+        writer.process(event);
+        writer.destroy();
+        writer = new AuditEventWriter(Collections.singletonList(stream));
+        writer.process(event);
+        writer.destroy();
+        String line = json + System.lineSeparator();
+        assertEquals(first.toString(StandardCharsets.UTF_8.name()), line);
+        assertEquals(second.toString(StandardCharsets.UTF_8.name()), line);
+        assertEquals(stream.toString(StandardCharsets.UTF_8.name()), json + line);
+
+        ByteArrayOutputStream pretty = new ByteArrayOutputStream();
+        writer = new AuditEventWriter(Collections.singletonList(pretty), true);
+        writer.process(event);
+        writer.destroy();
+        assertEquals(pretty.toString(StandardCharsets.UTF_8.name()), event.toString() + System.lineSeparator());
+    }
+
+    @Test
+    public void testBodiesDecodedWithTheirCharsets() throws IOException {
+        String text = "caf\u00e9 \"\u20ac\" \ud83d\ude00";
+        byte[] latin1 = "caf\u00e9 \"\u00e0\"".getBytes(StandardCharsets.ISO_8859_1);
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        byte[] padded = new byte[utf8.length + 4];
+        System.arraycopy(utf8, 0, padded, 2, utf8.length);
+        AuditEvent event = new AuditEvent(AuditCapture.builder()
+                .requestBody(latin1)
+                .requestCharset(StandardCharsets.ISO_8859_1)
+                .responseBody(ByteBuffer.wrap(padded, 2, utf8.length))
+                .build());
+
+        assertEquals(event.getRequestBody(), "caf\u00e9 \"\u00e0\"");
+        assertEquals(event.getResponseBody(), text);
+        assertEquals(event.getResponseCharset(), StandardCharsets.UTF_8);
+        assertTrue(event.getResponseBodyBuffer().isReadOnly());
+        assertEquals(event.getResponseBodyBuffer(), ByteBuffer.wrap(utf8));
+
+        // the UTF-8 body is copied into the output as bytes, the Latin-1 body is transcoded
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        event.writeTo(stream);
+        assertEquals(stream.toString(StandardCharsets.UTF_8.name()), event.toJson());
+        assertTrue(event.toJson().contains("\"responseBody\":\"caf\u00e9 \\\"\u20ac\\\" \ud83d\ude00\""));
+
+        // malformed UTF-8 is replaced the same way in both paths
+        AuditEvent malformed = new AuditEvent(AuditCapture.builder()
+                .requestBody(new byte[] { 'a', (byte) 0xC3, '"', (byte) 0xED, (byte) 0xA0, (byte) 0x80 })
+                .build());
+        stream.reset();
+        malformed.writeTo(stream);
+        assertEquals(stream.toString(StandardCharsets.UTF_8.name()), malformed.toJson());
+    }
+
+    @Test
+    public void testCharsetOf() {
+        assertEquals(AuditCapture.charsetOf(null), StandardCharsets.UTF_8);
+        assertEquals(AuditCapture.charsetOf("application/json"), StandardCharsets.UTF_8);
+        assertEquals(AuditCapture.charsetOf("text/plain; Charset=\"ISO-8859-1\"; format=flowed"),
+                StandardCharsets.ISO_8859_1);
+        assertEquals(AuditCapture.charsetOf("text/plain;charset=utf-16"), StandardCharsets.UTF_16);
+        assertEquals(AuditCapture.charsetOf("text/plain;charset=no-such-charset"), StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, Object> jacksonProperties(final AuditEvent event) {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("requestBody", event.getRequestBody());
+        properties.put("responseBody", event.getResponseBody());
+        properties.put("method", event.getMethod());
+        properties.put("sourceIp", event.getSourceIp());
+        properties.put("zoneId", event.getZoneId());
+        properties.put("time", event.getTime());
+        properties.put("requestUri", event.getRequestUri());
+        properties.put("status", event.getStatus());
+        properties.put("requestBodyTruncated", event.isRequestBodyTruncated());
+        properties.put("responseBodyTruncated", event.isResponseBodyTruncated());
+        return properties;
+    }
 }
@@ -0,0 +1,200 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.audit;
+
+import static com.ge.predix.audit.AuditFixtures.awaitCount;
+import static com.ge.predix.audit.AuditFixtures.event;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+public class AuditEventWriterTest {
+
+    @Test
+    public void testStalledStreamDoesNotHoldUpOthers() throws Exception {
+        CountDownLatch stalled = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        OutputStream stalledStream = new OutputStream() {
+            @Override
+            public void write(final int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(final byte[] b, final int off, final int len) {
+                stalled.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        ByteArrayOutputStream healthy = new ByteArrayOutputStream();
+        AuditEventWriter writer = new AuditEventWriter(Arrays.asList(stalledStream, healthy), false, 2,
+                FlushPolicy.batched(1, 1024, 0));
+        assertEquals(writer.getOutputStreamCount(), 2);
+
+        assertTrue(writer.process(event("/0")));
+        assertTrue(stalled.await(5, TimeUnit.SECONDS));
+        // the stalled stream's writer holds /0; /1 and /2 fill its queue and the rest are dropped for it alone
+        for (int i = 1; i < 6; i++) {
+            awaitCount(() -> writer.getWrittenCount(1), i);
+            assertEquals(writer.process(event("/" + i)), i < 3);
+        }
+        assertEquals(writer.getDroppedCount(0), 3);
+        assertEquals(writer.getLag(0), 2);
+        assertTrue(writer.getLagMillis(0) >= 0);
+
+        awaitCount(() -> writer.getWrittenCount(1), 6);
+        assertEquals(writer.getDroppedCount(1), 0);
+        assertEquals(writer.getLag(1), 0);
+        assertEquals(writer.getLagMillis(1), 0);
+        String written = healthy.toString(StandardCharsets.UTF_8.name());
+        assertEquals(written.split(System.lineSeparator()).length, 6);
+        assertTrue(written.startsWith(event("/0").toJson() + System.lineSeparator()));
+
+        release.countDown();
+        writer.destroy();
+        assertEquals(writer.getWrittenCount(0), 3);
+        assertFalse(writer.process(event("/late")));
+        assertEquals(writer.getDroppedCount(1), 1);
+    }
+
+    @Test
+    public void testWriteFailuresAreCounted() throws Exception {
+        AuditEventWriter writer = new AuditEventWriter(Arrays.asList(new OutputStream() {
+            @Override
+            public void write(final int b) throws IOException {
+                throw new IOException("disk full");
+            }
+        }));
+        assertTrue(writer.process(event("/fail")));
+        writer.destroy();
+        assertEquals(writer.getFailedCount(0), 1);
+        assertEquals(writer.getWrittenCount(0), 0);
+    }
+
+    @Test
+    public void testGroupCommitByEventCount() throws Exception {
+        CountingStream stream = new CountingStream();
+        AuditEventWriter writer = new AuditEventWriter(Arrays.asList(stream), false, 64,
+                FlushPolicy.batched(5, 64 * 1024, 60000));
+        for (int i = 0; i < 10; i++) {
+            assertTrue(writer.process(event("/" + i)));
+        }
+        awaitCount(() -> writer.getWrittenCount(0), 10);
+        assertEquals(writer.getCommitCount(0), 2);
+        assertEquals(stream.writes, 2);
+        assertEquals(stream.flushes, 2);
+        assertEquals(stream.toString(StandardCharsets.UTF_8.name()).split(System.lineSeparator()).length, 10);
+        writer.destroy();
+    }
+
+    @Test
+    public void testGroupCommitByBytesAndDelay() throws Exception {
+        int lineLength = event("/0").toJson().length() + System.lineSeparator().length();
+        CountingStream stream = new CountingStream();
+        AuditEventWriter writer = new AuditEventWriter(Arrays.asList(stream), false, 64,
+                FlushPolicy.batched(100, 2 * lineLength + 1, 50));
+        for (int i = 0; i < 5; i++) {
+            writer.process(event("/" + i));
+        }
+        // two lines fit a batch; the fifth goes out once its delay is up
+        awaitCount(() -> writer.getWrittenCount(0), 5);
+        assertEquals(writer.getCommitCount(0), 3);
+        assertEquals(stream.flushes, 3);
+        assertEquals(stream.size(), 5 * lineLength);
+
+        // a line larger than the whole buffer is written on its own
+        writer.process(new AuditEvent(AuditCapture.builder().requestBody(new byte[3 * lineLength]).build()));
+        awaitCount(() -> writer.getWrittenCount(0), 6);
+        assertEquals(writer.getCommitCount(0), 4);
+        writer.destroy();
+    }
+
+    @Test
+    public void testSynchronousPolicyWaitsForTheWrite() throws Exception {
+        File file = File.createTempFile("audit", ".log");
+        file.deleteOnExit();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            CountingStream stream = new CountingStream();
+            AuditEventWriter writer = new AuditEventWriter(Arrays.asList(out, stream), false, 64,
+                    FlushPolicy.synchronous(5000));
+            assertTrue(writer.getFlushPolicy().isSynchronous());
+            AuditEvent event = event("/durable");
+            assertTrue(writer.process(event));
+            String line = event.toJson() + System.lineSeparator();
+            assertEquals(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8), line);
+            assertEquals(stream.toString(StandardCharsets.UTF_8.name()), line);
+            assertEquals(stream.flushes, 1);
+            writer.destroy();
+        }
+
+        AuditEventWriter failing = new AuditEventWriter(Arrays.asList(new OutputStream() {
+            @Override
+            public void write(final int b) throws IOException {
+                throw new IOException("disk full");
+            }
+        }), false, 64, FlushPolicy.synchronous(5000));
+        assertFalse(failing.process(event("/lost")));
+        failing.destroy();
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidFlushPolicy() {
+        FlushPolicy.batched(0, 1024, 10);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testQueueCapacityMustBePositive() {
+        new AuditEventWriter(Arrays.asList(new ByteArrayOutputStream()), false, 0);
+    }
+
+    /**
+     * Counts write and flush calls, as a stand-in for system calls.
+     */
+    private static final class CountingStream extends ByteArrayOutputStream {
+
+        private volatile int writes;
+        private volatile int flushes;
+
+        @Override
+        public synchronized void write(final byte[] b, final int off, final int len) {
+            this.writes++;
+            super.write(b, off, len);
+        }
+
+        @Override
+        public void flush() {
+            this.flushes++;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.audit;
+
+import static org.testng.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.function.LongSupplier;
+
+/**
+ * Events and waits shared by the audit tests.
+ */
+final class AuditFixtures {
+
+    /** Request body of every fixture event. */
+    static final String REQUEST_BODY = "{\"name\":\"item\",\"tags\":[\"a\",\"b\"]}";
+
+    /** Response body of every fixture event. */
+    static final String RESPONSE_BODY = "{\"ok\":true}";
+
+    /** Zone of the fixture events that do not name one. */
+    static final String ZONE_ID = "zone";
+
+    private static final long AWAIT_MILLIS = 10000;
+
+    private AuditFixtures() {
+    }
+
+    /**
+     * A completed {@code GET} capture of {@code requestUri} in {@link #ZONE_ID} with a 200 status, both bodies and a
+     * fixed time, so that its JSON is the same on every run.
+     */
+    static AuditCapture capture(final String requestUri) {
+        return capture(ZONE_ID, 200, requestUri);
+    }
+
+    static AuditCapture capture(final String zoneId, final int status, final String requestUri) {
+        return AuditCapture.builder().method("GET").requestUri(requestUri).zoneId(zoneId).status(status)
+                .time(Instant.EPOCH).requestBody(REQUEST_BODY.getBytes(StandardCharsets.UTF_8))
+                .responseBody(RESPONSE_BODY.getBytes(StandardCharsets.UTF_8)).build();
+    }
+
+    static AuditEvent event(final String requestUri) {
+        return new AuditEvent(capture(requestUri));
+    }
+
+    static AuditEvent event(final String zoneId, final int status, final String requestUri) {
+        return new AuditEvent(capture(zoneId, status, requestUri));
+    }
+
+    /**
+     * Waits until {@code count} reaches {@code expected}, then asserts it is exactly {@code expected}.
+     */
+    static void awaitCount(final LongSupplier count, final long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + AWAIT_MILLIS;
+        while (count.getAsLong() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count.getAsLong(), expected);
+    }
+}
@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.audit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class AuditRateLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void testBurstThenSustainedRate() {
+        AuditRateLimiter limiter = new AuditRateLimiter(10, 3, 0);
+        long now = 42;
+        for (int i = 0; i < 3; i++) {
+            Assert.assertTrue(limiter.tryAcquire("noisy", now));
+        }
+        Assert.assertFalse(limiter.tryAcquire("noisy", now));
+        Assert.assertTrue(limiter.tryAcquire("quiet", now));
+
+        // one permit every 100ms
+        Assert.assertFalse(limiter.tryAcquire("noisy", now + SECOND / 20));
+        Assert.assertTrue(limiter.tryAcquire("noisy", now + SECOND / 10));
+        Assert.assertFalse(limiter.tryAcquire("noisy", now + SECOND / 10));
+
+        Assert.assertEquals(limiter.getSuppressedCount(), 3);
+        Assert.assertEquals(limiter.getPendingSuppressedCount("noisy"), 3);
+        Assert.assertEquals(limiter.getPendingSuppressedCount("quiet"), 0);
+        List<AuditSuppressionSummary> summaries = new ArrayList<>();
+        limiter.setSummaryListener(summaries::add);
+        limiter.publishSummaries();
+        Assert.assertEquals(summaries.size(), 1);
+        Assert.assertEquals(summaries.get(0).getZoneId(), "noisy");
+        Assert.assertEquals(summaries.get(0).getSuppressedCount(), 3);
+        Assert.assertFalse(summaries.get(0).getTo().isBefore(summaries.get(0).getFrom()));
+        Assert.assertEquals(limiter.getPendingSuppressedCount("noisy"), 0);
+        limiter.publishSummaries();
+        Assert.assertEquals(summaries.size(), 1);
+        Assert.assertEquals(limiter.getSuppressedCount(), 3);
+    }
+
+    @Test
+    public void testZoneOverrideAndNullZone() {
+        AuditRateLimiter limiter = new AuditRateLimiter(1, 1, 0);
+        limiter.setZoneEventsPerSecond(Collections.singletonMap("vip", 1000.0));
+        Assert.assertTrue(limiter.tryAcquire("vip", 0));
+        Assert.assertTrue(limiter.tryAcquire("vip", SECOND / 1000));
+        Assert.assertTrue(limiter.tryAcquire(null, 0));
+        Assert.assertFalse(limiter.tryAcquire(null, SECOND / 1000));
+    }
+
+    @Test
+    public void testZonesBeyondLimitShareOverflowBucket() {
+        AuditRateLimiter limiter = new AuditRateLimiter(1, 1, 0, 1);
+        Assert.assertTrue(limiter.tryAcquire("first", 0));
+        Assert.assertTrue(limiter.tryAcquire("second", 0));
+        Assert.assertFalse(limiter.tryAcquire("third", 0));
+    }
+
+    @Test
+    public void testIdleZonesAreEvictedWhenTheZoneLimitIsReached() {
+        AuditRateLimiter limiter = new AuditRateLimiter(1, 1, 0, 2);
+        Assert.assertTrue(limiter.tryAcquire("made-up-1", 0));
+        Assert.assertTrue(limiter.tryAcquire("made-up-2", 0));
+        Assert.assertTrue(limiter.tryAcquire("made-up-3", 0));
+        Assert.assertFalse(limiter.tryAcquire("made-up-4", 0));
+        Assert.assertEquals(limiter.zoneCount(), 3);
+
+        // the made-up zones have refilled; the overflow bucket still holds a suppressed event for its summary
+        Assert.assertTrue(limiter.tryAcquire("tenant", 2 * SECOND));
+        Assert.assertFalse(limiter.tryAcquire("tenant", 2 * SECOND));
+        Assert.assertEquals(limiter.getPendingSuppressedCount("tenant"), 1);
+        Assert.assertEquals(limiter.zoneCount(), 2);
+    }
+
+    @Test
+    public void testIdleZonesAreEvictedAfterEachSummary() {
+        AuditRateLimiter limiter = new AuditRateLimiter(1, 1, 0);
+        limiter.setSummaryListener(summary -> { });
+        long longAgo = System.nanoTime() - 10 * SECOND;
+        Assert.assertTrue(limiter.tryAcquire("idle", longAgo));
+        Assert.assertTrue(limiter.tryAcquire("suppressed", longAgo));
+        Assert.assertFalse(limiter.tryAcquire("suppressed", longAgo));
+        Assert.assertTrue(limiter.tryAcquire("busy", System.nanoTime() + 10 * SECOND));
+        Assert.assertEquals(limiter.zoneCount(), 3);
+
+        limiter.publishSummaries();
+        Assert.assertEquals(limiter.zoneCount(), 1);
+        Assert.assertFalse(limiter.tryAcquire("busy", System.nanoTime()));
+    }
+
+    @Test
+    public void testConcurrentAcquireNeverExceedsBurst() throws Exception {
+        AuditRateLimiter limiter = new AuditRateLimiter(0.001, 100, 0);
+        AtomicInteger permitted = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        CountDownLatch done = new CountDownLatch(8);
+        for (int t = 0; t < 8; t++) {
+            pool.execute(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    if (limiter.tryAcquire("zone")) {
+                        permitted.incrementAndGet();
+                    }
+                }
+                done.countDown();
+            });
+        }
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        pool.shutdown();
+        Assert.assertEquals(permitted.get(), 100);
+        Assert.assertEquals(limiter.getSuppressedCount(), 8000 - 100);
+        limiter.destroy();
+    }
+}
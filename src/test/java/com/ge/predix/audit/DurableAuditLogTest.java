@@ -0,0 +1,238 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.audit;
+
+import static com.ge.predix.audit.AuditFixtures.REQUEST_BODY;
+import static com.ge.predix.audit.AuditFixtures.ZONE_ID;
+import static com.ge.predix.audit.AuditFixtures.awaitCount;
+import static com.ge.predix.audit.AuditFixtures.event;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.springframework.util.FileSystemUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class DurableAuditLogTest {
+
+    private Path directory;
+
+    @BeforeMethod
+    public void createDirectory() throws IOException {
+        this.directory = Files.createTempDirectory("audit-log");
+    }
+
+    @AfterMethod
+    public void deleteDirectory() {
+        FileSystemUtils.deleteRecursively(this.directory.toFile());
+    }
+
+    private static void awaitForwarded(final DurableAuditLog log, final int index, final long count)
+            throws InterruptedException {
+        awaitCount(() -> log.getForwardedCount(index), count);
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(this.directory)) {
+            return files.filter(file -> file.toString().endsWith(".wal")).sorted().collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    public void testEventsAreCommittedThenForwarded() throws Exception {
+        RecordingProcessor first = new RecordingProcessor();
+        RecordingProcessor second = new RecordingProcessor();
+        DurableAuditLog log = DurableAuditLog.builder(this.directory).forwardTo(first, second).build();
+        for (int i = 0; i < 10; i++) {
+            assertTrue(log.process(event("/" + i)));
+        }
+        assertEquals(log.getAppendedCount(), 10);
+        assertTrue(log.getSyncCount() >= 1 && log.getSyncCount() <= 10);
+        awaitForwarded(log, 0, 10);
+        awaitForwarded(log, 1, 10);
+        log.destroy();
+
+        assertEquals(first.uris.get(9), "/9");
+        assertEquals(second.uris.size(), 10);
+        assertEquals(first.events.get(0).getRequestBody(), REQUEST_BODY);
+        assertEquals(first.events.get(0).getZoneId(), ZONE_ID);
+        assertEquals(log.getReplayedCount(0), 0);
+        assertTrue(Files.exists(this.directory.resolve("processor-0.offset")));
+
+        // everything was acknowledged, so nothing is forwarded again
+        RecordingProcessor next = new RecordingProcessor();
+        log = DurableAuditLog.builder(this.directory).forwardTo(next, new RecordingProcessor()).build();
+        assertTrue(log.process(event("/10")));
+        awaitForwarded(log, 0, 1);
+        log.destroy();
+        assertEquals(next.uris, Collections.singletonList("/10"));
+    }
+
+    @Test
+    public void testUnacknowledgedEventsAreReplayedOnRestart() throws Exception {
+        RecordingProcessor failing = new RecordingProcessor();
+        failing.accept = false;
+        DurableAuditLog failed = DurableAuditLog.builder(this.directory).forwardTo(failing).build();
+        for (int i = 0; i < 3; i++) {
+            assertTrue(failed.process(event("/" + i)));
+        }
+        // at least one retry
+        awaitCount(() -> Math.min(failed.getRetryCount(0), 1), 1);
+        failed.destroy();
+        assertEquals(failed.getForwardedCount(0), 0);
+
+        RecordingProcessor recovered = new RecordingProcessor();
+        DurableAuditLog log = DurableAuditLog.builder(this.directory).forwardTo(recovered).build();
+        awaitForwarded(log, 0, 3);
+        assertEquals(log.getReplayedCount(0), 3);
+        log.destroy();
+        assertEquals(recovered.uris, Arrays.asList("/0", "/1", "/2"));
+    }
+
+    @Test
+    public void testUnreadableOffsetFileReplaysEverything() throws Exception {
+        DurableAuditLog log = DurableAuditLog.builder(this.directory).forwardTo(new RecordingProcessor()).build();
+        for (int i = 0; i < 3; i++) {
+            assertTrue(log.process(event("/" + i)));
+        }
+        awaitForwarded(log, 0, 3);
+        log.destroy();
+        Path offsetFile = this.directory.resolve("processor-0.offset");
+
+        // what a crash between writing and renaming an unforced offset file can leave behind
+        for (byte[] content : new byte[][] { new byte[0], new byte[5] }) {
+            Files.write(offsetFile, content);
+            RecordingProcessor recovered = new RecordingProcessor();
+            log = DurableAuditLog.builder(this.directory).forwardTo(recovered).build();
+            awaitForwarded(log, 0, 3);
+            assertEquals(log.getReplayedCount(0), 3);
+            log.destroy();
+            assertEquals(recovered.uris, Arrays.asList("/0", "/1", "/2"));
+        }
+    }
+
+    @Test
+    public void testTornRecordIsCutOffOnRestart() throws Exception {
+        RecordingProcessor processor = new RecordingProcessor();
+        DurableAuditLog log = DurableAuditLog.builder(this.directory).forwardTo(processor).build();
+        assertTrue(log.process(event("/0")));
+        awaitForwarded(log, 0, 1);
+        log.destroy();
+        Path segment = segments().get(0);
+        long length = Files.size(segment);
+        byte[] record = AuditRecordCodec.encode(event("/torn"));
+        // a crash in the middle of a write
+        Files.write(segment, Arrays.copyOf(record, record.length / 2), StandardOpenOption.APPEND);
+
+        RecordingProcessor next = new RecordingProcessor();
+        log = DurableAuditLog.builder(this.directory).forwardTo(next).build();
+        assertEquals(Files.size(segment), length);
+        assertTrue(log.process(event("/1")));
+        awaitForwarded(log, 0, 1);
+        log.destroy();
+        assertEquals(next.uris, Collections.singletonList("/1"));
+    }
+
+    @Test
+    public void testAcknowledgedSegmentsAreDeleted() throws Exception {
+        int recordBytes = AuditRecordCodec.encode(event("/0")).length;
+        RecordingProcessor processor = new RecordingProcessor();
+        DurableAuditLog log = DurableAuditLog.builder(this.directory).forwardTo(processor)
+                .segmentBytes(2 * recordBytes).build();
+        for (int i = 0; i < 10; i++) {
+            assertTrue(log.process(event("/" + i)));
+        }
+        awaitForwarded(log, 0, 10);
+        log.destroy();
+
+        assertEquals(processor.uris.size(), 10);
+        assertEquals(segments().size(), 1);
+        assertTrue(segments().get(0).getFileName().toString().startsWith("audit-0000000000000000000"));
+    }
+
+    @Test
+    public void testBytesAfterTheCommittedEndAreNotForwarded() throws Exception {
+        AuditEvent large = new AuditEvent(AuditCapture.builder().method("PUT").requestUri("/large").status(201)
+                .requestBody(new byte[1000]).build());
+        RecordingProcessor processor = new RecordingProcessor();
+        processor.gate = new CountDownLatch(1);
+        // the large event fills the first segment; the next two share the second
+        DurableAuditLog log = DurableAuditLog.builder(this.directory).forwardTo(processor)
+                .segmentBytes(AuditRecordCodec.encode(large).length).build();
+        assertTrue(log.process(large));
+        assertTrue(processor.entered.await(5, TimeUnit.SECONDS));
+        assertTrue(log.process(event("/0")));
+        // what a failed commit leaves behind it until the log truncates it: written, but never committed
+        Files.write(segments().get(1), AuditRecordCodec.encode(event("/uncommitted")), StandardOpenOption.APPEND);
+        processor.gate.countDown();
+        awaitForwarded(log, 0, 2);
+
+        // overwrites the uncommitted record, which the forwarder must not have read ahead
+        assertTrue(log.process(event("/1")));
+        awaitForwarded(log, 0, 3);
+        log.destroy();
+        assertEquals(processor.uris, Arrays.asList("/large", "/0", "/1"));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testProcessorIsRequired() throws IOException {
+        DurableAuditLog.builder(this.directory).build();
+    }
+
+    private static final class RecordingProcessor implements AuditEventProcessor {
+
+        private final List<AuditEvent> events = new CopyOnWriteArrayList<>();
+        private final List<String> uris = new CopyOnWriteArrayList<>();
+        private volatile boolean accept = true;
+        // holds up the first event until counted down
+        private volatile CountDownLatch gate;
+        private final CountDownLatch entered = new CountDownLatch(1);
+
+        @Override
+        public boolean process(final AuditEvent auditEvent) {
+            this.entered.countDown();
+            if (null != this.gate) {
+                try {
+                    this.gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            if (!this.accept) {
+                return false;
+            }
+            this.events.add(auditEvent);
+            this.uris.add(auditEvent.getRequestUri());
+            return true;
+        }
+    }
+}
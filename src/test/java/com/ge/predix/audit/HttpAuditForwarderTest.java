@@ -0,0 +1,246 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.audit;
+
+import static com.ge.predix.audit.AuditFixtures.awaitCount;
+import static com.ge.predix.audit.AuditFixtures.event;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class HttpAuditForwarderTest {
+
+    private Collector collector;
+    private URL endpoint;
+
+    @BeforeMethod
+    public void startCollector() throws IOException {
+        this.collector = new Collector();
+        this.endpoint = new URL("http://127.0.0.1:" + this.collector.server.getAddress().getPort() + "/audit");
+    }
+
+    @AfterMethod
+    public void stopCollector() {
+        this.collector.server.stop(0);
+    }
+
+    @Test
+    public void testBatchesAreCompressedOverOneConnection() throws Exception {
+        HttpAuditForwarder forwarder = HttpAuditForwarder.builder(this.endpoint)
+                .flushPolicy(FlushPolicy.batched(500, 1024 * 1024, 50)).header("Authorization", "Bearer token")
+                .build();
+        int count = 20000;
+        for (int i = 0; i < count; i++) {
+            while (!forwarder.process(event("/items/" + i))) {
+                Thread.yield();
+            }
+        }
+        awaitCount(this.collector.lines::size, count);
+        forwarder.destroy();
+
+        assertEquals(this.collector.lines.get(0), event("/items/0").toJson());
+        assertEquals(forwarder.getSentCount(), count);
+        assertTrue(forwarder.getBatchCount() >= count / 500, Long.toString(forwarder.getBatchCount()));
+        assertEquals(forwarder.getBatchCount(), this.collector.requests.get());
+        assertEquals(forwarder.getWireBytes(), this.collector.wireBytes.get());
+        assertTrue(this.collector.wireBytes.get() * 5 < this.collector.bodyBytes.get(),
+                this.collector.wireBytes.get() + " of " + this.collector.bodyBytes.get() + " bytes on the wire");
+        assertEquals(this.collector.connections.size(), 1);
+        assertEquals(this.collector.headers.get(0), "gzip application/x-ndjson Bearer token");
+        assertEquals(forwarder.getBufferedBytes(), 0);
+    }
+
+    @Test
+    public void testUncompressedNdjson() throws Exception {
+        HttpAuditForwarder forwarder = HttpAuditForwarder.builder(this.endpoint).gzip(false)
+                .flushPolicy(FlushPolicy.batched(3, 1024 * 1024, 1000)).build();
+        for (int i = 0; i < 3; i++) {
+            assertTrue(forwarder.process(event("/" + i)));
+        }
+        awaitCount(this.collector.lines::size, 3);
+        forwarder.destroy();
+
+        assertEquals(this.collector.requests.get(), 1);
+        assertEquals(this.collector.wireBytes.get(), this.collector.bodyBytes.get());
+        assertEquals(this.collector.headers.get(0), "null application/x-ndjson null");
+        assertEquals(this.collector.lines.get(2), event("/2").toJson());
+    }
+
+    @Test
+    public void testServerErrorsAreRetried() throws Exception {
+        this.collector.statuses.add(503);
+        this.collector.statuses.add(429);
+        HttpAuditForwarder forwarder = HttpAuditForwarder.builder(this.endpoint).retryDelayMillis(1, 10)
+                .flushPolicy(FlushPolicy.batched(2, 1024 * 1024, 1000)).build();
+        assertTrue(forwarder.process(event("/0")));
+        assertTrue(forwarder.process(event("/1")));
+        // the rejected attempts are not recorded
+        awaitCount(this.collector.lines::size, 2);
+        forwarder.destroy();
+
+        assertEquals(this.collector.requests.get(), 3);
+        assertEquals(forwarder.getRetryCount(), 2);
+        assertEquals(forwarder.getSentCount(), 2);
+        assertEquals(forwarder.getFailedCount(), 0);
+    }
+
+    @Test
+    public void testClientErrorsAndExhaustedRetriesFail() throws Exception {
+        this.collector.statuses.add(400);
+        for (int i = 0; i < 3; i++) {
+            this.collector.statuses.add(500);
+        }
+        HttpAuditForwarder forwarder = HttpAuditForwarder.builder(this.endpoint).maxRetries(2).retryDelayMillis(1, 10)
+                .flushPolicy(FlushPolicy.batched(1, 1024 * 1024, 1000)).build();
+        assertTrue(forwarder.process(event("/rejected")));
+        assertTrue(forwarder.process(event("/unavailable")));
+        forwarder.destroy();
+
+        assertEquals(this.collector.requests.get(), 4);
+        assertEquals(forwarder.getRetryCount(), 2);
+        assertEquals(forwarder.getFailedCount(), 2);
+        assertEquals(forwarder.getSentCount(), 0);
+    }
+
+    @Test
+    public void testEventsLeftAtShutdownAreCountedAsFailed() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            this.collector.statuses.add(500);
+        }
+        HttpAuditForwarder forwarder = HttpAuditForwarder.builder(this.endpoint).maxRetries(100)
+                .retryDelayMillis(60000, 60000).flushPolicy(FlushPolicy.batched(1, 1024 * 1024, 0)).build();
+        assertTrue(forwarder.process(event("/retried")));
+        awaitCount(forwarder::getRetryCount, 1);
+        assertTrue(forwarder.process(event("/queued/0")));
+        assertTrue(forwarder.process(event("/queued/1")));
+        // the retries outlast the shutdown timeout and are cut short, as is sending what is queued behind them
+        forwarder.destroy();
+
+        assertEquals(forwarder.getSentCount(), 0);
+        assertEquals(forwarder.getFailedCount(), 3);
+        assertEquals(forwarder.getBufferedBytes(), 0);
+    }
+
+    @Test
+    public void testBufferedBytesAreBounded() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        this.collector.stall = release;
+        int lineBytes = event("/0").toJson().length() + 1;
+        HttpAuditForwarder forwarder = HttpAuditForwarder.builder(this.endpoint).maxBufferedBytes(3 * lineBytes)
+                .flushPolicy(FlushPolicy.batched(1, 1024 * 1024, 0)).build();
+        for (int i = 0; i < 3; i++) {
+            assertTrue(forwarder.process(event("/" + i)));
+        }
+        assertFalse(forwarder.process(event("/3")));
+        assertEquals(forwarder.getDroppedCount(), 1);
+        assertEquals(forwarder.getBufferedBytes(), 3 * lineBytes);
+
+        release.countDown();
+        awaitCount(this.collector.lines::size, 3);
+        forwarder.destroy();
+        assertEquals(forwarder.getBufferedBytes(), 0);
+    }
+
+    /**
+     * Records what it receives, and how many bytes and connections it took.
+     */
+    private static final class Collector {
+
+        private final HttpServer server;
+        private final List<String> lines = Collections.synchronizedList(new ArrayList<>());
+        private final List<String> headers = new CopyOnWriteArrayList<>();
+        private final Set<InetSocketAddress> connections = ConcurrentHashMap.newKeySet();
+        private final Queue<Integer> statuses = new ConcurrentLinkedQueue<>();
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong wireBytes = new AtomicLong();
+        private final AtomicLong bodyBytes = new AtomicLong();
+        private volatile CountDownLatch stall;
+
+        private Collector() throws IOException {
+            this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            this.server.createContext("/audit", this::handle);
+            this.server.start();
+        }
+
+        private void handle(final HttpExchange exchange) throws IOException {
+            try {
+                CountDownLatch gate = this.stall;
+                if (null != gate) {
+                    gate.await(10, TimeUnit.SECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            this.requests.incrementAndGet();
+            this.connections.add(exchange.getRemoteAddress());
+            byte[] wire = readAll(exchange.getRequestBody());
+            this.wireBytes.addAndGet(wire.length);
+            String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+            byte[] body = "gzip".equals(encoding) ? readAll(new GZIPInputStream(new ByteArrayInputStream(wire)))
+                    : wire;
+            Integer status = this.statuses.poll();
+            if (null == status) {
+                this.bodyBytes.addAndGet(body.length);
+                this.headers.add(encoding + " " + exchange.getRequestHeaders().getFirst("Content-Type") + " "
+                        + exchange.getRequestHeaders().getFirst("Authorization"));
+                this.lines.addAll(Arrays.asList(new String(body, StandardCharsets.UTF_8).split("\n")));
+                status = 204;
+            }
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+        }
+
+        private static byte[] readAll(final InputStream in) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count = in.read(buffer);
+            while (count >= 0) {
+                out.write(buffer, 0, count);
+                count = in.read(buffer);
+            }
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.audit;
+
+import static com.ge.predix.audit.AuditFixtures.event;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class MappedAuditRingTest {
+
+    private Path file;
+
+    @BeforeMethod
+    public void createFile() throws IOException {
+        this.file = Files.createTempFile("audit", ".ring");
+    }
+
+    @AfterMethod
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(this.file);
+    }
+
+    private static List<String> readAll(final MappedAuditRingReader reader) {
+        List<String> records = new ArrayList<>();
+        reader.read(record -> records.add(StandardCharsets.UTF_8.decode(record).toString()), Integer.MAX_VALUE);
+        return records;
+    }
+
+    @Test
+    public void testRecordsWrapAroundTheRing() throws Exception {
+        MappedAuditRing ring = new MappedAuditRing(this.file, 1024);
+        assertEquals(Files.size(this.file), MappedAuditRing.HEADER_BYTES + 1024);
+        try (MappedAuditRingReader reader = new MappedAuditRingReader(this.file)) {
+            List<String> records = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                assertTrue(ring.process(event("/" + i)));
+                if (i % 3 == 2) {
+                    records.addAll(readAll(reader));
+                }
+            }
+            records.addAll(readAll(reader));
+            assertEquals(records.size(), 50);
+            assertEquals(records.get(0), event("/0").toJson());
+            assertEquals(records.get(49), event("/49").toJson());
+            assertTrue(reader.getHead() > 1024);
+            assertEquals(ring.getUnreadBytes(), 0);
+        }
+        ring.destroy();
+        assertFalse(ring.process(event("/closed")));
+    }
+
+    @Test
+    public void testFullRingDropsUntilTheReaderMakesRoom() throws Exception {
+        MappedAuditRing ring = new MappedAuditRing(this.file, 1024);
+        int written = 0;
+        while (ring.process(event("/" + written))) {
+            written++;
+        }
+        assertTrue(written > 2);
+        assertEquals(ring.getDroppedCount(), 1);
+        assertEquals(ring.getWrittenCount(), written);
+        try (MappedAuditRingReader reader = new MappedAuditRingReader(this.file)) {
+            assertEquals(reader.read(record -> { }, 2), 2);
+            assertTrue(ring.process(event("/after")));
+            List<String> records = readAll(reader);
+            assertEquals(records.size(), written - 1);
+            assertTrue(records.get(written - 2).contains("\"/after\""));
+        }
+        ring.destroy();
+    }
+
+    @Test
+    public void testUnreadRecordsSurviveReopening() throws Exception {
+        MappedAuditRing ring = new MappedAuditRing(this.file, 4096);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(ring.process(event("/" + i)));
+        }
+        try (MappedAuditRingReader reader = new MappedAuditRingReader(this.file)) {
+            assertEquals(reader.read(record -> { }, 1), 1);
+        }
+        ring.destroy();
+
+        ring = new MappedAuditRing(this.file, 4096);
+        assertTrue(ring.process(event("/3")));
+        try (MappedAuditRingReader reader = new MappedAuditRingReader(this.file)) {
+            List<String> records = readAll(reader);
+            assertEquals(records.size(), 3);
+            assertTrue(records.get(0).contains("\"/1\""));
+            assertTrue(records.get(2).contains("\"/3\""));
+        }
+        ring.destroy();
+
+        // another capacity starts over
+        ring = new MappedAuditRing(this.file, 2048);
+        try (MappedAuditRingReader reader = new MappedAuditRingReader(this.file)) {
+            assertEquals(readAll(reader).size(), 0);
+        }
+        ring.destroy();
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testReaderRejectsOtherFiles() throws IOException {
+        Files.write(this.file, new byte[MappedAuditRing.HEADER_BYTES]);
+        new MappedAuditRingReader(this.file).close();
+    }
+
+    @Test
+    public void testReaderRejectsInvalidCapacities() throws IOException {
+        new MappedAuditRing(this.file, 1024).destroy();
+        // not a power of two, below the minimum, more than the file holds
+        for (long capacity : new long[] { 1000, 512, 2048, 1L << 40 }) {
+            try (FileChannel channel = FileChannel.open(this.file, StandardOpenOption.WRITE)) {
+                ByteBuffer field = ByteBuffer.allocate(8).putLong(0, capacity);
+                channel.write(field, MappedAuditRing.CAPACITY_OFFSET);
+            }
+            try {
+                new MappedAuditRingReader(this.file).close();
+                fail("accepted a capacity of " + capacity);
+            } catch (IOException e) {
+                assertTrue(e.getMessage().contains("capacity"), e.getMessage());
+            }
+        }
+        assertEquals(Files.size(this.file), MappedAuditRing.HEADER_BYTES + 1024);
+    }
+
+    @Test
+    public void testReaderInAnotherProcess() throws Exception {
+        int count = 100000;
+        MappedAuditRing ring = new MappedAuditRing(this.file, 1024 * 1024);
+        Process reader = new ProcessBuilder(System.getProperty("java.home") + File.separator + "bin" + File.separator
+                + "java", "-cp", System.getProperty("java.class.path"), MappedAuditRingReader.class.getName(),
+                this.file.toString(), Integer.toString(count)).redirectErrorStream(true).start();
+
+        AuditEvent event = event("/v1/items");
+        for (int i = 0; i < count; i++) {
+            while (!ring.process(event)) {
+                Thread.yield();
+            }
+        }
+        assertTrue(reader.waitFor(60, TimeUnit.SECONDS), "reader did not finish");
+        String output;
+        try (BufferedReader lines = new BufferedReader(
+                new InputStreamReader(reader.getInputStream(), StandardCharsets.UTF_8))) {
+            output = lines.readLine();
+        }
+        assertEquals(ring.getUnreadBytes(), 0);
+        ring.destroy();
+
+        assertEquals(reader.exitValue(), 0, output);
+        long bytes = (long) count * event.toJson().getBytes(StandardCharsets.UTF_8).length;
+        assertEquals(output.substring(0, output.indexOf(" millis=")), "records=" + count + " bytes=" + bytes);
+    }
+}
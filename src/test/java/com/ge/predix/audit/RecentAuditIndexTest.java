@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.audit;
+
+import static com.ge.predix.audit.AuditFixtures.event;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.testng.annotations.Test;
+
+public class RecentAuditIndexTest {
+
+    private static List<String> uris(final List<AuditEvent> events) {
+        List<String> uris = new ArrayList<>();
+        for (AuditEvent event : events) {
+            uris.add(event.getRequestUri());
+        }
+        return uris;
+    }
+
+    private static List<String> expected(final String... uris) {
+        List<String> expected = new ArrayList<>();
+        for (String uri : uris) {
+            expected.add(uri);
+        }
+        return expected;
+    }
+
+    @Test
+    public void testQueriesCombineZoneStatusAndUriPrefix() throws Exception {
+        RecentAuditIndex index = new RecentAuditIndex();
+        index.process(event("z1", 200, "/v1/assets/1"));
+        index.process(event("z2", 500, "/v1/assets/2"));
+        index.process(event("z1", 503, "/v1/assets/3"));
+        index.process(event("z1", 404, "/v2/tags/4"));
+        index.process(event("z1", 500, "/v2/tags/5"));
+        index.process(event(null, 500, "/health"));
+
+        assertEquals(uris(index.find(RecentAuditIndex.query().zoneId("z1"))),
+                expected("/v2/tags/5", "/v2/tags/4", "/v1/assets/3", "/v1/assets/1"));
+        assertEquals(uris(index.find(RecentAuditIndex.query().zoneId("z1").statusClass(5))),
+                expected("/v2/tags/5", "/v1/assets/3"));
+        assertEquals(uris(index.find(RecentAuditIndex.query().statusClass(5))),
+                expected("/health", "/v2/tags/5", "/v1/assets/3", "/v1/assets/2"));
+        assertEquals(uris(index.find(RecentAuditIndex.query().uriPrefix("/v1/"))),
+                expected("/v1/assets/3", "/v1/assets/2", "/v1/assets/1"));
+        assertEquals(uris(index.find(RecentAuditIndex.query().uriPrefix("/v1/").statusClass(5).limit(1))),
+                expected("/v1/assets/3"));
+        assertEquals(uris(index.find(RecentAuditIndex.query().zoneId("z1").uriPrefix("/v2"))),
+                expected("/v2/tags/5", "/v2/tags/4"));
+        assertEquals(uris(index.find(RecentAuditIndex.query().limit(2))), expected("/health", "/v2/tags/5"));
+        assertTrue(index.find(RecentAuditIndex.query().zoneId("z3")).isEmpty());
+
+        AuditEvent found = index.find(RecentAuditIndex.query().zoneId("z2")).get(0);
+        assertEquals(found.toJson(), event("z2", 500, "/v1/assets/2").toJson());
+    }
+
+    @Test
+    public void testOldestEventsAreEvictedByCount() {
+        RecentAuditIndex index = new RecentAuditIndex(3, 1024 * 1024);
+        for (int i = 0; i < 10; i++) {
+            index.process(event("z" + i, 200 + i, "/" + i));
+        }
+        assertEquals(index.getSize(), 3);
+        assertEquals(index.getEvictedCount(), 7);
+        assertEquals(uris(index.find(RecentAuditIndex.query())), expected("/9", "/8", "/7"));
+        assertTrue(index.find(RecentAuditIndex.query().zoneId("z6")).isEmpty());
+        assertTrue(index.find(RecentAuditIndex.query().uriPrefix("/6")).isEmpty());
+        // index entries go with their last event
+        assertEquals(index.zoneCount(), 3);
+        assertEquals(index.uriCount(), 3);
+    }
+
+    @Test
+    public void testOldestEventsAreEvictedByBytes() {
+        RecentAuditIndex index = new RecentAuditIndex(1000, 1000);
+        byte[] body = new byte[200];
+        for (int i = 0; i < 50; i++) {
+            assertTrue(index.process(new AuditEvent(AuditCapture.builder().zoneId("z").status(200)
+                    .requestUri("/" + i).requestBody(body).build())));
+            assertTrue(index.getUsedBytes() <= 1000);
+        }
+        assertTrue(index.getSize() < 5, String.valueOf(index.getSize()));
+        List<AuditEvent> events = index.find(RecentAuditIndex.query().zoneId("z"));
+        assertEquals(events.size(), index.getSize());
+        assertEquals(events.get(0).getRequestUri(), "/49");
+        assertEquals(events.get(0).getRequestBody(), new String(body, StandardCharsets.UTF_8));
+
+        assertFalse(index.process(new AuditEvent(AuditCapture.builder().requestBody(new byte[1000]).build())));
+        assertEquals(index.getDroppedCount(), 1);
+        assertEquals(index.getIndexedCount(), 50);
+    }
+
+    @Test
+    public void testUriPrefixMatchingManyUrisFallsBackToScan() {
+        RecentAuditIndex index = new RecentAuditIndex(1000, 1024 * 1024);
+        for (int i = 0; i < 500; i++) {
+            index.process(event("z", (i % 10 == 0) ? 500 : 200, "/assets/" + i));
+        }
+        List<AuditEvent> events = index.find(RecentAuditIndex.query().uriPrefix("/assets/").statusClass(5).limit(3));
+        assertEquals(uris(events), expected("/assets/490", "/assets/480", "/assets/470"));
+        assertEquals(uris(index.find(RecentAuditIndex.query().uriPrefix("/assets/49"))).size(), 11);
+    }
+
+    @Test
+    public void testLookupsFollowTheZoneChainAcrossManyEvents() {
+        RecentAuditIndex index = new RecentAuditIndex();
+        for (int i = 0; i < 100000; i++) {
+            index.process(event("zone-" + (i % 100), (i % 50 == 0) ? 500 : 200, "/v1/assets/" + (i % 1000)));
+        }
+        List<AuditEvent> found = index.find(RecentAuditIndex.query().zoneId("zone-0").statusClass(5).limit(10));
+        assertEquals(found.size(), 10);
+        for (AuditEvent event : found) {
+            assertEquals(event.getZoneId(), "zone-0");
+            assertEquals(event.getStatus(), 500);
+        }
+        assertEquals(index.zoneCount(), 100);
+    }
+
+    @Test
+    public void testLongZoneIdsAreCapped() {
+        StringBuilder prefix = new StringBuilder();
+        for (int i = 0; i < RecentAuditIndex.MAX_INDEXED_ZONE_LENGTH + 36; i++) {
+            prefix.append('z');
+        }
+        RecentAuditIndex index = new RecentAuditIndex();
+        index.process(event(prefix + "a", 200, "/a"));
+        index.process(event(prefix + "b", 200, "/b"));
+
+        assertEquals(index.zoneCount(), 1);
+        List<AuditEvent> found = index.find(RecentAuditIndex.query().zoneId(prefix + "a"));
+        assertEquals(uris(found), expected("/b", "/a"));
+        // the events themselves keep their full zone ids
+        assertEquals(found.get(0).getZoneId(), prefix + "b");
+        assertEquals(uris(index.find(RecentAuditIndex.query().zoneId(prefix.toString()))), expected("/b", "/a"));
+    }
+
+    @Test
+    public void testControllerReturnsJsonArray() throws Exception {
+        RecentAuditIndex index = new RecentAuditIndex();
+        index.process(event("z1", 500, "/a"));
+        index.process(event("z1", 200, "/b"));
+        RecentAuditController controller = new RecentAuditController(index);
+
+        ResponseEntity<String> response = controller.find("z1", "5xx", null, 50);
+        assertEquals(response.getStatusCode(), HttpStatus.OK);
+        assertEquals(response.getBody(), "[" + event("z1", 500, "/a").toJson() + "]");
+        assertEquals(controller.find(null, null, "/", 50).getBody(),
+                "[" + event("z1", 200, "/b").toJson() + "," + event("z1", 500, "/a").toJson() + "]");
+        assertEquals(controller.find("z2", null, null, 50).getBody(), "[]");
+        assertEquals(controller.find(null, "teapot", null, 50).getStatusCode(), HttpStatus.BAD_REQUEST);
+        assertEquals(controller.find(null, null, null, 0).getStatusCode(), HttpStatus.BAD_REQUEST);
+    }
+}
@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.audit;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class RedactingAuditEventProcessorTest {
+
+    private static String redact(final String body, final String... fieldPaths) {
+        return redact(body, StandardCharsets.UTF_8, fieldPaths);
+    }
+
+    private static String redact(final String body, final Charset charset, final String... fieldPaths) {
+        ByteBuffer redacted = new BodyRedactor(Arrays.asList(fieldPaths)).redact(ByteBuffer.wrap(body.getBytes(charset)),
+                charset);
+        return charset.decode(redacted).toString();
+    }
+
+    @Test
+    public void testFieldPaths() {
+        String body = "{\"user\":{\"name\":\"ann\",\"password\":\"s3cret\",\"token\":{\"value\":\"t\"}},"
+                + "\"password\":123,\"credentials\":{\"token\":\"abc\"},\"token\":null}";
+        Assert.assertEquals(redact(body, "password"), "{\"user\":{\"name\":\"ann\",\"password\":\"****\","
+                + "\"token\":{\"value\":\"t\"}},\"password\":\"****\",\"credentials\":{\"token\":\"abc\"},"
+                + "\"token\":null}");
+        Assert.assertEquals(redact(body, "$.password"), "{\"user\":{\"name\":\"ann\",\"password\":\"s3cret\","
+                + "\"token\":{\"value\":\"t\"}},\"password\":\"****\",\"credentials\":{\"token\":\"abc\"},"
+                + "\"token\":null}");
+        Assert.assertEquals(redact(body, "credentials.token", "user.token"), "{\"user\":{\"name\":\"ann\","
+                + "\"password\":\"s3cret\",\"token\":\"****\"},\"password\":123,\"credentials\":{\"token\":\"****\"},"
+                + "\"token\":null}");
+        Assert.assertEquals(redact(body, "$.user.*"), "{\"user\":{\"name\":\"****\",\"password\":\"****\","
+                + "\"token\":\"****\"},\"password\":123,\"credentials\":{\"token\":\"abc\"},\"token\":null}");
+        Assert.assertEquals(redact(body, "$.name", "value.token"), body);
+    }
+
+    @Test
+    public void testArraysCaseAndEscapes() {
+        Assert.assertEquals(redact("[{\"users\":[{\"SSN\":\"1\"},{\"ssn\":[1,2]}]}, {\"ssn\":true}]", "$.users.ssn"),
+                "[{\"users\":[{\"SSN\":\"****\"},{\"ssn\":\"****\"}]}, {\"ssn\":true}]");
+        Assert.assertEquals(redact("{\"pass\\u0077ord\":\"x\",\"p\\\"w\":\"y\"}", "password", "p\"w"),
+                "{\"pass\\u0077ord\":\"****\",\"p\\\"w\":\"****\"}");
+        // strings that look like structure are skipped as strings
+        Assert.assertEquals(redact(" {\"note\":\"},{\\\"password\\\":1\", \"password\" : \"a\\\"b\" }\n", "password"),
+                " {\"note\":\"},{\\\"password\\\":1\", \"password\" : \"****\" }\n");
+    }
+
+    @Test
+    public void testTruncatedAndMalformedJson() {
+        Assert.assertEquals(redact("{\"a\":1,\"password\":\"abcd", "password"), "{\"a\":1,\"password\":\"****\"");
+        Assert.assertEquals(redact("{\"a\":[1,{\"b\":", "password"), "{\"a\":[1,{\"b\":");
+        Assert.assertEquals(redact("{\"a\":1 \"password\" oops}", "password"), "{\"a\":1 \"password\" \"****\"");
+        Assert.assertEquals(redact("{\"a\":1]", "password"), "{\"a\":1\"****\"");
+    }
+
+    @Test
+    public void testDeepNestingDoesNotRecurse() {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            body.append("{\"a\":");
+        }
+        body.append("{\"password\":1}");
+        for (int i = 0; i < 100000; i++) {
+            body.append('}');
+        }
+        String redacted = redact(body.toString(), "password");
+        Assert.assertEquals(redacted.length(), body.length() + 5);
+        Assert.assertTrue(redacted.contains("{\"password\":\"****\"}"));
+    }
+
+    @Test
+    public void testFormBodies() {
+        Assert.assertEquals(redact("user=ann&password=s3cret&Pass%77ord=x&api+key=k&token", "password", "api key",
+                "token"), "user=ann&password=****&Pass%77ord=****&api+key=****&token");
+        // only single names apply to forms
+        Assert.assertEquals(redact("user.password=s3cret", "user.password"), "user.password=s3cret");
+    }
+
+    @Test
+    public void testCharsets() {
+        Assert.assertEquals(redact("{\"naïve\":\"é\",\"password\":\"éé\"}",
+                StandardCharsets.ISO_8859_1, "password"), "{\"naïve\":\"é\",\"password\":\"****\"}");
+        Assert.assertEquals(redact("{\"password\":\"x\"}", StandardCharsets.UTF_16, "password"), "****");
+    }
+
+    @Test
+    public void testUnmatchedBodyIsNotCopied() {
+        BodyRedactor redactor = new BodyRedactor(Collections.singletonList("password"));
+        ByteBuffer body = ByteBuffer.wrap("{\"user\":\"ann\"}".getBytes(StandardCharsets.UTF_8));
+        Assert.assertSame(redactor.redact(body, StandardCharsets.UTF_8), body);
+        Assert.assertTrue(new BodyRedactor(Collections.singletonList(" ")).isEmpty());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testEmptySegment() {
+        new BodyRedactor(Collections.singletonList("user..password"));
+    }
+
+    @Test
+    public void testProcessorRedactsBothBodies() {
+        List<AuditEvent> processed = new ArrayList<>();
+        RedactingAuditEventProcessor processor = new RedactingAuditEventProcessor(event -> processed.add(event),
+                "password", "access_token");
+        AuditEvent event = new AuditEvent(AuditCapture.builder()
+                .method("POST")
+                .requestUri("/login")
+                .status(200)
+                .requestBody("username=ann&password=s3cret".getBytes(StandardCharsets.ISO_8859_1))
+                .requestCharset(StandardCharsets.ISO_8859_1)
+                .responseBody("{\"access_token\":\"eyJ\",\"expires_in\":3600}".getBytes(StandardCharsets.UTF_8))
+                .responseBodyTruncated(true)
+                .build());
+        Assert.assertTrue(processor.process(event));
+
+        AuditEvent redacted = processed.get(0);
+        Assert.assertEquals(redacted.getRequestBody(), "username=ann&password=****");
+        Assert.assertEquals(redacted.getResponseBody(), "{\"access_token\":\"****\",\"expires_in\":3600}");
+        Assert.assertEquals(redacted.getRequestCharset(), StandardCharsets.ISO_8859_1);
+        Assert.assertEquals(redacted.getMethod(), "POST");
+        Assert.assertEquals(redacted.getTime(), event.getTime());
+        Assert.assertTrue(redacted.isResponseBodyTruncated());
+        Assert.assertTrue(redacted.toJson().contains("\"responseBody\":\"{\\\"access_token\\\":\\\"****\\\""));
+
+        AuditEvent clean = new AuditEvent(AuditCapture.builder().requestBody("{}".getBytes(StandardCharsets.UTF_8))
+                .build());
+        processor.process(clean);
+        Assert.assertSame(processed.get(1), clean);
+    }
+}
@@ -0,0 +1,216 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.audit;
+
+import static com.ge.predix.audit.AuditFixtures.event;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.springframework.util.FileSystemUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class RollingFileAuditSinkTest {
+
+    private Path directory;
+
+    @BeforeMethod
+    public void createDirectory() throws IOException {
+        this.directory = Files.createTempDirectory("audit");
+    }
+
+    @AfterMethod
+    public void deleteDirectory() {
+        FileSystemUtils.deleteRecursively(this.directory.toFile());
+    }
+
+    private List<Path> files() throws IOException {
+        try (Stream<Path> files = Files.list(this.directory)) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+
+    private List<String> lines() throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (Path file : files()) {
+            lines.addAll(Files.readAllLines(file, StandardCharsets.UTF_8));
+        }
+        return lines;
+    }
+
+    @Test
+    public void testEventsAreWrittenAsLines() throws Exception {
+        RollingFileAuditSink sink = RollingFileAuditSink.builder(this.directory).build();
+        StringBuilder large = new StringBuilder("/large");
+        // a hundred times the size of the other events
+        for (int i = 0; i < 5000; i++) {
+            large.append("/abcdefgh");
+        }
+        for (int i = 0; i < 100; i++) {
+            assertTrue(sink.process(event((i == 50) ? large.toString() : "/" + i)));
+        }
+        sink.destroy();
+
+        assertEquals(sink.getWrittenCount(), 100);
+        assertEquals(files(), Collections.singletonList(sink.getActiveFile()));
+        List<String> lines = lines();
+        assertEquals(lines.size(), 100);
+        assertEquals(lines.get(0), event("/0").toJson());
+        assertTrue(lines.get(50).contains(large), "large event");
+        assertTrue(lines.get(99).contains("\"/99\""));
+        assertFalse(sink.process(event("/late")));
+        assertEquals(sink.getDroppedCount(), 1);
+    }
+
+    @Test
+    public void testRolloverBySize() throws Exception {
+        long lineLength = (event("/0").toJson() + System.lineSeparator()).length();
+        RollingFileAuditSink sink = RollingFileAuditSink.builder(this.directory).maxFileBytes(3 * lineLength)
+                .flushPolicy(FlushPolicy.batched(1, 1024, 0)).build();
+        for (int i = 0; i < 10; i++) {
+            assertTrue(sink.process(event("/" + i)));
+        }
+        sink.destroy();
+
+        assertEquals(sink.getRolloverCount(), 3);
+        List<Path> files = files();
+        assertEquals(files.size(), 4);
+        for (Path file : files) {
+            assertTrue(Files.size(file) <= 3 * lineLength, file.toString());
+        }
+        // rolled files opened within the same second are told apart by a counter
+        assertTrue(files.contains(sink.getActiveFile()));
+        assertEquals(lines().size(), 10);
+    }
+
+    @Test
+    public void testRolloverByTime() throws Exception {
+        MutableClock clock = new MutableClock(Instant.parse("2026-03-01T10:59:00Z"));
+        RollingFileAuditSink sink = RollingFileAuditSink.builder(this.directory).fileName("events.json")
+                .rolloverInterval(Duration.ofHours(1)).flushPolicy(FlushPolicy.synchronous(5000)).clock(clock).build();
+        assertTrue(sink.process(event("/before")));
+        clock.instant = Instant.parse("2026-03-01T11:00:00Z");
+        assertTrue(sink.process(event("/after")));
+        sink.destroy();
+
+        Path rolledFile = this.directory.resolve("events-20260301-105900.json");
+        assertEquals(files(), Arrays.asList(rolledFile, sink.getActiveFile()));
+        assertTrue(new String(Files.readAllBytes(rolledFile), StandardCharsets.UTF_8).contains("/before"));
+        assertTrue(new String(Files.readAllBytes(sink.getActiveFile()), StandardCharsets.UTF_8).contains("/after"));
+    }
+
+    @Test
+    public void testPreallocatedFileIsTrimmed() throws Exception {
+        Path activeFile = this.directory.resolve("audit.log");
+        // left over from a run that did not shut down cleanly
+        byte[] leftOver = new byte[1000];
+        byte[] line = ("{\"old\":true}" + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(line, 0, leftOver, 0, line.length);
+        Files.write(activeFile, leftOver);
+
+        RollingFileAuditSink sink = RollingFileAuditSink.builder(this.directory).maxFileBytes(64 * 1024)
+                .preallocate(true).fsyncIntervalMillis(0).flushPolicy(FlushPolicy.synchronous(5000)).build();
+        assertTrue(sink.process(event("/0")));
+        assertEquals(Files.size(activeFile), 64 * 1024);
+        sink.destroy();
+
+        List<String> lines = lines();
+        assertEquals(lines.size(), 2);
+        assertEquals(lines.get(0), "{\"old\":true}");
+        assertTrue(lines.get(1).contains("\"/0\""));
+        assertEquals(Files.size(activeFile), line.length + lines.get(1).length() + System.lineSeparator().length());
+    }
+
+    @Test
+    public void testPreallocationAfterRolloverWritesOnlyZeros() throws Exception {
+        long lineLength = (event("/0").toJson() + System.lineSeparator()).length();
+        // the write buffer holds the last batch of the previous file when the next one is preallocated
+        RollingFileAuditSink sink = RollingFileAuditSink.builder(this.directory).maxFileBytes(3 * lineLength)
+                .preallocate(true).flushPolicy(FlushPolicy.synchronous(5000)).build();
+        assertTrue(sink.process(event("/0")));
+        // longer than the event after it, which leaves some of it in the buffer
+        assertTrue(sink.process(event("/1-longer")));
+        assertTrue(sink.process(event("/2")));
+        assertEquals(sink.getRolloverCount(), 1);
+
+        // what a crash would leave behind: the new event, then nothing but zeros
+        byte[] active = Files.readAllBytes(sink.getActiveFile());
+        assertEquals(active.length, 3 * lineLength);
+        for (int i = (int) lineLength; i < active.length; i++) {
+            assertEquals(active[i], 0, "byte " + i);
+        }
+        sink.destroy();
+        assertEquals(lines().size(), 3);
+    }
+
+    @Test
+    public void testSynchronousPolicyWritesBeforeReturning() throws Exception {
+        RollingFileAuditSink sink = RollingFileAuditSink.builder(this.directory)
+                .flushPolicy(FlushPolicy.synchronous(5000)).build();
+        assertTrue(sink.process(event("/0")));
+        assertEquals(sink.getWrittenCount(), 1);
+        assertTrue(new String(Files.readAllBytes(sink.getActiveFile()), StandardCharsets.UTF_8).contains("\"/0\""));
+        sink.destroy();
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testQueueCapacityMustBePositive() throws IOException {
+        RollingFileAuditSink.builder(this.directory).queueCapacity(0).build();
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private volatile Instant instant;
+
+        private MutableClock(final Instant instant) {
+            this.instant = instant;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(final ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return this.instant;
+        }
+    }
+}
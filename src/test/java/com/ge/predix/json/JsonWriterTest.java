@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+public class JsonWriterTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    public void testMatchesJacksonForSupportedValues() throws IOException {
+        Map<String, Object> nested = new LinkedHashMap<>();
+        nested.put("empty", Collections.emptyMap());
+        nested.put("emptyList", Collections.emptyList());
+        nested.put("array", new String[] { "a", null, "c" });
+        nested.put("ints", new int[] { 1, -2 });
+        nested.put("bytes", new byte[] { 1, 2, 3, (byte) 0xff });
+        nested.put("chars", new char[] { 'x', '"' });
+
+        Map<String, Object> value = new LinkedHashMap<>();
+        value.put("text", "quote \" backslash \\ slash / tab \t newline \n nul \u0000 unit \u001f del \u007f é \u2028");
+        value.put("char", '\'');
+        value.put("int", 42);
+        value.put("long", Long.MIN_VALUE);
+        value.put("double", 1.5e-10);
+        value.put("nan", Double.NaN);
+        value.put("infinity", Float.NEGATIVE_INFINITY);
+        value.put("decimal", new BigDecimal("12.3400"));
+        value.put("bool", true);
+        value.put("null", null);
+        value.put("enum", TimeUnit.SECONDS);
+        value.put("list", Arrays.asList(1, "two", Arrays.asList(3.0, false)));
+        value.put("nested", nested);
+
+        Assert.assertEquals(JsonWriter.toJson(value), MAPPER.writeValueAsString(value));
+
+        StringBuilder pretty = new StringBuilder();
+        new JsonWriter(pretty, true).value(value);
+        Assert.assertEquals(pretty.toString(),
+                MAPPER.writerWithDefaultPrettyPrinter().writeValueAsString(value));
+    }
+
+    @Test
+    public void testInstantMatchesJsr310Timestamps() throws IOException {
+        ObjectMapper mapper = new ObjectMapper().findAndRegisterModules();
+        Assert.assertTrue(mapper.isEnabled(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS));
+        for (Instant instant : Arrays.asList(Instant.EPOCH, Instant.ofEpochSecond(1612345678),
+                Instant.ofEpochSecond(1612345678, 120), Instant.ofEpochSecond(-5, 999999999),
+                Instant.ofEpochSecond(0, 1))) {
+            Assert.assertEquals(JsonWriter.toJson(instant), mapper.writeValueAsString(instant));
+        }
+    }
+
+    @Test
+    public void testOtherObjectsAreWrittenByJackson() throws IOException {
+        Bean bean = new Bean();
+        Assert.assertEquals(JsonWriter.toJson(Collections.singletonMap("msg", bean)),
+                "{\"msg\":" + MAPPER.writeValueAsString(bean) + "}");
+    }
+
+    @Test
+    public void testStreamingCalls() throws IOException {
+        StringBuilder json = new StringBuilder();
+        new JsonWriter(json).beginArray()
+                .beginObject().name("a").value(1).name("b").nullValue().endObject()
+                .value("x").value((String) null)
+                .beginArray().endArray()
+                .endArray();
+        Assert.assertEquals(json.toString(), "[{\"a\":1,\"b\":null},\"x\",null,[]]");
+    }
+
+    @Test
+    public void testUtf8OutputStream() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            text.append("ascii \u00e9\u20ac\ud83d\ude00 \"");
+        }
+        text.append('\ud800');
+        Map<String, Object> value = Collections.singletonMap("text", text.toString());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        JsonWriter json = new JsonWriter(bytes, false);
+        json.value(value);
+        json.flush();
+        Assert.assertEquals(bytes.toByteArray(), JsonWriter.toJson(value).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testUnbalancedEndIsRejected() throws IOException {
+        new JsonWriter(new StringBuilder()).endObject();
+    }
+
+    public static final class Bean {
+
+        public String getName() {
+            return "bean";
+        }
+
+        public int getSize() {
+            return 3;
+        }
+    }
+}
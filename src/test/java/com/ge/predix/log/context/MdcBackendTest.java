@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.log.context;
+
+import org.apache.logging.log4j.ThreadContext;
+import org.slf4j.MDC;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+public class MdcBackendTest {
+
+    private static final MdcSnapshot SNAPSHOT = MdcSnapshot.EMPTY.with("APP_ID", "app").with("Zone-Id", "zone");
+
+    @AfterMethod
+    public void clear() {
+        MDC.clear();
+        ThreadContext.clearMap();
+    }
+
+    @Test
+    public void testSnapshotSkipsNullsAndReplacesKeys() {
+        MdcSnapshot snapshot = SNAPSHOT.with("ignored", null).with("Zone-Id", "other");
+        Assert.assertEquals(snapshot.size(), 2);
+        Assert.assertEquals(snapshot.get("Zone-Id"), "other");
+        Assert.assertEquals(SNAPSHOT.get("Zone-Id"), "zone");
+        Assert.assertEquals(snapshot.asMap().get("APP_ID"), "app");
+        Assert.assertEquals(snapshot.asMap().size(), 2);
+    }
+
+    @Test
+    public void testSlf4jInstallAndRestore() {
+        MDC.put("Zone-Id", "caller-zone");
+        MdcBackend backend = new Slf4jMdcBackend();
+        try (MdcScope scope = backend.install(SNAPSHOT)) {
+            Assert.assertEquals(MDC.get("APP_ID"), "app");
+            Assert.assertEquals(MDC.get("Zone-Id"), "zone");
+        }
+        Assert.assertNull(MDC.get("APP_ID"));
+        Assert.assertEquals(MDC.get("Zone-Id"), "caller-zone");
+    }
+
+    @Test
+    public void testLog4j2InstallAndRestore() {
+        MdcBackend backend = new Log4j2MdcBackend();
+        try (MdcScope scope = backend.install(SNAPSHOT)) {
+            Assert.assertEquals(ThreadContext.get("APP_ID"), "app");
+            Assert.assertEquals(ThreadContext.get("Zone-Id"), "zone");
+        }
+        Assert.assertTrue(ThreadContext.isEmpty());
+
+        ThreadContext.put("Zone-Id", "caller-zone");
+        try (MdcScope scope = backend.install(SNAPSHOT)) {
+            Assert.assertEquals(ThreadContext.get("Zone-Id"), "zone");
+        }
+        Assert.assertNull(ThreadContext.get("APP_ID"));
+        Assert.assertEquals(ThreadContext.get("Zone-Id"), "caller-zone");
+    }
+
+    @Test
+    public void testDetectFallsBackToSlf4j() {
+        // the test classpath binds SLF4J to logback
+        Assert.assertTrue(MdcBackend.detect() instanceof LogbackMdcBackend);
+    }
+
+    @Test
+    public void testLogbackCaptureIsImmutableAndAttachRestores() {
+        MdcBackend backend = new LogbackMdcBackend();
+        MDC.put("Zone-Id", "zone");
+        MdcContext context = backend.capture();
+        MDC.put("Zone-Id", "changed");
+        MDC.put("APP_ID", "app");
+        Assert.assertEquals(context.get("Zone-Id"), "zone");
+        Assert.assertNull(context.get("APP_ID"));
+
+        try (MdcScope scope = backend.attach(context)) {
+            Assert.assertEquals(MDC.get("Zone-Id"), "zone");
+            Assert.assertNull(MDC.get("APP_ID"));
+        }
+        Assert.assertEquals(MDC.get("Zone-Id"), "changed");
+        Assert.assertEquals(MDC.get("APP_ID"), "app");
+    }
+
+    @Test
+    public void testLog4j2CaptureIsImmutableAndAttachRestores() {
+        MdcBackend backend = new Log4j2MdcBackend();
+        ThreadContext.put("Zone-Id", "zone");
+        MdcContext context = backend.capture();
+        ThreadContext.put("Zone-Id", "changed");
+        Assert.assertEquals(context.get("Zone-Id"), "zone");
+
+        ThreadContext.clearMap();
+        try (MdcScope scope = backend.attach(context)) {
+            Assert.assertEquals(ThreadContext.get("Zone-Id"), "zone");
+        }
+        Assert.assertTrue(ThreadContext.isEmpty());
+    }
+}
@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.log.context;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.MDC;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+public class MdcPropagationTest {
+
+    // a single worker, so a leaked MDC would show up in the next task
+    private final ExecutorService pool = Executors.newSingleThreadExecutor();
+
+    @AfterMethod
+    public void clear() {
+        MDC.clear();
+    }
+
+    @AfterClass
+    public void shutdown() {
+        this.pool.shutdownNow();
+    }
+
+    @Test
+    public void testExecutorServicePropagatesAndCleansUp() throws Exception {
+        ExecutorService executor = MdcPropagation.wrap(this.pool);
+        MDC.put("Zone-Id", "zone");
+        Assert.assertEquals(executor.submit(() -> MDC.get("Zone-Id")).get(5, TimeUnit.SECONDS), "zone");
+        Assert.assertEquals(executor.invokeAll(Collections.singletonList(() -> MDC.get("Zone-Id"))).get(0).get(),
+                "zone");
+
+        MDC.clear();
+        Assert.assertNull(executor.submit(() -> MDC.get("Zone-Id")).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testCompletableFutureWithExecutor() throws Exception {
+        MDC.put("Zone-Id", "zone");
+        String zone = CompletableFuture.supplyAsync(() -> MDC.get("Zone-Id"), MdcPropagation.wrap(this.pool))
+                .get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(zone, "zone");
+    }
+
+    @Test
+    public void testTaskDecorator() throws Exception {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setTaskDecorator(new MdcTaskDecorator());
+        executor.initialize();
+        try {
+            MDC.put("Zone-Id", "zone");
+            Assert.assertEquals(executor.submit(() -> MDC.get("Zone-Id")).get(5, TimeUnit.SECONDS), "zone");
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.log.filter;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class CorrelationIdsTest {
+
+    private static final String TRACE_ID = "4bf92f3577b34da6a3ce929d0e0e4736";
+
+    @Test
+    public void testParseTraceparent() {
+        Assert.assertEquals(CorrelationIds.parseTraceparent("00-" + TRACE_ID + "-00f067aa0ba902b7-01"), TRACE_ID);
+        // future versions may carry more fields
+        Assert.assertEquals(CorrelationIds.parseTraceparent("01-" + TRACE_ID + "-00f067aa0ba902b7-01-extra"),
+                TRACE_ID);
+        Assert.assertNull(CorrelationIds.parseTraceparent("ff-" + TRACE_ID + "-00f067aa0ba902b7-01"));
+        Assert.assertNull(CorrelationIds.parseTraceparent("00-00000000000000000000000000000000-00f067aa0ba902b7-01"));
+        Assert.assertNull(CorrelationIds.parseTraceparent("00-" + TRACE_ID.toUpperCase() + "-00f067aa0ba902b7-01"));
+        Assert.assertNull(CorrelationIds.parseTraceparent("00-" + TRACE_ID + "-00f067aa0ba902b7-01x"));
+        Assert.assertNull(CorrelationIds.parseTraceparent("00-" + TRACE_ID + "-00f067aa0ba902b7-01-extra"));
+        Assert.assertNull(CorrelationIds.parseTraceparent("00-" + TRACE_ID + "-0000000000000000-01"));
+        Assert.assertNull(CorrelationIds.parseTraceparent("garbage"));
+        Assert.assertNull(CorrelationIds.parseTraceparent(null));
+    }
+
+    @Test
+    public void testParseB3TraceId() {
+        Assert.assertEquals(CorrelationIds.parseB3TraceId(TRACE_ID), TRACE_ID);
+        Assert.assertEquals(CorrelationIds.parseB3TraceId("A3CE929D0E0E4736"), "a3ce929d0e0e4736");
+        Assert.assertNull(CorrelationIds.parseB3TraceId("0000000000000000"));
+        Assert.assertNull(CorrelationIds.parseB3TraceId("not-a-trace-id!!"));
+        Assert.assertNull(CorrelationIds.parseB3TraceId("abc"));
+    }
+
+    @Test
+    public void testResolvePrefersTraceparent() {
+        Assert.assertEquals(CorrelationIds.resolve(name -> CorrelationIds.TRACEPARENT.equals(name)
+                ? "00-" + TRACE_ID + "-00f067aa0ba902b7-01" : "a3ce929d0e0e4736"), TRACE_ID);
+        Assert.assertEquals(CorrelationIds.resolve(
+                name -> CorrelationIds.B3_TRACE_ID.equals(name) ? "a3ce929d0e0e4736" : null), "a3ce929d0e0e4736");
+    }
+
+    @Test
+    public void testResolveKeepsCurrentIdWithoutTraceHeaders() {
+        Assert.assertEquals(CorrelationIds.resolve(name -> null, "upstream-id"), "upstream-id");
+        Assert.assertEquals(CorrelationIds.resolve(name -> CorrelationIds.B3_TRACE_ID.equals(name)
+                ? "a3ce929d0e0e4736" : null, "upstream-id"), "a3ce929d0e0e4736");
+        Assert.assertTrue(CorrelationIds.resolve(name -> null, "").matches("[0-9a-f]{32}"));
+    }
+
+    @Test
+    public void testGenerate() {
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            String id = CorrelationIds.generate();
+            Assert.assertTrue(id.matches("[0-9a-f]{32}"), id);
+            Assert.assertNotNull(CorrelationIds.parseTraceparent("00-" + id + "-00f067aa0ba902b7-01"));
+            ids.add(id);
+        }
+        Assert.assertEquals(ids.size(), 1000);
+    }
+}
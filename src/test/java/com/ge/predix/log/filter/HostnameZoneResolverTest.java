@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.log.filter;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class HostnameZoneResolverTest {
+
+    private static HostnameZoneResolver resolver(final String... hostnames) {
+        return new HostnameZoneResolver(new LinkedHashSet<>(Arrays.asList(hostnames)), "default-zone");
+    }
+
+    @Test
+    public void testExactHostnameResolvesToDefaultZone() {
+        HostnameZoneResolver resolver = resolver("example.com", "api.example.com");
+        Assert.assertEquals(resolver.resolve("example.com"), "default-zone");
+        Assert.assertEquals(resolver.resolve("api.example.com"), "default-zone");
+    }
+
+    @Test
+    public void testSubdomainResolvesToZone() {
+        HostnameZoneResolver resolver = resolver("localhost", "example.com");
+        Assert.assertEquals(resolver.resolve("tenant.localhost"), "tenant");
+        Assert.assertEquals(resolver.resolve("tenant.example.com"), "tenant");
+        Assert.assertEquals(resolver.resolve("a.b.example.com"), "a.b");
+    }
+
+    @Test
+    public void testUnknownHostnameResolvesToNull() {
+        HostnameZoneResolver resolver = resolver("example.com");
+        Assert.assertNull(resolver.resolve("tenant.example.org"));
+        Assert.assertNull(resolver.resolve("tenantexample.com"));
+        Assert.assertNull(resolver.resolve("com"));
+        Assert.assertNull(resolver.resolve(null));
+    }
+
+    @Test
+    public void testFirstConfiguredHostnameWins() {
+        // same precedence as a linear scan over the configured hostnames
+        Assert.assertEquals(resolver("example.com", "api.example.com").resolve("t.api.example.com"), "t.api");
+        Assert.assertEquals(resolver("api.example.com", "example.com").resolve("t.api.example.com"), "t");
+    }
+
+    @Test
+    public void testCachedZoneIsCanonical() {
+        HostnameZoneResolver resolver = resolver("example.com");
+        String first = resolver.resolve(new String("tenant.example.com"));
+        String second = resolver.resolve(new String("tenant.example.com"));
+        Assert.assertEquals(first, "tenant");
+        Assert.assertSame(second, first);
+    }
+
+    @Test
+    public void testCacheIsBounded() {
+        HostnameZoneResolver resolver = new HostnameZoneResolver(Arrays.asList("example.com"), "", 8);
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(resolver.resolve("tenant" + i + ".example.com"), "tenant" + i);
+            Assert.assertTrue(resolver.cacheSize() <= 8);
+        }
+    }
+}
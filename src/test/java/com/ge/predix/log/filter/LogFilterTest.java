@@ -19,25 +19,46 @@ package com.ge.predix.log.filter;
 import static org.mockito.Matchers.any;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.servlet.Servlet;
 import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
 
 import org.mockito.Mockito;
 import org.mockito.stubbing.Answer;
+import org.slf4j.MDC;
 import org.springframework.mock.web.MockFilterChain;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import com.ge.predix.audit.AsyncAuditDispatcher;
+import com.ge.predix.audit.AuditCapture;
 import com.ge.predix.audit.AuditEvent;
+import com.ge.predix.audit.AuditEventRing;
 import com.ge.predix.audit.AuditEventWriter;
+import com.ge.predix.audit.AuditRateLimiter;
+import com.ge.predix.metrics.FilterPhase;
+import com.ge.predix.metrics.HistogramFilterMetrics;
 
 public class LogFilterTest {
 
@@ -181,6 +202,164 @@ public class LogFilterTest {
         logFilter.doFilter(new MockHttpServletRequest(), new MockHttpServletResponse(), new MockFilterChain(mockServlet, new MockMDCFilter(expectMap)));
     }
 
+    @Test
+    public void testLogFilterRestoresCallerMDC() throws Exception {
+        LogFilter logFilter = new LogFilter();
+        logFilter.setCustomAppName("custom app name");
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Predix-Zone-Id", "request-zone");
+        Map<String, String> expectMap = new HashMap<>();
+        expectMap.put("Zone-Id", "request-zone");
+        expectMap.put("APP_NAME", "custom app name");
+
+        MDC.put("Zone-Id", "caller-zone");
+        try {
+            logFilter.doFilter(request, new MockHttpServletResponse(),
+                    new MockFilterChain(Mockito.mock(Servlet.class), new MockMDCFilter(expectMap)));
+            Assert.assertEquals(MDC.get("Zone-Id"), "caller-zone");
+            Assert.assertNull(MDC.get("APP_NAME"));
+        } finally {
+            MDC.remove("Zone-Id");
+        }
+    }
+
+    @Test
+    public void testLogFilterUsesTraceparentAsCorrelationId() throws Exception {
+        LogFilter logFilter = new LogFilter();
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("traceparent", "00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        logFilter.doFilter(request, response, new MockFilterChain(Mockito.mock(Servlet.class),
+                new MockMDCFilter(Collections.singletonMap("traceId", "4bf92f3577b34da6a3ce929d0e0e4736"))));
+        Assert.assertEquals(response.getHeader("X-Correlation-Id"), "4bf92f3577b34da6a3ce929d0e0e4736");
+        Assert.assertNull(MDC.get("traceId"));
+    }
+
+    @Test
+    public void testLogFilterGeneratesCorrelationId() throws Exception {
+        LogFilter logFilter = new LogFilter();
+        logFilter.setCorrelationKey("corr");
+        logFilter.setCorrelationResponseHeader("X-Request-Id");
+        AtomicReference<String> correlationId = new AtomicReference<>();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        logFilter.doFilter(new MockHttpServletRequest(), response, (req, res) -> correlationId.set(MDC.get("corr")));
+        Assert.assertTrue(correlationId.get().matches("[0-9a-f]{32}"));
+        Assert.assertEquals(response.getHeader("X-Request-Id"), correlationId.get());
+    }
+
+    @Test
+    public void testLogFilterKeepsCorrelationIdAlreadyInMDC() throws Exception {
+        LogFilter logFilter = new LogFilter();
+        AtomicReference<String> correlationId = new AtomicReference<>();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        MDC.put("traceId", "upstream-id");
+        try {
+            logFilter.doFilter(new MockHttpServletRequest(), response,
+                    (req, res) -> correlationId.set(MDC.get("traceId")));
+            Assert.assertEquals(MDC.get("traceId"), "upstream-id");
+        } finally {
+            MDC.remove("traceId");
+        }
+        Assert.assertEquals(correlationId.get(), "upstream-id");
+        Assert.assertEquals(response.getHeader("X-Correlation-Id"), "upstream-id");
+    }
+
+    @Test
+    public void testLogFilterExcludedPathBypassesFilter() throws Exception {
+        LogFilter logFilter = new LogFilter();
+        logFilter.setExcludedPaths(Collections.singleton("/health"));
+        logFilter.setAuditProcessor(event -> {
+            throw new AssertionError("excluded request was audited");
+        });
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/health");
+        request.addHeader("Predix-Zone-Id", "request-zone");
+        AtomicReference<String> zone = new AtomicReference<>();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        logFilter.doFilter(request, response, (req, res) -> zone.set(MDC.get("Zone-Id")));
+        Assert.assertNull(zone.get());
+        Assert.assertNull(response.getHeader("X-Correlation-Id"));
+    }
+
+    @Test
+    public void testLogFilterAuditExcludedPathKeepsMDC() throws Exception {
+        LogFilter logFilter = new LogFilter();
+        logFilter.setAuditExcludedPaths(Collections.singleton("/metrics/**"));
+        AtomicReference<AuditEvent> audited = new AtomicReference<>();
+        logFilter.setAuditProcessor(event -> {
+            audited.set(event);
+            return true;
+        });
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/metrics/jvm");
+        request.addHeader("Predix-Zone-Id", "request-zone");
+        AtomicReference<String> zone = new AtomicReference<>();
+
+        logFilter.doFilter(request, new MockHttpServletResponse(), (req, res) -> zone.set(MDC.get("Zone-Id")));
+        Assert.assertEquals(zone.get(), "request-zone");
+        Assert.assertNull(audited.get());
+
+        logFilter.doFilter(new MockHttpServletRequest("GET", "/api"), new MockHttpServletResponse(),
+                (req, res) -> { });
+        Assert.assertNotNull(audited.get());
+    }
+
+    @Test
+    public void testLogFilterAuditsTraversalOutOfExcludedPaths() throws Exception {
+        LogFilter logFilter = new LogFilter();
+        logFilter.setExcludedPaths(Collections.singleton("/health/**"));
+        logFilter.setAuditExcludedPaths(Collections.singleton("/metrics/**"));
+        List<String> audited = new ArrayList<>();
+        logFilter.setAuditProcessor(event -> audited.add(event.getRequestUri()));
+
+        for (String uri : new String[] { "/health/../admin/users", "/health/..;/admin/users",
+                "/metrics/../admin/users", "/metrics/..;/admin/users" }) {
+            logFilter.doFilter(new MockHttpServletRequest("GET", uri), new MockHttpServletResponse(),
+                    (req, res) -> { });
+        }
+        Assert.assertEquals(audited, Arrays.asList("/health/../admin/users", "/health/..;/admin/users",
+                "/metrics/../admin/users", "/metrics/..;/admin/users"));
+    }
+
+    @Test
+    public void testLogFilterAuditRateLimitedPerZone() throws Exception {
+        LogFilter logFilter = new LogFilter();
+        AuditRateLimiter limiter = new AuditRateLimiter(0.001, 1, 0);
+        logFilter.setAuditRateLimiter(limiter);
+        AtomicInteger audited = new AtomicInteger();
+        logFilter.setAuditProcessor(event -> {
+            audited.incrementAndGet();
+            return true;
+        });
+        for (String zone : new String[] { "noisy", "noisy", "noisy", "quiet" }) {
+            MockHttpServletRequest request = new MockHttpServletRequest();
+            request.addHeader("Predix-Zone-Id", zone);
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            logFilter.doFilter(request, response, (req, res) -> res.getWriter().write(TEST_RESPONSE_CONTENT));
+            Assert.assertEquals(response.getContentAsString(), TEST_RESPONSE_CONTENT);
+        }
+        Assert.assertEquals(audited.get(), 2);
+        Assert.assertEquals(limiter.getPendingSuppressedCount("noisy"), 2);
+    }
+
+    @Test
+    public void testLogFilterRecordsPhaseMetrics() throws ServletException, IOException {
+        LogFilter logFilter = new LogFilter();
+        HistogramFilterMetrics metrics = new HistogramFilterMetrics();
+        logFilter.setMetrics(metrics);
+        auditRequest(logFilter, new MockHttpServletResponse());
+
+        for (FilterPhase phase : new FilterPhase[] { FilterPhase.ZONE_RESOLUTION, FilterPhase.MDC_SETUP,
+                FilterPhase.BODY_CAPTURE, FilterPhase.AUDIT_EVENT, FilterPhase.AUDIT_PROCESS }) {
+            Assert.assertEquals(metrics.getHistogram(phase).getCount(), 1, phase.name());
+        }
+        Assert.assertEquals(metrics.getHistogram(FilterPhase.AUDIT_DISPATCH).getCount(), 0);
+        Assert.assertEquals(metrics.getCapturedRequestBytes(), TEST_REQUEST_CONTENT.length());
+        Assert.assertEquals(metrics.getCapturedResponseBytes(), TEST_RESPONSE_CONTENT.length());
+    }
+
     @Test
     public void testLogFilterAudit() throws ServletException, IOException {
         AuditEventWriter testEventWriter = Mockito.mock(AuditEventWriter.class);
@@ -202,4 +381,303 @@ public class LogFilterTest {
         testLogFilter.doFilterInternal(request, response, new MockFilterChain(mockServlet, new MockControllerFilter()));
     }
 
+    @Test
+    public void testLogFilterAsyncAudit() throws Exception {
+        CountDownLatch processed = new CountDownLatch(1);
+        AsyncAuditDispatcher dispatcher = new AsyncAuditDispatcher(event -> {
+            Assert.assertEquals(event.getRequestBody(), TEST_REQUEST_CONTENT);
+            Assert.assertEquals(event.getResponseBody(), TEST_RESPONSE_CONTENT);
+            processed.countDown();
+            return true;
+        });
+
+        LogFilter testLogFilter = new LogFilter();
+        testLogFilter.setAuditDispatcher(dispatcher);
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setContent(TEST_REQUEST_CONTENT.getBytes());
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        Servlet mockServlet = Mockito.mock(Servlet.class);
+        testLogFilter.doFilterInternal(request, response, new MockFilterChain(mockServlet, new MockControllerFilter()));
+
+        Assert.assertEquals(response.getContentAsString(), TEST_RESPONSE_CONTENT);
+        Assert.assertTrue(processed.await(5, TimeUnit.SECONDS));
+        dispatcher.destroy();
+    }
+
+    @Test
+    public void testLogFilterAsyncDispatchAwareAuditsOnCompletion() throws Exception {
+        AtomicReference<AuditEvent> audited = new AtomicReference<>();
+        LogFilter testLogFilter = new LogFilter();
+        testLogFilter.setAsyncDispatchAware(true);
+        testLogFilter.setAuditProcessor(event -> {
+            audited.set(event);
+            return true;
+        });
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setAsyncSupported(true);
+        request.setContent(TEST_REQUEST_CONTENT.getBytes());
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        AtomicReference<HttpServletResponse> asyncResponse = new AtomicReference<>();
+        testLogFilter.doFilterInternal(request, response, (req, res) -> {
+            req.getInputStream().read(new byte[TEST_REQUEST_CONTENT.length()]);
+            req.startAsync();
+            asyncResponse.set((HttpServletResponse) res);
+        });
+        Assert.assertNull(audited.get());
+
+        // the async work finishes later, on another thread
+        Thread worker = new Thread(() -> {
+            try {
+                asyncResponse.get().setStatus(202);
+                asyncResponse.get().getWriter().write(TEST_RESPONSE_CONTENT);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        worker.start();
+        worker.join();
+        request.getAsyncContext().complete();
+
+        Assert.assertNotNull(audited.get());
+        Assert.assertEquals(audited.get().getStatus(), 202);
+        Assert.assertEquals(audited.get().getRequestBody(), TEST_REQUEST_CONTENT);
+        Assert.assertEquals(audited.get().getResponseBody(), TEST_RESPONSE_CONTENT);
+        Assert.assertEquals(response.getContentAsString(), TEST_RESPONSE_CONTENT);
+    }
+
+    @Test
+    public void testLogFilterWriterOutputReachesClientWhenChainFails() throws ServletException, IOException {
+        LogFilter testLogFilter = new LogFilter();
+        testLogFilter.setAuditProcessor(event -> true);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        try {
+            testLogFilter.doFilterInternal(new MockHttpServletRequest(), response, (req, res) -> {
+                res.getWriter().write(TEST_RESPONSE_CONTENT);
+                throw new IllegalStateException("handler failed");
+            });
+            Assert.fail("the chain's exception should propagate");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals(e.getMessage(), "handler failed");
+        }
+        Assert.assertEquals(response.getContentAsString(), TEST_RESPONSE_CONTENT);
+    }
+
+    @Test
+    public void testLogFilterAuditTruncatesBodies() throws ServletException, IOException {
+        LogFilter testLogFilter = new LogFilter();
+        testLogFilter.setMaxRequestCaptureBytes(4);
+        testLogFilter.setMaxResponseCaptureBytes(5);
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        AuditEvent event = auditRequest(testLogFilter, response);
+
+        Assert.assertEquals(event.getRequestBody(), TEST_REQUEST_CONTENT.substring(0, 4));
+        Assert.assertTrue(event.isRequestBodyTruncated());
+        Assert.assertEquals(event.getResponseBody(), TEST_RESPONSE_CONTENT.substring(0, 5));
+        Assert.assertTrue(event.isResponseBodyTruncated());
+        Assert.assertEquals(response.getContentAsString(), TEST_RESPONSE_CONTENT);
+    }
+
+    @Test
+    public void testLogFilterAuditDecodesBodiesWithTheirCharsets() throws ServletException, IOException {
+        LogFilter testLogFilter = new LogFilter();
+        AtomicReference<AuditEvent> audited = new AtomicReference<>();
+        testLogFilter.setAuditProcessor(event -> {
+            audited.set(event);
+            return true;
+        });
+        String requestContent = "{\"name\":\"caf\u00e9 \u20ac\"}";
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setContentType("application/json;charset=UTF-8");
+        request.setContent(requestContent.getBytes(StandardCharsets.UTF_8));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        testLogFilter.doFilterInternal(request, response, (req, res) -> {
+            req.getInputStream().read(new byte[64]);
+            res.setContentType("text/plain;charset=ISO-8859-1");
+            res.getWriter().write("voil\u00e0");
+        });
+
+        Assert.assertEquals(audited.get().getRequestCharset(), StandardCharsets.UTF_8);
+        Assert.assertEquals(audited.get().getRequestBody(), requestContent);
+        Assert.assertEquals(audited.get().getResponseCharset(), StandardCharsets.ISO_8859_1);
+        Assert.assertEquals(audited.get().getResponseBody(), "voil\u00e0");
+    }
+
+    @Test
+    public void testLogFilterRecyclesAuditEventSlots() throws ServletException, IOException {
+        LogFilter testLogFilter = new LogFilter();
+        AuditEventRing ring = new AuditEventRing(1);
+        testLogFilter.setAuditEventRing(ring);
+        List<String> bodies = new ArrayList<>();
+        testLogFilter.setAuditProcessor(event -> {
+            Assert.assertEquals(ring.getAvailableCount(), 0);
+            bodies.add(event.getRequestBody() + "|" + event.getResponseBody() + "|" + event.getMethod());
+            return true;
+        });
+
+        for (String content : new String[] { "first request body", "second" }) {
+            MockHttpServletRequest request = new MockHttpServletRequest("PUT", "/items");
+            request.setContent(content.getBytes(StandardCharsets.UTF_8));
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            testLogFilter.doFilterInternal(request, response,
+                    new MockFilterChain(Mockito.mock(Servlet.class), new MockControllerFilter()));
+            Assert.assertEquals(response.getContentAsString(), TEST_RESPONSE_CONTENT);
+            Assert.assertEquals(ring.getAvailableCount(), 1);
+        }
+        Assert.assertEquals(bodies, Arrays.asList("first request body|" + TEST_RESPONSE_CONTENT + "|PUT",
+                "second|" + TEST_RESPONSE_CONTENT + "|PUT"));
+
+        // a failed request hands its slot back without auditing
+        try {
+            testLogFilter.doFilterInternal(new MockHttpServletRequest(), new MockHttpServletResponse(),
+                    (req, res) -> {
+                        throw new ServletException("boom");
+                    });
+            Assert.fail();
+        } catch (ServletException e) {
+            Assert.assertEquals(ring.getAvailableCount(), 1);
+        }
+        Assert.assertEquals(bodies.size(), 2);
+    }
+
+    @Test
+    public void testLogFilterRecyclesAuditEventSlotsThroughDispatcher() throws Exception {
+        AuditEventRing ring = new AuditEventRing(2);
+        CountDownLatch processed = new CountDownLatch(3);
+        Queue<String> bodies = new ConcurrentLinkedQueue<>();
+        AsyncAuditDispatcher dispatcher = new AsyncAuditDispatcher(event -> {
+            bodies.add(event.getRequestBody());
+            processed.countDown();
+            return true;
+        });
+        LogFilter testLogFilter = new LogFilter();
+        testLogFilter.setAuditEventRing(ring);
+        testLogFilter.setAuditDispatcher(dispatcher);
+
+        for (int i = 0; i < 3; i++) {
+            MockHttpServletRequest request = new MockHttpServletRequest();
+            request.setContent(("body-" + i).getBytes(StandardCharsets.UTF_8));
+            testLogFilter.doFilterInternal(request, new MockHttpServletResponse(),
+                    new MockFilterChain(Mockito.mock(Servlet.class), new MockControllerFilter()));
+        }
+        Assert.assertTrue(processed.await(5, TimeUnit.SECONDS));
+        dispatcher.destroy();
+        Assert.assertEquals(new TreeSet<>(bodies),
+                new TreeSet<>(Arrays.asList("body-0", "body-1", "body-2")));
+        Assert.assertEquals(ring.getAvailableCount(), 2);
+    }
+
+    @Test
+    public void testLogFilterStampsRecycledSlotsWithTheRequestTime() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch busy = new CountDownLatch(1);
+        Queue<AuditEvent> events = new ConcurrentLinkedQueue<>();
+        CountDownLatch processed = new CountDownLatch(2);
+        AsyncAuditDispatcher dispatcher = new AsyncAuditDispatcher(event -> {
+            busy.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            // the slot's view is only valid during process()
+            events.add(new AuditEvent(AuditCapture.builder().requestUri(event.getRequestUri())
+                    .time(event.getTime()).build()));
+            processed.countDown();
+            return true;
+        }, 16, 1);
+        LogFilter testLogFilter = new LogFilter();
+        testLogFilter.setAuditEventRing(new AuditEventRing(2));
+        testLogFilter.setAuditDispatcher(dispatcher);
+
+        // keep the only worker busy, so that the request's slot waits in the queue
+        Assert.assertTrue(dispatcher.dispatch(AuditCapture.builder().requestUri("/busy").build()));
+        Assert.assertTrue(busy.await(5, TimeUnit.SECONDS));
+        Instant before = Instant.now();
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/slot");
+        testLogFilter.doFilterInternal(request, new MockHttpServletResponse(),
+                new MockFilterChain(Mockito.mock(Servlet.class), new MockControllerFilter()));
+        Instant after = Instant.now();
+        Thread.sleep(50);
+        release.countDown();
+        Assert.assertTrue(processed.await(5, TimeUnit.SECONDS));
+        dispatcher.destroy();
+
+        AuditEvent event = events.stream().filter(e -> "/slot".equals(e.getRequestUri())).findFirst().get();
+        Assert.assertFalse(event.getTime().isBefore(before), event.getTime() + " before " + before);
+        Assert.assertFalse(event.getTime().isAfter(after), event.getTime() + " after " + after);
+    }
+
+    @Test
+    public void testLogFilterAuditNotSampled() throws ServletException, IOException {
+        LogFilter testLogFilter = new LogFilter();
+        testLogFilter.setAuditSampleRate(0.0);
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        AuditEvent event = auditRequest(testLogFilter, response);
+
+        Assert.assertEquals(event.getRequestBody(), "");
+        Assert.assertEquals(event.getResponseBody(), "");
+        Assert.assertEquals(response.getContentAsString(), TEST_RESPONSE_CONTENT);
+    }
+
+    @Test
+    public void testLogFilterAuditZoneSampleRateOverridesGlobal() throws ServletException, IOException {
+        LogFilter testLogFilter = new LogFilter();
+        testLogFilter.setAuditSampleRate(0.0);
+        testLogFilter.setZoneAuditSampleRates(Collections.singletonMap("sampled-zone", 1.0));
+
+        AuditEvent event = auditRequest(testLogFilter, new MockHttpServletResponse(), "sampled-zone");
+
+        Assert.assertEquals(event.getRequestBody(), TEST_REQUEST_CONTENT);
+        Assert.assertEquals(event.getResponseBody(), TEST_RESPONSE_CONTENT);
+    }
+
+    @Test
+    public void testLogFilterAuditExcludedContentType() throws ServletException, IOException {
+        LogFilter testLogFilter = new LogFilter();
+        testLogFilter.setExcludedCaptureContentTypes(Collections.singleton("application/octet-stream"));
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setContentType("application/octet-stream");
+        request.setContent(TEST_REQUEST_CONTENT.getBytes());
+        AuditEvent event = auditRequest(testLogFilter, request, new MockHttpServletResponse());
+
+        Assert.assertEquals(event.getRequestBody(), "");
+        Assert.assertEquals(event.getResponseBody(), TEST_RESPONSE_CONTENT);
+    }
+
+    private static AuditEvent auditRequest(final LogFilter logFilter, final MockHttpServletResponse response,
+            final String zoneId) throws ServletException, IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Predix-Zone-Id", zoneId);
+        request.setContent(TEST_REQUEST_CONTENT.getBytes());
+        return auditRequest(logFilter, request, response);
+    }
+
+    private static AuditEvent auditRequest(final LogFilter logFilter, final MockHttpServletResponse response)
+            throws ServletException, IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setContent(TEST_REQUEST_CONTENT.getBytes());
+        return auditRequest(logFilter, request, response);
+    }
+
+    private static AuditEvent auditRequest(final LogFilter logFilter, final MockHttpServletRequest request,
+            final MockHttpServletResponse response) throws ServletException, IOException {
+        AtomicReference<AuditEvent> audited = new AtomicReference<>();
+        logFilter.setAuditProcessor(event -> {
+            audited.set(event);
+            return true;
+        });
+        Servlet mockServlet = Mockito.mock(Servlet.class);
+        logFilter.doFilterInternal(request, response, new MockFilterChain(mockServlet, new MockControllerFilter()));
+        Assert.assertNotNull(audited.get());
+        return audited.get();
+    }
+
 }
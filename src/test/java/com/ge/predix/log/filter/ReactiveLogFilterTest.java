@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.log.filter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.MDC;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.ge.predix.audit.AuditEvent;
+import com.ge.predix.log.context.ReactiveMdc;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public class ReactiveLogFilterTest {
+
+    private static final String REQUEST_CONTENT = "reactive-request-content";
+    private static final String RESPONSE_CONTENT = "reactive-response-content";
+
+    // reads the whole request body and writes the response in two chunks, as a handler would
+    private static final WebFilterChain ECHO_CHAIN = exchange -> DataBufferUtils.join(exchange.getRequest().getBody())
+            .flatMap(body -> {
+                DataBufferUtils.release(body);
+                exchange.getResponse().getHeaders().setContentType(MediaType.TEXT_PLAIN);
+                return exchange.getResponse().writeWith(Flux.just(buffer(RESPONSE_CONTENT.substring(0, 8)),
+                        buffer(RESPONSE_CONTENT.substring(8))));
+            });
+
+    private static DataBuffer buffer(final String content) {
+        return DefaultDataBufferFactory.sharedInstance.wrap(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static MockServerWebExchange post(final String uri) {
+        return MockServerWebExchange.from(MockServerHttpRequest.post(uri).body(REQUEST_CONTENT));
+    }
+
+    @Test
+    public void testZoneFromHeaderAndSubdomain() {
+        ReactiveLogFilter filter = new ReactiveLogFilter();
+        Assert.assertEquals(filter.getZoneId(MockServerHttpRequest.get("http://localhost/")
+                .header("Predix-Zone-Id", "header-zone").build()), "header-zone");
+        Assert.assertEquals(filter.getZoneId(MockServerHttpRequest.get("http://sub-zone.localhost/").build()),
+                "sub-zone");
+        Assert.assertEquals(filter.getZoneId(MockServerHttpRequest.get("http://localhost/").build()), "");
+    }
+
+    @Test
+    public void testMdcIsCarriedInReactorContext() {
+        ReactiveLogFilter filter = new ReactiveLogFilter();
+        filter.setCustomAppName("reactive-app");
+        AtomicReference<String> loggedZone = new AtomicReference<>();
+        AtomicReference<String> loggedApp = new AtomicReference<>();
+
+        WebFilterChain chain = exchange -> Mono.just("item")
+                .doOnEach(ReactiveMdc.logOnNext(item -> {
+                    loggedZone.set(MDC.get("Zone-Id"));
+                    loggedApp.set(MDC.get("APP_NAME"));
+                }))
+                .then();
+
+        filter.filter(post("http://tenant.localhost/resource"), chain).block();
+
+        Assert.assertEquals(loggedZone.get(), "tenant");
+        Assert.assertEquals(loggedApp.get(), "reactive-app");
+        // nothing leaks onto the thread outside the log statement
+        Assert.assertNull(MDC.get("Zone-Id"));
+    }
+
+    @Test
+    public void testAuditCapturesStreamedBodies() {
+        ReactiveLogFilter filter = new ReactiveLogFilter();
+        AtomicReference<AuditEvent> audited = new AtomicReference<>();
+        filter.setAuditProcessor(event -> {
+            audited.set(event);
+            return true;
+        });
+
+        MockServerWebExchange exchange = post("http://tenant.localhost/resource");
+        filter.filter(exchange, ECHO_CHAIN).block();
+
+        Assert.assertEquals(exchange.getResponse().getBodyAsString().block(), RESPONSE_CONTENT);
+        AuditEvent event = audited.get();
+        Assert.assertNotNull(event);
+        Assert.assertEquals(event.getZoneId(), "tenant");
+        Assert.assertEquals(event.getMethod(), "POST");
+        Assert.assertEquals(event.getRequestUri(), "/resource");
+        Assert.assertEquals(event.getRequestBody(), REQUEST_CONTENT);
+        Assert.assertEquals(event.getResponseBody(), RESPONSE_CONTENT);
+    }
+
+    @Test
+    public void testTraversalOutOfExcludedPathsIsAudited() {
+        ReactiveLogFilter filter = new ReactiveLogFilter();
+        filter.setExcludedPaths(Collections.singleton("/health/**"));
+        List<String> audited = new ArrayList<>();
+        filter.setAuditProcessor(event -> audited.add(event.getRequestUri()));
+
+        filter.filter(post("http://localhost/health"), ECHO_CHAIN).block();
+        filter.filter(post("http://localhost/health/../admin/users"), ECHO_CHAIN).block();
+        filter.filter(post("http://localhost/health/..;/admin/users"), ECHO_CHAIN).block();
+
+        Assert.assertEquals(audited, Arrays.asList("/health/../admin/users", "/health/..;/admin/users"));
+    }
+
+    @Test
+    public void testAuditCaptureIsBounded() {
+        ReactiveLogFilter filter = new ReactiveLogFilter();
+        filter.setMaxRequestCaptureBytes(8);
+        filter.setMaxResponseCaptureBytes(10);
+        AtomicReference<AuditEvent> audited = new AtomicReference<>();
+        filter.setAuditProcessor(event -> {
+            audited.set(event);
+            return true;
+        });
+
+        ServerWebExchange exchange = post("http://localhost/resource");
+        filter.filter(exchange, ECHO_CHAIN).block();
+
+        Assert.assertEquals(audited.get().getRequestBody(), REQUEST_CONTENT.substring(0, 8));
+        Assert.assertTrue(audited.get().isRequestBodyTruncated());
+        Assert.assertEquals(audited.get().getResponseBody(), RESPONSE_CONTENT.substring(0, 10));
+        Assert.assertTrue(audited.get().isResponseBodyTruncated());
+    }
+
+    @Test
+    public void testStreamingResponseIsNotCaptured() {
+        ReactiveLogFilter filter = new ReactiveLogFilter();
+        AtomicReference<AuditEvent> audited = new AtomicReference<>();
+        filter.setAuditProcessor(event -> {
+            audited.set(event);
+            return true;
+        });
+
+        WebFilterChain chain = exchange -> {
+            exchange.getResponse().getHeaders().setContentType(MediaType.TEXT_EVENT_STREAM);
+            return exchange.getResponse().writeWith(Flux.just(buffer("data: tick\n\n")));
+        };
+        MockServerWebExchange exchange = post("http://localhost/events");
+        filter.filter(exchange, chain).block();
+
+        Assert.assertEquals(exchange.getResponse().getBodyAsString().block(), "data: tick\n\n");
+        Assert.assertEquals(audited.get().getResponseBody(), "");
+    }
+}
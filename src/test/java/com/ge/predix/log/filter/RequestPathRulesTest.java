@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.log.filter;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.ge.predix.log.filter.RequestPathRules.Action;
+
+public class RequestPathRulesTest {
+
+    private final RequestPathRules rules = RequestPathRules.NONE
+            .withExcluded(Arrays.asList("/health", "/static/**", "GET,HEAD /actuator/**"))
+            .withAuditExcluded(Arrays.asList("/api/bulk/**", "POST /api/bulk/upload"))
+            .withIncluded(Collections.singletonList("/actuator/auditevents"));
+
+    @Test
+    public void testExactAndPrefixPatterns() {
+        Assert.assertEquals(this.rules.match("GET", "/health"), Action.SKIP);
+        Assert.assertEquals(this.rules.match("GET", "/health/"), Action.SKIP);
+        Assert.assertEquals(this.rules.match("GET", "/health/db"), Action.FILTER);
+        Assert.assertEquals(this.rules.match("GET", "/healthz"), Action.FILTER);
+        Assert.assertEquals(this.rules.match("GET", "/static"), Action.SKIP);
+        Assert.assertEquals(this.rules.match("GET", "/static/js/app.js"), Action.SKIP);
+        Assert.assertEquals(this.rules.match("GET", "/api/zones"), Action.FILTER);
+        Assert.assertEquals(this.rules.match("GET", "/"), Action.FILTER);
+    }
+
+    @Test
+    public void testMethods() {
+        Assert.assertEquals(this.rules.match("GET", "/actuator/prometheus"), Action.SKIP);
+        Assert.assertEquals(this.rules.match("HEAD", "/actuator/prometheus"), Action.SKIP);
+        Assert.assertEquals(this.rules.match("POST", "/actuator/shutdown"), Action.FILTER);
+    }
+
+    @Test
+    public void testMethodListWithSpaces() {
+        RequestPathRules spaced = RequestPathRules.NONE.withExcluded(Collections.singletonList(" GET, head  /x "));
+        Assert.assertEquals(spaced.match("GET", "/x"), Action.SKIP);
+        Assert.assertEquals(spaced.match("HEAD", "/x"), Action.SKIP);
+        Assert.assertEquals(spaced.match("POST", "/x"), Action.FILTER);
+    }
+
+    @Test
+    public void testPathParametersAreIgnored() {
+        Assert.assertEquals(this.rules.match("GET", "/health;jsessionid=0123"), Action.SKIP);
+        Assert.assertEquals(this.rules.match("GET", "/static;v=1/js/app.js"), Action.SKIP);
+        Assert.assertEquals(this.rules.match("GET", "/healthz;jsessionid=0123"), Action.FILTER);
+    }
+
+    @Test
+    public void testDotSegmentsAreAlwaysFiltered() {
+        Assert.assertEquals(this.rules.match("GET", "/health/../admin/users"), Action.FILTER);
+        Assert.assertEquals(this.rules.match("GET", "/health/..;/admin/users"), Action.FILTER);
+        Assert.assertEquals(this.rules.match("GET", "/static/js/../../admin"), Action.FILTER);
+        Assert.assertEquals(this.rules.match("GET", "/static/%2E%2e/admin"), Action.FILTER);
+        Assert.assertEquals(this.rules.match("GET", "/api/bulk/./x"), Action.FILTER);
+        Assert.assertEquals(this.rules.match("GET", "/app/health/../admin", "/app".length()), Action.FILTER);
+        // dots inside a segment are not dot segments
+        Assert.assertEquals(this.rules.match("GET", "/static/js/app.min.js"), Action.SKIP);
+        Assert.assertEquals(this.rules.match("GET", "/static/.../x"), Action.SKIP);
+    }
+
+    @Test
+    public void testMostSpecificRuleWins() {
+        Assert.assertEquals(this.rules.match("GET", "/actuator/auditevents"), Action.FILTER);
+        Assert.assertEquals(this.rules.match("GET", "/api/bulk/upload"), Action.SKIP_AUDIT);
+        Assert.assertEquals(this.rules.match("POST", "/api/bulk/upload"), Action.SKIP_AUDIT);
+        Assert.assertEquals(this.rules.match("POST", "/api/bulk"), Action.SKIP_AUDIT);
+    }
+
+    @Test
+    public void testContextPathOffset() {
+        Assert.assertEquals(this.rules.match("GET", "/app/health", "/app".length()), Action.SKIP);
+        Assert.assertEquals(this.rules.match("GET", "/app/api", "/app".length()), Action.FILTER);
+    }
+
+    @Test
+    public void testRootPrefixMatchesEverything() {
+        RequestPathRules all = RequestPathRules.NONE.withAuditExcluded(Collections.singletonList("/**"));
+        Assert.assertEquals(all.match("GET", "/"), Action.SKIP_AUDIT);
+        Assert.assertEquals(all.match("GET", "/any/path"), Action.SKIP_AUDIT);
+        Assert.assertFalse(all.hasSkipRules());
+        Assert.assertTrue(all.hasAuditSkipRules());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testRelativePatternRejected() {
+        RequestPathRules.NONE.withExcluded(Collections.singletonList("health"));
+    }
+}
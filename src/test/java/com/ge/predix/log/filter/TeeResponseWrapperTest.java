@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.log.filter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TeeResponseWrapperTest {
+
+    @Test
+    public void testWritesThroughAndCapturesBody() throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        TeeResponseWrapper wrapper = new TeeResponseWrapper(response, 1024);
+
+        wrapper.getOutputStream().write("hello ".getBytes());
+        // written bytes reach the client before the request completes
+        Assert.assertEquals(response.getContentAsString(), "hello ");
+
+        wrapper.getOutputStream().write('!');
+        Assert.assertEquals(new String(wrapper.getContentAsByteArray()), "hello !");
+        Assert.assertFalse(wrapper.isCaptureTruncated());
+    }
+
+    @Test
+    public void testCaptureIsBoundedButClientGetsEverything() throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        TeeResponseWrapper wrapper = new TeeResponseWrapper(response, 4);
+
+        wrapper.getOutputStream().write("0123456789".getBytes());
+        wrapper.getOutputStream().write('X');
+
+        Assert.assertEquals(response.getContentAsString(), "0123456789X");
+        Assert.assertEquals(new String(wrapper.getContentAsByteArray()), "0123");
+        Assert.assertTrue(wrapper.isCaptureTruncated());
+    }
+
+    @Test
+    public void testWriterUsesResponseEncoding() throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        response.setCharacterEncoding("UTF-8");
+        TeeResponseWrapper wrapper = new TeeResponseWrapper(response, 1024);
+
+        wrapper.getWriter().write("café");
+
+        // nothing is held back in the writer, so no flush is needed
+        Assert.assertEquals(response.getContentAsString(), "café");
+        Assert.assertEquals(new String(wrapper.getContentAsByteArray(), StandardCharsets.UTF_8), "café");
+    }
+
+    @Test
+    public void testWriterKeepsSurrogatePairsSplitAcrossWrites() throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        response.setCharacterEncoding("UTF-8");
+        TeeResponseWrapper wrapper = new TeeResponseWrapper(response, 1024);
+        String emoji = "\uD83D\uDE00";
+
+        wrapper.getWriter().write("a" + emoji.charAt(0));
+        wrapper.getWriter().write(emoji.charAt(1) + "b");
+
+        Assert.assertEquals(response.getContentAsString(), "a" + emoji + "b");
+        Assert.assertEquals(new String(wrapper.getContentAsByteArray(), StandardCharsets.UTF_8), "a" + emoji + "b");
+    }
+
+    @Test
+    public void testResetBufferLeavesNoWriterCharactersBehind() throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        response.setCharacterEncoding("UTF-8");
+        TeeResponseWrapper wrapper = new TeeResponseWrapper(response, 1024);
+
+        wrapper.getWriter().print("discarded");
+        wrapper.resetBuffer();
+        wrapper.getWriter().print("kept");
+
+        Assert.assertEquals(response.getContentAsString(), "kept");
+        Assert.assertEquals(new String(wrapper.getContentAsByteArray(), StandardCharsets.UTF_8), "kept");
+    }
+
+    @Test
+    public void testStreamingContentTypeDisablesCapture() throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        TeeResponseWrapper wrapper = new TeeResponseWrapper(response, 1024);
+        wrapper.setContentType("text/event-stream;charset=UTF-8");
+
+        wrapper.getOutputStream().write("data: tick\n\n".getBytes());
+
+        Assert.assertEquals(response.getContentAsString(), "data: tick\n\n");
+        Assert.assertFalse(wrapper.isCaptureEnabled());
+        Assert.assertEquals(wrapper.getContentAsByteArray().length, 0);
+    }
+
+    @Test
+    public void testResetBufferClearsCapture() throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        TeeResponseWrapper wrapper = new TeeResponseWrapper(response, 1024);
+
+        wrapper.getOutputStream().write("discarded".getBytes());
+        wrapper.resetBuffer();
+        wrapper.getOutputStream().write("kept".getBytes());
+
+        Assert.assertEquals(new String(wrapper.getContentAsByteArray()), "kept");
+    }
+}
@@ -16,6 +16,9 @@
 
 package com.ge.predix.log4j2;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.time.Instant;
 import java.util.Date;
@@ -26,6 +29,8 @@ import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.core.LogEvent;
 import org.apache.logging.log4j.core.impl.JdkMapAdapterStringMap;
 import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.core.layout.ByteBufferDestination;
+import org.apache.logging.log4j.core.layout.ByteBufferDestinationHelper;
 import org.apache.logging.log4j.message.Message;
 import org.apache.logging.log4j.message.SimpleMessageFactory;
 import org.testng.Assert;
@@ -489,6 +494,48 @@ public class PredixLayoutTest {
         Assert.assertEquals(actual, expected);
     }
 
+    @Test
+    public void testEncodeStreamsIntoDestination() {
+        LogEvent logEvent = createLogEvent(SimpleMessageFactory.INSTANCE.newMessage("caf\u00e9 " + new String(
+                new char[300]).replace('\0', 'x')));
+        String expected = predixLayout.toSerializable(logEvent);
+
+        // smaller than the event, so that it is drained part way through
+        ByteArrayOutputStream drained = new ByteArrayOutputStream();
+        ByteBufferDestination destination = new ByteBufferDestination() {
+
+            private final ByteBuffer buffer = ByteBuffer.allocate(64);
+
+            @Override
+            public ByteBuffer getByteBuffer() {
+                return this.buffer;
+            }
+
+            @Override
+            public ByteBuffer drain(final ByteBuffer buf) {
+                buf.flip();
+                drained.write(buf.array(), 0, buf.limit());
+                buf.clear();
+                return buf;
+            }
+
+            @Override
+            public void writeBytes(final ByteBuffer data) {
+                ByteBufferDestinationHelper.writeToUnsynchronized(data, this);
+            }
+
+            @Override
+            public void writeBytes(final byte[] data, final int offset, final int length) {
+                ByteBufferDestinationHelper.writeToUnsynchronized(data, offset, length, this);
+            }
+        };
+        predixLayout.encode(logEvent, destination);
+        destination.drain(destination.getByteBuffer());
+
+        Assert.assertEquals(new String(drained.toByteArray(), StandardCharsets.UTF_8), expected);
+        Assert.assertEquals(new String(predixLayout.toByteArray(logEvent), StandardCharsets.UTF_8), expected);
+    }
+
     private static LogEvent createLogEvent(final Message message) {
         return createLogEvent(message, getMDC());
     }
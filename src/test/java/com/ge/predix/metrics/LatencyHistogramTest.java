@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.metrics;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketsAreContiguous() {
+        long previousUpperBound = -1;
+        for (int i = 0; i < 200; i++) {
+            long upperBound = LatencyHistogram.bucketUpperBound(i);
+            Assert.assertEquals(LatencyHistogram.bucketIndex(previousUpperBound + 1), i);
+            Assert.assertEquals(LatencyHistogram.bucketIndex(upperBound), i);
+            previousUpperBound = upperBound;
+        }
+        Assert.assertTrue(LatencyHistogram.bucketIndex(Long.MAX_VALUE) >= 0);
+    }
+
+    @Test
+    public void testPercentilesWithinBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 10000; value++) {
+            histogram.record(value * 1000);
+        }
+        Assert.assertEquals(histogram.getCount(), 10000);
+        Assert.assertEquals(histogram.getMax(), 10000000);
+        assertWithin(histogram.getValueAtPercentile(50), 5000000);
+        assertWithin(histogram.getValueAtPercentile(99), 9900000);
+        Assert.assertEquals(histogram.getValueAtPercentile(100), 10000000);
+
+        histogram.reset();
+        Assert.assertEquals(histogram.getCount(), 0);
+        Assert.assertEquals(histogram.getValueAtPercentile(99), 0);
+    }
+
+    @Test
+    public void testHistogramAndMicrometerMetrics() {
+        HistogramFilterMetrics histograms = new HistogramFilterMetrics();
+        histograms.recordPhase(FilterPhase.ZONE_RESOLUTION, 1500);
+        histograms.recordCapturedBytes(10, 20);
+        Assert.assertEquals(histograms.getHistogram(FilterPhase.ZONE_RESOLUTION).getCount(), 1);
+        Assert.assertEquals(histograms.getHistogram(FilterPhase.MDC_SETUP).getCount(), 0);
+        Assert.assertEquals(histograms.getCapturedResponseBytes(), 20);
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MicrometerFilterMetrics micrometer = new MicrometerFilterMetrics(registry);
+        micrometer.recordPhase(FilterPhase.AUDIT_PROCESS, 2000);
+        micrometer.recordCapturedBytes(10, 20);
+        Assert.assertEquals(registry.get(MicrometerFilterMetrics.PHASE_TIMER).tag("phase", "audit_process").timer()
+                .count(), 1);
+        Assert.assertEquals(registry.get(MicrometerFilterMetrics.CAPTURED_BYTES_COUNTER).tag("direction", "request")
+                .counter().count(), 10.0);
+    }
+
+    private static void assertWithin(final long actual, final long expected) {
+        Assert.assertTrue(actual >= expected && actual <= expected * 1.125, actual + " vs " + expected);
+    }
+}
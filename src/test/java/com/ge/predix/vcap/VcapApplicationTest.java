@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright 2021 General Electric Company
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package com.ge.predix.vcap;
+
+import java.io.IOException;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class VcapApplicationTest {
+
+    private static final String VCAP_APPLICATION = "{\n"
+            + "  \"application_id\": \"b408c0ad-854f-44c4-8166-820259f6b4c0\",\n"
+            + "  \"application_name\": \"uaa-\\\"local\\\"\\u0021\",\n"
+            + "  \"application_uris\": [ \"uaa.example.com\", { \"x\": [] } ],\n"
+            + "  \"limits\": { \"disk\": 1024, \"fds\": 16384, \"mem\": 512 },\n"
+            + "  \"cf_api\": null,\n"
+            + "  \"started\": true,\n"
+            + "  \"instance_id\": \"c089b940-0626-4d0b-5817-3f2d1229d7d2\",\n"
+            + "  \"instance_index\": 3,\n"
+            + "  \"space_name\": \"dev\"\n"
+            + "}";
+
+    @Test
+    public void testParse() throws IOException {
+        VcapApplication application = VcapApplication.parse(VCAP_APPLICATION);
+        Assert.assertEquals(application.getAppId(), "b408c0ad-854f-44c4-8166-820259f6b4c0");
+        Assert.assertEquals(application.getAppName(), "uaa-\"local\"!");
+        Assert.assertEquals(application.getInstanceId(), "c089b940-0626-4d0b-5817-3f2d1229d7d2");
+        Assert.assertEquals(application.getInstanceIndex(), "3");
+    }
+
+    @Test
+    public void testParseMissingMembers() throws IOException {
+        VcapApplication application = VcapApplication.parse(" {} ");
+        Assert.assertNull(application.getAppId());
+        Assert.assertNull(application.getInstanceIndex());
+    }
+
+    @Test
+    public void testParseRejectsMalformedJson() {
+        for (String json : new String[] { "", "   ", "[]", "{\"application_id\": }", "{\"a\": \"b\"",
+                "{\"a\": \"b\\x\"}", "{\"a\": tru}", "{} {}" }) {
+            try {
+                VcapApplication.parse(json);
+                Assert.fail("Expected an IOException for: " + json);
+            } catch (IOException e) {
+                Assert.assertTrue(e.getMessage().contains("VCAP application JSON"), e.getMessage());
+            }
+        }
+    }
+}